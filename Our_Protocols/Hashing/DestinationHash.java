@@ -1,8 +1,5 @@
 package Hashing;
 
-import Routing.Packet;
-import Topology.Node;
-
 /**
  * Hash function that hashes the destination of the arriving packet
  */
@@ -14,8 +11,8 @@ public class DestinationHash extends Hash{
 	 * also include the ID of the current router before computing the hash value
 	 */
 	@Override
-	public int hash(Packet p, Node cRouter) {
-		return 	(fnv1a(cRouter.hashCode()  + p.destination.hashCode())) & 0x7FFFFFFF;
+	public int hash(int router, int source, int destination, int lastHop, int hopCount) {
+		return 	(fnv1a(router  + destination)) & 0x7FFFFFFF;
 	}
 	
 }
@@ -19,7 +19,34 @@ public abstract class Hash {
 	public static Hash threediHash;
 	public static Hash threedisHash;
 	
-	public abstract int hash(Packet p, Node cRouter);
+	/**
+	 * Maps the header of packet p, as seen by router cRouter, to a non-negative value.
+	 * Delegates to hash(int,int,int,int,int) using the hashIDs of the involved routers.
+	 */
+	public int hash(Packet p, Node cRouter) {
+		return hash(cRouter.hashCode(), p.source.hashCode(), p.destination.hashCode(), p.last_hop.hashCode(), p.hopCount);
+	}
+	
+	/**
+	 * Same as hash(Packet, Node) but operates directly on the hashIDs of the routers.
+	 * Topologies without per-router Node objects (see ImplicitCLOSNetwork) use this variant.
+	 * 
+	 * @param router	hashID of the router making the forwarding decision
+	 * @param source	hashID of the source of the packet
+	 * @param destination	hashID of the destination of the packet
+	 * @param lastHop	hashID of the router the packet was received from (inport)
+	 * @param hopCount	number of hops the packet travelled so far
+	 * @return	non-negative 31-bit hash value
+	 */
+	public abstract int hash(int router, int source, int destination, int lastHop, int hopCount);
+
+	/**
+	 * Smallest hop count from which on the hash value no longer depends on the hop count
+	 * (Integer.MAX_VALUE if it always does). Used to cache path suffixes, see Topology.SuffixCache.
+	 */
+	public int hopCountHorizon() {
+		return 0;
+	}
 
 	/**
 	 * Implementation of the 32-bit FNV-1a hashing function.
@@ -1,8 +1,5 @@
 package Hashing;
 
-import Routing.Packet;
-import Topology.Node;
-
 /**
  * Hash function that computes a hash value out of the inport and source address of the given packet
  */
@@ -14,8 +11,8 @@ public class InportDestinationHash extends Hash{
 	 * also include the ID of the current router before computing the hash value
 	 */
 	@Override
-	public int hash(Packet p, Node cRouter) {
-		int hash = fnv1a(cRouter.hashCode() + p.destination.hashCode() + p.last_hop.hashCode()) & 0x7FFFFFFF;
+	public int hash(int router, int source, int destination, int lastHop, int hopCount) {
+		int hash = fnv1a(router + destination + lastHop) & 0x7FFFFFFF;
 		
 		return 	hash;
 	}
@@ -1,16 +1,18 @@
 package Hashing;
 
-import Routing.Packet;
-import Topology.Node;
-
 public class SIDHHash extends Hash{
 
 	@Override
-	public int hash(Packet p, Node cRouter) {
-		return 	(fnv1a(cRouter.hashCode() ^ 1) ^
-				fnv1a(p.destination.hashCode() ^ 2) ^
-				fnv1a(p.last_hop.hashCode() ^ 3)^
-				fnv1a(p.source.hashCode()^ 4) ^
-				fnv1a(p.hopCount)) & 0x7FFFFFFF;
+	public int hash(int router, int source, int destination, int lastHop, int hopCount) {
+		return 	(fnv1a(router ^ 1) ^
+				fnv1a(destination ^ 2) ^
+				fnv1a(lastHop ^ 3)^
+				fnv1a(source^ 4) ^
+				fnv1a(hopCount)) & 0x7FFFFFFF;
+	}
+
+	@Override
+	public int hopCountHorizon() {
+		return Integer.MAX_VALUE;
 	}
 }
@@ -2,9 +2,6 @@ package Hashing;
 
 import java.util.concurrent.ThreadLocalRandom;
 
-import Routing.Packet;
-import Topology.Node;
-
 /**
  * Hash function that computes a hash value out of the destination and source address and inport of the given packet
  */
@@ -16,9 +13,9 @@ public class SourceInportDestinationHash extends Hash{
 	 * also include the ID of the current router before computing the hash value
 	 */
 	@Override
-	public int hash(Packet p, Node cRouter) {			
+	public int hash(int router, int source, int destination, int lastHop, int hopCount) {			
 
-		int hash = fnv1a(cRouter.hashCode() + p.source.hashCode() + p.destination.hashCode() + p.last_hop.hashCode()) & 0x7FFFFFFF;
+		int hash = fnv1a(router + source + destination + lastHop) & 0x7FFFFFFF;
 				
 		return 	hash;
 		
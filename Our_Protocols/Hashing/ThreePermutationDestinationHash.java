@@ -1,8 +1,5 @@
 package Hashing;
 
-import Routing.Packet;
-import Topology.Node;
-
 public class ThreePermutationDestinationHash extends Hash{
 	
 	int n;
@@ -16,14 +13,18 @@ public class ThreePermutationDestinationHash extends Hash{
 	}
 	
 	@Override
-	public int hash(Packet p, Node cRouter) {
-		int num_permutation = (int) (p.hopCount / logn); 
+	public int hash(int router, int source, int destination, int lastHop, int hopCount) {
+		int num_permutation = (int) (hopCount / logn); 
 		if(num_permutation >= numPerm) {
 			num_permutation = numPerm - 1;
 		}
 
-		return 	fnv1a(cRouter.hashCode()  + p.destination.hashCode() + num_permutation) & 0x7FFFFFFF;
+		return 	fnv1a(router  + destination + num_permutation) & 0x7FFFFFFF;
 	}
 	
+	@Override
+	public int hopCountHorizon() {
+		return (numPerm - 1) * logn;
+	}
 
 }
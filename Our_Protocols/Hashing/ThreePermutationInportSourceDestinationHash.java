@@ -1,8 +1,5 @@
 package Hashing;
 
-import Routing.Packet;
-import Topology.Node;
-
 public class ThreePermutationInportSourceDestinationHash extends Hash{
 	
 	int n;
@@ -16,16 +13,20 @@ public class ThreePermutationInportSourceDestinationHash extends Hash{
 	}
 	
 	@Override
-	public int hash(Packet p, Node cRouter) {
-		int num_permutation = (int) (p.hopCount / logn); 
+	public int hash(int router, int source, int destination, int lastHop, int hopCount) {
+		int num_permutation = (int) (hopCount / logn); 
 		if(num_permutation >= numPerm) {
 			num_permutation = numPerm -1;
 		}
 		
-		int hash = fnv1a(cRouter.hashCode() + p.source.hashCode() +  p.destination.hashCode()  + num_permutation + p.last_hop.hashCode()) & 0x7FFFFFFF;
+		int hash = fnv1a(router + source +  destination  + num_permutation + lastHop) & 0x7FFFFFFF;
 		
 		return 	hash;
 	}
 	
+	@Override
+	public int hopCountHorizon() {
+		return (numPerm - 1) * logn;
+	}
 
 }
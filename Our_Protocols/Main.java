@@ -1,36 +1,127 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
 import Statistics.*;
+import Routing.CoupledSweep;
+import Routing.DynamicSimulation;
+import Routing.FailureSearch;
+import Routing.FlowSampler;
+import Routing.FluidRouting;
+import Routing.LinkCriticality;
+import Routing.MinCongestion;
+import Routing.QueueingSimulation;
+import Routing.ServerTraffic;
+import Routing.SimulationService;
 import Topology.*;
 import Topology.CLOSNetwork.*;
 import Util.DisconnectException;
+import Util.LazyDisconnectException;
+import Util.TrialJournal;
 import Util.Utility;
 
 public class Main {
+	
+	//Maximum number of failure draws per run when resampling infeasible failures (see CLOSNetwork.failEdgesFeasible())
+	static final int MAX_FAILURE_DRAWS = 1000;
+	
+	//Maximum number of rounds of the min-congestion approximation (see Routing.MinCongestion)
+	static final int MAX_OPT_ROUNDS = 50;
+	
 	public static void main(String[] args) {		
+		
+		//Delete journal.csv to start the sweep from scratch
+		TrialJournal journal = new TrialJournal("journal.csv", 1);
 	
-		increasingPExperiment(0.05, 0.05, 80, false, 0.02, Type.INT_ID,7, "gravity3200_3200x3200.txt", FailType.RANDOM, 3);
-		increasingPExperiment(0.05, 0.05, 80, false, 0.02, Type.INT_ID,7, "alltoone", FailType.RANDOM, 3);
+		increasingPExperiment(0.05, 0.05, 80, false, 0.02, Type.INT_ID,7, "gravity3200_3200x3200.txt", FailType.RANDOM, 3, journal);
+		increasingPExperiment(0.05, 0.05, 80, false, 0.02, Type.INT_ID,7, "alltoone", FailType.RANDOM, 3, journal);
 		
-		increasingPExperiment(0.05, 0.05, 80, false, 0.02, Type.TP_ID,6, "gravity3200_3200x3200.txt", FailType.RANDOM, 3);
-		increasingPExperiment(0.05, 0.05, 80, false, 0.02, Type.TP_ID,6, "alltoone", FailType.RANDOM, 3);
+		increasingPExperiment(0.05, 0.05, 80, false, 0.02, Type.TP_ID,6, "gravity3200_3200x3200.txt", FailType.RANDOM, 3, journal);
+		increasingPExperiment(0.05, 0.05, 80, false, 0.02, Type.TP_ID,6, "alltoone", FailType.RANDOM, 3, journal);
 	}
 
 	public static void increasingPExperiment(double startP, double endP, int k, boolean multiply, double stepfactor, CLOSNetwork.Type type, int numIntervals, String trafficPattern,CLOSNetwork.FailType fType, int runs) {
+		increasingPExperiment(startP, endP, k, multiply, stepfactor, type, numIntervals, trafficPattern, fType, runs, null);
+	}
+	
+	/**
+	 * Same as above, but every finished run is recorded in the given journal and runs that are already contained
+	 * in the journal are skipped. This allows to resume a sweep after the JVM was killed.
+	 * 
+	 * The hashIDs of each p and the failures and destination of each run are drawn from seeds that only depend on
+	 * the parameters of the run (see TrialJournal.seed()), so the resumed sweep yields the same results.
+	 * The id of each run is written into the column Trial of log.csv, also for failed runs. A row is written before
+	 * its run is recorded, rows of runs that are not recorded (killed in between) are removed when the sweep is resumed.
+	 * 
+	 * @param journal	Journal of the sweep, or null to neither record nor skip runs (unseeded)
+	 */
+	public static void increasingPExperiment(double startP, double endP, int k, boolean multiply, double stepfactor, CLOSNetwork.Type type, int numIntervals, String trafficPattern,CLOSNetwork.FailType fType, int runs, TrialJournal journal) {
+		increasingPExperiment(startP, endP, k, multiply, stepfactor, type, numIntervals, trafficPattern, fType, runs, journal, false, CLOSNetwork.Infeasible.BUILD);
+	}
+	
+	/**
+	 * Same as above, with the option to build the routing state of each router only when it is first used
+	 * (see CLOSNetwork.setLazyRoutingState()). A run is then dropped only if a router used by the traffic is disconnected.
+	 * 
+	 * Failures that leave a router without forwarding candidates can be detected right after placing them
+	 * (see CLOSNetwork.isFeasible()) and the run is then dropped or the failures redrawn. In these cases the number of
+	 * draws and rejected draws of each p are written to feasibility.csv. Note that the check considers all routers,
+	 * also in lazy mode. With BUILD, a disconnect found while building the routing state (for all strategies,
+	 * including SP_*) drops the run: it is written to log.csv as failed run and recorded as FAILED in the journal.
+	 * 
+	 * @param lazy	Whether routing state is built lazily
+	 * @param infeasible	Handling of failures that disconnect a router
+	 */
+	public static void increasingPExperiment(double startP, double endP, int k, boolean multiply, double stepfactor, CLOSNetwork.Type type, int numIntervals, String trafficPattern,CLOSNetwork.FailType fType, int runs, TrialJournal journal, boolean lazy, CLOSNetwork.Infeasible infeasible) {
 				
+		boolean allToOne = "alltoone".equals(trafficPattern.trim().toLowerCase());
 		double[][] trafficMatrix = null;
 		
-		if(trafficPattern.trim().toLowerCase() != "alltoone") {
+		if(!allToOne) {
 			System.out.println("** Reading Traffic Matrix: " + trafficPattern);
 			trafficMatrix = Utility.parseMatrix(trafficPattern, k* (k / 2));
 			System.out.println("** Done reading TM");
 		}
 		
 		
+		if(journal != null) {
+			int removed = LoadStatistics.dropUnfinishedTrials(journal);
+			if(removed > 0) {System.out.println("** Removed " + removed + " rows of unfinished trials from log.csv");}
+		}
+		
 		double p = startP;
 		while(p<= endP){
+			String sweepId = k + "|" + type + "|" + numIntervals + "|" + trafficPattern + "|" + fType + "|" + p;
+			int missingRuns = 0;
+			for(int r = 0; r < runs; r++) {
+				if(journal == null || !journal.isFinished(sweepId + "|" + r)) {missingRuns++;}
+			}
+			if(missingRuns == 0) {
+				System.out.println(">> p=" + p + " already finished, skipping");
+				p = multiply ? p * stepfactor : p + stepfactor;
+				continue;
+			}
+			
 			CLOSNetwork net = new CLOSNetwork(type,k, numIntervals);
+			if(journal != null) {net.setSeed(journal.seed(sweepId));}
+			net.setLazyRoutingState(lazy);
 			net.initEdges();
+			HopHistogram hopHistogram = new HopHistogram();
+			Result lastResult = null;
+			int routedRuns = 0;
+			int draws = 0, rejectedDraws = 0;
 			
 			for(int r = 0; r < runs; r++) {
+				String trialId = sweepId + "|" + r;
+				if(journal != null) {
+					if(journal.isFinished(trialId)) {continue;}
+					net.setSeed(journal.seed(trialId));
+				}
 				
 				long start = System.currentTimeMillis();
 				
@@ -38,37 +129,593 @@ public class Main {
 				System.out.println(">> p=" + p + " Run " + (r+1));
 				System.out.println(">> p=" + p + " Run " + (r+1));
 				
+				Node dest = net.randomBottomLayerNode();
+				int rejected = 0;
+				if(infeasible == CLOSNetwork.Infeasible.RESAMPLE) {
+					rejected = net.failEdgesFeasible(fType, p, dest, MAX_FAILURE_DRAWS);
+				}
+				else {
+					net.failEdges(fType, p, dest);
+					rejected = net.isFeasible() ? 0 : 1;
+				}
+				draws += rejected + (net.isFeasible() ? 1 : 0);
+				rejectedDraws += rejected;
+				Result result = null;
+				try {
+					if(infeasible != CLOSNetwork.Infeasible.BUILD && !net.isFeasible()) {
+						throw new DisconnectException("Failures leave a router without forwarding candidates (" + rejected + " rejected draws)");
+					}
+					net.initRoutingState();
+					if(allToOne) {
+						result = net.allToOneRouting(dest);
+
+					}
+					else { 
+						result = net.trafficMatrixRouting(trafficMatrix, trafficPattern);
+					}
+				} catch (DisconnectException | LazyDisconnectException ex) {
+					
+					result = net.createResultObj(); result.experimentType = trafficPattern;
+					result.trialId = trialId;
+					LoadStatistics.writeFailedRun(result);
+					net.healAllEdges();
+					if(journal != null) {journal.record(trialId, "FAILED");}
+					
+					System.err.println("ERROR:" + ex.getMessage());
+					System.err.println("ERROR: DROPPING THIS RUN!");
+					continue;
+				}
+				result.trialId = trialId;
+				LoadStatistics.writeStatistics(result);
+				if(journal != null) {journal.record(trialId, "OK");}
+				hopHistogram.merge(result.hopHistogram);
+				lastResult = result;
+				routedRuns++;
+				net.healAllEdges();
+								
+				
+				
+				long end = System.currentTimeMillis();
+				System.out.println(">> Done after " + (end - start) + " ms\n");
+			}
+			if(lastResult != null) {
+				LoadStatistics.writeHopStatistics(lastResult, hopHistogram, routedRuns);
+			}
+			if(infeasible != CLOSNetwork.Infeasible.BUILD && draws > 0) {
+				Result summary = net.createResultObj(); summary.experimentType = trafficPattern;
+				LoadStatistics.writeFeasibility(summary, infeasible, draws, rejectedDraws);
+				System.out.println(">> p=" + p + " rejected " + rejectedDraws + " of " + draws + " failure draws");
+			}
+			
+			System.gc();
+			
+			if(multiply) {
+				p =  (p * stepfactor);
+			}
+			else {
+				p =  (p + stepfactor);
+			}
+		}
+	}
+	
+	/**
+	 * Same as increasingPExperiment, but instead of a fixed number of runs, runs are performed for each p
+	 * until the 95% confidence intervals of all LoadStatistics.KEY_METRICS (MaxNode, p99Edge, PinCycle)
+	 * are narrower than relWidth times their mean, or until maxRuns runs have been performed.
+	 * 
+	 * Every run is written to log.csv as usual. Additionally, the estimate, its confidence interval and the
+	 * number of runs used are written to adaptive.csv for each p.
+	 * 
+	 * If all runs of a p are dropped, a FAILED row is written to adaptive.csv instead.
+	 * 
+	 * @param minRuns	Number of successful runs performed before the stopping rule is checked (at least 2)
+	 * @param maxRuns	Maximum number of runs (including dropped ones) for a single p (at least minRuns)
+	 * @param relWidth	Target half width of the confidence intervals relative to the mean (e.g. 0.05)
+	 */
+	public static void adaptivePExperiment(double startP, double endP, int k, boolean multiply, double stepfactor, CLOSNetwork.Type type, int numIntervals, String trafficPattern,CLOSNetwork.FailType fType, int minRuns, int maxRuns, double relWidth) {
+		
+		minRuns = Math.max(minRuns, 2);
+		if(maxRuns < minRuns) {
+			System.err.println("maxRuns (" + maxRuns + ") must be at least minRuns (" + minRuns + ")!");
+			System.exit(-1);
+		}
+		
+		boolean allToOne = "alltoone".equals(trafficPattern.trim().toLowerCase());
+		double[][] trafficMatrix = null;
+		
+		if(!allToOne) {
+			System.out.println("** Reading Traffic Matrix: " + trafficPattern);
+			trafficMatrix = Utility.parseMatrix(trafficPattern, k* (k / 2));
+			System.out.println("** Done reading TM");
+		}
+		
+		double p = startP;
+		while(p<= endP){
+			CLOSNetwork net = new CLOSNetwork(type,k, numIntervals);
+			net.initEdges();
+			
+			RunningStatistic[] stats = new RunningStatistic[LoadStatistics.KEY_METRICS.length];
+			for(int i = 0; i < stats.length; i++) {
+				stats[i] = new RunningStatistic();
+			}
+			int failedRuns = 0;
+			boolean converged = false;
+			Result lastResult = null;
+			
+			for(int r = 0; r < maxRuns && !converged; r++) {
+				long start = System.currentTimeMillis();
+				System.out.println(">> p=" + p + " Run " + (r+1) + " (adaptive, at most " + maxRuns + ")");
+				
 				Node dest = net.randomBottomLayerNode();
 				net.failEdges(fType, p, dest);
 				try {
 					net.initRoutingState();
 				} catch (DisconnectException ex) {
+					lastResult = net.createResultObj(); lastResult.experimentType = trafficPattern;
+					LoadStatistics.writeFailedRun(lastResult);
+					net.healAllEdges();
+					failedRuns++;
 					
+					System.err.println("ERROR:" + ex.getMessage());
+					System.err.println("ERROR: DROPPING THIS RUN!");
+					continue;
+				}
+				if(allToOne) {
+					lastResult = net.allToOneRouting(dest);
+				}
+				else { 
+					lastResult = net.trafficMatrixRouting(trafficMatrix, trafficPattern);
+				}
+				LoadStatistics.writeStatistics(lastResult);
+				net.healAllEdges();
+				
+				double[] metrics = LoadStatistics.keyMetrics(lastResult);
+				converged = true;
+				for(int i = 0; i < stats.length; i++) {
+					stats[i].add(metrics[i]);
+					converged &= stats[i].count() >= minRuns && stats[i].isNarrow(relWidth);
+				}
+				
+				long end = System.currentTimeMillis();
+				System.out.println(">> Done after " + (end - start) + " ms\n");
+			}
+			
+			lastResult.experimentType = trafficPattern;
+			LoadStatistics.writeAdaptiveSummary(lastResult, stats, failedRuns, converged);
+			System.out.println(">> p=" + p + " finished after " + (stats[0].count() + failedRuns) + " runs (converged: " + converged + ")");
+			
+			System.gc();
+			
+			if(multiply) {
+				p =  (p * stepfactor);
+			}
+			else {
+				p =  (p + stepfactor);
+			}
+		}
+	}
+	
+	/**
+	 * Same as increasingPExperiment for a traffic matrix, but only a sample of the flows is routed in each run
+	 * (see Routing.FlowSampler). The estimates and their errors are written to sampled.csv.
+	 * 
+	 * @param mode	FlowSampler.Mode.ALIAS draws flows proportional to their weight, FlowSampler.Mode.HEAVY keeps the heaviest flows
+	 * @param modeParam	Number of draws (ALIAS) or share of the total mass to keep (HEAVY)
+	 * @param batches	Number of independent batches used for the confidence intervals (ALIAS only)
+	 */
+	public static void sampledPExperiment(double startP, double endP, int k, boolean multiply, double stepfactor, CLOSNetwork.Type type, int numIntervals, String trafficPattern,CLOSNetwork.FailType fType, int runs, FlowSampler.Mode mode, double modeParam, int batches) {
+		
+		System.out.println("** Reading Traffic Matrix: " + trafficPattern);
+		double[][] trafficMatrix = Utility.parseMatrix(trafficPattern, k* (k / 2));
+		System.out.println("** Done reading TM");
+		FlowSampler sampler = new FlowSampler(trafficMatrix);
+		
+		double p = startP;
+		while(p<= endP){
+			CLOSNetwork net = new CLOSNetwork(type,k, numIntervals);
+			net.initEdges();
+			
+			for(int r = 0; r < runs; r++) {
+				long start = System.currentTimeMillis();
+				System.out.println(">> p=" + p + " Run " + (r+1) + " (sampled " + mode + ")");
+				
+				Node dest = net.randomBottomLayerNode();
+				net.failEdges(fType, p, dest);
+				try {
+					net.initRoutingState();
+				} catch (DisconnectException ex) {
 					Result result = net.createResultObj(); result.experimentType = trafficPattern;
 					LoadStatistics.writeFailedRun(result);
+					net.healAllEdges();
+					
+					System.err.println("ERROR:" + ex.getMessage());
+					System.err.println("ERROR: DROPPING THIS RUN!");
+					continue;
+				}
+				SampledResult result = null;
+				if(mode == FlowSampler.Mode.ALIAS) {
+					result = sampler.routeAlias((pairs, weights, count) -> net.flowListRouting(pairs, weights, count, trafficPattern), (int) modeParam, batches);
+				}
+				else {
+					result = sampler.routeHeavy((pairs, weights, count) -> net.flowListRouting(pairs, weights, count, trafficPattern), modeParam);
+				}
+				LoadStatistics.writeSampledStatistics(result);
+				net.healAllEdges();
+				
+				long end = System.currentTimeMillis();
+				System.out.println(">> Done after " + (end - start) + " ms\n");
+			}
+			
+			System.gc();
+			
+			if(multiply) {
+				p =  (p * stepfactor);
+			}
+			else {
+				p =  (p + stepfactor);
+			}
+		}
+	}
+	
+	/**
+	 * Common random numbers comparison of several forwarding strategies. In each run a single failure scenario
+	 * is drawn and all given strategies are evaluated on it, sharing the (implicit) topology, the hashIDs of the routers
+	 * and the failures. Only the forwarding state of the strategies is rebuilt in between.
+	 * 
+	 * Every evaluation is written to log.csv as usual and to paired.csv together with the id of the scenario.
+	 * WCINTERVAL failures are placed w.r.t. the number of intervals of the first strategy.
+	 * 
+	 * @param strategies	Strategies to compare
+	 */
+	public static void compareStrategiesExperiment(double startP, double endP, int k, boolean multiply, double stepfactor, Strategy[] strategies, String trafficPattern,CLOSNetwork.FailType fType, int runs) {
+		
+		boolean allToOne = "alltoone".equals(trafficPattern.trim().toLowerCase());
+		double[][] trafficMatrix = null;
+		
+		if(!allToOne) {
+			System.out.println("** Reading Traffic Matrix: " + trafficPattern);
+			trafficMatrix = Utility.parseMatrix(trafficPattern, k* (k / 2));
+			System.out.println("** Done reading TM");
+		}
+		
+		ImplicitCLOSNetwork net = new ImplicitCLOSNetwork(strategies[0].type, k, strategies[0].numIntervals, strategies[0].numPerm);
+		net.initEdges();
+		
+		int scenario = 0;
+		double p = startP;
+		while(p<= endP){
+			for(int r = 0; r < runs; r++) {
+				
+				long start = System.currentTimeMillis();
+				System.out.println(">> p=" + p + " Run " + (r+1) + " (scenario " + scenario + ")");
+				
+				net.setStrategy(strategies[0]);
+				int dest = net.randomBottomLayerNode();
+				net.failEdges(fType, p, dest);
+				
+				for(Strategy s : strategies) {
+					net.setStrategy(s);
+					Result result = null;
+					try {
+						net.initRoutingState();
+					} catch (DisconnectException ex) {
+						result = net.createResultObj(); result.experimentType = trafficPattern;
+						LoadStatistics.writeFailedRun(result);
+						LoadStatistics.writePairedStatistics(scenario, s, result);
+						System.err.println("ERROR:" + ex.getMessage() + " (" + s + ")");
+						continue;
+					}
+					if(allToOne) {
+						result = net.allToOneRouting(dest);
+					}
+					else { 
+						result = net.trafficMatrixRouting(trafficMatrix, trafficPattern);
+					}
+					LoadStatistics.writeStatistics(result);
+					LoadStatistics.writePairedStatistics(scenario, s, result);
+				}
+				net.healAllEdges();
+				scenario++;
+				
+				long end = System.currentTimeMillis();
+				System.out.println(">> Done after " + (end - start) + " ms\n");
+			}
+			
+			if(multiply) {
+				p =  (p * stepfactor);
+			}
+			else {
+				p =  (p + stepfactor);
+			}
+		}
+	}
+	
+	/**
+	 * Same as implicitPExperiment, but the runs for each p are evaluated concurrently by the given number of threads.
+	 * All threads share a single immutable CLOSTopology, each run only allocates its own FailureOverlay and routing buffers.
+	 * 
+	 * @param strategy	Forwarding strategy and its parameters
+	 * @param threads	Number of worker threads
+	 */
+	public static void parallelPExperiment(double startP, double endP, int k, boolean multiply, double stepfactor, Strategy strategy, String trafficPattern,CLOSNetwork.FailType fType, int runs, int threads) {
+		
+		boolean allToOne = "alltoone".equals(trafficPattern.trim().toLowerCase());
+		double[][] trafficMatrix = null;
+		
+		if(!allToOne) {
+			System.out.println("** Reading Traffic Matrix: " + trafficPattern);
+			trafficMatrix = Utility.parseMatrix(trafficPattern, k* (k / 2));
+			System.out.println("** Done reading TM");
+		}
+		final double[][] matrix = trafficMatrix;
+		
+		CLOSTopology topo = new CLOSTopology(k);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		
+		double p = startP;
+		while(p<= endP){
+			long start = System.currentTimeMillis();
+			final double failP = p;
+			ArrayList<Future<Result>> tasks = new ArrayList<Future<Result>>();
+			for(int r = 0; r < runs; r++) {
+				tasks.add(pool.submit(() -> {
+					ImplicitCLOSNetwork net = new ImplicitCLOSNetwork(topo, strategy);
+					int dest = net.randomBottomLayerNode();
+					net.failEdges(fType, failP, dest);
+					try {
+						net.initRoutingState();
+					} catch (DisconnectException ex) {
+						Result result = net.createResultObj(); result.experimentType = trafficPattern;
+						LoadStatistics.writeFailedRun(result);
+						System.err.println("ERROR:" + ex.getMessage());
+						System.err.println("ERROR: DROPPING THIS RUN!");
+						return null;
+					}
+					Result result = null;
+					if(allToOne) {
+						result = net.allToOneRouting(dest);
+					}
+					else { 
+						result = net.trafficMatrixRouting(matrix, trafficPattern);
+					}
+					LoadStatistics.writeStatistics(result);
+					return result;
+				}));
+			}
+			//Histograms of the workers are merged in the order of submission
+			HopHistogram hopHistogram = new HopHistogram();
+			Result lastResult = null;
+			int routedRuns = 0;
+			for(Future<Result> task : tasks) {
+				try {
+					Result result = task.get();
+					if(result != null) {
+						hopHistogram.merge(result.hopHistogram);
+						lastResult = result;
+						routedRuns++;
+					}
+				} catch (InterruptedException | ExecutionException ex) {
+					System.err.println("ERROR: Run failed!");
+					ex.printStackTrace();
+				}
+			}
+			if(lastResult != null) {
+				LoadStatistics.writeHopStatistics(lastResult, hopHistogram, routedRuns);
+			}
+			
+			long end = System.currentTimeMillis();
+			System.out.println(">> p=" + p + ": " + runs + " runs done after " + (end - start) + " ms\n");
+			
+			if(multiply) {
+				p =  (p * stepfactor);
+			}
+			else {
+				p =  (p + stepfactor);
+			}
+		}
+		pool.shutdown();
+	}
+	
+	/**
+	 * Same as increasingPExperiment but uses the ImplicitCLOSNetwork, which does not create any
+	 * router objects. Intended for large k (e.g. k=256) where the object based topology does not fit into memory.
+	 */
+	public static void implicitPExperiment(double startP, double endP, int k, boolean multiply, double stepfactor, CLOSNetwork.Type type, int numIntervals, String trafficPattern,CLOSNetwork.FailType fType, int runs) {
+		implicitPExperiment(startP, endP, k, multiply, stepfactor, type, numIntervals, trafficPattern, fType, runs, 0.0);
+	}
+	
+	/**
+	 * Same as above, but additionally approximates the smallest possible max link load of the traffic under the failures
+	 * of each run (see Routing.MinCongestion). The bounds and the ratio of the strategy's max link load to the approximate
+	 * optimum are written into the columns OptEdge, OptEdgeLB and EdgeRatio of log.csv.
+	 * 
+	 * @param optEpsilon	Target relative gap of the approximation, or 0 to skip it
+	 */
+	public static void implicitPExperiment(double startP, double endP, int k, boolean multiply, double stepfactor, CLOSNetwork.Type type, int numIntervals, String trafficPattern,CLOSNetwork.FailType fType, int runs, double optEpsilon) {
+		
+		boolean allToOne = "alltoone".equals(trafficPattern.trim().toLowerCase());
+		double[][] trafficMatrix = null;
+		
+		if(!allToOne) {
+			System.out.println("** Reading Traffic Matrix: " + trafficPattern);
+			trafficMatrix = Utility.parseMatrix(trafficPattern, k* (k / 2));
+			System.out.println("** Done reading TM");
+		}
+		
+		ImplicitCLOSNetwork net = new ImplicitCLOSNetwork(type, k, numIntervals);
+		net.initEdges();
+		
+		double p = startP;
+		while(p<= endP){
+			for(int r = 0; r < runs; r++) {
+				
+				long start = System.currentTimeMillis();
+				System.out.println(">> p=" + p + " Run " + (r+1));
+				
+				int dest = net.randomBottomLayerNode();
+				net.failEdges(fType, p, dest);
+				try {
+					net.initRoutingState();
+				} catch (DisconnectException ex) {
+					Result result = net.createResultObj(); result.experimentType = trafficPattern;
+					LoadStatistics.writeFailedRun(result);
+					net.healAllEdges();
 					
 					System.err.println("ERROR:" + ex.getMessage());
 					System.err.println("ERROR: DROPPING THIS RUN!");
 					continue;
 				}
 				Result result = null;
-				if(trafficPattern.trim().toLowerCase() == "alltoone") {
+				if(allToOne) {
 					result = net.allToOneRouting(dest);
-
 				}
 				else { 
 					result = net.trafficMatrixRouting(trafficMatrix, trafficPattern);
 				}
+				if(optEpsilon > 0) {
+					MinCongestion opt = allToOne ? new MinCongestion(net.topology(), net.overlay(), dest)
+							: new MinCongestion(net.topology(), net.overlay(), trafficMatrix);
+					opt.solve(optEpsilon, MAX_OPT_ROUNDS, Runtime.getRuntime().availableProcessors());
+					opt.apply(result);
+					System.out.println(">> Optimum max link load in [" + opt.lowerBound() + ", " + opt.maxLoad() + "] after " + opt.rounds() + " rounds");
+				}
 				LoadStatistics.writeStatistics(result);
 				net.healAllEdges();
-								
 				
+				long end = System.currentTimeMillis();
+				System.out.println(">> Done after " + (end - start) + " ms\n");
+			}
+			
+			if(multiply) {
+				p =  (p * stepfactor);
+			}
+			else {
+				p =  (p + stepfactor);
+			}
+		}
+	}
+	
+	/**
+	 * Same as implicitPExperiment but with traffic between servers instead of BOT routers (see Routing.ServerTraffic).
+	 * For "gravity" the masses of the servers are drawn once for the whole experiment, for "incast" a new receiver
+	 * (attached to the random destination of the run) and new senders are drawn for every run.
+	 * 
+	 * @param serverPattern	"gravity" or "incast"
+	 * @param senders	Number of senders of an incast
+	 */
+	public static void serverTrafficExperiment(double startP, double endP, int k, boolean multiply, double stepfactor, Strategy strategy, String serverPattern, int senders, CLOSNetwork.FailType fType, int runs) {
+		
+		CLOSTopology topo = new CLOSTopology(k);
+		ImplicitCLOSNetwork net = new ImplicitCLOSNetwork(topo, strategy);
+		ServerTraffic gravity = null;
+		if(serverPattern.equals("gravity")) {
+			gravity = ServerTraffic.randomGravity(topo, ThreadLocalRandom.current());
+		}
+		else if(!serverPattern.equals("incast")) {
+			System.err.println("Unknown server traffic pattern: " + serverPattern);
+			System.exit(-1);
+		}
+		
+		double p = startP;
+		while(p<= endP){
+			for(int r = 0; r < runs; r++) {
+				
+				long start = System.currentTimeMillis();
+				System.out.println(">> p=" + p + " Run " + (r+1));
+				
+				int dest = net.randomBottomLayerNode();
+				net.failEdges(fType, p, dest);
+				try {
+					net.initRoutingState();
+				} catch (DisconnectException ex) {
+					Result result = net.createResultObj(); result.experimentType = serverPattern;
+					LoadStatistics.writeFailedRun(result);
+					net.healAllEdges();
+					
+					System.err.println("ERROR:" + ex.getMessage());
+					System.err.println("ERROR: DROPPING THIS RUN!");
+					continue;
+				}
+				ServerTraffic traffic = gravity;
+				if(traffic == null) {
+					int receiver = dest * topo.h + ThreadLocalRandom.current().nextInt(topo.h);
+					traffic = ServerTraffic.incast(topo, receiver, senders, 1.0, ThreadLocalRandom.current());
+				}
+				Result result = net.serverTrafficRouting(traffic);
+				LoadStatistics.writeStatistics(result);
+				net.healAllEdges();
 				
 				long end = System.currentTimeMillis();
 				System.out.println(">> Done after " + (end - start) + " ms\n");
 			}
 			
-			System.gc();
+			if(multiply) {
+				p =  (p * stepfactor);
+			}
+			else {
+				p =  (p + stepfactor);
+			}
+		}
+	}
+	
+	/**
+	 * Same as implicitPExperiment but routes up to 64 failure scenarios in a single pass (see Topology.BitSlicedRouting).
+	 * The scenarios of a pass share the destination, every scenario is written to log.csv as a run of its own.
+	 * The hashIDs are drawn once per p as in increasingPExperiment.
+	 */
+	public static void bitSlicedPExperiment(double startP, double endP, int k, boolean multiply, double stepfactor, Strategy strategy, String trafficPattern,CLOSNetwork.FailType fType, int runs) {
+		
+		boolean allToOne = "alltoone".equals(trafficPattern.trim().toLowerCase());
+		double[][] trafficMatrix = null;
+		
+		if(!allToOne) {
+			System.out.println("** Reading Traffic Matrix: " + trafficPattern);
+			trafficMatrix = Utility.parseMatrix(trafficPattern, k* (k / 2));
+			System.out.println("** Done reading TM");
+		}
+		
+		double p = startP;
+		while(p<= endP){
+			ImplicitCLOSNetwork net = new ImplicitCLOSNetwork(new CLOSTopology(k), strategy);
+			BitSlicedRouting bits = new BitSlicedRouting(net);
+			HopHistogram hopHistogram = new HopHistogram();
+			Result lastResult = null;
+			int routedRuns = 0;
+			
+			for(int first = 0; first < runs; first += BitSlicedRouting.LANES) {
+				
+				long start = System.currentTimeMillis();
+				int lanes = Math.min(BitSlicedRouting.LANES, runs - first);
+				System.out.println(">> p=" + p + " Runs " + (first+1) + "-" + (first+lanes));
+				
+				int dest = net.randomBottomLayerNode();
+				bits.placeScenarios(fType, p, dest, lanes);
+				if(allToOne) {
+					bits.allToOneRouting(dest);
+				}
+				else { 
+					bits.trafficMatrixRouting(trafficMatrix, trafficPattern);
+				}
+				for(int lane = 0; lane < lanes; lane++) {
+					Result result = bits.result(lane);
+					if(!bits.isValid(lane)) {
+						result.experimentType = trafficPattern;
+						LoadStatistics.writeFailedRun(result);
+						System.err.println("ERROR: DROPPING RUN " + (first+lane+1) + "!");
+						continue;
+					}
+					LoadStatistics.writeStatistics(result);
+					hopHistogram.merge(result.hopHistogram);
+					lastResult = result;
+					routedRuns++;
+				}
+				
+				long end = System.currentTimeMillis();
+				System.out.println(">> Done after " + (end - start) + " ms\n");
+			}
+			if(lastResult != null) {
+				LoadStatistics.writeHopStatistics(lastResult, hopHistogram, routedRuns);
+			}
 			
 			if(multiply) {
 				p =  (p * stepfactor);
@@ -79,4 +726,356 @@ public class Main {
 		}
 	}
 	
+	/**
+	 * Same as implicitPExperiment with RANDOM failures, but the failures of all p are coupled (see Routing.CoupledSweep):
+	 * each run draws one threshold per link and walks through all p in increasing order, only re-routing the flows
+	 * affected by the additional failures of each step. The hashIDs and the destination are drawn once per run.
+	 * Once a run can no longer be routed, it is written as failed run for the remaining p.
+	 * The experimentType of the results is the traffic pattern with the suffix "(coupled)".
+	 * 
+	 * @param seed	Seed of the run with index 0, run r uses seed + r
+	 */
+	public static void coupledPExperiment(double startP, double endP, int k, boolean multiply, double stepfactor, Strategy strategy, String trafficPattern, int runs, long seed) {
+		
+		boolean allToOne = "alltoone".equals(trafficPattern.trim().toLowerCase());
+		double[][] trafficMatrix = null;
+		
+		if(!allToOne) {
+			System.out.println("** Reading Traffic Matrix: " + trafficPattern);
+			trafficMatrix = Utility.parseMatrix(trafficPattern, k* (k / 2));
+			System.out.println("** Done reading TM");
+		}
+		String expName = trafficPattern + "(coupled)";
+		
+		ArrayList<Double> ps = new ArrayList<Double>();
+		for(double p = startP; p <= endP; p = multiply ? p * stepfactor : p + stepfactor) {
+			ps.add(p);
+		}
+		HopHistogram[] hopHistograms = new HopHistogram[ps.size()];
+		Result[] lastResults = new Result[ps.size()];
+		int[] routedRuns = new int[ps.size()];
+		for(int i = 0; i < ps.size(); i++) {
+			hopHistograms[i] = new HopHistogram();
+		}
+		
+		for(int r = 0; r < runs; r++) {
+			long start = System.currentTimeMillis();
+			System.out.println(">> Run " + (r+1));
+			
+			Random rng = new Random(seed + r);
+			ImplicitCLOSNetwork net = new ImplicitCLOSNetwork(new CLOSTopology(k, rng), strategy);
+			net.setSeed(rng.nextLong());
+			int dest = net.randomBottomLayerNode();
+			CoupledSweep sweep = new CoupledSweep(net, rng);
+			
+			for(int i = 0; i < ps.size(); i++) {
+				double p = ps.get(i);
+				int added = sweep.advance(p);
+				if(i == 0 && sweep.isFeasible()) {
+					if(allToOne) {
+						sweep.routeAllToOne(dest);
+					}
+					else {
+						sweep.route(trafficMatrix, trafficPattern);
+					}
+				}
+				if(!sweep.isFeasible()) {
+					Result result = net.createResultObj(); result.experimentType = expName;
+					result.failType = CLOSNetwork.FailType.RANDOM; result.failP = p;
+					LoadStatistics.writeFailedRun(result);
+					System.err.println("ERROR: DROPPING RUN " + (r+1) + " FOR p=" + p + "!");
+					continue;
+				}
+				Result result = sweep.result();
+				result.experimentType = expName;
+				LoadStatistics.writeStatistics(result);
+				hopHistograms[i].merge(result.hopHistogram);
+				lastResults[i] = result;
+				routedRuns[i]++;
+				System.out.println(">> p=" + p + ": " + added + " new failures, " + sweep.rerouted() + " flows re-routed");
+			}
+			
+			long end = System.currentTimeMillis();
+			System.out.println(">> Done after " + (end - start) + " ms\n");
+		}
+		for(int i = 0; i < ps.size(); i++) {
+			if(lastResults[i] != null) {
+				LoadStatistics.writeHopStatistics(lastResults[i], hopHistograms[i], routedRuns[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Same as implicitPExperiment but computes the expected loads over all hashIDs (see Routing.FluidRouting) instead
+	 * of routing with one draw of the hashIDs, so a single run per failure set answers questions about mean loads.
+	 * The experimentType of the results is the traffic pattern with the suffix "(fluid)".
+	 * 
+	 * @param symmetry	Route on the orbits of the symmetries left intact by the failures (see FluidRouting.setSymmetryReduction())
+	 */
+	public static void fluidPExperiment(double startP, double endP, int k, boolean multiply, double stepfactor, Strategy strategy, String trafficPattern,CLOSNetwork.FailType fType, int runs, boolean symmetry) {
+		
+		boolean allToOne = "alltoone".equals(trafficPattern.trim().toLowerCase());
+		double[][] trafficMatrix = null;
+		
+		if(!allToOne) {
+			System.out.println("** Reading Traffic Matrix: " + trafficPattern);
+			trafficMatrix = Utility.parseMatrix(trafficPattern, k* (k / 2));
+			System.out.println("** Done reading TM");
+		}
+		
+		ImplicitCLOSNetwork net = new ImplicitCLOSNetwork(new CLOSTopology(k), strategy);
+		FluidRouting fluid = new FluidRouting(net);
+		fluid.setSymmetryReduction(symmetry);
+		String expName = trafficPattern + "(fluid)";
+		
+		double p = startP;
+		while(p<= endP){
+			for(int r = 0; r < runs; r++) {
+				
+				long start = System.currentTimeMillis();
+				System.out.println(">> p=" + p + " Run " + (r+1));
+				
+				int dest = net.randomBottomLayerNode();
+				net.failEdges(fType, p, dest);
+				try {
+					net.initRoutingState();
+				} catch (DisconnectException ex) {
+					Result result = net.createResultObj(); result.experimentType = expName;
+					LoadStatistics.writeFailedRun(result);
+					net.healAllEdges();
+					
+					System.err.println("ERROR:" + ex.getMessage());
+					System.err.println("ERROR: DROPPING THIS RUN!");
+					continue;
+				}
+				Result result = null;
+				if(allToOne) {
+					result = fluid.allToOneRouting(dest);
+				}
+				else { 
+					result = fluid.trafficMatrixRouting(trafficMatrix, expName);
+				}
+				result.experimentType = expName;
+				System.out.println(">> Expected weight in loops: " + result.loopMass);
+				LoadStatistics.writeStatistics(result);
+				net.healAllEdges();
+				
+				long end = System.currentTimeMillis();
+				System.out.println(">> Done after " + (end - start) + " ms\n");
+			}
+			
+			if(multiply) {
+				p =  (p * stepfactor);
+			}
+			else {
+				p =  (p + stepfactor);
+			}
+		}
+	}
+	
+	/**
+	 * Searches for budget many link failures that maximize the given objective for a strategy (see Routing.FailureSearch)
+	 * and writes the best failure set together with its load statistics into adversarial.csv.
+	 * 
+	 * @param strategy	Forwarding strategy under attack
+	 * @param budget	Number of failed links
+	 * @param objective	Maximum router load, maximum link load or number of packets in a loop
+	 * @param moves	Number of moves per annealing chain
+	 * @param chains	Number of independent annealing chains
+	 * @param threads	Number of worker threads
+	 */
+	public static void adversarialSearchExperiment(int k, Strategy strategy, String trafficPattern, int budget, FailureSearch.Objective objective, int moves, int chains, int threads) {
+		
+		boolean allToOne = "alltoone".equals(trafficPattern.trim().toLowerCase());
+		double[][] trafficMatrix = null;
+		
+		if(!allToOne) {
+			System.out.println("** Reading Traffic Matrix: " + trafficPattern);
+			trafficMatrix = Utility.parseMatrix(trafficPattern, k* (k / 2));
+			System.out.println("** Done reading TM");
+		}
+		
+		long start = System.currentTimeMillis();
+		CLOSTopology topo = new CLOSTopology(k);
+		int dest = ThreadLocalRandom.current().nextInt(topo.numBot);
+		System.out.println(">> Searching " + budget + " failures against " + strategy + " (" + objective + ", " + chains + " chains of " + moves + " moves)");
+		FailureSearch search = new FailureSearch(topo, strategy, trafficMatrix, dest, budget, objective);
+		search.run(moves, chains, threads, ThreadLocalRandom.current().nextLong());
+		
+		//Evaluate the best failure set from scratch
+		ImplicitCLOSNetwork net = new ImplicitCLOSNetwork(topo, strategy);
+		for(int link : search.bestLinks()) {
+			net.failLink(link);
+		}
+		try {
+			net.initRoutingState();
+		} catch (DisconnectException ex) {
+			System.err.println("ERROR:" + ex.getMessage());
+			return;
+		}
+		Result result = null;
+		if(allToOne) {
+			result = net.allToOneRouting(dest);
+		}
+		else { 
+			result = net.trafficMatrixRouting(trafficMatrix, trafficPattern);
+		}
+		result.numFailedEdges = search.bestLinks().length;
+		LoadStatistics.writeAdversarialStatistics(result, search.strategy(), search.objective().toString(), search.budget(),
+				search.evaluatedMoves(), search.bestValue(), search.bestLinks());
+		
+		long end = System.currentTimeMillis();
+		System.out.println(">> Best value " + search.bestValue() + " after " + search.evaluatedMoves() + " evaluated moves and " + (end - start) + " ms\n");
+	}
+	
+	/**
+	 * Places failures according to fType and p and determines for every remaining link how critical its
+	 * additional failure would be (see Routing.LinkCriticality). The ranked table is written into criticality.csv.
+	 * 
+	 * @param strategy	Forwarding strategy
+	 * @param threads	Number of worker threads
+	 * @param top	Number of links written (the most critical ones), all links if top <= 0
+	 */
+	public static void criticalityExperiment(double p, int k, Strategy strategy, String trafficPattern, CLOSNetwork.FailType fType, int threads, int top) {
+		
+		boolean allToOne = "alltoone".equals(trafficPattern.trim().toLowerCase());
+		double[][] trafficMatrix = null;
+		
+		if(!allToOne) {
+			System.out.println("** Reading Traffic Matrix: " + trafficPattern);
+			trafficMatrix = Utility.parseMatrix(trafficPattern, k* (k / 2));
+			System.out.println("** Done reading TM");
+		}
+		
+		long start = System.currentTimeMillis();
+		ImplicitCLOSNetwork net = new ImplicitCLOSNetwork(new CLOSTopology(k), strategy);
+		int dest = net.randomBottomLayerNode();
+		net.failEdges(fType, p, dest);
+		try {
+			net.initRoutingState();
+		} catch (DisconnectException ex) {
+			System.err.println("ERROR:" + ex.getMessage());
+			System.err.println("ERROR: SCENARIO CANNOT BE ANALYZED!");
+			return;
+		}
+		LinkCriticality criticality = new LinkCriticality(net, trafficMatrix, dest);
+		criticality.run(threads);
+		
+		Result result = net.createResultObj();
+		result.experimentType = trafficPattern;
+		LoadStatistics.writeCriticalityTable(result, criticality.strategy(), criticality.table(top));
+		
+		long end = System.currentTimeMillis();
+		System.out.println(">> Criticality of " + (criticality.topology().numLinks - result.numFailedEdges) + " links computed after " + (end - start) + " ms\n");
+	}
+	
+	/**
+	 * Simulates time-varying link failures (and flows) on a network without initial failures for the given
+	 * amount of time (see Routing.DynamicSimulation). One row per run is written into dynamic.csv.
+	 * 
+	 * @param arrivalRate	Flow arrivals per time unit, or 0 to keep all flows of the traffic pattern active the whole time
+	 * @param meanDuration	Mean duration of an arriving flow
+	 * @param mtbf	Mean time between failures of a link
+	 * @param mttr	Mean time to repair a link
+	 * @param horizon	Simulated time per run
+	 */
+	public static void dynamicExperiment(int k, Strategy strategy, String trafficPattern, double arrivalRate, double meanDuration, double mtbf, double mttr, double horizon, int runs) {
+		
+		boolean allToOne = "alltoone".equals(trafficPattern.trim().toLowerCase());
+		double[][] trafficMatrix = null;
+		
+		if(!allToOne) {
+			System.out.println("** Reading Traffic Matrix: " + trafficPattern);
+			trafficMatrix = Utility.parseMatrix(trafficPattern, k* (k / 2));
+			System.out.println("** Done reading TM");
+		}
+		
+		CLOSTopology topo = new CLOSTopology(k);
+		for(int r = 0; r < runs; r++) {
+			long start = System.currentTimeMillis();
+			ImplicitCLOSNetwork net = new ImplicitCLOSNetwork(topo, strategy);
+			long seed = ThreadLocalRandom.current().nextLong();
+			DynamicSimulation sim;
+			if(trafficMatrix != null) {
+				sim = new DynamicSimulation(net, trafficMatrix, arrivalRate, meanDuration, mtbf, mttr, seed);
+			}
+			else {
+				sim = new DynamicSimulation(net, net.randomBottomLayerNode(), arrivalRate, meanDuration, mtbf, mttr, seed);
+			}
+			sim.run(horizon);
+			LoadStatistics.writeDynamicStatistics(strategy, k, trafficPattern, sim.statisticsRow());
+			
+			long end = System.currentTimeMillis();
+			System.out.println(">> Simulated " + horizon + " time units (" + sim.numEvents() + " events) in " + (end - start) + " ms\n");
+		}
+	}
+	
+	/**
+	 * Places failures according to fType and p and simulates the traffic packet by packet with link capacities
+	 * and finite output buffers (see Routing.QueueingSimulation). Statistics are collected after a warm-up period
+	 * and written into queueing.csv, one set of rows per run.
+	 * 
+	 * @param packetRate	Total number of packets injected per time unit
+	 * @param podCapacity	Capacity of the links between BOT and TOP in packets per time unit
+	 * @param upperCapacity	Capacity of the links between TOP and BLOCK in packets per time unit
+	 * @param buffer	Packets per output buffer
+	 * @param warmup	Simulated time before the statistics are collected
+	 * @param duration	Simulated time during which the statistics are collected
+	 */
+	public static void queueingExperiment(double p, int k, Strategy strategy, String trafficPattern, CLOSNetwork.FailType fType,
+			double packetRate, double podCapacity, double upperCapacity, int buffer, double warmup, double duration, int runs) {
+		
+		boolean allToOne = "alltoone".equals(trafficPattern.trim().toLowerCase());
+		double[][] trafficMatrix = null;
+		
+		if(!allToOne) {
+			System.out.println("** Reading Traffic Matrix: " + trafficPattern);
+			trafficMatrix = Utility.parseMatrix(trafficPattern, k* (k / 2));
+			System.out.println("** Done reading TM");
+		}
+		
+		CLOSTopology topo = new CLOSTopology(k);
+		for(int r = 0; r < runs; r++) {
+			long start = System.currentTimeMillis();
+			ImplicitCLOSNetwork net = new ImplicitCLOSNetwork(topo, strategy);
+			int dest = net.randomBottomLayerNode();
+			net.failEdges(fType, p, dest);
+			try {
+				net.initRoutingState();
+			} catch (DisconnectException ex) {
+				System.err.println("ERROR:" + ex.getMessage());
+				System.err.println("ERROR: RESULTS FOR THIS RUN WILL NOT BE COMPUTED!");
+				continue;
+			}
+			QueueingSimulation sim = new QueueingSimulation(net, trafficMatrix, dest, packetRate, podCapacity, upperCapacity, buffer, 0.0,
+					ThreadLocalRandom.current().nextLong());
+			sim.run(warmup);
+			sim.resetStatistics();
+			sim.run(duration);
+			
+			Result result = net.createResultObj();
+			result.experimentType = trafficPattern;
+			LoadStatistics.writeQueueingStatistics(result, strategy, sim.statisticsRows());
+			
+			long end = System.currentTimeMillis();
+			System.out.println(">> Simulated " + sim.numEvents() + " packet events in " + (end - start) + " ms\n");
+		}
+	}
+	
+	/**
+	 * Starts the local what-if query service (see Routing.SimulationService), which keeps running until the JVM is killed.
+	 * 
+	 * @param port	Port on the loopback interface
+	 * @param threads	Maximum number of queries processed at a time
+	 * @param scenarios	Number of failure scenarios kept in memory
+	 */
+	public static void simulationService(int port, int threads, int scenarios) {
+		try {
+			new SimulationService(port, threads, scenarios).start();
+		} catch (IOException ex) {
+			System.err.println("ERROR: Cannot start simulation service on port " + port + ": " + ex.getMessage());
+			System.exit(-1);
+		}
+	}
+	
 }
@@ -0,0 +1,170 @@
+package Routing;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import Statistics.HopHistogram;
+import Statistics.Result;
+import Topology.CLOSNetwork;
+import Topology.CLOSTopology;
+import Topology.Connectivity;
+import Topology.ImplicitCLOSNetwork;
+
+/**
+ * Sweep over the failure probability p where the failures of all p are coupled: every link draws a single
+ * threshold uniformly from [0,1) and is failed iff its threshold is at most p. For each single p this is the
+ * RANDOM failure model, but the failures of a larger p contain those of a smaller p.
+ *
+ * Thus increasing p only adds failures. The failures of each step are applied to an IncrementalRouting, which re-routes
+ * exactly the flows passing the endpoints of the new failures, so the whole curve costs about as much as routing
+ * the traffic once plus the re-routed flows. The curves are monotone-consistent and much smoother than
+ * with independent failures for each p. As a flow is re-routed as soon as one router on its path is incident to a
+ * new failure, the savings are largest for small p and sparse traffic (e.g. all-to-one).
+ *
+ * Once the strategy can no longer be employed at some router (see ImplicitCLOSNetwork.isConnected()), this holds
+ * for all larger p as well and no further failures are applied.
+ *
+ * Memory is proportional to the total length of all paths (see IncrementalRouting).
+ */
+public class CoupledSweep {
+
+	ImplicitCLOSNetwork net;
+	CLOSTopology topo;
+	IncrementalRouting routing;
+	String expName;
+
+	//Links sorted by their threshold. The sorted keys hold the threshold as multiple of 1/(2^31-1)
+	//in the upper and the link in the lower 32 bits
+	int[] links;
+	long[] order;
+	int numFailed;
+	double p;
+	boolean feasible = true;
+
+	//Flows re-routed by the last advance()
+	long rerouted;
+
+	/**
+	 * Draws the thresholds of all links. The network must not contain any failures.
+	 */
+	public CoupledSweep(ImplicitCLOSNetwork net, Random rng) {
+		this.net = net;
+		this.topo = net.topology();
+		order = new long[topo.numLinks];
+		for(int l = 0; l < topo.numLinks; l++) {
+			order[l] = ((long) rng.nextInt(Integer.MAX_VALUE) << 32) | l;
+		}
+		Arrays.sort(order);
+		links = new int[order.length];
+		for(int i = 0; i < order.length; i++) {
+			links[i] = (int) order[i];
+		}
+	}
+
+	/**
+	 * Routes the traffic matrix on the failures of the current p
+	 */
+	public void route(double[][] matrix, String expName) {
+		this.expName = expName;
+		routing = new IncrementalRouting(net, matrix);
+	}
+
+	/**
+	 * Routes one unit of traffic from every BOT router to dest on the failures of the current p
+	 */
+	public void routeAllToOne(int dest) {
+		this.expName = "A2O";
+		routing = new IncrementalRouting(net, dest);
+	}
+
+	static double threshold(long key) {
+		return (key >>> 32) / (double) Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Increases the failure probability to p (must not be smaller than the current one)
+	 * and re-routes the flows affected by the additional failures, each of them once.
+	 *
+	 * @return	Number of links failed by this call
+	 */
+	public int advance(double p) {
+		this.p = p;
+		rerouted = 0;
+		if(!feasible) {return 0;}
+		int from = numFailed;
+		while(numFailed < order.length && threshold(order[numFailed]) <= p) {
+			numFailed++;
+		}
+		if(routing != null) {
+			rerouted = routing.failLinks(links, from, numFailed);
+		}
+		else {
+			for(int i = from; i < numFailed; i++) {
+				net.failLink(links[i]);
+			}
+		}
+		for(int i = from; i < numFailed && feasible; i++) {
+			feasible = net.isConnected(topo.lowerEnd(links[i])) && net.isConnected(topo.upperEnd(links[i]));
+		}
+		return numFailed - from;
+	}
+
+	/**
+	 * Whether the strategy can be employed under the failures of the current p
+	 */
+	public boolean isFeasible() {
+		return feasible;
+	}
+
+	/**
+	 * Number of flows re-routed by the last call of advance()
+	 */
+	public long rerouted() {
+		return rerouted;
+	}
+
+	/**
+	 * Result of the current p, as returned by ImplicitCLOSNetwork.trafficMatrixRouting() for the same failures
+	 * (up to the order of floating point additions). Must only be called if the failures are feasible.
+	 */
+	public Result result() {
+		Result r = net.createResultObj();
+		r.failType = CLOSNetwork.FailType.RANDOM;
+		r.failP = p;
+		r.numFailedEdges = numFailed;
+		r.experimentType = expName;
+		r.sentFromServers = false;
+		r.totalPacks = routing.numFlows();
+		r.packsInCycle = routing.loopCount();
+		r.routerLoad = routing.routerLoad().clone();
+		r.linkLoad = routing.linkLoad().clone();
+
+		Connectivity connectivity = new Connectivity(topo, net.overlay());
+		HopHistogram histogram = new HopHistogram();
+		double avgHops = 0.0, totalWeight = 0.0, connectedWeight = 0.0;
+		int maxHops = 0, disconnectedLoops = 0;
+		for(int f = 0; f < routing.numFlows; f++) {
+			if(!routing.active[f]) {continue;}
+			int s = routing.source[f], d = routing.destination[f];
+			double w = routing.weight[f];
+			boolean connected = connectivity.connected(s, d);
+			totalWeight += w;
+			if(connected) {connectedWeight += w;}
+			if(routing.looping[f] || routing.dropped[f]) {
+				if(routing.looping[f] && !connected) {disconnectedLoops++;}
+				continue;
+			}
+			int hops = routing.paths[f].length;
+			if(hops > maxHops) {maxHops = hops;}
+			avgHops += hops;
+			histogram.add(hops, HopHistogram.shortestPathLength(topo.k, s, d), w);
+		}
+		r.avgHops = avgHops / (r.totalPacks - r.packsInCycle);
+		r.maxHops = maxHops;
+		r.hopHistogram = histogram;
+		r.connectedPairs = connectivity.connectedPairs();
+		r.connectedWeight = totalWeight > 0 ? connectedWeight / totalWeight : 1.0;
+		r.disconnectedLoops = disconnectedLoops;
+		return r;
+	}
+}
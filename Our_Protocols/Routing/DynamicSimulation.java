@@ -0,0 +1,299 @@
+package Routing;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import Topology.CLOSTopology;
+import Topology.ImplicitCLOSNetwork;
+import Util.EventQueue;
+
+/**
+ * Discrete-event simulation of time-varying link failures and flows on an ImplicitCLOSNetwork.
+ *
+ * Every link alternates between being live and failed, the times until it fails and until it is repaired are
+ * exponentially distributed with mean mtbf and mttr. Flows either arrive as a Poisson process (source and destination
+ * drawn proportional to the traffic matrix, exponentially distributed duration) or are scheduled explicitly
+ * with scheduleFlow(). If no arrivals are configured, all flows of the traffic matrix are active the whole time.
+ *
+ * Each event only re-routes the flows passing the endpoints of the changed link (see IncrementalRouting),
+ * the loads are integrated over time between events. Unlike the static experiments, failures are not rejected
+ * if the strategy can no longer be employed: packets reaching a router without live forwarding candidate are
+ * counted as dropped until a link of this router is repaired.
+ *
+ * All times are in the same (arbitrary) unit, e.g. hours.
+ */
+public class DynamicSimulation {
+
+	static final int LINK_FAIL = 0;
+	static final int LINK_REPAIR = 1;
+	static final int FLOW_ARRIVAL = 2;
+	static final int FLOW_START = 3;
+	static final int FLOW_END = 4;
+
+	ImplicitCLOSNetwork net;
+	CLOSTopology topo;
+	IncrementalRouting routing;
+	EventQueue events = new EventQueue();
+	Random rng;
+
+	double mtbf;
+	double mttr;
+
+	//Poisson arrivals (arrivalRate = 0 if disabled)
+	FlowSampler sampler;
+	int n;
+	int dest = -1;
+	double arrivalRate;
+	double meanDuration;
+
+	//Explicitly scheduled flows
+	int numScheduled;
+	int[] scheduledSource = new int[16];
+	int[] scheduledDestination = new int[16];
+	double[] scheduledWeight = new double[16];
+	double[] scheduledEnd = new double[16];
+
+	//Time integrals of the number of failed links, active flows, flows in a loop and dropped flows
+	double now;
+	int failedLinks;
+	double failedArea;
+	double flowArea;
+	double loopArea;
+	double droppedArea;
+	long numEvents;
+	long reroutedFlows;
+
+	/**
+	 * Simulation with Poisson arrivals of flows proportional to a traffic matrix
+	 *
+	 * @param net	Network without failures
+	 * @param matrix	Traffic matrix between the bottom layer routers
+	 * @param arrivalRate	Total number of flow arrivals per time unit, or 0 to keep all flows of the matrix active
+	 * @param meanDuration	Mean duration of an arriving flow
+	 * @param mtbf	Mean time between failures of a link
+	 * @param mttr	Mean time to repair a link
+	 * @param seed	Seed of all random choices
+	 */
+	public DynamicSimulation(ImplicitCLOSNetwork net, double[][] matrix, double arrivalRate, double meanDuration, double mtbf, double mttr, long seed) {
+		this.net = net;
+		this.topo = net.topology();
+		this.arrivalRate = arrivalRate;
+		this.meanDuration = meanDuration;
+		this.mtbf = mtbf;
+		this.mttr = mttr;
+		this.rng = new Random(seed);
+		this.n = matrix.length;
+		if(arrivalRate > 0.0) {
+			sampler = new FlowSampler(matrix);
+			routing = new IncrementalRouting(net);
+		}
+		else {
+			routing = new IncrementalRouting(net, matrix);
+		}
+		scheduleFailures();
+	}
+
+	/**
+	 * All-to-one simulation: flows arrive at uniformly random sources and are sent to dest
+	 *
+	 * @param arrivalRate	Total number of flow arrivals per time unit, or 0 to keep one flow from every source active
+	 */
+	public DynamicSimulation(ImplicitCLOSNetwork net, int dest, double arrivalRate, double meanDuration, double mtbf, double mttr, long seed) {
+		this.net = net;
+		this.topo = net.topology();
+		this.dest = dest;
+		this.arrivalRate = arrivalRate;
+		this.meanDuration = meanDuration;
+		this.mtbf = mtbf;
+		this.mttr = mttr;
+		this.rng = new Random(seed);
+		this.n = topo.numBot;
+		routing = arrivalRate > 0.0 ? new IncrementalRouting(net) : new IncrementalRouting(net, dest);
+		scheduleFailures();
+	}
+
+	void scheduleFailures() {
+		for(int l = 0; l < topo.numLinks; l++) {
+			if(net.isFailed(l)) {
+				failedLinks++;
+				events.add(exponential(mttr), EventQueue.payload(LINK_REPAIR, l));
+			}
+			else {
+				events.add(exponential(mtbf), EventQueue.payload(LINK_FAIL, l));
+			}
+		}
+		if(arrivalRate > 0.0) {
+			events.add(exponential(1.0 / arrivalRate), EventQueue.payload(FLOW_ARRIVAL, 0));
+		}
+	}
+
+	double exponential(double mean) {
+		return -mean * Math.log(1.0 - rng.nextDouble());
+	}
+
+	/**
+	 * Adds a flow that is active between start and end (start must not lie before the current time)
+	 */
+	public void scheduleFlow(double start, double end, int s, int d, double w) {
+		if(numScheduled == scheduledSource.length) {
+			int c = 2*numScheduled;
+			scheduledSource = Arrays.copyOf(scheduledSource, c);
+			scheduledDestination = Arrays.copyOf(scheduledDestination, c);
+			scheduledWeight = Arrays.copyOf(scheduledWeight, c);
+			scheduledEnd = Arrays.copyOf(scheduledEnd, c);
+		}
+		scheduledSource[numScheduled] = s;
+		scheduledDestination[numScheduled] = d;
+		scheduledWeight[numScheduled] = w;
+		scheduledEnd[numScheduled] = end;
+		events.add(start, EventQueue.payload(FLOW_START, numScheduled++));
+	}
+
+	/**
+	 * Processes all events up to the given time
+	 */
+	public void run(double horizon) {
+		if(!routing.timed) {routing.enableTimeTracking(now);}
+		while(!events.isEmpty() && events.peekTime() <= horizon) {
+			double t = events.peekTime();
+			long event = events.poll();
+			advance(t);
+			int id = EventQueue.id(event);
+			switch(EventQueue.type(event)) {
+			case LINK_FAIL:
+				routing.failLink(id);
+				reroutedFlows += routing.numChanged();
+				failedLinks++;
+				events.add(t + exponential(mttr), EventQueue.payload(LINK_REPAIR, id));
+				break;
+			case LINK_REPAIR:
+				routing.repairLink(id);
+				reroutedFlows += routing.numChanged();
+				failedLinks--;
+				events.add(t + exponential(mtbf), EventQueue.payload(LINK_FAIL, id));
+				break;
+			case FLOW_ARRIVAL:
+				int s, d;
+				if(sampler != null) {
+					int pair = sampler.drawPair(rng);
+					s = pair / n;
+					d = pair % n;
+				}
+				else {
+					d = dest;
+					s = rng.nextInt(n - 1);
+					if(s >= dest) {s++;}
+				}
+				int f = routing.startFlow(s, d, 1.0);
+				events.add(t + exponential(meanDuration), EventQueue.payload(FLOW_END, f));
+				events.add(t + exponential(1.0 / arrivalRate), EventQueue.payload(FLOW_ARRIVAL, 0));
+				break;
+			case FLOW_START:
+				f = routing.startFlow(scheduledSource[id], scheduledDestination[id], scheduledWeight[id]);
+				events.add(Math.max(scheduledEnd[id], t), EventQueue.payload(FLOW_END, f));
+				break;
+			default:
+				routing.endFlow(id);
+			}
+			numEvents++;
+		}
+		advance(horizon);
+	}
+
+	void advance(double t) {
+		double dt = t - now;
+		failedArea += failedLinks * dt;
+		flowArea += routing.numFlows() * dt;
+		loopArea += routing.loopCount() * dt;
+		droppedArea += routing.droppedCount() * dt;
+		now = t;
+		routing.advanceTime(t);
+	}
+
+	//+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+ Results +-+-+-+-+-+-+-+-+-+-+-
+
+	/**
+	 * Time-averaged load of every link since the start of the simulation
+	 */
+	public double[] timeAveragedLinkLoad() {
+		return routing.timeAveragedLinkLoad(now);
+	}
+
+	/**
+	 * Largest load of every link at any point in time since the start of the simulation
+	 */
+	public double[] peakLinkLoad() {
+		return routing.peakLinkLoad();
+	}
+
+	public double time() {
+		return now;
+	}
+
+	public long numEvents() {
+		return numEvents;
+	}
+
+	/**
+	 * Total number of flows re-routed due to failures and repairs
+	 */
+	public long reroutedFlows() {
+		return reroutedFlows;
+	}
+
+	public double meanFailedLinks() {
+		return failedArea / now;
+	}
+
+	public double meanActiveFlows() {
+		return flowArea / now;
+	}
+
+	public double meanLoopingFlows() {
+		return loopArea / now;
+	}
+
+	public double meanDroppedFlows() {
+		return droppedArea / now;
+	}
+
+	public IncrementalRouting routing() {
+		return routing;
+	}
+
+	public double mtbf() {
+		return mtbf;
+	}
+
+	public double mttr() {
+		return mttr;
+	}
+
+	public double arrivalRate() {
+		return arrivalRate;
+	}
+
+	public double meanDuration() {
+		return meanDuration;
+	}
+
+	/**
+	 * Parameters and results of the simulation in the order of Statistics.LoadStatistics.DYNAMIC_HEAD
+	 */
+	public String[] statisticsRow() {
+		double[] avg = timeAveragedLinkLoad().clone();
+		Arrays.sort(avg);
+		double mean = 0.0;
+		for(double v : avg) {
+			mean += v;
+		}
+		mean /= avg.length;
+		double peak = 0.0;
+		for(double v : peakLinkLoad()) {
+			peak = Math.max(peak, v);
+		}
+		return new String[] {"" + mtbf, "" + mttr, "" + arrivalRate, "" + meanDuration, "" + now, "" + numEvents, "" + reroutedFlows,
+				"" + avg[avg.length - 1], "" + avg[(int) Math.floor(0.99 * (avg.length - 1))], "" + mean, "" + peak,
+				"" + meanFailedLinks(), "" + meanActiveFlows(), "" + meanLoopingFlows(), "" + meanDroppedFlows()};
+	}
+}
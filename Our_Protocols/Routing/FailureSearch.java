@@ -0,0 +1,206 @@
+package Routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import Topology.CLOSTopology;
+import Topology.ImplicitCLOSNetwork;
+import Topology.Strategy;
+
+/**
+ * Searches for a set of budget many link failures that maximizes the maximum router load, the maximum link load
+ * or the number of packets trapped in a loop for a given forwarding strategy.
+ *
+ * Several independent simulated annealing chains are run in parallel on the same (shared) topology.
+ * A move of a chain swaps one failed link with a live link, which is either chosen uniformly at random or
+ * among the links incident to an endpoint of a failed link. Each move is evaluated incrementally by
+ * IncrementalRouting, i.e. only the flows passing the endpoints of the two changed links are re-routed.
+ * Moves after which the strategy can no longer be employed are rejected.
+ */
+public class FailureSearch {
+
+	public enum Objective{
+		MAX_NODE,
+		MAX_LINK,
+		LOOPS
+	}
+
+	CLOSTopology topo;
+	Strategy strategy;
+	double[][] matrix;
+	int dest;
+	int budget;
+	Objective objective;
+
+	//Outcome of the search
+	int[] bestLinks;
+	double bestValue = -1.0;
+	long evaluatedMoves;
+
+	/**
+	 * @param topo	Topology shared by all chains
+	 * @param strategy	Forwarding strategy under attack
+	 * @param matrix	Traffic matrix, or null for an all-to-one experiment towards dest
+	 * @param dest	Destination (BOT router) of the all-to-one experiment, ignored if matrix is given
+	 * @param budget	Number of failed links
+	 * @param objective	Value to maximize
+	 */
+	public FailureSearch(CLOSTopology topo, Strategy strategy, double[][] matrix, int dest, int budget, Objective objective) {
+		this.topo = topo;
+		this.strategy = strategy;
+		this.matrix = matrix;
+		this.dest = dest;
+		this.budget = budget;
+		this.objective = objective;
+	}
+
+	/**
+	 * Runs the given number of annealing chains and keeps the best failure set found by any of them.
+	 *
+	 * @param moves	Number of moves per chain
+	 * @param chains	Number of independent chains
+	 * @param threads	Number of worker threads
+	 * @param seed	Seed of the first chain (chain i uses seed + i)
+	 */
+	public void run(int moves, int chains, int threads, long seed) {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<FailureSearch>> tasks = new ArrayList<Future<FailureSearch>>();
+		for(int c = 0; c < chains; c++) {
+			final long chainSeed = seed + c;
+			tasks.add(pool.submit(() -> {
+				FailureSearch chain = new FailureSearch(topo, strategy, matrix, dest, budget, objective);
+				chain.anneal(moves, new Random(chainSeed));
+				return chain;
+			}));
+		}
+		for(Future<FailureSearch> task : tasks) {
+			try {
+				FailureSearch chain = task.get();
+				evaluatedMoves += chain.evaluatedMoves;
+				if(chain.bestValue > bestValue) {
+					bestValue = chain.bestValue;
+					bestLinks = chain.bestLinks;
+				}
+			} catch (InterruptedException | ExecutionException ex) {
+				System.err.println("ERROR: Search chain failed!");
+				ex.printStackTrace();
+			}
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * A single simulated annealing chain. The temperature decreases geometrically from 5% of the initial value
+	 * (1 packet for Objective.LOOPS) to a thousandth of it.
+	 */
+	void anneal(int moves, Random rng) {
+		ImplicitCLOSNetwork net = new ImplicitCLOSNetwork(topo, strategy);
+
+		//Place the initial failures one by one, skipping links that would disconnect the strategy
+		int[] failed = new int[budget];
+		int placed = 0;
+		for(int attempt = 0; placed < budget && attempt < 100 * budget; attempt++) {
+			int link = rng.nextInt(topo.numLinks);
+			if(net.isFailed(link)) {continue;}
+			net.failLink(link);
+			if(net.isConnected(topo.lowerEnd(link)) && net.isConnected(topo.upperEnd(link))) {
+				failed[placed++] = link;
+			}
+			else {
+				net.repairLink(link);
+			}
+		}
+		if(placed < budget) {
+			System.err.println("Could only place " + placed + " out of " + budget + " failures!");
+			failed = Arrays.copyOf(failed, placed);
+		}
+
+		IncrementalRouting routing = matrix != null ? new IncrementalRouting(net, matrix) : new IncrementalRouting(net, dest);
+		double current = value(routing);
+		bestValue = current;
+		bestLinks = failed.clone();
+		if(failed.length == 0) {return;}
+
+		double startTemp = objective == Objective.LOOPS ? 1.0 : Math.max(0.05 * current, 1e-9);
+		double endTemp = startTemp / 1000.0;
+		for(int m = 0; m < moves; m++) {
+			double temp = startTemp * Math.pow(endTemp / startTemp, (double) m / moves);
+			int i = rng.nextInt(failed.length);
+			int in = propose(failed, rng);
+			if(!routing.change(in, failed[i])) {continue;}
+			evaluatedMoves++;
+
+			double v = value(routing);
+			if(v >= current || rng.nextDouble() < Math.exp((v - current) / temp)) {
+				failed[i] = in;
+				current = v;
+				if(v > bestValue) {
+					bestValue = v;
+					bestLinks = failed.clone();
+				}
+			}
+			else {
+				routing.undo();
+			}
+		}
+	}
+
+	/**
+	 * Proposes a link to fail: with probability 1/2 uniformly at random, otherwise a link
+	 * incident to an endpoint of a failed link.
+	 */
+	int propose(int[] failed, Random rng) {
+		if(rng.nextBoolean()) {
+			return rng.nextInt(topo.numLinks);
+		}
+		int link = failed[rng.nextInt(failed.length)];
+		int router = rng.nextBoolean() ? topo.lowerEnd(link) : topo.upperEnd(link);
+		return topo.incidentLink(router, rng.nextInt(topo.degree(router)));
+	}
+
+	double value(IncrementalRouting routing) {
+		switch(objective) {
+		case MAX_NODE:
+			return routing.maxRouterLoad();
+		case MAX_LINK:
+			return routing.maxLinkLoad();
+		default:
+			return routing.loopCount();
+		}
+	}
+
+	/**
+	 * Best failure set found (link ids of the topology)
+	 */
+	public int[] bestLinks() {
+		return bestLinks;
+	}
+
+	public double bestValue() {
+		return bestValue;
+	}
+
+	/**
+	 * Total number of evaluated (i.e. not rejected) moves of all chains
+	 */
+	public long evaluatedMoves() {
+		return evaluatedMoves;
+	}
+
+	public Strategy strategy() {
+		return strategy;
+	}
+
+	public Objective objective() {
+		return objective;
+	}
+
+	public int budget() {
+		return budget;
+	}
+}
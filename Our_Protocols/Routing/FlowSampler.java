@@ -0,0 +1,356 @@
+package Routing;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import Statistics.HopHistogram;
+import Statistics.LoadStatistics;
+import Statistics.Result;
+import Statistics.RunningStatistic;
+import Statistics.SampledResult;
+import Topology.Node;
+import Util.Edge;
+
+/**
+ * Routes a sample of the flows of a traffic matrix instead of all of them.
+ *
+ * Two modes are supported:
+ * 	1)	ALIAS:	Flows are drawn with replacement and probability proportional to their weight using an
+ * 				alias table (O(1) per draw). Each draw carries weight W/draws, where W is the total mass of the
+ * 				matrix, so that all load values are unbiased estimates. The draws are split into independent
+ * 				batches. The statistics are computed on the loads averaged over all batches, their confidence
+ * 				intervals are derived by leaving out one batch at a time (jackknife).
+ * 	2)	HEAVY:	Only the heaviest flows making up a given share of the total mass are routed with their original weight.
+ * 				The dropped mass D is reported as the error of every statistic. It is only an approximate measure:
+ * 				a loop-free path passes a link or router at most once, so D bounds the missing load of every link
+ * 				and router, but a detour can pass a router several times. Statistics that are no sums of loads
+ * 				(e.g. the Gini coefficient) may move in either direction.
+ *
+ * Only the sampled flows are routed as a list of pairs with flowListRouting() of CLOSNetwork or ImplicitCLOSNetwork, e.g.
+ * 		sampler.routeAlias((pairs, weights, count) -> net.flowListRouting(pairs, weights, count, name), 100000, 10)
+ */
+public class FlowSampler {
+
+	public enum Mode{
+		ALIAS,
+		HEAVY
+	}
+
+	/**
+	 * Routing of the first count flows of a list, each given by its flat index s*n + d and its weight
+	 */
+	public interface FlowRouting {
+		Result route(int[] pairs, double[] weights, int count);
+	}
+
+	//Weights below this value are skipped by trafficMatrixRouting() as well
+	static final double MIN_WEIGHT = 0.0000001;
+
+	int n;
+	double[][] matrix;
+
+	//Flat indices s*n + d of all routable flows and their total mass
+	int[] flows;
+	double totalMass;
+
+	//Alias table over flows (built on first use)
+	double[] prob;
+	int[] alias;
+
+	//Distinct sampled flows (flat indices s*n + d) and their weights
+	int[] samplePairs;
+	double[] sampleWeights;
+	int numSampled;
+	//Position of each flow in the sample, -1 if it is not sampled
+	int[] slot;
+
+	/**
+	 * Creates a sampler for the given (square) traffic matrix
+	 */
+	public FlowSampler(double[][] matrix) {
+		this.matrix = matrix;
+		this.n = matrix.length;
+
+		int count = 0;
+		for(int s = 0; s < n; s++) {
+			for(int d = 0; d < n; d++) {
+				if(s != d && matrix[s][d] >= MIN_WEIGHT) {count++;}
+			}
+		}
+		flows = new int[count]; count = 0;
+		for(int s = 0; s < n; s++) {
+			for(int d = 0; d < n; d++) {
+				if(s != d && matrix[s][d] >= MIN_WEIGHT) {
+					flows[count++] = s*n + d;
+					totalMass += matrix[s][d];
+				}
+			}
+		}
+		slot = new int[count];
+		Arrays.fill(slot, -1);
+	}
+
+	public int numFlows() {
+		return flows.length;
+	}
+
+	/**
+	 * Builds the alias table (Vose's method) over all flows.
+	 */
+	void buildAliasTable() {
+		int m = flows.length;
+		prob = new double[m];
+		alias = new int[m];
+
+		double[] scaled = new double[m];
+		int[] small = new int[m]; int numSmall = 0;
+		int[] large = new int[m]; int numLarge = 0;
+		for(int i = 0; i < m; i++) {
+			scaled[i] = weight(i) * m / totalMass;
+			if(scaled[i] < 1.0) {small[numSmall++] = i;}
+			else {large[numLarge++] = i;}
+		}
+		while(numSmall > 0 && numLarge > 0) {
+			int l = small[--numSmall];
+			int g = large[--numLarge];
+			prob[l] = scaled[l];
+			alias[l] = g;
+			scaled[g] = (scaled[g] + scaled[l]) - 1.0;
+			if(scaled[g] < 1.0) {small[numSmall++] = g;}
+			else {large[numLarge++] = g;}
+		}
+		while(numLarge > 0) {prob[large[--numLarge]] = 1.0;}
+		while(numSmall > 0) {prob[small[--numSmall]] = 1.0;} //Only reached due to rounding errors
+	}
+
+	double weight(int flow) {
+		return matrix[flows[flow] / n][flows[flow] % n];
+	}
+
+	/**
+	 * Draws a flow with probability proportional to its weight
+	 */
+	int draw(Random rng) {
+		int i = rng.nextInt(flows.length);
+		return rng.nextDouble() < prob[i] ? i : alias[i];
+	}
+
+	/**
+	 * Draws a flow with probability proportional to its weight and returns its flat index s*n + d
+	 */
+	int drawPair(Random rng) {
+		if(prob == null) {buildAliasTable();}
+		return flows[draw(rng)];
+	}
+
+	/**
+	 * Adds weight to the flow in the sample
+	 */
+	void addToSample(int flow, double w) {
+		if(slot[flow] < 0) {
+			if(numSampled == samplePairs.length) {
+				samplePairs = Arrays.copyOf(samplePairs, 2*samplePairs.length);
+				sampleWeights = Arrays.copyOf(sampleWeights, 2*sampleWeights.length);
+			}
+			slot[flow] = numSampled;
+			samplePairs[numSampled] = flows[flow];
+			sampleWeights[numSampled++] = 0.0;
+		}
+		sampleWeights[slot[flow]] += w;
+	}
+
+	void clearSample() {
+		for(int i = 0; i < numSampled; i++) {
+			slot[Arrays.binarySearch(flows, samplePairs[i])] = -1; //flows is sorted
+		}
+		numSampled = 0;
+	}
+
+	/**
+	 * Routes draws many flows drawn proportional to their weight, split into the given number of batches.
+	 *
+	 * The statistics are those of the loads averaged over all batches. Their confidence intervals are
+	 * derived from the jackknife pseudo-values B*m - (B-1)*m_b, where m_b is the statistic of the loads
+	 * averaged over all batches but b.
+	 *
+	 * @param routing	Routing of a list of flows, e.g. (pairs, weights, count) -> net.flowListRouting(pairs, weights, count, name)
+	 * @param draws	Total number of draws
+	 * @param batches	Number of independent batches used to derive the confidence intervals (at least 2)
+	 * @return	Estimated loads and statistics together with the half width of their 95% confidence intervals
+	 */
+	public SampledResult routeAlias(FlowRouting routing, int draws, int batches) {
+		if(prob == null) {buildAliasTable();}
+		batches = Math.max(batches, 2);
+		int perBatch = Math.max(draws / batches, 1);
+		samplePairs = new int[Math.min(perBatch, flows.length) + 1];
+		sampleWeights = new double[samplePairs.length];
+		ThreadLocalRandom rng = ThreadLocalRandom.current();
+
+		Result[] results = new Result[batches];
+		int sampledFlows = 0;
+		for(int b = 0; b < batches; b++) {
+			clearSample();
+			for(int i = 0; i < perBatch; i++) {
+				addToSample(draw(rng), totalMass / perBatch);
+			}
+			sampledFlows += numSampled;
+			results[b] = routing.route(samplePairs, sampleWeights, numSampled);
+		}
+		clearSample();
+
+		SampledResult sr = new SampledResult();
+		sr.result = average(results, -1);
+		sr.mode = Mode.ALIAS.toString();
+		sr.modeParam = perBatch * batches;
+		sr.sampledFlows = sampledFlows;
+		sr.totalFlows = flows.length;
+		sr.metrics = LoadStatistics.loadMetrics(sr.result);
+
+		RunningStatistic[] stats = new RunningStatistic[sr.metrics.length];
+		for(int i = 0; i < stats.length; i++) {
+			stats[i] = new RunningStatistic();
+		}
+		for(int b = 0; b < batches; b++) {
+			double[] leaveOut = LoadStatistics.loadMetrics(average(results, b));
+			for(int i = 0; i < stats.length; i++) {
+				stats[i].add(batches * sr.metrics[i] - (batches - 1) * leaveOut[i]);
+			}
+		}
+		sr.error = new double[stats.length];
+		for(int i = 0; i < stats.length; i++) {
+			sr.error[i] = stats[i].halfWidth();
+		}
+		return sr;
+	}
+
+	/**
+	 * Routes only the heaviest flows that together make up (at least) the given share of the total mass.
+	 *
+	 * @param routing	Routing of a list of flows, e.g. (pairs, weights, count) -> net.flowListRouting(pairs, weights, count, name)
+	 * @param share	Share of the total mass to route (between 0 and 1)
+	 * @return	Loads of the heaviest flows and statistics together with the dropped mass as approximate error (see above)
+	 */
+	public SampledResult routeHeavy(FlowRouting routing, double share) {
+		double[] weights = new double[flows.length];
+		for(int i = 0; i < flows.length; i++) {
+			weights[i] = weight(i);
+		}
+		Arrays.sort(weights);
+		double threshold = 0.0;
+		double mass = 0.0;
+		for(int i = weights.length - 1; i >= 0 && mass < share * totalMass; i--) {
+			mass += weights[i];
+			threshold = weights[i];
+		}
+
+		samplePairs = new int[16];
+		sampleWeights = new double[16];
+		clearSample();
+		double keptMass = 0.0;
+		for(int i = 0; i < flows.length; i++) {
+			double w = weight(i);
+			if(w >= threshold) {
+				addToSample(i, w);
+				keptMass += w;
+			}
+		}
+		SampledResult sr = new SampledResult();
+		sr.sampledFlows = numSampled;
+		sr.result = routing.route(samplePairs, sampleWeights, numSampled);
+		clearSample();
+
+		sr.mode = Mode.HEAVY.toString();
+		sr.modeParam = share;
+		sr.totalFlows = flows.length;
+		sr.metrics = LoadStatistics.loadMetrics(sr.result);
+		sr.error = new double[sr.metrics.length];
+		Arrays.fill(sr.error, Math.max(totalMass - keptMass, 0.0));
+		return sr;
+	}
+
+	/**
+	 * Averages the loads and hop histograms of several results into a new result. Packet counts (also the disconnected
+	 * loops) are summed up, the connected weight is averaged weighted by the number of packets.
+	 *
+	 * @param skip	Index of a result to leave out, -1 to average all of them
+	 */
+	static Result average(Result[] results, int skip) {
+		Result first = results[skip == 0 ? 1 : 0];
+		Result avg = new Result();
+		avg.k = first.k;
+		avg.type = first.type;
+		avg.failType = first.failType;
+		avg.failP = first.failP;
+		avg.sentFromServers = first.sentFromServers;
+		avg.numInt = first.numInt;
+		avg.numFailedEdges = first.numFailedEdges;
+		avg.experimentType = first.experimentType;
+		avg.trialId = first.trialId;
+		avg.connectedPairs = first.connectedPairs;
+
+		if(skip >= 0) {
+			Result[] kept = new Result[results.length - 1];
+			for(int i = 0, j = 0; i < results.length; i++) {
+				if(i != skip) {kept[j++] = results[i];}
+			}
+			results = kept;
+		}
+		int b = results.length;
+		double hopSum = 0.0;
+		int routed = 0;
+		if(first.routerLoad != null) {
+			double[] routerLoad = new double[first.routerLoad.length];
+			double[] linkLoad = new double[first.linkLoad.length];
+			for(Result r : results) {
+				for(int i = 0; i < routerLoad.length; i++) {routerLoad[i] += r.routerLoad[i] / b;}
+				for(int i = 0; i < linkLoad.length; i++) {linkLoad[i] += r.linkLoad[i] / b;}
+			}
+			avg.routerLoad = routerLoad;
+			avg.linkLoad = linkLoad;
+		}
+		else {
+			HashMap<Node,Double> nodeLoad = new HashMap<Node,Double>();
+			HashMap<Edge,Double> edgeLoad = new HashMap<Edge,Double>();
+			for(Result r : results) {
+				for(Map.Entry<Node,Double> e : r.nodeLoad.entrySet()) {nodeLoad.merge(e.getKey(), e.getValue() / b, Double::sum);}
+				for(Map.Entry<Edge,Double> e : r.edgeLoad.entrySet()) {edgeLoad.merge(e.getKey(), e.getValue() / b, Double::sum);}
+			}
+			avg.nodeLoad = nodeLoad;
+			avg.edgeLoad = edgeLoad;
+		}
+		HopHistogram histogram = new HopHistogram();
+		for(Result r : results) {
+			histogram.merge(r.hopHistogram);
+		}
+		histogram.scaleWeights(1.0 / b);
+		avg.hopHistogram = histogram;
+		int totalPacks = 0, packsInCycle = 0, droppedPacks = 0, maxHops = 0;
+		double connectedWeight = 0.0;
+		int weighted = 0, disconnectedLoops = -1;
+		for(Result r : results) {
+			if(!Double.isNaN(r.connectedWeight)) {
+				connectedWeight += r.connectedWeight * r.totalPacks;
+				weighted += r.totalPacks;
+			}
+			if(r.disconnectedLoops >= 0) {disconnectedLoops = Math.max(disconnectedLoops, 0) + r.disconnectedLoops;}
+			int ok = r.totalPacks - r.packsInCycle - r.droppedPacks;
+			hopSum += r.avgHops * ok;
+			routed += ok;
+			totalPacks += r.totalPacks;
+			packsInCycle += r.packsInCycle;
+			droppedPacks += r.droppedPacks;
+			maxHops = Math.max(maxHops, r.maxHops);
+		}
+		avg.totalPacks = totalPacks;
+		avg.packsInCycle = packsInCycle;
+		avg.droppedPacks = droppedPacks;
+		avg.maxHops = maxHops;
+		avg.avgHops = hopSum / routed;
+		avg.connectedWeight = weighted > 0 ? connectedWeight / weighted : Double.NaN;
+		avg.disconnectedLoops = disconnectedLoops;
+		return avg;
+	}
+}
@@ -0,0 +1,664 @@
+package Routing;
+
+import java.util.Arrays;
+
+import Statistics.Result;
+import Topology.CLOSTopology;
+import Topology.ClosSymmetry;
+import Topology.Connectivity;
+import Topology.ImplicitCLOSNetwork;
+import Util.Log;
+import Util.PhaseEvent;
+
+/**
+ * Expected loads of a hash-based strategy, averaged over the random hashIDs (fluid ECMP model).
+ *
+ * Instead of hashing, every router splits the weight it receives evenly among its live forwarding candidates
+ * (see ImplicitCLOSNetwork.candidates()). For a fixed destination this is a Markov chain over the routers that
+ * is absorbed at the destination, and the expected number of visits of each router and traversals of each link
+ * are its loads. One propagation pass per destination replaces many runs with different hashIDs when only
+ * mean loads are of interest.
+ *
+ * Routers that cannot reach the destination at all form closed classes, in which the weight circulates forever
+ * (the fluid counterpart of a forwarding loop). Let a(r) be the probability to reach the destination from router r.
+ * As in the hash based routing, weight that ends in a loop does not contribute any load: the weight is propagated
+ * along the chain conditioned on absorption (transition r -> r' with probability P(r,r') * a(r') / a(r)) and
+ * the remaining share (1 - a(s)) of each flow is reported as Result.loopMass.
+ */
+public class FluidRouting {
+
+	//Weight below this share of the injected weight is not propagated any further
+	static final double EPSILON = 1e-12;
+
+	//Convergence threshold and iteration limit for the absorption probabilities
+	static final double ABSORPTION_TOLERANCE = 1e-14;
+	static final int MAX_ITERATIONS = 100000;
+
+	ImplicitCLOSNetwork net;
+	CLOSTopology topo;
+
+	//Candidate graph towards the current destination (CSR, links of router r in links[first[r]..first[r+1]))
+	int[] first;
+	int[] links;
+
+	//Buffer for the candidates of a single router
+	int[] candidates;
+
+	//Absorption probabilities and the pending weight of every router
+	double[] absorb;
+	double[] pending;
+	boolean[] queued;
+	int[] queue;
+
+	//Live upward and downward candidates of every router (independent of the destination)
+	int[] upFirst;
+	int[] upLinks;
+	int[] downFirst;
+	int[] downLinks;
+
+	//Route on the orbits of the symmetries left intact by the failures (see setSymmetryReduction())
+	boolean useSymmetry = false;
+
+	//Chain between the router orbits towards the current destination (CSR with transition probabilities)
+	int[] qFirst;
+	int[] qTo;
+	double[] qProb;
+	double[] qAbsorb;
+	double[] qPending;
+	double[] qVisits;
+	int[] qSlot;
+
+	//Flow statistics of the current routing
+	int totalPacks;
+	double loopFlows;
+	double loopMass;
+	double delivered;
+
+	//Physical connectivity under the failures and the flow statistics based on it (see Topology.Connectivity)
+	Connectivity connectivity;
+	double totalWeight;
+	double connectedWeight;
+	double disconnectedLoops;
+
+	public FluidRouting(ImplicitCLOSNetwork net) {
+		this.net = net;
+		this.topo = net.topology();
+		first = new int[topo.numRouters + 1];
+		links = new int[topo.numRouters * topo.k];
+		candidates = new int[topo.k];
+		absorb = new double[topo.numRouters];
+		pending = new double[topo.numRouters];
+		queued = new boolean[topo.numRouters];
+		queue = new int[topo.numRouters];
+		upFirst = new int[topo.numRouters + 1];
+		upLinks = new int[topo.numRouters * topo.h];
+		downFirst = new int[topo.numRouters + 1];
+		downLinks = new int[topo.numRouters * topo.k];
+	}
+
+	/**
+	 * Expected loads when every BOT router sends one unit to dest
+	 */
+	public Result allToOneRouting(int dest) {
+		double[] column = new double[topo.numBot];
+		for(int i = 0; i < topo.numBot; i++) {
+			column[i] = 1.0;
+		}
+		return route(null, column, dest, "A2O");
+	}
+
+	/**
+	 * Expected loads of the traffic matrix
+	 */
+	public Result trafficMatrixRouting(double[][] matrix, String expName) {
+		return route(matrix, null, -1, expName);
+	}
+
+	private Result route(double[][] matrix, double[] column, int columnDest, String expName) {
+		PhaseEvent event = PhaseEvent.start("fluidRouting", net.strategy().type, topo.k);
+		double[] routerLoad = new double[topo.numRouters];
+		double[] linkLoad = new double[topo.numLinks];
+		totalPacks = 0;
+		loopFlows = 0.0;
+		loopMass = 0.0;
+		delivered = 0.0;
+		connectivity = new Connectivity(topo, net.overlay());
+		totalWeight = 0.0;
+		connectedWeight = 0.0;
+		disconnectedLoops = 0.0;
+		prepare();
+
+		if(!useSymmetry || !symmetricRoute(matrix, column, columnDest, routerLoad, linkLoad)) {
+			double[] inject = new double[topo.numBot];
+			int dFrom = column == null ? 0 : columnDest;
+			int dTo = column == null ? topo.numBot : columnDest + 1;
+			for(int d = dFrom; d < dTo; d++) {
+				boolean any = false;
+				for(int s = 0; s < topo.numBot; s++) {
+					double weight = column != null ? column[s] : matrix[s][d];
+					if(s == d || weight < FlowSampler.MIN_WEIGHT) {
+						inject[s] = 0.0;
+						continue;
+					}
+					inject[s] = weight;
+					any = true;
+				}
+				if(any) {routeDestination(d, inject, routerLoad, linkLoad);}
+			}
+		}
+
+		double traversals = 0.0;
+		for(double l : linkLoad) {
+			traversals += l;
+		}
+
+		Result r = net.createResultObj();
+		r.packsInCycle = (int) Math.round(loopFlows);
+		r.loopMass = loopMass;
+		r.sentFromServers = false;
+		r.totalPacks = totalPacks;
+		r.experimentType = expName;
+		r.avgHops = traversals / delivered;	//Weighted by the flow sizes
+		r.maxHops = -1;						//Not defined for the fluid model
+		r.routerLoad = routerLoad;
+		r.linkLoad = linkLoad;
+		r.connectedPairs = connectivity.connectedPairs();
+		r.connectedWeight = totalWeight > 0 ? connectedWeight / totalWeight : 1.0;
+		r.disconnectedLoops = (int) Math.round(disconnectedLoops);
+
+		event.flowsRouted = totalPacks;
+		event.finish();
+		return r;
+	}
+
+	/**
+	 * Adds the expected loads of all flows towards d (weight inject[s] from BOT router s, 0 for no flow)
+	 */
+	void routeDestination(int d, double[] inject, double[] routerLoad, double[] linkLoad) {
+		buildGraph(d);
+		absorption(d);
+		for(int s = 0; s < topo.numBot; s++) {
+			if(inject[s] == 0.0) {continue;}
+			totalPacks++;
+			loopFlows += 1.0 - absorb[s];
+			loopMass += inject[s] * (1.0 - absorb[s]);
+			delivered += inject[s] * absorb[s];
+			countConnectivity(s, d, inject[s], 1, absorb[s]);
+		}
+		propagate(d, inject, routerLoad, linkLoad);
+	}
+
+	/**
+	 * Adds size flows from BOT router s to d (or from the members of the orbit of s) to the connectivity statistics.
+	 * The looping share of a flow whose destination is not connected to its source is counted as a disconnected loop.
+	 */
+	void countConnectivity(int s, int d, double weight, int size, double absorbed) {
+		totalWeight += size * weight;
+		if(connectivity.connected(s, d)) {
+			connectedWeight += size * weight;
+		}
+		else {
+			disconnectedLoops += size * (1.0 - absorbed);
+		}
+	}
+
+	/**
+	 * Collects the live upward and downward candidate sets of all routers, which do not depend on the destination
+	 */
+	void prepare() {
+		int n = topo.numRouters;
+		int up = 0, down = 0;
+		for(int r = 0; r < n; r++) {
+			upFirst[r] = up;
+			downFirst[r] = down;
+			if(r < topo.blockOffset) {
+				int c = net.upCandidates(r, candidates);
+				System.arraycopy(candidates, 0, upLinks, up, c);
+				up += c;
+			}
+			if(r >= topo.topOffset) {
+				int c = net.downCandidates(r, candidates);
+				System.arraycopy(candidates, 0, downLinks, down, c);
+				down += c;
+			}
+		}
+		upFirst[n] = up;
+		downFirst[n] = down;
+	}
+
+	/**
+	 * Builds the candidate graph towards dest (the destination itself has no outgoing links), see ImplicitCLOSNetwork.candidates()
+	 */
+	void buildGraph(int dest) {
+		int h = topo.h;
+		int destPod = dest / h;
+		int count = 0;
+		for(int r = 0; r < topo.numRouters; r++) {
+			first[r] = count;
+			if(r == dest) {continue;}
+			int direct = -1;
+			if(r >= topo.blockOffset) {
+				direct = topo.blockLink(destPod, topo.groupOf(r), topo.localIdOf(r));
+			}
+			else if(r >= topo.topOffset && topo.groupOf(r) == destPod) {
+				direct = topo.podLink(destPod, dest % h, topo.localIdOf(r));
+			}
+			if(direct >= 0 && !net.isFailed(direct)) {
+				links[count++] = direct;
+			}
+			else if(direct >= 0) {
+				int c = downFirst[r+1] - downFirst[r];
+				System.arraycopy(downLinks, downFirst[r], links, count, c);
+				count += c;
+			}
+			else {
+				int c = upFirst[r+1] - upFirst[r];
+				System.arraycopy(upLinks, upFirst[r], links, count, c);
+				count += c;
+			}
+		}
+		first[topo.numRouters] = count;
+	}
+
+	/**
+	 * Probability a(r) to reach dest from every router. First, the routers that can reach dest at all are found
+	 * (a = 1 for now). This is a fixed point over the routers, starting with the TOP routers of the destination pod
+	 * and then in the order BLOCK, TOP, BOT, so that without failures a single sweep finds all of them. Only if some
+	 * router may move to a router that cannot reach dest, the probabilities are iterated.
+	 */
+	void absorption(int dest) {
+		int n = topo.numRouters;
+		Arrays.fill(absorb, 0.0);
+		absorb[dest] = 1.0;
+		int reached = 1;
+		int podTop = topo.topOffset + (dest / topo.h) * topo.h;
+		for(int r = podTop; r < podTop + topo.h; r++) {
+			if(reaches(r)) {reached++;}
+		}
+		boolean changed = true;
+		while(changed && reached < n) {
+			changed = false;
+			for(int r = n - 1; r >= 0; r--) {
+				if(reaches(r)) {
+					reached++;
+					changed = true;
+				}
+			}
+		}
+
+		//Is any router with a = 0 the successor of a router with a = 1?
+		boolean leaks = false;
+		for(int r = 0; r < n && !leaks; r++) {
+			if(absorb[r] == 0.0) {continue;}
+			for(int i = first[r]; i < first[r+1]; i++) {
+				if(absorb[topo.otherEnd(links[i], r)] == 0.0) {
+					leaks = true;
+					break;
+				}
+			}
+		}
+		if(!leaks) {return;}
+
+		//Gauss-Seidel iteration of a(r) = mean of a over the candidates, starting from above
+		for(int it = 0; it < MAX_ITERATIONS; it++) {
+			double change = 0.0;
+			for(int r = 0; r < n; r++) {
+				if(r == dest || absorb[r] == 0.0) {continue;}
+				double sum = 0.0;
+				for(int i = first[r]; i < first[r+1]; i++) {
+					sum += absorb[topo.otherEnd(links[i], r)];
+				}
+				double a = sum / (first[r+1] - first[r]);
+				change = Math.max(change, Math.abs(a - absorb[r]));
+				absorb[r] = a;
+			}
+			if(change < ABSORPTION_TOLERANCE) {return;}
+		}
+		System.err.println("WARNING: Absorption probabilities towards " + topo.routerToString(dest) + " did not converge!");
+	}
+
+	/**
+	 * Marks router r with a = 1 if it was not marked yet and one of its candidates is marked
+	 *
+	 * @return	true iff r was newly marked
+	 */
+	boolean reaches(int r) {
+		if(absorb[r] != 0.0) {return false;}
+		for(int i = first[r]; i < first[r+1]; i++) {
+			if(absorb[topo.otherEnd(links[i], r)] != 0.0) {
+				absorb[r] = 1.0;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Pushes the injected weight along the conditioned chain until (almost) all of it reached dest
+	 */
+	void propagate(int dest, double[] inject, double[] routerLoad, double[] linkLoad) {
+		int n = topo.numRouters;
+		double total = 0.0;
+		int head = 0, size = 0;
+		for(int s = 0; s < topo.numBot; s++) {
+			double w = inject[s] * absorb[s];
+			if(w <= 0.0) {continue;}
+			pending[s] += w;
+			total += w;
+			if(!queued[s]) {
+				queued[s] = true;
+				queue[(head + size++) % n] = s;
+			}
+		}
+		double threshold = EPSILON * total;
+		while(size > 0) {
+			int r = queue[head];
+			head = (head + 1) % n;
+			size--;
+			queued[r] = false;
+			double m = pending[r];
+			pending[r] = 0.0;
+			routerLoad[r] += m;
+			if(r == dest) {continue;}
+
+			double scale = m / ((first[r+1] - first[r]) * absorb[r]);
+			for(int i = first[r]; i < first[r+1]; i++) {
+				int l = links[i];
+				int next = topo.otherEnd(l, r);
+				if(absorb[next] == 0.0) {continue;}
+				double w = scale * absorb[next];
+				linkLoad[l] += w;
+				pending[next] += w;
+				if(!queued[next] && (pending[next] > threshold || next == dest)) {
+					queued[next] = true;
+					queue[(head + size++) % n] = next;
+				}
+			}
+		}
+		//Weight below the threshold that was never propagated
+		for(int r = 0; r < n; r++) {
+			pending[r] = 0.0;
+		}
+	}
+
+	//+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+ Symmetry Reduction +-+-+-+-+-+-+-+-+-+-+-
+
+	/**
+	 * Enables or disables routing on the orbits of the symmetries that are left intact by the failures and the strategy
+	 * (disabled by default, see Topology.ClosSymmetry). The loads are the same up to the propagation threshold.
+	 * 
+	 * For an all-to-one routing, the chain is lumped into one state per router orbit of the symmetries that keep the
+	 * destination in place, and the loads of an orbit are spread evenly over its members. For a traffic matrix whose
+	 * flows all have the same weight, only one destination per orbit is routed and its loads are spread over the link
+	 * and router orbits, weighted by the size of the destination orbit. Other traffic matrices, and failure sets that
+	 * leave hardly any symmetry (e.g. random failures), are routed as usual.
+	 */
+	public void setSymmetryReduction(boolean enabled) {
+		useSymmetry = enabled;
+	}
+
+	/**
+	 * Routes on the orbits if this pays off
+	 *
+	 * @return	false if nothing was routed
+	 */
+	boolean symmetricRoute(double[][] matrix, double[] column, int columnDest, double[] routerLoad, double[] linkLoad) {
+		if(column != null) {
+			ClosSymmetry sym = new ClosSymmetry(net, columnDest);
+			if(!worthwhile(sym)) {return false;}
+			routeReduced(columnDest, sym, column, routerLoad, linkLoad);
+			return true;
+		}
+
+		double weight = uniformWeight(matrix);
+		if(weight < FlowSampler.MIN_WEIGHT) {
+			Log.println("** Traffic matrix is not uniform, routing without symmetry reduction");
+			return false;
+		}
+		ClosSymmetry group = new ClosSymmetry(net, -1);
+		if(!worthwhile(group)) {return false;}
+		double[] inject = new double[topo.numBot];
+		Arrays.fill(inject, weight);
+		double[] destRouterLoad = new double[topo.numRouters];
+		double[] destLinkLoad = new double[topo.numLinks];
+		double[] routerSum = new double[group.numRouterOrbits()];
+		double[] linkSum = new double[group.numLinkOrbits()];
+		int routed = 0;
+		for(int o = 0; o < group.numRouterOrbits(); o++) {
+			int d = group.routerRep(o);
+			if(d >= topo.numBot) {continue;}
+
+			//Flows towards d, counted as often as there are destinations in its orbit
+			int orbitSize = group.routerOrbitSize(o);
+			int packs = totalPacks;
+			double flows = loopFlows, mass = loopMass, arrived = delivered;
+			double weights = totalWeight, connected = connectedWeight, disconnected = disconnectedLoops;
+			Arrays.fill(destRouterLoad, 0.0);
+			Arrays.fill(destLinkLoad, 0.0);
+			inject[d] = 0.0;
+			ClosSymmetry sym = new ClosSymmetry(net, d);
+			if(worthwhile(sym)) {
+				routeReduced(d, sym, inject, destRouterLoad, destLinkLoad);
+			}
+			else {
+				routeDestination(d, inject, destRouterLoad, destLinkLoad);
+			}
+			inject[d] = weight;
+			totalPacks = packs + orbitSize * (totalPacks - packs);
+			loopFlows = flows + orbitSize * (loopFlows - flows);
+			loopMass = mass + orbitSize * (loopMass - mass);
+			delivered = arrived + orbitSize * (delivered - arrived);
+			totalWeight = weights + orbitSize * (totalWeight - weights);
+			connectedWeight = connected + orbitSize * (connectedWeight - connected);
+			disconnectedLoops = disconnected + orbitSize * (disconnectedLoops - disconnected);
+
+			//The loads towards the other destinations of the orbit are images of these loads, their sum is spread evenly
+			//over every orbit of the group
+			Arrays.fill(routerSum, 0.0);
+			Arrays.fill(linkSum, 0.0);
+			for(int r = 0; r < topo.numRouters; r++) {
+				routerSum[group.routerOrbit(r)] += destRouterLoad[r];
+			}
+			for(int l = 0; l < topo.numLinks; l++) {
+				linkSum[group.linkOrbit(l)] += destLinkLoad[l];
+			}
+			for(int r = 0; r < topo.numRouters; r++) {
+				int ro = group.routerOrbit(r);
+				routerLoad[r] += orbitSize * routerSum[ro] / group.routerOrbitSize(ro);
+			}
+			for(int l = 0; l < topo.numLinks; l++) {
+				int lo = group.linkOrbit(l);
+				linkLoad[l] += orbitSize * linkSum[lo] / group.linkOrbitSize(lo);
+			}
+			routed++;
+		}
+		Log.println("** Routed " + routed + " of " + topo.numBot + " destinations (" + group.numGenerators() + " symmetries)");
+		return true;
+	}
+
+	/**
+	 * Whether the orbits are few enough that the lumped chain is much smaller than the chain over the routers
+	 */
+	boolean worthwhile(ClosSymmetry sym) {
+		return sym.numRouterOrbits() <= topo.numRouters / 4;
+	}
+
+	/**
+	 * Weight of every flow of the matrix, or 0 if the flows have different weights
+	 */
+	double uniformWeight(double[][] matrix) {
+		double weight = matrix[0][1];
+		for(int s = 0; s < topo.numBot; s++) {
+			for(int d = 0; d < topo.numBot; d++) {
+				if(s != d && matrix[s][d] != weight) {return 0.0;}
+			}
+		}
+		return weight;
+	}
+
+	/**
+	 * Same as routeDestination() on the chain between the router orbits of sym, which must keep d in place.
+	 * The weight injected at BOT router s must only depend on its orbit.
+	 */
+	void routeReduced(int d, ClosSymmetry sym, double[] inject, double[] routerLoad, double[] linkLoad) {
+		int cells = sym.numRouterOrbits();
+		if(qFirst == null || qFirst.length < cells + 1) {
+			qFirst = new int[cells + 1];
+			qTo = new int[cells * topo.k];
+			qProb = new double[cells * topo.k];
+			qAbsorb = new double[cells];
+			qPending = new double[cells];
+			qVisits = new double[cells];
+			qSlot = new int[cells];
+			Arrays.fill(qSlot, -1);
+		}
+		int dest = sym.routerOrbit(d);
+
+		//Transitions of the representative of every orbit, merged by the orbit of the next router
+		int count = 0;
+		for(int c = 0; c < cells; c++) {
+			qFirst[c] = count;
+			if(c == dest) {continue;}
+			int r = sym.routerRep(c);
+			int num = net.candidates(r, d, candidates);
+			for(int i = 0; i < num; i++) {
+				int t = sym.routerOrbit(topo.otherEnd(candidates[i], r));
+				if(qSlot[t] < 0) {
+					qSlot[t] = count;
+					qTo[count] = t;
+					qProb[count] = 0.0;
+					count++;
+				}
+				qProb[qSlot[t]] += 1.0 / num;
+			}
+			for(int i = qFirst[c]; i < count; i++) {
+				qSlot[qTo[i]] = -1;
+			}
+		}
+		qFirst[cells] = count;
+
+		reducedAbsorption(dest, cells);
+
+		//Flows and injected weight per orbit
+		Arrays.fill(qVisits, 0, cells, 0.0);
+		double total = 0.0;
+		for(int c = 0; c < cells; c++) {
+			int s = sym.routerRep(c);
+			if(c == dest || s >= topo.numBot || inject[s] == 0.0) {
+				qPending[c] = 0.0;
+				continue;
+			}
+			int size = sym.routerOrbitSize(c);
+			totalPacks += size;
+			loopFlows += size * (1.0 - qAbsorb[c]);
+			loopMass += size * inject[s] * (1.0 - qAbsorb[c]);
+			delivered += size * inject[s] * qAbsorb[c];
+			countConnectivity(s, d, inject[s], size, qAbsorb[c]);
+			qPending[c] = size * inject[s] * qAbsorb[c];
+			total += qPending[c];
+		}
+		reducedPropagation(dest, cells, total);
+
+		//Every member of an orbit carries the same load
+		for(int r = 0; r < topo.numRouters; r++) {
+			int c = sym.routerOrbit(r);
+			routerLoad[r] += qVisits[c] / sym.routerOrbitSize(c);
+		}
+		double[] orbitLoad = new double[sym.numLinkOrbits()];
+		for(int o = 0; o < orbitLoad.length; o++) {
+			int l = sym.linkRep(o);
+			int lower = topo.lowerEnd(l), upper = topo.upperEnd(l);
+			orbitLoad[o] = directedLoad(sym, d, l, lower, upper) + directedLoad(sym, d, l, upper, lower);
+		}
+		for(int l = 0; l < topo.numLinks; l++) {
+			linkLoad[l] += orbitLoad[sym.linkOrbit(l)];
+		}
+	}
+
+	/**
+	 * Expected load of the link in direction from -> to, if it is a candidate of from
+	 */
+	double directedLoad(ClosSymmetry sym, int d, int link, int from, int to) {
+		int c = sym.routerOrbit(from);
+		if(from == d || qAbsorb[c] == 0.0) {return 0.0;}
+		int num = net.candidates(from, d, candidates);
+		for(int i = 0; i < num; i++) {
+			if(candidates[i] == link) {
+				double visits = qVisits[c] / sym.routerOrbitSize(c);
+				return visits * qAbsorb[sym.routerOrbit(to)] / (num * qAbsorb[c]);
+			}
+		}
+		return 0.0;
+	}
+
+	/**
+	 * Same as absorption() on the lumped chain
+	 */
+	void reducedAbsorption(int dest, int cells) {
+		Arrays.fill(qAbsorb, 0, cells, 0.0);
+		qAbsorb[dest] = 1.0;
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(int c = 0; c < cells; c++) {
+				if(qAbsorb[c] != 0.0) {continue;}
+				for(int i = qFirst[c]; i < qFirst[c+1]; i++) {
+					if(qAbsorb[qTo[i]] != 0.0) {
+						qAbsorb[c] = 1.0;
+						changed = true;
+						break;
+					}
+				}
+			}
+		}
+		boolean leaks = false;
+		for(int c = 0; c < cells && !leaks; c++) {
+			if(qAbsorb[c] == 0.0) {continue;}
+			for(int i = qFirst[c]; i < qFirst[c+1]; i++) {
+				if(qAbsorb[qTo[i]] == 0.0) {
+					leaks = true;
+					break;
+				}
+			}
+		}
+		if(!leaks) {return;}
+		for(int it = 0; it < MAX_ITERATIONS; it++) {
+			double change = 0.0;
+			for(int c = 0; c < cells; c++) {
+				if(c == dest || qAbsorb[c] == 0.0) {continue;}
+				double a = 0.0;
+				for(int i = qFirst[c]; i < qFirst[c+1]; i++) {
+					a += qProb[i] * qAbsorb[qTo[i]];
+				}
+				change = Math.max(change, Math.abs(a - qAbsorb[c]));
+				qAbsorb[c] = a;
+			}
+			if(change < ABSORPTION_TOLERANCE) {return;}
+		}
+		System.err.println("WARNING: Absorption probabilities of the lumped chain did not converge!");
+	}
+
+	/**
+	 * Same as propagate() on the lumped chain, the visits of every orbit (summed over its members) end up in qVisits
+	 */
+	void reducedPropagation(int dest, int cells, double total) {
+		double threshold = EPSILON * total;
+		boolean pushed = true;
+		while(pushed) {
+			pushed = false;
+			for(int c = 0; c < cells; c++) {
+				double m = qPending[c];
+				if(m == 0.0 || (m <= threshold && c != dest)) {continue;}
+				qPending[c] = 0.0;
+				qVisits[c] += m;
+				if(c == dest) {continue;}
+				pushed = true;
+				for(int i = qFirst[c]; i < qFirst[c+1]; i++) {
+					int t = qTo[i];
+					if(qAbsorb[t] == 0.0) {continue;}
+					qPending[t] += m * qProb[i] * qAbsorb[t] / qAbsorb[c];
+				}
+			}
+		}
+	}
+}
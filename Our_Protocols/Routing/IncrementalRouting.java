@@ -0,0 +1,532 @@
+package Routing;
+
+import java.util.Arrays;
+
+import Topology.CLOSNetwork;
+import Topology.CLOSTopology;
+import Topology.ImplicitCLOSNetwork;
+
+/**
+ * Keeps the path of every flow of a traffic matrix routed on an ImplicitCLOSNetwork and updates the loads
+ * incrementally when single links are failed or repaired, or when flows start and end.
+ *
+ * Changing a link only changes the live candidate sets of its two endpoints. However, as the next hop is the
+ * (pHash % number of live candidates)-th live candidate, the decision may change for every flow passing one of the
+ * endpoints, not only for the flows crossing the link. For each router the flows passing it are kept in an index,
+ * and after a change exactly the flows passing an endpoint are re-routed and their loads are replaced.
+ *
+ * The index is maintained lazily: re-routed flows are appended to the lists of the routers on their new path and
+ * stale entries (and duplicates) are dropped whenever a list is scanned.
+ *
+ * Optionally (see enableTimeTracking()) the time integral and the peak of every link load are maintained,
+ * which is used by the discrete-event simulation in DynamicSimulation.
+ *
+ * Memory is proportional to the total length of all paths, so this is intended for all-to-one experiments or
+ * matrices of moderate size. An instance must only be used by one thread.
+ */
+public class IncrementalRouting {
+
+	ImplicitCLOSNetwork net;
+	CLOSTopology topo;
+
+	//Flows. Ids of ended flows are reused.
+	int numFlows;
+	int[] source;
+	int[] destination;
+	double[] weight;
+	boolean[] active;
+	int[] freeIds;
+	int numFree;
+
+	//Current links of each flow, whether it is trapped in a loop and whether it was dropped
+	//at a router without live forwarding candidate (the path then ends at this router)
+	int[][] paths;
+	boolean[] looping;
+	boolean[] dropped;
+
+	//Loads of routers and links, packets in a loop or dropped are excluded (as in ImplicitCLOSNetwork.trafficMatrixRouting())
+	double[] routerLoad;
+	double[] linkLoad;
+	int loopCount;
+	int droppedCount;
+
+	//Router -> flows passing it (may contain stale entries and duplicates)
+	int[][] flowsAt;
+	int[] numFlowsAt;
+
+	//Stamps to deduplicate flows and routers
+	int[] flowStamp;
+	int flowEpoch;
+	int[] scanStamp;
+	int scanEpoch;
+	int[] routerStamp;
+	int routerEpoch;
+
+	//Flows re-routed by the last change and their previous paths (used by undo())
+	int[] changed;
+	int numChanged;
+	int[][] oldPaths;
+	boolean[] oldLooping;
+	boolean[] oldDropped;
+	int lastFailed;
+	int lastRepaired;
+
+	//Time tracking of the link loads: integral up to linkSince, peak, and the links changed at the current time
+	boolean timed;
+	double startTime;
+	double now;
+	double[] linkArea;
+	double[] linkSince;
+	double[] linkPeak;
+	int[] linkStamp;
+	int timeEpoch;
+	int[] touchedLinks;
+	int numTouched;
+
+	/**
+	 * Creates the routing state without any flows (see startFlow())
+	 *
+	 * @param net	Network whose failures are changed through this object from now on
+	 */
+	public IncrementalRouting(ImplicitCLOSNetwork net) {
+		this.net = net;
+		allocate(16);
+	}
+
+	/**
+	 * Routes all flows of the traffic matrix on the current failures of the network
+	 *
+	 * @param net	Network whose failures are changed through this object from now on
+	 * @param matrix	Traffic matrix between the bottom layer routers
+	 */
+	public IncrementalRouting(ImplicitCLOSNetwork net, double[][] matrix) {
+		this.net = net;
+		int n = matrix.length;
+		int count = 0;
+		for(int s = 0; s < n; s++) {
+			for(int d = 0; d < n; d++) {
+				if(s != d && matrix[s][d] >= FlowSampler.MIN_WEIGHT) {count++;}
+			}
+		}
+		allocate(count);
+		for(int s = 0; s < n; s++) {
+			for(int d = 0; d < n; d++) {
+				if(s != d && matrix[s][d] >= FlowSampler.MIN_WEIGHT) {startFlow(s, d, matrix[s][d]);}
+			}
+		}
+	}
+
+	/**
+	 * Routes one unit of traffic from every bottom layer router to dest (all-to-one experiment)
+	 */
+	public IncrementalRouting(ImplicitCLOSNetwork net, int dest) {
+		this.net = net;
+		int numBot = net.topology().numBot;
+		allocate(numBot - 1);
+		for(int s = 0; s < numBot; s++) {
+			if(s != dest) {startFlow(s, dest, 1.0);}
+		}
+	}
+
+	void allocate(int flows) {
+		topo = net.topology();
+		flows = Math.max(flows, 1);
+		source = new int[flows];
+		destination = new int[flows];
+		weight = new double[flows];
+		active = new boolean[flows];
+		freeIds = new int[16];
+		paths = new int[flows][];
+		looping = new boolean[flows];
+		dropped = new boolean[flows];
+		flowStamp = new int[flows];
+		scanStamp = new int[flows];
+		changed = new int[16];
+		oldPaths = new int[16][];
+		oldLooping = new boolean[16];
+		oldDropped = new boolean[16];
+		lastFailed = -1;
+		lastRepaired = -1;
+
+		routerLoad = new double[topo.numRouters];
+		linkLoad = new double[topo.numLinks];
+		routerStamp = new int[topo.numRouters];
+		flowsAt = new int[topo.numRouters][];
+		numFlowsAt = new int[topo.numRouters];
+		for(int r = 0; r < topo.numRouters; r++) {
+			flowsAt[r] = new int[4];
+		}
+	}
+
+	void grow() {
+		int c = 2 * source.length;
+		source = Arrays.copyOf(source, c);
+		destination = Arrays.copyOf(destination, c);
+		weight = Arrays.copyOf(weight, c);
+		active = Arrays.copyOf(active, c);
+		paths = Arrays.copyOf(paths, c);
+		looping = Arrays.copyOf(looping, c);
+		dropped = Arrays.copyOf(dropped, c);
+		flowStamp = Arrays.copyOf(flowStamp, c);
+		scanStamp = Arrays.copyOf(scanStamp, c);
+	}
+
+	/**
+	 * Routes a new flow on the current failures and adds its load
+	 *
+	 * @return	Id of the flow (ids of ended flows are reused)
+	 */
+	public int startFlow(int s, int d, double w) {
+		int f;
+		if(numFree > 0) {
+			f = freeIds[--numFree];
+		}
+		else {
+			if(numFlows == source.length) {grow();}
+			f = numFlows++;
+		}
+		source[f] = s;
+		destination[f] = d;
+		weight[f] = w;
+		active[f] = true;
+		route(f);
+		addLoads(f, 1.0);
+		return f;
+	}
+
+	/**
+	 * Removes the load of the flow. Its id may be returned by a later call to startFlow().
+	 */
+	public void endFlow(int f) {
+		addLoads(f, -1.0);
+		active[f] = false;
+		paths[f] = null;
+		if(numFree == freeIds.length) {freeIds = Arrays.copyOf(freeIds, 2*numFree);}
+		freeIds[numFree++] = f;
+	}
+
+	/**
+	 * Routes the flow on the current failures and adds it to the index
+	 */
+	void route(int f) {
+		int hops = net.routePacket(source[f], destination[f]);
+		int length = net.pathLength();
+		int[] path = new int[length];
+		for(int i = 0; i < length; i++) {
+			path[i] = net.pathLink(i);
+		}
+		paths[f] = path;
+		dropped[f] = hops < 0;
+		looping[f] = hops >= 2*CLOSNetwork.LOOP_MAX - 10;
+
+		routerEpoch++;
+		int r = source[f];
+		index(r, f);
+		for(int link : path) {
+			r = topo.otherEnd(link, r);
+			index(r, f);
+		}
+	}
+
+	void index(int router, int f) {
+		if(routerStamp[router] == routerEpoch) {return;}
+		routerStamp[router] = routerEpoch;
+		if(numFlowsAt[router] == flowsAt[router].length) {
+			int[] grown = new int[2*flowsAt[router].length];
+			System.arraycopy(flowsAt[router], 0, grown, 0, numFlowsAt[router]);
+			flowsAt[router] = grown;
+		}
+		flowsAt[router][numFlowsAt[router]++] = f;
+	}
+
+	void addLoads(int f, double sign) {
+		if(dropped[f]) {
+			droppedCount += (int) sign;
+			return;
+		}
+		if(looping[f]) {
+			loopCount += (int) sign;
+			return;
+		}
+		double w = sign * weight[f];
+		int r = source[f];
+		routerLoad[r] += w;
+		for(int link : paths[f]) {
+			if(timed) {touchLink(link);}
+			linkLoad[link] += w;
+			r = topo.otherEnd(link, r);
+			routerLoad[r] += w;
+		}
+	}
+
+	boolean visits(int f, int router) {
+		if(!active[f]) {return false;}
+		int r = source[f];
+		if(r == router) {return true;}
+		for(int link : paths[f]) {
+			r = topo.otherEnd(link, r);
+			if(r == router) {return true;}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds all flows passing the router to the changed flows and compacts its list
+	 */
+	void collect(int router) {
+		int[] list = flowsAt[router];
+		int kept = 0;
+		scanEpoch++;
+		for(int i = 0; i < numFlowsAt[router]; i++) {
+			int f = list[i];
+			if(scanStamp[f] == scanEpoch || !visits(f, router)) {continue;}
+			scanStamp[f] = scanEpoch;
+			list[kept++] = f;
+			if(flowStamp[f] != flowEpoch) {
+				flowStamp[f] = flowEpoch;
+				if(numChanged == changed.length) {
+					changed = Arrays.copyOf(changed, 2*numChanged);
+					oldPaths = Arrays.copyOf(oldPaths, 2*numChanged);
+					oldLooping = Arrays.copyOf(oldLooping, 2*numChanged);
+					oldDropped = Arrays.copyOf(oldDropped, 2*numChanged);
+				}
+				changed[numChanged++] = f;
+			}
+		}
+		numFlowsAt[router] = kept;
+	}
+
+	/**
+	 * Fails one link and repairs another one, and re-routes all affected flows.
+	 * The change is rejected (and nothing is modified) if failLink is already failed, repairLink is not failed,
+	 * or the forwarding strategy could no longer be employed.
+	 *
+	 * @param failLink	Link to fail, or -1
+	 * @param repairLink	Link to repair, or -1
+	 * @return	Whether the change was applied
+	 */
+	public boolean change(int failLink, int repairLink) {
+		if((failLink >= 0 && net.isFailed(failLink)) || (repairLink >= 0 && !net.isFailed(repairLink))) {
+			numChanged = 0;
+			return false;
+		}
+		if(failLink >= 0) {net.failLink(failLink);}
+		if(repairLink >= 0) {net.repairLink(repairLink);}
+		if(failLink >= 0 && !(net.isConnected(topo.lowerEnd(failLink)) && net.isConnected(topo.upperEnd(failLink)))) {
+			net.repairLink(failLink);
+			if(repairLink >= 0) {net.failLink(repairLink);}
+			numChanged = 0;
+			return false;
+		}
+		reroute(failLink, repairLink);
+		return true;
+	}
+
+	/**
+	 * Fails the link (if it is not failed yet) and re-routes all affected flows. Unlike change(), the failure
+	 * is also applied if the strategy can no longer be employed. Packets reaching a router without live
+	 * forwarding candidate are then counted as dropped until the router is connected again.
+	 */
+	public void failLink(int link) {
+		if(net.isFailed(link)) {return;}
+		net.failLink(link);
+		reroute(link, -1);
+	}
+
+	/**
+	 * Fails the links links[from] to links[to-1] (those not failed yet) as failLink(), but re-routes every affected
+	 * flow only once. The batch cannot be reverted by undo().
+	 * 
+	 * @return	Number of re-routed flows
+	 */
+	public int failLinks(int[] links, int from, int to) {
+		lastFailed = -1;
+		lastRepaired = -1;
+		flowEpoch++;
+		numChanged = 0;
+		for(int i = from; i < to; i++) {
+			if(net.isFailed(links[i])) {continue;}
+			net.failLink(links[i]);
+			collect(topo.lowerEnd(links[i]));
+			collect(topo.upperEnd(links[i]));
+		}
+		for(int i = 0; i < numChanged; i++) {
+			int f = changed[i];
+			addLoads(f, -1.0);
+			route(f);
+			addLoads(f, 1.0);
+		}
+		int rerouted = numChanged;
+		numChanged = 0;
+		return rerouted;
+	}
+	
+	/**
+	 * Repairs the link (if it is failed) and re-routes all affected flows
+	 */
+	public void repairLink(int link) {
+		if(!net.isFailed(link)) {return;}
+		net.repairLink(link);
+		reroute(-1, link);
+	}
+
+	void reroute(int failLink, int repairLink) {
+		lastFailed = failLink;
+		lastRepaired = repairLink;
+
+		flowEpoch++;
+		numChanged = 0;
+		for(int link : new int[] {failLink, repairLink}) {
+			if(link < 0) {continue;}
+			collect(topo.lowerEnd(link));
+			collect(topo.upperEnd(link));
+		}
+		for(int i = 0; i < numChanged; i++) {
+			int f = changed[i];
+			oldPaths[i] = paths[f];
+			oldLooping[i] = looping[f];
+			oldDropped[i] = dropped[f];
+			addLoads(f, -1.0);
+			route(f);
+			addLoads(f, 1.0);
+		}
+	}
+
+	/**
+	 * Reverts the last successful change(). Must be called before any other change is made.
+	 */
+	public void undo() {
+		if(lastFailed >= 0) {net.repairLink(lastFailed);}
+		if(lastRepaired >= 0) {net.failLink(lastRepaired);}
+		for(int i = 0; i < numChanged; i++) {
+			int f = changed[i];
+			addLoads(f, -1.0);
+			paths[f] = oldPaths[i];
+			looping[f] = oldLooping[i];
+			dropped[f] = oldDropped[i];
+			addLoads(f, 1.0);
+		}
+		numChanged = 0;
+		lastFailed = -1;
+		lastRepaired = -1;
+	}
+
+	//+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+ Time Tracking +-+-+-+-+-+-+-+-+-+-+-
+
+	/**
+	 * Starts to maintain the time integral and the peak of every link load from the given time on
+	 */
+	public void enableTimeTracking(double start) {
+		timed = true;
+		startTime = start;
+		now = start;
+		linkArea = new double[topo.numLinks];
+		linkSince = new double[topo.numLinks];
+		linkPeak = new double[topo.numLinks];
+		linkStamp = new int[topo.numLinks];
+		touchedLinks = new int[64];
+		Arrays.fill(linkSince, start);
+		timeEpoch = 1;
+		for(int l = 0; l < topo.numLinks; l++) {
+			linkPeak[l] = linkLoad[l];
+		}
+	}
+
+	/**
+	 * Advances the clock. All following changes happen at time t (which must not be smaller than the current time).
+	 * Peaks are only taken from the loads between two points in time, so intermediate values of a re-routing do not count.
+	 */
+	public void advanceTime(double t) {
+		flushPeaks();
+		now = t;
+	}
+
+	void touchLink(int link) {
+		if(linkStamp[link] == timeEpoch) {return;}
+		linkStamp[link] = timeEpoch;
+		linkArea[link] += linkLoad[link] * (now - linkSince[link]);
+		linkSince[link] = now;
+		if(numTouched == touchedLinks.length) {touchedLinks = Arrays.copyOf(touchedLinks, 2*numTouched);}
+		touchedLinks[numTouched++] = link;
+	}
+
+	void flushPeaks() {
+		for(int i = 0; i < numTouched; i++) {
+			int l = touchedLinks[i];
+			linkPeak[l] = Math.max(linkPeak[l], linkLoad[l]);
+		}
+		numTouched = 0;
+		timeEpoch++;
+	}
+
+	/**
+	 * Time-averaged load of every link between the start of the tracking and the given time
+	 */
+	public double[] timeAveragedLinkLoad(double end) {
+		double[] avg = new double[topo.numLinks];
+		for(int l = 0; l < topo.numLinks; l++) {
+			double area = linkArea[l] + linkLoad[l] * (end - linkSince[l]);
+			avg[l] = area / (end - startTime);
+		}
+		return avg;
+	}
+
+	/**
+	 * Largest load of every link at any point in time since the start of the tracking
+	 */
+	public double[] peakLinkLoad() {
+		flushPeaks();
+		return linkPeak;
+	}
+
+	//+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+ Accessors +-+-+-+-+-+-+-+-+-+-+-
+
+	/**
+	 * Number of flows that were re-routed by the last change
+	 */
+	public int numChanged() {
+		return numChanged;
+	}
+
+	/**
+	 * Number of active flows
+	 */
+	public int numFlows() {
+		return numFlows - numFree;
+	}
+
+	public double[] routerLoad() {
+		return routerLoad;
+	}
+
+	public double[] linkLoad() {
+		return linkLoad;
+	}
+
+	public int loopCount() {
+		return loopCount;
+	}
+
+	/**
+	 * Number of active flows that are dropped at a router without live forwarding candidate
+	 */
+	public int droppedCount() {
+		return droppedCount;
+	}
+
+	public double maxRouterLoad() {
+		return max(routerLoad);
+	}
+
+	public double maxLinkLoad() {
+		return max(linkLoad);
+	}
+
+	static double max(double[] values) {
+		double max = 0.0;
+		for(double v : values) {
+			if(v > max) {max = v;}
+		}
+		return max;
+	}
+}
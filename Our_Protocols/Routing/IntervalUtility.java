@@ -73,4 +73,33 @@ public class IntervalUtility {
 		return result;
 	}
 	
+	/**
+	 * Closed form of the first node id contained in the interval intervalID.
+	 * Unlike getIndicesInInterval, this function does not allocate any memory.
+	 * 
+	 * @param numNodes	total number of nodes that are split into intervals
+	 * @param numIntervals	number of intervals to split the nodes into
+	 * @param intervalID	the interval to derive the first node ID for
+	 * @return	smallest node id in the interval intervalID
+	 */
+	public static int getIntervalStart(int numNodes, int numIntervals, int intervalID) {
+		int intervalSize = numNodes / numIntervals;
+		int rest = numNodes - intervalSize * numIntervals;
+		return intervalID * intervalSize + Math.min(intervalID, rest);
+	}
+	
+	/**
+	 * Closed form of the number of nodes contained in the interval intervalID.
+	 * 
+	 * @param numNodes	total number of nodes that are split into intervals
+	 * @param numIntervals	number of intervals to split the nodes into
+	 * @param intervalID	the interval to derive the size for
+	 * @return	number of node ids in the interval intervalID
+	 */
+	public static int getIntervalSize(int numNodes, int numIntervals, int intervalID) {
+		int intervalSize = numNodes / numIntervals;
+		int rest = numNodes - intervalSize * numIntervals;
+		return intervalID < rest ? intervalSize + 1 : intervalSize;
+	}
+	
 }
@@ -0,0 +1,420 @@
+package Routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import Topology.CLOSNetwork;
+import Topology.CLOSTopology;
+import Topology.ImplicitCLOSNetwork;
+import Topology.Strategy;
+
+/**
+ * Determines for every live link of a failure scenario how much failing this single additional link
+ * increases the maximum router load, the maximum link load and the number of packets in a loop.
+ *
+ * All flows are routed once on the scenario. Their paths and an index from each router to the flows passing it
+ * are stored in compressed (CSR) form and shared by all threads. For each candidate link only the flows passing
+ * one of its endpoints are re-routed (failing a link changes the candidate sets of both endpoints, see
+ * IncrementalRouting), and the difference of their loads is applied to the base loads.
+ * The new maxima are obtained from the changed entries and the largest unchanged base load.
+ *
+ * Links are evaluated in parallel, each thread uses its own copy of the failure overlay.
+ */
+public class LinkCriticality {
+
+	CLOSTopology topo;
+	Strategy strategy;
+	ImplicitCLOSNetwork base;
+
+	//Routed flows
+	int numFlows;
+	int[] source;
+	int[] destination;
+	double[] weight;
+
+	//Links of the path of flow f are pathLinks[pathStart[f]] to pathLinks[pathStart[f+1]-1]
+	int[] pathStart;
+	int[] pathLinks;
+	boolean[] looping;
+
+	//Flows passing router r are routerFlows[routerStart[r]] to routerFlows[routerStart[r+1]-1]
+	int[] routerStart;
+	int[] routerFlows;
+
+	//Loads of the scenario and the routers/links ordered by decreasing load
+	double[] routerLoad;
+	double[] linkLoad;
+	int loopCount;
+	int[] routerOrder;
+	int[] linkOrder;
+
+	//Outcome for each link (NaN for links that are failed in the scenario)
+	double[] maxNode;
+	double[] maxLink;
+	int[] loops;
+	int[] rerouted;
+	boolean[] feasible;
+
+	/**
+	 * Routes all flows of the traffic matrix on the failures of the given network
+	 *
+	 * @param base	Network containing the failure scenario (it is not modified)
+	 * @param matrix	Traffic matrix, or null for an all-to-one experiment towards dest
+	 * @param dest	Destination of the all-to-one experiment, ignored if matrix is given
+	 */
+	public LinkCriticality(ImplicitCLOSNetwork base, double[][] matrix, int dest) {
+		this.base = base;
+		this.topo = base.topology();
+		this.strategy = base.strategy();
+
+		int n = topo.numBot;
+		int count = 0;
+		for(int s = 0; s < n; s++) {
+			for(int d = 0; d < n; d++) {
+				if(s != d && (matrix == null ? d == dest : matrix[s][d] >= FlowSampler.MIN_WEIGHT)) {count++;}
+			}
+		}
+		source = new int[count];
+		destination = new int[count];
+		weight = new double[count];
+		for(int s = 0; s < n; s++) {
+			for(int d = 0; d < n; d++) {
+				if(s != d && (matrix == null ? d == dest : matrix[s][d] >= FlowSampler.MIN_WEIGHT)) {
+					source[numFlows] = s;
+					destination[numFlows] = d;
+					weight[numFlows] = matrix == null ? 1.0 : matrix[s][d];
+					numFlows++;
+				}
+			}
+		}
+		routeBase();
+		buildRouterIndex();
+	}
+
+	void routeBase() {
+		routerLoad = new double[topo.numRouters];
+		linkLoad = new double[topo.numLinks];
+		pathStart = new int[numFlows + 1];
+		pathLinks = new int[4 * numFlows + 16];
+		looping = new boolean[numFlows];
+		int size = 0;
+		for(int f = 0; f < numFlows; f++) {
+			int hops = base.routePacket(source[f], destination[f]);
+			if(size + hops > pathLinks.length) {
+				pathLinks = Arrays.copyOf(pathLinks, Math.max(2 * pathLinks.length, size + hops));
+			}
+			for(int i = 0; i < hops; i++) {
+				pathLinks[size++] = base.pathLink(i);
+			}
+			pathStart[f + 1] = size;
+			looping[f] = hops >= 2*CLOSNetwork.LOOP_MAX - 10;
+			if(looping[f]) {
+				loopCount++;
+				continue;
+			}
+			for(int i = 0; i <= hops; i++) {
+				routerLoad[base.pathRouter(i)] += weight[f];
+			}
+			for(int i = 0; i < hops; i++) {
+				linkLoad[base.pathLink(i)] += weight[f];
+			}
+		}
+		routerOrder = orderByLoad(routerLoad);
+		linkOrder = orderByLoad(linkLoad);
+	}
+
+	void buildRouterIndex() {
+		int[] stamp = new int[topo.numRouters];
+		routerStart = new int[topo.numRouters + 1];
+		for(int pass = 0; pass < 2; pass++) {
+			int[] fill = pass == 0 ? null : Arrays.copyOf(routerStart, topo.numRouters);
+			Arrays.fill(stamp, -1);
+			for(int f = 0; f < numFlows; f++) {
+				int r = source[f];
+				for(int i = pathStart[f]; i <= pathStart[f + 1]; i++) {
+					if(i > pathStart[f]) {r = topo.otherEnd(pathLinks[i - 1], r);}
+					if(stamp[r] == f) {continue;}
+					stamp[r] = f;
+					if(pass == 0) {routerStart[r + 1]++;}
+					else {routerFlows[fill[r]++] = f;}
+				}
+			}
+			if(pass == 0) {
+				for(int r = 0; r < topo.numRouters; r++) {
+					routerStart[r + 1] += routerStart[r];
+				}
+				routerFlows = new int[routerStart[topo.numRouters]];
+			}
+		}
+	}
+
+	static int[] orderByLoad(double[] load) {
+		Integer[] ids = new Integer[load.length];
+		for(int i = 0; i < ids.length; i++) {
+			ids[i] = i;
+		}
+		Arrays.sort(ids, (a, b) -> Double.compare(load[b], load[a]));
+		int[] order = new int[ids.length];
+		for(int i = 0; i < ids.length; i++) {
+			order[i] = ids[i];
+		}
+		return order;
+	}
+
+	/**
+	 * Evaluates every live link of the scenario
+	 *
+	 * @param threads	Number of worker threads
+	 */
+	public void run(int threads) {
+		maxNode = new double[topo.numLinks];
+		maxLink = new double[topo.numLinks];
+		loops = new int[topo.numLinks];
+		rerouted = new int[topo.numLinks];
+		feasible = new boolean[topo.numLinks];
+		Arrays.fill(maxNode, Double.NaN);
+		Arrays.fill(maxLink, Double.NaN);
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<?>> tasks = new ArrayList<Future<?>>();
+		for(int t = 0; t < threads; t++) {
+			final int first = t;
+			tasks.add(pool.submit(() -> {
+				Worker w = new Worker();
+				for(int link = first; link < topo.numLinks; link += threads) {
+					if(!base.isFailed(link)) {w.evaluate(link);}
+				}
+			}));
+		}
+		for(Future<?> task : tasks) {
+			try {
+				task.get();
+			} catch (InterruptedException | ExecutionException ex) {
+				System.err.println("ERROR: Criticality worker failed!");
+				ex.printStackTrace();
+			}
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * Evaluation state of a single thread
+	 */
+	class Worker {
+		ImplicitCLOSNetwork net = new ImplicitCLOSNetwork(topo, strategy);
+
+		int epoch;
+		int[] flowStamp = new int[numFlows];
+
+		//Load differences and the routers/links they were applied to
+		double[] routerDelta = new double[topo.numRouters];
+		double[] linkDelta = new double[topo.numLinks];
+		int[] routerStamp = new int[topo.numRouters];
+		int[] linkStamp = new int[topo.numLinks];
+		int[] touchedRouters = new int[64];
+		int[] touchedLinks = new int[64];
+		int numTouchedRouters;
+		int numTouchedLinks;
+
+		Worker() {
+			net.setOverlay(base.overlay().copy());
+		}
+
+		void evaluate(int link) {
+			net.failLink(link);
+			int lower = topo.lowerEnd(link);
+			int upper = topo.upperEnd(link);
+			if(!net.isConnected(lower) || !net.isConnected(upper)) {
+				net.repairLink(link);
+				feasible[link] = false;
+				return;
+			}
+			epoch++;
+			numTouchedRouters = 0;
+			numTouchedLinks = 0;
+			int loopDelta = 0;
+			int count = 0;
+			for(int r : new int[] {lower, upper}) {
+				for(int i = routerStart[r]; i < routerStart[r + 1]; i++) {
+					int f = routerFlows[i];
+					if(flowStamp[f] == epoch) {continue;}
+					flowStamp[f] = epoch;
+					count++;
+
+					//Remove the path of the scenario
+					if(looping[f]) {
+						loopDelta--;
+					}
+					else {
+						int cur = source[f];
+						addRouter(cur, -weight[f]);
+						for(int j = pathStart[f]; j < pathStart[f + 1]; j++) {
+							addLink(pathLinks[j], -weight[f]);
+							cur = topo.otherEnd(pathLinks[j], cur);
+							addRouter(cur, -weight[f]);
+						}
+					}
+
+					//Add the new path
+					int hops = net.routePacket(source[f], destination[f]);
+					if(hops >= 2*CLOSNetwork.LOOP_MAX - 10) {
+						loopDelta++;
+					}
+					else {
+						for(int j = 0; j <= hops; j++) {
+							addRouter(net.pathRouter(j), weight[f]);
+						}
+						for(int j = 0; j < hops; j++) {
+							addLink(net.pathLink(j), weight[f]);
+						}
+					}
+				}
+			}
+			net.repairLink(link);
+
+			feasible[link] = true;
+			rerouted[link] = count;
+			loops[link] = loopCount + loopDelta;
+			maxNode[link] = newMax(routerLoad, routerDelta, routerOrder, routerStamp, touchedRouters, numTouchedRouters);
+			maxLink[link] = newMax(linkLoad, linkDelta, linkOrder, linkStamp, touchedLinks, numTouchedLinks);
+			for(int i = 0; i < numTouchedRouters; i++) {routerDelta[touchedRouters[i]] = 0.0;}
+			for(int i = 0; i < numTouchedLinks; i++) {linkDelta[touchedLinks[i]] = 0.0;}
+		}
+
+		void addRouter(int r, double w) {
+			if(routerStamp[r] != epoch) {
+				routerStamp[r] = epoch;
+				if(numTouchedRouters == touchedRouters.length) {touchedRouters = Arrays.copyOf(touchedRouters, 2*numTouchedRouters);}
+				touchedRouters[numTouchedRouters++] = r;
+			}
+			routerDelta[r] += w;
+		}
+
+		void addLink(int l, double w) {
+			if(linkStamp[l] != epoch) {
+				linkStamp[l] = epoch;
+				if(numTouchedLinks == touchedLinks.length) {touchedLinks = Arrays.copyOf(touchedLinks, 2*numTouchedLinks);}
+				touchedLinks[numTouchedLinks++] = l;
+			}
+			linkDelta[l] += w;
+		}
+
+		/**
+		 * Maximum of load + delta, where only the touched entries have a non-zero delta
+		 */
+		double newMax(double[] load, double[] delta, int[] order, int[] stamp, int[] touched, int numTouched) {
+			double max = 0.0;
+			for(int i = 0; i < numTouched; i++) {
+				max = Math.max(max, load[touched[i]] + delta[touched[i]]);
+			}
+			for(int id : order) {
+				if(stamp[id] != epoch) {
+					return Math.max(max, load[id]);
+				}
+			}
+			return max;
+		}
+	}
+
+	/**
+	 * Live links of the scenario ranked by their criticality: links whose failure makes the strategy
+	 * inapplicable come first, followed by the remaining links ordered by the number of packets in a loop,
+	 * the maximum link load and the maximum router load after their failure (all decreasing).
+	 */
+	public int[] ranking() {
+		ArrayList<Integer> live = new ArrayList<Integer>();
+		for(int l = 0; l < topo.numLinks; l++) {
+			if(!base.isFailed(l)) {live.add(l);}
+		}
+		live.sort((a, b) -> {
+			if(feasible[a] != feasible[b]) {return feasible[a] ? 1 : -1;}
+			if(!feasible[a]) {return Integer.compare(a, b);}
+			if(loops[a] != loops[b]) {return Integer.compare(loops[b], loops[a]);}
+			if(maxLink[a] != maxLink[b]) {return Double.compare(maxLink[b], maxLink[a]);}
+			if(maxNode[a] != maxNode[b]) {return Double.compare(maxNode[b], maxNode[a]);}
+			return Integer.compare(a, b);
+		});
+		int[] ranking = new int[live.size()];
+		for(int i = 0; i < ranking.length; i++) {
+			ranking[i] = live.get(i);
+		}
+		return ranking;
+	}
+
+	public CLOSTopology topology() {
+		return topo;
+	}
+
+	public Strategy strategy() {
+		return strategy;
+	}
+
+	public int numFlows() {
+		return numFlows;
+	}
+
+	//Values of the scenario itself
+
+	public double baseMaxNode() {
+		return routerLoad[routerOrder[0]];
+	}
+
+	public double baseMaxLink() {
+		return linkLoad[linkOrder[0]];
+	}
+
+	public int baseLoops() {
+		return loopCount;
+	}
+
+	//Values after additionally failing the given link (only meaningful if isFeasible(link))
+
+	public boolean isFeasible(int link) {
+		return feasible[link];
+	}
+
+	public double maxNode(int link) {
+		return maxNode[link];
+	}
+
+	public double maxLink(int link) {
+		return maxLink[link];
+	}
+
+	public int loops(int link) {
+		return loops[link];
+	}
+
+	/**
+	 * Number of flows that were re-routed to evaluate the link
+	 */
+	public int rerouted(int link) {
+		return rerouted[link];
+	}
+
+	/**
+	 * The most critical links (all if top <= 0) in the order of ranking(), each row in the order of
+	 * Statistics.LoadStatistics.CRITICALITY_HEAD. The values after the failure are only given for feasible links.
+	 */
+	public String[][] table(int top) {
+		int[] ranking = ranking();
+		String[][] rows = new String[top > 0 ? Math.min(top, ranking.length) : ranking.length][];
+		for(int i = 0; i < rows.length; i++) {
+			int link = ranking[i];
+			String lower = topo.routerToString(topo.lowerEnd(link));
+			String upper = topo.routerToString(topo.upperEnd(link));
+			if(feasible[link]) {
+				rows[i] = new String[] {"" + link, lower, upper, "true", "" + maxNode[link], "" + maxLink[link], "" + loops[link],
+						"" + (maxNode[link] - baseMaxNode()), "" + (maxLink[link] - baseMaxLink()), "" + (loops[link] - baseLoops()), "" + rerouted[link]};
+			}
+			else {
+				rows[i] = new String[] {"" + link, lower, upper, "false"};
+			}
+		}
+		return rows;
+	}
+}
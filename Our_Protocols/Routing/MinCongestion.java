@@ -0,0 +1,612 @@
+package Routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import Statistics.Result;
+import Topology.CLOSTopology;
+import Topology.Connectivity;
+import Topology.FailureOverlay;
+
+/**
+ * Approximation of the smallest possible maximum link load (min-congestion multicommodity flow) of a traffic matrix
+ * under the failures of a FailureOverlay. This is the baseline against which the maximum link load of a
+ * forwarding strategy can be compared (see Result.optEdge and the column EdgeRatio of log.csv).
+ *
+ * The solver works with multiplicative link weights in the style of Garg and Koenemann: the weight of a link is
+ * exp(beta * load), where beta = ln(m) / (epsilon * max load) and m is the number of live links. Every round each
+ * commodity is split over its up-down paths, preferring paths of small weight, and the resulting loads are mixed into
+ * the current flow (Frank-Wolfe step with line search on the smoothed maximum). The first round splits evenly (ECMP),
+ * which is optimal without failures.
+ *
+ * The computed flow is an upper bound on the optimum. Lower bounds are the demand crossing the cut around a BOT router
+ * or a pod divided by its number of live links, and for any weights
+ * 	sum over commodities of demand * (weighted distance) / (sum of all weights)
+ * so the result is an interval [lowerBound(), maxLoad()] containing the optimum.
+ *
+ * The structure of the CLOS topology keeps a round cheap: the path weights factor over the links, so the share of
+ * each plane i (the TOP routers with idLocal i and the BLOCK routers i*h..i*h+h-1) and of each BLOCK router is
+ * aggregated per pair of pods, and splitting a commodity costs O(h). Only commodities without any live up-down path
+ * need Dijkstra's algorithm on the whole topology.
+ *
+ * Loads are undirected as in ImplicitCLOSNetwork, i.e. both directions of a link share its capacity of 1 unit.
+ * All demand between connected BOT routers is routed, whereas the loads of a strategy exclude packets trapped in a
+ * forwarding loop, so a strategy with many loops can have a smaller maximum load than the optimum.
+ */
+public class MinCongestion {
+
+	CLOSTopology topo;
+	FailureOverlay overlay;
+	int k, h;
+
+	//Demand: the full matrix, or the column towards columnDest if matrix is null
+	double[][] matrix;
+	double[] column;
+	int columnDest;
+
+	//Live links of every router in compressed (CSR) form
+	int[] adjStart;
+	int[] adjLink;
+	int[] adjRouter;
+	int numLive;
+	Connectivity connectivity;
+
+	//Link loads of the current flow and of the flow with the smallest maximum so far
+	double[] load;
+	double[] bestLoad;
+	double maxLoad = Double.POSITIVE_INFINITY;
+	double lowerBound;
+	int rounds;
+	double unroutable;
+
+	//Lower bound for the temperature of the split, so that the factors of long paths do not underflow
+	static final double MIN_TEMPERATURE = 0.02;
+
+	/**
+	 * Min congestion of a traffic matrix between BOT routers
+	 */
+	public MinCongestion(CLOSTopology topo, FailureOverlay overlay, double[][] matrix) {
+		this(topo, overlay);
+		this.matrix = matrix;
+	}
+
+	/**
+	 * Min congestion of all-to-one traffic (one unit from every other BOT router) towards the BOT router dest
+	 */
+	public MinCongestion(CLOSTopology topo, FailureOverlay overlay, int dest) {
+		this(topo, overlay);
+		column = new double[topo.numBot];
+		Arrays.fill(column, 1.0);
+		columnDest = dest;
+	}
+
+	MinCongestion(CLOSTopology topo, FailureOverlay overlay) {
+		this.topo = topo;
+		this.overlay = overlay;
+		this.k = topo.k;
+		this.h = topo.h;
+
+		adjStart = new int[topo.numRouters + 1];
+		for(int r = 0; r < topo.numRouters; r++) {
+			for(int i = 0; i < topo.degree(r); i++) {
+				if(!overlay.isFailed(topo.incidentLink(r, i))) {adjStart[r + 1]++;}
+			}
+		}
+		for(int r = 0; r < topo.numRouters; r++) {
+			adjStart[r + 1] += adjStart[r];
+		}
+		adjLink = new int[adjStart[topo.numRouters]];
+		adjRouter = new int[adjLink.length];
+		for(int r = 0, pos = 0; r < topo.numRouters; r++) {
+			for(int i = 0; i < topo.degree(r); i++) {
+				int link = topo.incidentLink(r, i);
+				if(overlay.isFailed(link)) {continue;}
+				adjLink[pos] = link;
+				adjRouter[pos] = topo.otherEnd(link, r);
+				pos++;
+			}
+		}
+		numLive = adjLink.length / 2;
+	}
+
+	/**
+	 * Runs rounds until maxLoad() is within a factor 1+epsilon of the cut lower bound or maxRounds rounds were made,
+	 * then bounds the optimum from below with the final weights (see dualLowerBound()).
+	 *
+	 * @param epsilon	Target relative gap, also determines the sharpness of the weights
+	 * @param maxRounds	Maximum number of rounds
+	 * @param threads	Number of worker threads, each routes the commodities of a subset of the sources
+	 */
+	public void solve(double epsilon, int maxRounds, int threads) {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		int m = topo.numLinks;
+		connectivity = new Connectivity(topo, overlay);
+		double cut = cutLowerBound();
+		double[] weights = new double[m];
+		for(int l = 0; l < m; l++) {
+			weights[l] = overlay.isFailed(l) ? Double.POSITIVE_INFINITY : 1.0;
+		}
+		double beta = 0.0;
+		double logM = Math.log(Math.max(numLive, 2));
+
+		for(rounds = 0; rounds < maxRounds; rounds++) {
+			//The first round splits evenly over all live up-down paths (ECMP), later ones prefer light paths
+			double temperature = rounds == 0 ? Double.POSITIVE_INFINITY : Math.max(MIN_TEMPERATURE, 1.0 / rounds);
+			double[] response = new double[m];
+			splitResponse(weights, temperature, response, pool, threads);
+
+			if(load == null) {
+				load = response;
+			}
+			else {
+				double gamma = lineSearch(load, response, beta);
+				for(int l = 0; l < m; l++) {
+					load[l] += gamma * (response[l] - load[l]);
+				}
+			}
+			double max = 0.0;
+			for(double x : load) {
+				if(x > max) {max = x;}
+			}
+			//The line search minimizes the smoothed maximum, so the maximum itself may increase
+			if(max < maxLoad) {
+				maxLoad = max;
+				bestLoad = load.clone();
+			}
+			if(maxLoad <= (1 + epsilon) * cut) {
+				rounds++;
+				break;
+			}
+
+			beta = logM / (epsilon * max);
+			for(int l = 0; l < m; l++) {
+				if(!overlay.isFailed(l)) {weights[l] = Math.exp(beta * (load[l] - max));}
+			}
+		}
+		lowerBound = maxLoad <= (1 + epsilon) * cut ? cut : Math.max(cut, dualLowerBound(weights, pool, threads));
+		pool.shutdown();
+	}
+
+	/**
+	 * Largest ratio of the (connected) demand crossing a cut to the number of live links of the cut,
+	 * over the cuts around every BOT router and around every pod
+	 */
+	double cutLowerBound() {
+		double[] botDemand = new double[topo.numBot];
+		double[] podDemand = new double[k];
+		unroutable = 0.0;
+		for(int s = 0; s < topo.numBot; s++) {
+			int dFrom = matrix == null ? columnDest : 0;
+			int dTo = matrix == null ? columnDest + 1 : topo.numBot;
+			for(int d = dFrom; d < dTo; d++) {
+				double demand = matrix == null ? column[s] : matrix[s][d];
+				if(s == d || demand < 0.0000001) {continue;}
+				if(!connectivity.connected(s, d)) {
+					unroutable += demand;
+					continue;
+				}
+				botDemand[s] += demand;
+				botDemand[d] += demand;
+				if(s / h != d / h) {
+					podDemand[s / h] += demand;
+					podDemand[d / h] += demand;
+				}
+			}
+		}
+		double bound = 0.0;
+		for(int s = 0; s < topo.numBot; s++) {
+			int live = adjStart[s + 1] - adjStart[s];
+			if(live > 0) {bound = Math.max(bound, botDemand[s] / live);}
+		}
+		for(int p = 0; p < k; p++) {
+			int live = 0;
+			for(int i = 0; i < h; i++) {
+				for(int j = 0; j < h; j++) {
+					if(!overlay.isFailed(topo.blockLink(p, i, j))) {live++;}
+				}
+			}
+			if(live > 0) {bound = Math.max(bound, podDemand[p] / live);}
+		}
+		return bound;
+	}
+
+	/**
+	 * Minimizes the smoothed maximum (1/beta) ln sum exp(beta * x) of x = load + gamma * (response - load)
+	 * over gamma in [0,1] by golden section search
+	 */
+	double lineSearch(double[] load, double[] response, double beta) {
+		double lo = 0.0, hi = 1.0;
+		double phi = (Math.sqrt(5) - 1) / 2;
+		double a = hi - phi * (hi - lo), b = lo + phi * (hi - lo);
+		double fa = smoothedMax(load, response, a, beta), fb = smoothedMax(load, response, b, beta);
+		for(int it = 0; it < 25; it++) {
+			if(fa <= fb) {
+				hi = b; b = a; fb = fa;
+				a = hi - phi * (hi - lo);
+				fa = smoothedMax(load, response, a, beta);
+			}
+			else {
+				lo = a; a = b; fa = fb;
+				b = lo + phi * (hi - lo);
+				fb = smoothedMax(load, response, b, beta);
+			}
+		}
+		return (lo + hi) / 2;
+	}
+
+	double smoothedMax(double[] load, double[] response, double gamma, double beta) {
+		double max = 0.0;
+		for(int l = 0; l < load.length; l++) {
+			double x = load[l] + gamma * (response[l] - load[l]);
+			if(x > max) {max = x;}
+		}
+		double sum = 0.0;
+		for(int l = 0; l < load.length; l++) {
+			if(overlay.isFailed(l)) {continue;}
+			sum += Math.exp(beta * (load[l] + gamma * (response[l] - load[l]) - max));
+		}
+		return max + Math.log(sum) / beta;
+	}
+
+	//+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+ Routing Rounds +-+-+-+-+-+-+-+-+-+-+-
+
+	/**
+	 * Splits every commodity over its live up-down paths in proportion to exp(-(weighted path length) / temperature)
+	 * and adds the loads to response. As this factor is the product of the factors of the links, the share of each plane
+	 * and each BLOCK router is computed per link instead of per path. Commodities without live up-down path take their
+	 * lightest path on the whole topology.
+	 */
+	void splitResponse(double[] weights, double temperature, double[] response, ExecutorService pool, int threads) {
+		double[] factor = new double[topo.numLinks];
+		for(int l = 0; l < factor.length; l++) {
+			factor[l] = overlay.isFailed(l) ? 0.0 : temperature == Double.POSITIVE_INFINITY ? 1.0 : Math.exp(-weights[l] / temperature);
+		}
+		//Sum of the factors of the paths via the BLOCK routers of each (source pod, destination pod, plane)
+		double[] mid = new double[k*k*h];
+		for(int p = 0; p < k; p++) {
+			for(int q = 0; q < k; q++) {
+				for(int i = 0; i < h; i++) {
+					double sum = 0.0;
+					for(int j = 0; j < h; j++) {
+						sum += factor[topo.blockLink(p, i, j)] * factor[topo.blockLink(q, i, j)];
+					}
+					mid[(p*k + q)*h + i] = sum;
+				}
+			}
+		}
+
+		ArrayList<Future<Worker>> tasks = new ArrayList<Future<Worker>>();
+		for(int t = 0; t < threads; t++) {
+			final int first = t;
+			tasks.add(pool.submit(() -> {
+				Worker w = new Worker(weights);
+				for(int s = first; s < topo.numBot; s += threads) {
+					w.route(s, factor, mid);
+				}
+				return w;
+			}));
+		}
+
+		double[] midFlow = new double[k*k*h];
+		for(Future<Worker> task : tasks) {
+			Worker w = join(task);
+			for(int l = 0; l < response.length; l++) {
+				response[l] += w.flow[l];
+			}
+			for(int x = 0; x < midFlow.length; x++) {
+				midFlow[x] += w.midFlow[x];
+			}
+		}
+		for(int p = 0; p < k; p++) {
+			for(int q = 0; q < k; q++) {
+				for(int i = 0; i < h; i++) {
+					double f = midFlow[(p*k + q)*h + i];
+					if(f == 0.0) {continue;}
+					f /= mid[(p*k + q)*h + i];
+					for(int j = 0; j < h; j++) {
+						double share = f * factor[topo.blockLink(p, i, j)] * factor[topo.blockLink(q, i, j)];
+						response[topo.blockLink(p, i, j)] += share;
+						response[topo.blockLink(q, i, j)] += share;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Lower bound sum of demand times weighted distance over all connected commodities, divided by the sum of the weights.
+	 *
+	 * Instead of the exact distance the minimum of the lightest up-down path and a bound for all other paths is used:
+	 * such a path has at least two links more than an up-down path and it contains a link of the source,
+	 * a link of the destination and (between different pods) an upper link of both pods.
+	 */
+	double dualLowerBound(double[] weights, ExecutorService pool, int threads) {
+		//Lightest up-down connection of each (source pod, destination pod, plane) and lightest upper link of each pod
+		double[] mid = new double[k*k*h];
+		double[] minUpper = new double[k];
+		Arrays.fill(minUpper, Double.POSITIVE_INFINITY);
+		double minLink = Double.POSITIVE_INFINITY;
+		for(int l = 0; l < weights.length; l++) {
+			if(weights[l] < minLink) {minLink = weights[l];}
+		}
+		for(int p = 0; p < k; p++) {
+			for(int q = 0; q < k; q++) {
+				for(int i = 0; i < h; i++) {
+					double best = Double.POSITIVE_INFINITY;
+					for(int j = 0; j < h; j++) {
+						best = Math.min(best, weights[topo.blockLink(p, i, j)] + weights[topo.blockLink(q, i, j)]);
+						if(q == p) {minUpper[p] = Math.min(minUpper[p], weights[topo.blockLink(p, i, j)]);}
+					}
+					mid[(p*k + q)*h + i] = best;
+				}
+			}
+		}
+		double[] minBot = new double[topo.numBot];
+		for(int s = 0; s < topo.numBot; s++) {
+			minBot[s] = Double.POSITIVE_INFINITY;
+			for(int i = 0; i < h; i++) {
+				minBot[s] = Math.min(minBot[s], weights[s*h + i]);
+			}
+		}
+		final double detour = 2*minLink;
+
+		ArrayList<Future<Worker>> tasks = new ArrayList<Future<Worker>>();
+		for(int t = 0; t < threads; t++) {
+			final int first = t;
+			tasks.add(pool.submit(() -> {
+				Worker w = new Worker(weights);
+				for(int s = first; s < topo.numBot; s += threads) {
+					int p = s / h;
+					int dFrom = matrix == null ? columnDest : 0;
+					int dTo = matrix == null ? columnDest + 1 : topo.numBot;
+					int lastPod = -1;
+					for(int d = dFrom; d < dTo; d++) {
+						double demand = matrix == null ? column[s] : matrix[s][d];
+						if(s == d || demand < 0.0000001 || !connectivity.connected(s, d)) {continue;}
+						int q = d / h;
+						if(q != lastPod) {
+							lastPod = q;
+							for(int i = 0; i < h; i++) {
+								w.via[i] = q == p ? weights[s*h + i] : weights[s*h + i] + mid[(p*k + q)*h + i];
+							}
+						}
+						double dist = minBot[s] + minBot[d] + detour + (q == p ? 0.0 : minUpper[p] + minUpper[q]);
+						for(int i = 0; i < h; i++) {
+							dist = Math.min(dist, w.via[i] + weights[d*h + i]);
+						}
+						w.dual += demand * dist;
+					}
+				}
+				return w;
+			}));
+		}
+		double dual = 0.0;
+		for(Future<Worker> task : tasks) {
+			dual += join(task).dual;
+		}
+		double weightSum = 0.0;
+		for(int l = 0; l < weights.length; l++) {
+			if(!overlay.isFailed(l)) {weightSum += weights[l];}
+		}
+		return dual / weightSum;
+	}
+
+	static Worker join(Future<Worker> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException | ExecutionException ex) {
+			System.err.println("ERROR: Min congestion worker failed!");
+			ex.printStackTrace();
+			System.exit(-1);
+			return null;
+		}
+	}
+
+	/**
+	 * Routing state of a single thread
+	 */
+	class Worker {
+		double[] weights;
+		double[] flow = new double[topo.numLinks];
+		double[] midFlow = new double[k*k*h];
+		double dual;
+
+		//Factor of each plane towards the current destination pod and the flow per unit factor routed through it
+		double[] via = new double[h];
+		double[] share = new double[h];
+
+		//Destinations of the current source without live up-down path
+		int[] pending = new int[topo.numBot];
+
+		//Dijkstra state, the heap is indexed by router
+		double[] dist = new double[topo.numRouters];
+		int[] parentLink = new int[topo.numRouters];
+		int[] heap = new int[topo.numRouters];
+		int[] heapPos = new int[topo.numRouters];
+		int heapSize;
+
+		Worker(double[] weights) {
+			this.weights = weights;
+		}
+
+		/**
+		 * Splits all commodities of the source s, see splitResponse()
+		 */
+		void route(int s, double[] factor, double[] mid) {
+			int p = s / h;
+			int dFrom = matrix == null ? columnDest : 0;
+			int dTo = matrix == null ? columnDest + 1 : topo.numBot;
+			int numPending = 0;
+			int lastPod = -1;
+			for(int d = dFrom; d < dTo; d++) {
+				double demand = matrix == null ? column[s] : matrix[s][d];
+				if(s == d || demand < 0.0000001) {continue;}
+				int q = d / h;
+				if(q != lastPod) {
+					if(lastPod >= 0) {finishPod(s, p, lastPod);}
+					lastPod = q;
+					int base = (p*k + q)*h;
+					for(int i = 0; i < h; i++) {
+						via[i] = q == p ? factor[s*h + i] : factor[s*h + i] * mid[base + i];
+						share[i] = 0.0;
+					}
+				}
+				double z = 0.0;
+				for(int i = 0; i < h; i++) {
+					z += via[i] * factor[d*h + i];
+				}
+				if(z == 0.0) {
+					pending[numPending++] = d;
+					continue;
+				}
+				double r = demand / z;
+				for(int i = 0; i < h; i++) {
+					double f = r * factor[d*h + i];
+					share[i] += f;
+					flow[d*h + i] += f * via[i];
+				}
+			}
+			if(lastPod >= 0) {finishPod(s, p, lastPod);}
+			if(numPending == 0) {return;}
+
+			//Detours through lower layers
+			dijkstra(s);
+			for(int x = 0; x < numPending; x++) {
+				int d = pending[x];
+				double demand = matrix == null ? column[s] : matrix[s][d];
+				if(dist[d] == Double.POSITIVE_INFINITY) {continue;}
+				for(int r = d; r != s; r = topo.otherEnd(parentLink[r], r)) {
+					flow[parentLink[r]] += demand;
+				}
+			}
+		}
+
+		/**
+		 * Adds the flow from s towards the pod q to the up links of s and the planes of the pod pair
+		 */
+		void finishPod(int s, int p, int q) {
+			for(int i = 0; i < h; i++) {
+				double f = via[i] * share[i];
+				flow[s*h + i] += f;
+				if(q != p) {midFlow[(p*k + q)*h + i] += f;}
+			}
+		}
+
+		/**
+		 * Weighted distances of all routers from the source over live links
+		 */
+		void dijkstra(int source) {
+			Arrays.fill(dist, Double.POSITIVE_INFINITY);
+			Arrays.fill(heapPos, -1);
+			heapSize = 0;
+			dist[source] = 0.0;
+			parentLink[source] = -1;
+			push(source);
+			while(heapSize > 0) {
+				int u = pop();
+				for(int a = adjStart[u]; a < adjStart[u + 1]; a++) {
+					int v = adjRouter[a];
+					double dv = dist[u] + weights[adjLink[a]];
+					if(dv < dist[v]) {
+						dist[v] = dv;
+						parentLink[v] = adjLink[a];
+						if(heapPos[v] < 0) {push(v);}
+						else {siftUp(heapPos[v]);}
+					}
+				}
+			}
+		}
+
+		void push(int r) {
+			heap[heapSize] = r;
+			heapPos[r] = heapSize;
+			siftUp(heapSize++);
+		}
+
+		int pop() {
+			int top = heap[0];
+			heapPos[top] = -2;
+			heapSize--;
+			if(heapSize > 0) {
+				heap[0] = heap[heapSize];
+				heapPos[heap[0]] = 0;
+				siftDown(0);
+			}
+			return top;
+		}
+
+		void siftUp(int i) {
+			int r = heap[i];
+			while(i > 0) {
+				int parent = (i - 1) / 2;
+				if(dist[heap[parent]] <= dist[r]) {break;}
+				heap[i] = heap[parent];
+				heapPos[heap[i]] = i;
+				i = parent;
+			}
+			heap[i] = r;
+			heapPos[r] = i;
+		}
+
+		void siftDown(int i) {
+			int r = heap[i];
+			while(true) {
+				int c = 2*i + 1;
+				if(c >= heapSize) {break;}
+				if(c + 1 < heapSize && dist[heap[c + 1]] < dist[heap[c]]) {c++;}
+				if(dist[r] <= dist[heap[c]]) {break;}
+				heap[i] = heap[c];
+				heapPos[heap[i]] = i;
+				i = c;
+			}
+			heap[i] = r;
+			heapPos[r] = i;
+		}
+	}
+
+	//+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+ Results +-+-+-+-+-+-+-+-+-+-+-
+
+	/**
+	 * Maximum link load of the computed flow, i.e. an upper bound on the optimum
+	 */
+	public double maxLoad() {
+		return maxLoad;
+	}
+
+	/**
+	 * Lower bound on the optimum maximum link load
+	 */
+	public double lowerBound() {
+		return lowerBound;
+	}
+
+	/**
+	 * Link loads of the computed flow (indexed by link id)
+	 */
+	public double[] linkLoad() {
+		return bestLoad;
+	}
+
+	public int rounds() {
+		return rounds;
+	}
+
+	/**
+	 * Demand between BOT routers that are not connected by live links (not routed)
+	 */
+	public double unroutable() {
+		return unroutable;
+	}
+
+	/**
+	 * Stores the bounds on the optimum in the result of a strategy on the same traffic and failures
+	 */
+	public void apply(Result r) {
+		r.optEdge = maxLoad;
+		r.optEdgeLowerBound = lowerBound;
+	}
+}
@@ -0,0 +1,392 @@
+package Routing;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import Statistics.DelayHistogram;
+import Topology.CLOSNetwork;
+import Topology.CLOSTopology;
+import Topology.ImplicitCLOSNetwork;
+import Util.EventQueue;
+
+/**
+ * Packet-level simulation of the traffic on an ImplicitCLOSNetwork with link capacities and finite output buffers.
+ *
+ * Packets arrive as a Poisson process with a total rate of packetRate packets per time unit. The source and destination
+ * of a packet are drawn proportional to the traffic matrix (or the source uniformly for an all-to-one experiment).
+ * Every router forwards each packet hop by hop with the forwarding decision of its strategy (ImplicitCLOSNetwork.forward(),
+ * which is the same decision as Node.forward()), so detours due to failures are taken exactly as in the load experiments.
+ *
+ * Each direction of a link is an output port with a FIFO buffer. All packets have the same size, so the transmission time
+ * of a port is 1/capacity (pod links between BOT and TOP and upper links between TOP and BLOCK may have different
+ * capacities). As the service time is deterministic, the number of packets at a port follows from the time until its
+ * last transmission ends, which is the only state stored per port. A packet arriving at a port that already holds
+ * bufferSize packets is dropped.
+ *
+ * Packets in flight are stored in pooled primitive arrays (ids of finished packets are reused) and the events are
+ * kept in an EventQueue, so the simulation does not allocate per packet or event.
+ */
+public class QueueingSimulation {
+
+	//Layers of output ports in the order in which a packet traverses them
+	public static final String[] LAYER_NAMES = {"BotUp", "TopUp", "BlockDown", "TopDown"};
+	static final int BOT_UP = 0;
+	static final int TOP_UP = 1;
+	static final int BLOCK_DOWN = 2;
+	static final int TOP_DOWN = 3;
+
+	static final int ARRIVAL = 0;
+	static final int HOP = 1;
+
+	//Resolution of the delay histograms in buckets per transmission time
+	static final int BUCKETS_PER_SERVICE = 8;
+
+	ImplicitCLOSNetwork net;
+	CLOSTopology topo;
+	EventQueue events = new EventQueue(1024);
+	Random rng;
+
+	//Traffic
+	FlowSampler sampler;
+	int n;
+	int dest = -1;
+	double packetRate;
+
+	//Ports: time at which the last transmission ends (index 2*link for upwards, 2*link+1 for downwards)
+	double podService;
+	double upperService;
+	int bufferSize;
+	double propagationDelay;
+	double[] busyUntil;
+
+	//Pool of packets in flight
+	int[] pSource;
+	int[] pDest;
+	int[] pCur;
+	int[] pLast;
+	int[] pHops;
+	double[] pBorn;
+	int[] pEpoch;
+	int[] freeIds;
+	int numFree;
+	int numPackets;
+
+	//Statistics since the last call to resetStatistics(). The end-to-end statistics (delivered, drops, endToEnd) only count
+	//packets injected in the current epoch, the per layer statistics count all packets arriving at a port.
+	double now;
+	double statStart;
+	int epoch;
+	long injected;
+	long delivered;
+	long loopDrops;
+	long noRouteDrops;
+	long bufferDrops;
+	long[] layerPackets = new long[LAYER_NAMES.length];
+	long[] layerDrops = new long[LAYER_NAMES.length];
+	DelayHistogram[] layerDelay = new DelayHistogram[LAYER_NAMES.length];
+	DelayHistogram endToEnd;
+	long numEvents;
+
+	/**
+	 * @param net	Network whose failures have been placed (and verified by initRoutingState())
+	 * @param matrix	Traffic matrix between the bottom layer routers, or null for an all-to-one experiment towards dest
+	 * @param dest	Destination of the all-to-one experiment, ignored if matrix is given
+	 * @param packetRate	Total number of packets injected per time unit
+	 * @param podCapacity	Packets per time unit a link between BOT and TOP can transmit in each direction
+	 * @param upperCapacity	Packets per time unit a link between TOP and BLOCK can transmit in each direction
+	 * @param bufferSize	Number of packets an output port can hold (including the one in transmission)
+	 * @param propagationDelay	Time between the end of a transmission and the arrival at the next router
+	 * @param seed	Seed of the arrival process
+	 */
+	public QueueingSimulation(ImplicitCLOSNetwork net, double[][] matrix, int dest, double packetRate,
+			double podCapacity, double upperCapacity, int bufferSize, double propagationDelay, long seed) {
+		this.net = net;
+		this.topo = net.topology();
+		this.packetRate = packetRate;
+		this.podService = 1.0 / podCapacity;
+		this.upperService = 1.0 / upperCapacity;
+		this.bufferSize = bufferSize;
+		this.propagationDelay = propagationDelay;
+		this.rng = new Random(seed);
+		if(matrix != null) {
+			sampler = new FlowSampler(matrix);
+			n = matrix.length;
+		}
+		else {
+			this.dest = dest;
+			n = topo.numBot;
+		}
+		busyUntil = new double[2*topo.numLinks];
+
+		int capacity = 1024;
+		pSource = new int[capacity];
+		pDest = new int[capacity];
+		pCur = new int[capacity];
+		pLast = new int[capacity];
+		pHops = new int[capacity];
+		pBorn = new double[capacity];
+		pEpoch = new int[capacity];
+		freeIds = new int[capacity];
+
+		for(int l = 0; l < LAYER_NAMES.length; l++) {
+			double service = (l == BOT_UP || l == TOP_DOWN) ? podService : upperService;
+			layerDelay[l] = new DelayHistogram(service / BUCKETS_PER_SERVICE, BUCKETS_PER_SERVICE * (bufferSize + 1));
+		}
+		//Four queues and links on a shortest path between pods, detours are collected in the last bucket
+		double pathBound = 4 * ((bufferSize + 1) * Math.max(podService, upperService) + propagationDelay);
+		endToEnd = new DelayHistogram(pathBound / 1024, 2048);
+
+		events.add(exponential(), EventQueue.payload(ARRIVAL, 0));
+	}
+
+	double exponential() {
+		return -Math.log(1.0 - rng.nextDouble()) / packetRate;
+	}
+
+	/**
+	 * Processes all events within the next duration time units
+	 */
+	public void run(double duration) {
+		double horizon = now + duration;
+		while(!events.isEmpty() && events.peekTime() <= horizon) {
+			double t = events.peekTime();
+			long event = events.poll();
+			now = t;
+			numEvents++;
+			if(EventQueue.type(event) == ARRIVAL) {
+				inject(t);
+				events.add(t + exponential(), EventQueue.payload(ARRIVAL, 0));
+			}
+			else {
+				arrive(EventQueue.id(event), t);
+			}
+		}
+		now = horizon;
+	}
+
+	void inject(double t) {
+		int s, d;
+		if(sampler != null) {
+			int pair = sampler.drawPair(rng);
+			s = pair / n;
+			d = pair % n;
+		}
+		else {
+			d = dest;
+			s = rng.nextInt(n - 1);
+			if(s >= dest) {s++;}
+		}
+		int p = allocate();
+		pSource[p] = s;
+		pDest[p] = d;
+		pCur[p] = s;
+		pLast[p] = s;
+		pHops[p] = 0;
+		pBorn[p] = t;
+		pEpoch[p] = epoch;
+		injected++;
+		arrive(p, t);
+	}
+
+	/**
+	 * Packet p arrives at router pCur[p] at time t. It is either delivered, or enqueued at the output port chosen by the strategy.
+	 */
+	void arrive(int p, double t) {
+		int cur = pCur[p];
+		boolean counted = pEpoch[p] == epoch;
+		if(cur == pDest[p]) {
+			if(counted) {
+				delivered++;
+				endToEnd.add(t - pBorn[p]);
+			}
+			release(p);
+			return;
+		}
+		int link = net.forward(cur, pSource[p], pDest[p], pLast[p], pHops[p]);
+		if(link < 0) {
+			if(counted) {noRouteDrops++;}
+			release(p);
+			return;
+		}
+		boolean up = topo.lowerEnd(link) == cur;
+		int port = up ? 2*link : 2*link + 1;
+		int layer;
+		if(cur < topo.topOffset) {layer = BOT_UP;}
+		else if(cur < topo.blockOffset) {layer = up ? TOP_UP : TOP_DOWN;}
+		else {layer = BLOCK_DOWN;}
+		double service = link < topo.upperLinkOffset ? podService : upperService;
+
+		layerPackets[layer]++;
+		double backlog = busyUntil[port] - t;
+		if(backlog > 0.0 && Math.ceil(backlog / service - 1e-9) >= bufferSize) {
+			layerDrops[layer]++;
+			if(counted) {bufferDrops++;}
+			release(p);
+			return;
+		}
+		double start = Math.max(t, busyUntil[port]);
+		busyUntil[port] = start + service;
+		layerDelay[layer].add(start - t);
+
+		pLast[p] = cur;
+		pCur[p] = topo.otherEnd(link, cur);
+		pHops[p]++;
+		if(pHops[p] >= 2*CLOSNetwork.LOOP_MAX - 10) {
+			if(counted) {loopDrops++;}
+			release(p);
+			return;
+		}
+		events.add(busyUntil[port] + propagationDelay, EventQueue.payload(HOP, p));
+	}
+
+	int allocate() {
+		if(numFree > 0) {return freeIds[--numFree];}
+		if(numPackets == pSource.length) {
+			int c = 2*numPackets;
+			pSource = Arrays.copyOf(pSource, c);
+			pDest = Arrays.copyOf(pDest, c);
+			pCur = Arrays.copyOf(pCur, c);
+			pLast = Arrays.copyOf(pLast, c);
+			pHops = Arrays.copyOf(pHops, c);
+			pBorn = Arrays.copyOf(pBorn, c);
+			pEpoch = Arrays.copyOf(pEpoch, c);
+			freeIds = Arrays.copyOf(freeIds, c);
+		}
+		return numPackets++;
+	}
+
+	void release(int p) {
+		freeIds[numFree++] = p;
+	}
+
+	/**
+	 * Discards all statistics collected so far (e.g. after a warm-up period). Packets in flight are kept, but as they were
+	 * injected before, their delivery or drop is not counted in the end-to-end statistics.
+	 */
+	public void resetStatistics() {
+		statStart = now;
+		epoch++;
+		injected = 0;
+		delivered = 0;
+		loopDrops = 0;
+		noRouteDrops = 0;
+		bufferDrops = 0;
+		numEvents = 0;
+		Arrays.fill(layerPackets, 0);
+		Arrays.fill(layerDrops, 0);
+		for(DelayHistogram hist : layerDelay) {
+			hist.clear();
+		}
+		endToEnd.clear();
+	}
+
+	//+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+ Results +-+-+-+-+-+-+-+-+-+-+-
+
+	/**
+	 * Simulated time since the last call to resetStatistics()
+	 */
+	public double measuredTime() {
+		return now - statStart;
+	}
+
+	public long numEvents() {
+		return numEvents;
+	}
+
+	public long injected() {
+		return injected;
+	}
+
+	public long delivered() {
+		return delivered;
+	}
+
+	/**
+	 * Packets dropped because they exceeded the hop limit of a forwarding loop
+	 */
+	public long loopDrops() {
+		return loopDrops;
+	}
+
+	/**
+	 * Packets dropped at a router without live forwarding candidate
+	 */
+	public long noRouteDrops() {
+		return noRouteDrops;
+	}
+
+	/**
+	 * Packets dropped due to a full output buffer of any layer
+	 */
+	public long bufferDrops() {
+		return bufferDrops;
+	}
+
+	/**
+	 * Packets that arrived at an output port of the layer (including the dropped ones)
+	 */
+	public long layerPackets(int layer) {
+		return layerPackets[layer];
+	}
+
+	/**
+	 * Packets dropped due to a full output buffer of the layer
+	 */
+	public long layerDrops(int layer) {
+		return layerDrops[layer];
+	}
+
+	/**
+	 * Queueing delays (time between the arrival at an output port and the start of the transmission) of the layer
+	 */
+	public DelayHistogram layerDelay(int layer) {
+		return layerDelay[layer];
+	}
+
+	/**
+	 * Time between the injection and the delivery of all delivered packets
+	 */
+	public DelayHistogram endToEnd() {
+		return endToEnd;
+	}
+
+	public double packetRate() {
+		return packetRate;
+	}
+
+	public double podCapacity() {
+		return 1.0 / podService;
+	}
+
+	public double upperCapacity() {
+		return 1.0 / upperService;
+	}
+
+	public int bufferSize() {
+		return bufferSize;
+	}
+
+	public double propagationDelay() {
+		return propagationDelay;
+	}
+
+	/**
+	 * One row per layer of output ports and a row "EndToEnd" for all packets injected since the last call to
+	 * resetStatistics() (dropped for any reason), each in the order of Statistics.LoadStatistics.QUEUEING_HEAD
+	 */
+	public String[][] statisticsRows() {
+		String[][] rows = new String[LAYER_NAMES.length + 1][];
+		long dropped = loopDrops + noRouteDrops + bufferDrops;
+		for(int l = 0; l < LAYER_NAMES.length; l++) {
+			rows[l] = statisticsRow(LAYER_NAMES[l], layerPackets[l], layerDrops[l], layerDelay[l]);
+		}
+		rows[LAYER_NAMES.length] = statisticsRow("EndToEnd", injected, dropped, endToEnd);
+		return rows;
+	}
+
+	String[] statisticsRow(String layer, long packets, long dropped, DelayHistogram delay) {
+		return new String[] {"" + packetRate, "" + podCapacity(), "" + upperCapacity(), "" + bufferSize, "" + propagationDelay, "" + measuredTime(),
+				layer, "" + packets, "" + dropped, "" + (packets == 0 ? 0.0 : (double) dropped / packets),
+				"" + delay.mean(), "" + delay.percentile(0.5), "" + delay.percentile(0.99), "" + delay.percentile(0.999), "" + delay.max()};
+	}
+}
@@ -0,0 +1,207 @@
+package Routing;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import Topology.CLOSTopology;
+
+/**
+ * Traffic between the k*(k/2)*(k/2) servers of a CLOS topology (see CLOSTopology for the numbering of servers).
+ *
+ * As a dense server-to-server matrix does not fit into memory for large k, the traffic consists of two parts:
+ * 	1)	A gravity part given by an outgoing and an incoming mass per server, the demand from server i to
+ * 		server j is out[i] * in[j] / (sum of all in).
+ * 	2)	An arbitrary number of explicit flows between two servers (e.g. incast).
+ *
+ * Packets are addressed to the BOT router (ToR) of the destination server, so only the source of a flow can
+ * influence its path. Traffic between servers attached to the same BOT router does not enter the fabric and is ignored.
+ * See ImplicitCLOSNetwork.serverTrafficRouting().
+ */
+public class ServerTraffic {
+
+	CLOSTopology topo;
+	int h;
+	String name;
+
+	//Gravity part (null if not present) and the incoming mass per BOT router
+	double[] out;
+	double[] in;
+	double inTotal;
+	double[] torIn;
+
+	//Explicit flows, sorted by source server (CSR index over servers) on first use
+	int numFlows;
+	int[] flowSource = new int[16];
+	int[] flowDest = new int[16];
+	double[] flowWeight = new double[16];
+	int[] firstFlow;
+
+	public ServerTraffic(CLOSTopology topo, String name) {
+		this.topo = topo;
+		this.h = topo.h;
+		this.name = name;
+	}
+
+	/**
+	 * Gravity traffic with the given outgoing and incoming mass of every server
+	 */
+	public static ServerTraffic gravity(CLOSTopology topo, double[] out, double[] in, String name) {
+		ServerTraffic t = new ServerTraffic(topo, name);
+		t.setGravity(out, in);
+		return t;
+	}
+
+	/**
+	 * Gravity traffic where the masses of the servers are drawn from an exponential distribution with mean 1
+	 */
+	public static ServerTraffic randomGravity(CLOSTopology topo, Random rng) {
+		double[] out = new double[topo.numServers];
+		double[] in = new double[topo.numServers];
+		for(int i = 0; i < topo.numServers; i++) {
+			out[i] = -Math.log(1.0 - rng.nextDouble());
+			in[i] = -Math.log(1.0 - rng.nextDouble());
+		}
+		return gravity(topo, out, in, "ServerGravity");
+	}
+
+	/**
+	 * Incast: the given number of distinct servers (attached to other BOT routers) send weight each to the receiver
+	 */
+	public static ServerTraffic incast(CLOSTopology topo, int receiver, int senders, double weight, Random rng) {
+		ServerTraffic t = new ServerTraffic(topo, "Incast" + senders);
+		int candidates = topo.numServers - topo.h;
+		if(senders > candidates) {
+			System.err.println("Incast with " + senders + " senders needs more servers than available (" + candidates + ")!");
+			System.exit(-1);
+		}
+		//Partial Fisher-Yates shuffle over all servers not attached to the BOT router of the receiver
+		int[] ids = new int[candidates];
+		int first = topo.torOf(receiver) * topo.h;
+		for(int i = 0, j = 0; i < topo.numServers; i++) {
+			if(i < first || i >= first + topo.h) {ids[j++] = i;}
+		}
+		for(int i = 0; i < senders; i++) {
+			int j = i + rng.nextInt(candidates - i);
+			int tmp = ids[i]; ids[i] = ids[j]; ids[j] = tmp;
+			t.addFlow(ids[i], receiver, weight);
+		}
+		return t;
+	}
+
+	public void setGravity(double[] out, double[] in) {
+		if(out.length != topo.numServers || in.length != topo.numServers) {
+			System.err.println("Gravity masses must be given for all " + topo.numServers + " servers!");
+			System.exit(-1);
+		}
+		this.out = out;
+		this.in = in;
+		inTotal = 0.0;
+		torIn = new double[topo.numBot];
+		for(int i = 0; i < topo.numServers; i++) {
+			inTotal += in[i];
+			torIn[topo.torOf(i)] += in[i];
+		}
+	}
+
+	/**
+	 * Adds a flow between two servers
+	 */
+	public void addFlow(int source, int destination, double weight) {
+		if(numFlows == flowSource.length) {
+			flowSource = Arrays.copyOf(flowSource, 2*numFlows);
+			flowDest = Arrays.copyOf(flowDest, 2*numFlows);
+			flowWeight = Arrays.copyOf(flowWeight, 2*numFlows);
+		}
+		flowSource[numFlows] = source;
+		flowDest[numFlows] = destination;
+		flowWeight[numFlows] = weight;
+		numFlows++;
+		firstFlow = null;
+	}
+
+	/**
+	 * Sorts the explicit flows by their source (counting sort)
+	 */
+	void buildIndex() {
+		firstFlow = new int[topo.numServers + 1];
+		for(int f = 0; f < numFlows; f++) {
+			firstFlow[flowSource[f] + 1]++;
+		}
+		for(int i = 0; i < topo.numServers; i++) {
+			firstFlow[i + 1] += firstFlow[i];
+		}
+		int[] pos = Arrays.copyOf(firstFlow, topo.numServers);
+		int[] dest = new int[numFlows];
+		double[] weight = new double[numFlows];
+		int[] source = new int[numFlows];
+		for(int f = 0; f < numFlows; f++) {
+			int p = pos[flowSource[f]]++;
+			source[p] = flowSource[f];
+			dest[p] = flowDest[f];
+			weight[p] = flowWeight[f];
+		}
+		flowSource = source;
+		flowDest = dest;
+		flowWeight = weight;
+	}
+
+	/**
+	 * Demand of the server towards every BOT router (the diagonal, i.e. its own BOT router, is 0)
+	 *
+	 * @param server	Source server
+	 * @param row	Array of length numBot that is overwritten with the demands
+	 * @return	row
+	 */
+	public double[] torRow(int server, double[] row) {
+		if(firstFlow == null) {buildIndex();}
+		int tor = topo.torOf(server);
+		if(out != null) {
+			double factor = out[server] / inTotal;
+			for(int b = 0; b < row.length; b++) {
+				row[b] = factor * torIn[b];
+			}
+		}
+		else {
+			Arrays.fill(row, 0.0);
+		}
+		for(int f = firstFlow[server]; f < firstFlow[server + 1]; f++) {
+			row[topo.torOf(flowDest[f])] += flowWeight[f];
+		}
+		row[tor] = 0.0;
+		return row;
+	}
+
+	/**
+	 * Folds the traffic into a matrix between BOT routers by summing the demands of all servers
+	 */
+	public double[][] torMatrix() {
+		int numBot = topo.numBot;
+		double[][] m = new double[numBot][numBot];
+		if(out != null) {
+			for(int a = 0; a < numBot; a++) {
+				double torOut = 0.0;
+				for(int j = 0; j < h; j++) {
+					torOut += out[a*h + j];
+				}
+				for(int b = 0; b < numBot; b++) {
+					m[a][b] = torOut * torIn[b] / inTotal;
+				}
+			}
+		}
+		for(int f = 0; f < numFlows; f++) {
+			m[topo.torOf(flowSource[f])][topo.torOf(flowDest[f])] += flowWeight[f];
+		}
+		for(int a = 0; a < numBot; a++) {
+			m[a][a] = 0.0;
+		}
+		return m;
+	}
+
+	public String name() {
+		return name;
+	}
+
+	public int numFlows() {
+		return numFlows;
+	}
+}
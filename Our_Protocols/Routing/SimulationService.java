@@ -0,0 +1,425 @@
+package Routing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import Statistics.LoadStatistics;
+import Statistics.Result;
+import Topology.CLOSNetwork;
+import Topology.CLOSTopology;
+import Topology.ImplicitCLOSNetwork;
+import Topology.Strategy;
+import Util.DisconnectException;
+import Util.Utility;
+
+/**
+ * Long-running local HTTP service that answers what-if queries without starting a JVM and building the network
+ * for every study. Topologies (one per k), the most recently used traffic matrices (see MATRIX_CACHE_SIZE) and failure scenarios
+ * (each an ImplicitCLOSNetwork with verified routing state and its routed traffic matrices) stay in memory.
+ *
+ * The service only listens on the loopback interface. All queries are GET requests and answered with a JSON object:
+ * 	/route?src=S&dst=D&SCENARIO	path of a single packet from the BOT router S to the BOT router D
+ * 	/load?matrix=M&SCENARIO		load statistics (see LoadStatistics.LOAD_METRICS) of the traffic matrix file M,
+ * 								or of all-to-one traffic if M = alltoone (towards the BOT router given by dest, default 0)
+ * 	/stats						sizes of the caches and number of scenario cache hits and misses
+ *
+ * A scenario is given by the parameters
+ * 	k (required, at most MAX_K), type (CLOSNetwork.Type, required), intervals (default 1), perm (default 6),
+ * 	model (CLOSNetwork.FailType, default RANDOM), p (default 0), seed (of the failure draw, default 0),
+ * 	fdest (destination of the WCINTERVAL and DESTINATION models, default 0) and
+ * 	fail (comma separated ids of links failed in addition, see CLOSTopology for the numbering).
+ * The same parameters always yield the same failures. Scenarios whose failures disconnect a router
+ * (see ImplicitCLOSNetwork.initRoutingState()) are answered with an error.
+ *
+ * At most threads queries are processed at a time, further ones wait for a free thread.
+ */
+public class SimulationService {
+
+	//Seed of the hashIDs of the topologies
+	public static final long TOPOLOGY_SEED = 1;
+	//Largest k of a query, each topology stays in memory for the lifetime of the service
+	public static final int MAX_K = 128;
+	//Number of traffic matrices kept in memory (least recently used ones are evicted), one takes 8*n*n bytes for n BOT routers
+	public static final int MATRIX_CACHE_SIZE = 4;
+
+	static {
+		//Without TCP_NODELAY each small response waits for the delayed ACK of the client (about 40 ms)
+		if(System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	HttpServer server;
+	ExecutorService pool;
+	int cacheSize;
+
+	HashMap<Integer,CLOSTopology> topologies = new HashMap<Integer,CLOSTopology>();
+	LinkedHashMap<String,double[][]> matrices = new LinkedHashMap<String,double[][]>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<String,double[][]> eldest) {
+			return size() > MATRIX_CACHE_SIZE;
+		}
+	};
+	LinkedHashMap<String,Scenario> scenarios;
+	long hits;
+	long misses;
+
+	/**
+	 * A failure scenario and the results of the traffic that was routed on it
+	 */
+	static class Scenario {
+		ImplicitCLOSNetwork net;
+		String error;	//null if the strategy can be employed under the failures
+		HashMap<String,Result> results = new HashMap<String,Result>();
+	}
+
+	/**
+	 * Thrown on invalid query parameters, answered with status 400
+	 */
+	static class QueryException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		QueryException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * @param port	Port on the loopback interface
+	 * @param threads	Maximum number of queries processed at a time
+	 * @param cacheSize	Maximum number of failure scenarios kept in memory (least recently used ones are evicted)
+	 */
+	public SimulationService(int port, int threads, int cacheSize) throws IOException {
+		this.cacheSize = cacheSize;
+		scenarios = new LinkedHashMap<String,Scenario>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String,Scenario> eldest) {
+				return size() > SimulationService.this.cacheSize;
+			}
+		};
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/route", ex -> handle(ex, "route"));
+		server.createContext("/load", ex -> handle(ex, "load"));
+		server.createContext("/stats", ex -> handle(ex, "stats"));
+		pool = Executors.newFixedThreadPool(threads);
+		server.setExecutor(pool);
+	}
+
+	public void start() {
+		server.start();
+		System.out.println("** Simulation service listening on " + server.getAddress());
+	}
+
+	public void stop() {
+		server.stop(0);
+		pool.shutdown();
+	}
+
+	/**
+	 * Port the service is listening on (useful if it was started on port 0)
+	 */
+	public int port() {
+		return server.getAddress().getPort();
+	}
+
+	void handle(HttpExchange ex, String query) throws IOException {
+		int status = 200;
+		String body;
+		try {
+			HashMap<String,String> params = parseQuery(ex.getRequestURI().getRawQuery());
+			if(query.equals("route")) {body = route(params);}
+			else if(query.equals("load")) {body = load(params);}
+			else {body = stats();}
+		}
+		catch(QueryException e) {
+			status = 400;
+			body = "{\"error\":" + jsonString(e.getMessage()) + "}";
+		}
+		catch(RuntimeException e) {
+			status = 500;
+			body = "{\"error\":" + jsonString(e.toString()) + "}";
+		}
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		ex.getResponseHeaders().set("Content-Type", "application/json");
+		ex.sendResponseHeaders(status, bytes.length);
+		OutputStream os = ex.getResponseBody();
+		os.write(bytes);
+		os.close();
+	}
+
+	/**
+	 * The string as a JSON string literal (quoted, with quotes, backslashes and control characters escaped)
+	 */
+	static String jsonString(String v) {
+		StringBuilder sb = new StringBuilder("\"");
+		for(int i = 0; i < v.length(); i++) {
+			char c = v.charAt(i);
+			if(c == '"' || c == '\\') {sb.append('\\').append(c);}
+			else if(c < 0x20) {sb.append(String.format("\\u%04x", (int) c));}
+			else {sb.append(c);}
+		}
+		return sb.append('"').toString();
+	}
+
+	/**
+	 * The value as a JSON number, null if it is NaN or infinite (e.g. the hops of a routing in which every packet looped)
+	 */
+	static String jsonNumber(double v) {
+		return Double.isFinite(v) ? "" + v : "null";
+	}
+
+	static HashMap<String,String> parseQuery(String query) {
+		HashMap<String,String> params = new HashMap<String,String>();
+		if(query == null) {return params;}
+		for(String pair : query.split("&")) {
+			int eq = pair.indexOf('=');
+			if(eq < 0) {continue;}
+			params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+		}
+		return params;
+	}
+
+	//+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+ Queries +-+-+-+-+-+-+-+-+-+-+-
+
+	String route(HashMap<String,String> params) throws QueryException {
+		Scenario s = scenario(params);
+		CLOSTopology topo = s.net.topology();
+		int src = intParam(params, "src", -1);
+		int dst = intParam(params, "dst", -1);
+		if(src < 0 || src >= topo.numBot || dst < 0 || dst >= topo.numBot) {
+			throw new QueryException("src and dst must be BOT routers in [0," + topo.numBot + ")");
+		}
+		StringBuilder sb = new StringBuilder();
+		synchronized(s) {
+			int hops = s.net.routePacket(src, dst);
+			String outcome = hops < 0 ? "dropped" : hops >= 2*CLOSNetwork.LOOP_MAX - 10 ? "loop" : "delivered";
+			sb.append("{\"outcome\":\"").append(outcome).append("\",\"hops\":").append(s.net.pathLength());
+			sb.append(",\"routers\":[");
+			for(int i = 0; i <= s.net.pathLength(); i++) {
+				if(i > 0) {sb.append(',');}
+				sb.append(s.net.pathRouter(i));
+			}
+			sb.append("],\"links\":[");
+			for(int i = 0; i < s.net.pathLength(); i++) {
+				if(i > 0) {sb.append(',');}
+				sb.append(s.net.pathLink(i));
+			}
+			sb.append("]}");
+		}
+		return sb.toString();
+	}
+
+	String load(HashMap<String,String> params) throws QueryException {
+		Scenario s = scenario(params);
+		CLOSTopology topo = s.net.topology();
+		String matrix = params.getOrDefault("matrix", "alltoone");
+		int dest = intParam(params, "dest", 0);
+		if(matrix.equals("alltoone") && (dest < 0 || dest >= topo.numBot)) {
+			throw new QueryException("dest must be a BOT router in [0," + topo.numBot + ")");
+		}
+		String name = matrix.equals("alltoone") ? "alltoone:" + dest : matrix;
+
+		Result r;
+		synchronized(s) {
+			r = s.results.get(name);
+			if(r == null) {
+				r = matrix.equals("alltoone") ? s.net.allToOneRouting(dest) : s.net.trafficMatrixRouting(matrix(matrix, topo.numBot), matrix);
+				s.results.put(name, r);
+			}
+		}
+		double[] metrics = LoadStatistics.loadMetrics(r);
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"failedEdges\":").append(r.numFailedEdges);
+		sb.append(",\"totalPacks\":").append(r.totalPacks);
+		sb.append(",\"PinCycle\":").append(r.packsInCycle);
+		for(int i = 0; i < metrics.length; i++) {
+			sb.append(",\"").append(LoadStatistics.LOAD_METRICS[i]).append("\":").append(jsonNumber(metrics[i]));
+		}
+		sb.append(",\"AvgHops\":").append(jsonNumber(r.avgHops));
+		sb.append(",\"MaxHops\":").append(r.maxHops).append('}');
+		return sb.toString();
+	}
+
+	synchronized String stats() {
+		return "{\"topologies\":" + topologies.size() + ",\"matrices\":" + matrices.size() + ",\"scenarios\":" + scenarios.size()
+				+ ",\"hits\":" + hits + ",\"misses\":" + misses + "}";
+	}
+
+	//+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+ Caches +-+-+-+-+-+-+-+-+-+-+-
+
+	/**
+	 * The scenario given by the query parameters, built if it is not cached.
+	 * Two queries that miss the same scenario at the same time may both build it, the first one is kept.
+	 */
+	Scenario scenario(HashMap<String,String> params) throws QueryException {
+		int k = intParam(params, "k", -1);
+		if(k <= 0 || k % 2 != 0 || k > MAX_K) {
+			throw new QueryException("k must be positive, even and at most " + MAX_K);
+		}
+		CLOSNetwork.Type type = enumParam(CLOSNetwork.Type.class, params, "type", null);
+		Strategy strategy = new Strategy(type, intParam(params, "intervals", 1), intParam(params, "perm", 6));
+		CLOSNetwork.FailType model = enumParam(CLOSNetwork.FailType.class, params, "model", CLOSNetwork.FailType.RANDOM);
+		double p = doubleParam(params, "p", 0.0);
+		long seed = longParam(params, "seed", 0);
+		int fdest = intParam(params, "fdest", 0);
+		int[] failed = linksParam(params, "fail", 2*k*(k/2)*(k/2));
+		if(fdest < 0 || fdest >= k*(k/2)) {
+			throw new QueryException("fdest must be a BOT router");
+		}
+
+		String key = k + ";" + strategy + ";" + model + ";" + p + ";" + seed + ";" + fdest + ";" + Arrays.toString(failed);
+		synchronized(this) {
+			Scenario s = scenarios.get(key);
+			if(s != null) {
+				hits++;
+				return s;
+			}
+			misses++;
+		}
+
+		Scenario s = new Scenario();
+		s.net = new ImplicitCLOSNetwork(topology(k), strategy);
+		s.net.setSeed(seed);
+		if(p > 0) {
+			s.net.failEdges(model, p, fdest);
+		}
+		for(int link : failed) {
+			s.net.failLink(link);
+		}
+		try {
+			s.net.initRoutingState();
+		}
+		catch(DisconnectException e) {
+			s.error = e.getMessage();
+		}
+
+		synchronized(this) {
+			Scenario cached = scenarios.putIfAbsent(key, s);
+			if(cached != null) {s = cached;}
+		}
+		if(s.error != null) {
+			throw new QueryException(s.error);
+		}
+		return s;
+	}
+
+	synchronized CLOSTopology topology(int k) {
+		CLOSTopology topo = topologies.get(k);
+		if(topo == null) {
+			topo = new CLOSTopology(k, new Random(TOPOLOGY_SEED));
+			topologies.put(k, topo);
+		}
+		return topo;
+	}
+
+	/**
+	 * The traffic matrix of the file (parsed on first use), which must match the number n of BOT routers
+	 */
+	double[][] matrix(String fName, int n) throws QueryException {
+		String key = fName + ";" + n;
+		synchronized(this) {
+			double[][] m = matrices.get(key);
+			if(m != null) {return m;}
+		}
+		if(!new File(fName).isFile()) {
+			throw new QueryException("No traffic matrix file " + fName);
+		}
+		double[][] m;
+		try {
+			m = Utility.readMatrix(fName, n);
+		}
+		catch(IOException e) {
+			throw new QueryException("Cannot read traffic matrix: " + e.getMessage());
+		}
+		synchronized(this) {
+			matrices.put(key, m);
+		}
+		return m;
+	}
+
+	//+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+ Parameters +-+-+-+-+-+-+-+-+-+-+-
+
+	static int intParam(HashMap<String,String> params, String name, int def) throws QueryException {
+		String v = params.get(name);
+		if(v == null) {return def;}
+		try {
+			return Integer.parseInt(v);
+		}
+		catch(NumberFormatException e) {
+			throw new QueryException("Invalid value of " + name + ": " + v);
+		}
+	}
+
+	static long longParam(HashMap<String,String> params, String name, long def) throws QueryException {
+		String v = params.get(name);
+		if(v == null) {return def;}
+		try {
+			return Long.parseLong(v);
+		}
+		catch(NumberFormatException e) {
+			throw new QueryException("Invalid value of " + name + ": " + v);
+		}
+	}
+
+	static double doubleParam(HashMap<String,String> params, String name, double def) throws QueryException {
+		String v = params.get(name);
+		if(v == null) {return def;}
+		try {
+			return Double.parseDouble(v);
+		}
+		catch(NumberFormatException e) {
+			throw new QueryException("Invalid value of " + name + ": " + v);
+		}
+	}
+
+	static <E extends Enum<E>> E enumParam(Class<E> c, HashMap<String,String> params, String name, E def) throws QueryException {
+		String v = params.get(name);
+		if(v == null && def != null) {return def;}
+		try {
+			return Enum.valueOf(c, v.trim().toUpperCase());
+		}
+		catch(RuntimeException e) {
+			throw new QueryException("Invalid value of " + name + ": " + v + ", expected one of " + Arrays.toString(c.getEnumConstants()));
+		}
+	}
+
+	/**
+	 * Sorted link ids of the comma separated list (empty if the parameter is missing)
+	 */
+	static int[] linksParam(HashMap<String,String> params, String name, int numLinks) throws QueryException {
+		String v = params.get(name);
+		if(v == null || v.trim().isEmpty()) {return new int[0];}
+		String[] parts = v.split(",");
+		int[] links = new int[parts.length];
+		for(int i = 0; i < parts.length; i++) {
+			try {
+				links[i] = Integer.parseInt(parts[i].trim());
+			}
+			catch(NumberFormatException e) {
+				throw new QueryException("Invalid link id: " + parts[i]);
+			}
+			if(links[i] < 0 || links[i] >= numLinks) {
+				throw new QueryException("Link id out of range: " + links[i]);
+			}
+		}
+		Arrays.sort(links);
+		return links;
+	}
+}
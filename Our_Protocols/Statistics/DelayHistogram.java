@@ -0,0 +1,77 @@
+package Statistics;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of (non-negative) delays with buckets of fixed width. The last bucket contains all
+ * delays of at least (numBuckets-1) * width. Adding a value does not allocate.
+ */
+public class DelayHistogram {
+
+	double width;
+	long[] counts;
+	long n;
+	double sum;
+	double max;
+
+	/**
+	 * @param width	Width of a bucket
+	 * @param numBuckets	Number of buckets
+	 */
+	public DelayHistogram(double width, int numBuckets) {
+		this.width = width;
+		this.counts = new long[numBuckets];
+	}
+
+	public void add(double delay) {
+		int b = (int) (delay / width);
+		counts[Math.min(b, counts.length - 1)]++;
+		n++;
+		sum += delay;
+		if(delay > max) {max = delay;}
+	}
+
+	/**
+	 * Adds all values of another histogram with the same buckets to this one
+	 */
+	public void merge(DelayHistogram o) {
+		for(int i = 0; i < counts.length; i++) {
+			counts[i] += o.counts[i];
+		}
+		n += o.n;
+		sum += o.sum;
+		max = Math.max(max, o.max);
+	}
+
+	public void clear() {
+		Arrays.fill(counts, 0);
+		n = 0;
+		sum = 0.0;
+		max = 0.0;
+	}
+
+	public long count() {
+		return n;
+	}
+
+	public double mean() {
+		return n == 0 ? 0.0 : sum / n;
+	}
+
+	public double max() {
+		return max;
+	}
+
+	/**
+	 * Upper edge of the first bucket such that at least the given share of all values lies in this or
+	 * a smaller bucket (capped by the largest value)
+	 */
+	public double percentile(double percent) {
+		long sum = 0;
+		for(int i = 0; i < counts.length; i++) {
+			sum += counts[i];
+			if(sum > 0 && sum >= percent * n) {return Math.min((i + 1) * width, max);}
+		}
+		return max;
+	}
+}
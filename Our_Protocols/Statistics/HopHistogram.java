@@ -0,0 +1,146 @@
+package Statistics;
+
+/**
+ * Fixed-bucket histogram of the number of hops and the stretch of routed packets, where the stretch is the
+ * number of hops minus the length of a shortest path between source and destination in the CLOS topology.
+ *
+ * Each bucket keeps both the number of packets and their total weight (i.e. flow size). Bucket i contains
+ * the packets with i hops (stretch i), the last bucket contains all packets with at least NUM_BUCKETS-1 hops.
+ * Packets that ended up in a forwarding loop are not added (see Result.packsInCycle).
+ *
+ * Adding a packet does not allocate, and histograms of different runs or threads can be merged.
+ */
+public class HopHistogram {
+
+	public static final int NUM_BUCKETS = 64;
+
+	long[] hopCount = new long[NUM_BUCKETS];
+	double[] hopWeight = new double[NUM_BUCKETS];
+	long[] stretchCount = new long[NUM_BUCKETS];
+	double[] stretchWeight = new double[NUM_BUCKETS];
+
+	/**
+	 * Length of a shortest path between two bottom layer routers
+	 *
+	 * @param k	Degree of the routers
+	 * @param source	Index of the source router in the traffic matrix
+	 * @param destination	Index of the destination router in the traffic matrix
+	 * @return	0 if both are equal, 2 if both are in the same pod and 4 otherwise
+	 */
+	public static int shortestPathLength(int k, int source, int destination) {
+		if(source == destination) {return 0;}
+		return source / (k/2) == destination / (k/2) ? 2 : 4;
+	}
+
+	/**
+	 * Adds a packet that arrived at its destination
+	 *
+	 * @param hops	Number of hops the packet traveled
+	 * @param shortest	Length of a shortest path between source and destination
+	 * @param weight	Weight of the packet
+	 */
+	public void add(int hops, int shortest, double weight) {
+		int h = Math.min(hops, NUM_BUCKETS - 1);
+		int s = Math.min(Math.max(hops - shortest, 0), NUM_BUCKETS - 1);
+		hopCount[h]++;
+		hopWeight[h] += weight;
+		stretchCount[s]++;
+		stretchWeight[s] += weight;
+	}
+
+	/**
+	 * Adds all packets of another histogram to this one
+	 */
+	public void merge(HopHistogram o) {
+		for(int i = 0; i < NUM_BUCKETS; i++) {
+			hopCount[i] += o.hopCount[i];
+			hopWeight[i] += o.hopWeight[i];
+			stretchCount[i] += o.stretchCount[i];
+			stretchWeight[i] += o.stretchWeight[i];
+		}
+	}
+
+	/**
+	 * Multiplies all weights by the given factor (e.g. to average several runs)
+	 */
+	public void scaleWeights(double factor) {
+		for(int i = 0; i < NUM_BUCKETS; i++) {
+			hopWeight[i] *= factor;
+			stretchWeight[i] *= factor;
+		}
+	}
+
+	public long numPackets() {
+		long sum = 0;
+		for(long c : hopCount) {
+			sum += c;
+		}
+		return sum;
+	}
+
+	public long hopCount(int hops) {
+		return hopCount[Math.min(hops, NUM_BUCKETS - 1)];
+	}
+
+	public double hopWeight(int hops) {
+		return hopWeight[Math.min(hops, NUM_BUCKETS - 1)];
+	}
+
+	public long stretchCount(int stretch) {
+		return stretchCount[Math.min(stretch, NUM_BUCKETS - 1)];
+	}
+
+	public double stretchWeight(int stretch) {
+		return stretchWeight[Math.min(stretch, NUM_BUCKETS - 1)];
+	}
+
+	/**
+	 * Smallest number of hops h such that packets with at most h hops make up at least the given share
+	 * of the total weight (weighted = true) or of all packets (weighted = false).
+	 */
+	public int hopPercentile(double percent, boolean weighted) {
+		return weighted ? percentile(hopWeight, percent) : percentile(hopCount, percent);
+	}
+
+	/**
+	 * Same as hopPercentile() for the stretch
+	 */
+	public int stretchPercentile(double percent, boolean weighted) {
+		return weighted ? percentile(stretchWeight, percent) : percentile(stretchCount, percent);
+	}
+
+	/**
+	 * Average stretch of all packets, either weighted by their weight or not
+	 */
+	public double meanStretch(boolean weighted) {
+		double sum = 0.0;
+		double total = 0.0;
+		for(int i = 0; i < NUM_BUCKETS; i++) {
+			double w = weighted ? stretchWeight[i] : stretchCount[i];
+			sum += i * w;
+			total += w;
+		}
+		return sum / total;
+	}
+
+	private static int percentile(double[] buckets, double percent) {
+		double total = 0.0;
+		for(double w : buckets) {
+			total += w;
+		}
+		double sum = 0.0;
+		for(int i = 0; i < NUM_BUCKETS; i++) {
+			sum += buckets[i];
+			if(sum >= percent * total && sum > 0.0) {return i;}
+		}
+		return NUM_BUCKETS - 1;
+	}
+
+	private static int percentile(long[] buckets, double percent) {
+		double[] b = new double[NUM_BUCKETS];
+		for(int i = 0; i < NUM_BUCKETS; i++) {
+			b[i] = buckets[i];
+		}
+		return percentile(b, percent);
+	}
+}
@@ -1,13 +1,24 @@
 package Statistics;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 
 import Util.Edge;
+import Util.PhaseEvent;
+import Util.TrialJournal;
+import Topology.CLOSNetwork;
 import Topology.Node;
+import Topology.Strategy;
 
 
 /**
@@ -17,6 +28,9 @@ import Topology.Node;
 
 public class LoadStatistics {
 	
+	//Files whose header was compared with the one of the rows appended by this JVM (see appendToFile())
+	private static HashSet<String> checkedFiles = new HashSet<String>();
+	
 	//Header fields of the log file
 	public static final String[] HEAD = {
 			"k",
@@ -55,7 +69,53 @@ public class LoadStatistics {
 			"MeanEdge",
 			
 			"AvgHops",		//Avg. number of hops to reach destination 
-			"MaxHops"};		//Maximum number of hops  to reach destination
+			"MaxHops",		//Maximum number of hops  to reach destination
+			"Trial",		//Id of the run in the journal of the sweep (empty if no journal is used)
+			
+			//Physical connectivity under the failures, independent of the strategy (empty if not computed)
+			"ConnectedPairs",	//Fraction of pairs of bottom layer nodes connected by intact links
+			"ConnectedWeight",	//Fraction of the traffic between connected bottom layer nodes
+			"DisconnectedLoops",	//Packets in a cycle whose destination cannot be reached by any strategy
+			
+			//Baseline of the best possible routing of the same traffic (empty if not computed)
+			"OptEdge",		//Max edge load of an approximately optimal (min-congestion) flow
+			"OptEdgeLB",	//Lower bound on the optimal max edge load
+			"EdgeRatio"};	//MaxEdge / OptEdge, at most the ratio to the true optimum
+	
+	//Names of the values returned by loadMetrics()
+	public static final String[] LOAD_METRICS = Arrays.copyOfRange(HEAD, 10, 30);
+	
+	//Metrics which are tracked when the number of runs is chosen adaptively (see keyMetrics())
+	public static final String[] KEY_METRICS = {"MaxNode", "p99Edge", "PinCycle"};
+	
+	//Percentiles of the number of hops and the stretch written by writeHopStatistics()
+	public static final double[] HOP_PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+	public static final String[] HOP_PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+	
+	//Header fields of the summary file written for adaptive experiments.
+	//For each of the KEY_METRICS the mean and the bounds of its 95% confidence interval are written.
+	public static final String[] ADAPTIVE_HEAD = {
+			"k",
+			"Type",
+			"NumInt",
+			"ExpType",
+			"FailModel",
+			"FailPara",
+			"Runs",			//Number of successful runs used for the estimate
+			"FailedRuns",	//Number of runs dropped as the strategy could not be employed
+			"Converged"};	//Whether all confidence intervals reached the target width before the run budget was exhausted
+	
+	//Columns of a link in the criticality table, values after additionally failing the link are only written if it is Feasible
+	public static final String[] CRITICALITY_HEAD = {"Link", "Lower", "Upper", "Feasible", "MaxNode", "MaxEdge", "PinCycle",
+			"DeltaMaxNode", "DeltaMaxEdge", "DeltaPinCycle", "Rerouted"};
+	
+	//Statistics of a dynamic simulation
+	public static final String[] DYNAMIC_HEAD = {"MTBF", "MTTR", "ArrivalRate", "MeanDuration", "Horizon", "Events", "Rerouted",
+			"MaxAvgEdge", "P99AvgEdge", "MeanAvgEdge", "PeakEdge", "AvgFailedEdges", "AvgFlows", "AvgPinCycle", "AvgDropped"};
+	
+	//Parameters of a packet-level simulation and the statistics of one layer of output ports (or of all packets)
+	public static final String[] QUEUEING_HEAD = {"PacketRate", "PodCapacity", "UpperCapacity", "Buffer", "PropDelay", "Time",
+			"Layer", "Packets", "Dropped", "DropRate", "MeanDelay", "P50Delay", "P99Delay", "P999Delay", "MaxDelay"};
 	
 
 	/**
@@ -66,158 +126,575 @@ public class LoadStatistics {
 	 * 
 	 * @param 	r 	Result to print into log file
 	 */
-	public static void writeStatistics(Result r){
+	public static synchronized void writeStatistics(Result r){
+		PhaseEvent statEvent = PhaseEvent.start("statistics", r.type, r.k);
+		double[] metrics = loadMetrics(r);
+		statEvent.finish();
+		
+		PhaseEvent event = PhaseEvent.start("writing", r.type, r.k);
+		List<String> head = Arrays.asList(HEAD);
+		
+		String os = "";
+		int k = r.k;
+		int n = (k*k) + (k/2)* (k/2);
+		
+		//Basic statistics
+		os = appendString(os, "" + k);
+		os = appendString(os, "" + n);
+		os = appendString(os, r.type.toString());
+		os = appendString(os, r.experimentType);
+		os = appendString(os, "" + r.numInt);
+		os = appendString(os, r.failType.toString());
+		os = appendString(os, "" + r.failP);
+		os = appendString(os, "" + r.numFailedEdges);
+		os = appendString(os, "" + r.totalPacks);
+		os = appendString(os, "" + r.packsInCycle);
+		
+		
+		//Node and Edge Load Statistics
+		for(double value : metrics) {
+			os = appendString(os, "" + value);
+		}
+		
+		os = appendString(os, "" + r.avgHops);
+		os = appendString(os, "" + r.maxHops);
+		os = appendString(os, r.trialId == null ? "" : r.trialId);
+		os = appendString(os, Double.isNaN(r.connectedPairs) ? "" : "" + r.connectedPairs);
+		os = appendString(os, Double.isNaN(r.connectedWeight) ? "" : "" + r.connectedWeight);
+		os = appendString(os, r.disconnectedLoops < 0 ? "" : "" + r.disconnectedLoops);
+		os = appendString(os, Double.isNaN(r.optEdge) ? "" : "" + r.optEdge);
+		os = appendString(os, Double.isNaN(r.optEdgeLowerBound) ? "" : "" + r.optEdgeLowerBound);
+		os = appendString(os, Double.isNaN(r.optEdge) ? "" : "" + (metrics[11] / r.optEdge));
+		
+		appendToFile("log.csv", head, os + "\n");
+		event.finish();
+	}
+	
+	public static synchronized void writeFailedRun(Result r) {
+		List<String> head = Arrays.asList(HEAD);
+		
+		String os = "";
+		int k = r.k;
+		int n = (k*k) + (k/2)* (k/2);
+		
+		//Basic statistics
+		os = appendString(os, "" + k);
+		os = appendString(os, "" + n);
+		os = appendString(os, r.type.toString());
+		os = appendString(os, r.experimentType + "_FAILED");
+		os = appendString(os, "" + r.numInt);
+		os = appendString(os, r.failType.toString());
+		os = appendString(os, "" + r.failP);
+		os = appendString(os, "" + r.numFailedEdges);
+		if(r.trialId != null) {
+			//Leave the statistics empty, so that the id lands in the Trial column
+			for(int i = 8; i < head.indexOf("Trial"); i++) {
+				os = appendString(os, "");
+			}
+			os = appendString(os, r.trialId);
+		}
+		
+		appendToFile("log.csv", head, os + "\n");
+	}
+	
+	/**
+	 * Removes the rows of log.csv of trials that are not finished according to the journal, and a partially written last row.
+	 * Such rows stem from a run that was killed after writing its row but before it was recorded in the journal,
+	 * so the run is repeated when the sweep is resumed. Rows without trial id are kept.
+	 * 
+	 * @return	Number of removed rows
+	 */
+	public static synchronized int dropUnfinishedTrials(TrialJournal journal) {
+		File file = new File("log.csv");
+		if(!file.exists()) {return 0;}
+		int column = Arrays.asList(HEAD).indexOf("Trial");
+		int removed = 0;
 		try {
-			File out = new File("log.csv");
-			FileWriter fw;
-			if (!out.exists()) {
-				fw = new FileWriter("log.csv");
-				String headLine = "";
-				for(String s : HEAD) {
-					headLine = appendString(headLine, s);
+			String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+			String[] lines = content.split("\n", -1);
+			if(!lines[0].equals(headerLine(Arrays.asList(HEAD)))) {
+				return 0; //Rotated by the next write, see appendToFile()
+			}
+			StringBuilder sb = new StringBuilder(lines[0] + "\n");
+			//The last element is either empty or a row that was not completely written
+			for(int i = 1; i < lines.length - 1; i++) {
+				String[] fields = lines[i].split(";", -1);
+				if(fields.length > column && !fields[column].isEmpty() && !journal.isFinished(fields[column])) {
+					removed++;
+				}
+				else {
+					sb.append(lines[i] + "\n");
 				}
-				fw.write(headLine + "\n");
-			} else {
-				fw = new FileWriter("log.csv",true);
 			}
-			String os = "";
-			int k = r.k;
-			int n = (k*k) + (k/2)* (k/2);
-			
-			//Basic statistics
-			os = appendString(os, "" + k);
-			os = appendString(os, "" + n);
-			os = appendString(os, r.type.toString());
-			os = appendString(os, r.experimentType);
-			os = appendString(os, "" + r.numInt);
-			os = appendString(os, r.failType.toString());
-			os = appendString(os, "" + r.failP);
-			os = appendString(os, "" + r.numFailedEdges);
-			os = appendString(os, "" + r.totalPacks);
-			os = appendString(os, "" + r.packsInCycle);
-			
-			
-			
-			int totalNodes = n;
-			int totalEdges = (k/2)*(k/2)*k + k*(k/2)*(k/2);
-			
-			
-			//Node Load Statistics
-			
-			ArrayList<Double> nodeLoads = new ArrayList<Double>(totalNodes);
-			for(double load : r.nodeLoad.values()) {
-				nodeLoads.add(load);
+			if(!lines[lines.length - 1].isEmpty()) {removed++;}
+			if(removed > 0) {
+				File tmp = new File("log.csv.tmp");
+				Files.write(tmp.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
 			}
-			for(int i = nodeLoads.size(); i < totalNodes; i++) {
-				nodeLoads.add(0.0);
+		}
+		catch(IOException ex) {
+			System.err.println("Error when cleaning up log.csv!");
+			ex.printStackTrace();
+		}
+		return removed;
+	}
+	
+	
+	/**
+	 * Computes the node and edge load statistics of a run, i.e. the values of the
+	 * columns MaxNode to MeanEdge of HEAD (see LOAD_METRICS for their names).
+	 * 
+	 * @param r	Result of the run
+	 * @return	Array containing the node load statistics followed by the edge load statistics
+	 */
+	public static double[] loadMetrics(Result r) {
+		int k = r.k;
+		double[] nodeLoads = sortedNodeLoads(r, (k*k) + (k/2)* (k/2));
+		double averageNodeLoad = 0.0;
+		for(double load : nodeLoads) {
+			averageNodeLoad += load;
+		}
+		averageNodeLoad= averageNodeLoad / nodeLoads.length;
+		
+		double[] edgeLoads = sortedEdgeLoads(r, (k/2)*(k/2)*k + k*(k/2)*(k/2));
+		double averageEdgeLoad = 0.0;
+		for(double load : edgeLoads) {
+			averageEdgeLoad += load;
+		}
+		averageEdgeLoad = averageEdgeLoad / edgeLoads.length;
+		
+		return new double[] {
+				nodeLoads[nodeLoads.length -1],
+				nodeLoads[nodeLoads.length - 2],
+				percentile(nodeLoads,0.9999),
+				percentile(nodeLoads,0.9995),
+				percentile(nodeLoads,0.999),
+				percentile(nodeLoads,0.99),
+				percentile(nodeLoads,0.95),
+				percentile(nodeLoads,0.9),
+				percentile(nodeLoads,0.5),
+				percentile(nodeLoads,0.1),
+				averageNodeLoad,
+				
+				edgeLoads[edgeLoads.length -1],
+				percentile(edgeLoads,0.9999),
+				percentile(edgeLoads,0.999),
+				percentile(edgeLoads,0.99),
+				percentile(edgeLoads,0.95),
+				percentile(edgeLoads,0.9),
+				percentile(edgeLoads,0.5),
+				percentile(edgeLoads,0.1),
+				averageEdgeLoad};
+	}
+	
+	/**
+	 * Computes the values of the KEY_METRICS for a single run.
+	 * 
+	 * @param r	Result of the run
+	 * @return	Array containing MaxNode, p99Edge and PinCycle (in this order)
+	 */
+	public static double[] keyMetrics(Result r) {
+		int k = r.k;
+		double[] nodeLoads = sortedNodeLoads(r, (k*k) + (k/2)* (k/2));
+		double[] edgeLoads = sortedEdgeLoads(r, (k/2)*(k/2)*k + k*(k/2)*(k/2));
+		return new double[] {nodeLoads[nodeLoads.length - 1], percentile(edgeLoads, 0.99), r.packsInCycle};
+	}
+	
+	/**
+	 * Writes the outcome of an adaptive experiment into the file "adaptive.csv". 
+	 * If no run succeeded, the row is marked as failed (suffix "_FAILED" of ExpType) and contains no estimates.
+	 * 
+	 * @param r	Result object of some run of the experiment (used for the parameters only)
+	 * @param stats	Running statistics of the KEY_METRICS
+	 * @param failedRuns	Number of runs that were dropped
+	 * @param converged	Whether all confidence intervals reached the target width
+	 */
+	public static synchronized void writeAdaptiveSummary(Result r, RunningStatistic[] stats, int failedRuns, boolean converged) {
+		ArrayList<String> head = new ArrayList<String>(Arrays.asList(ADAPTIVE_HEAD));
+		for(String s : KEY_METRICS) {
+			head.add(s);
+			head.add(s + "Low");
+			head.add(s + "High");
+		}
+		
+		//If all runs were dropped, there is no estimate (as in writeFailedRun())
+		boolean failed = stats[0].count() == 0;
+		String os = "";
+		os = appendString(os, "" + r.k);
+		os = appendString(os, r.type.toString());
+		os = appendString(os, "" + r.numInt);
+		os = appendString(os, failed ? r.experimentType + "_FAILED" : r.experimentType);
+		os = appendString(os, r.failType.toString());
+		os = appendString(os, "" + r.failP);
+		os = appendString(os, "" + stats[0].count());
+		os = appendString(os, "" + failedRuns);
+		os = appendString(os, "" + converged);
+		if(!failed) {
+			for(RunningStatistic s : stats) {
+				os = appendString(os, "" + s.mean());
+				os = appendString(os, "" + (s.mean() - s.halfWidth()));
+				os = appendString(os, "" + (s.mean() + s.halfWidth()));
 			}
-			Collections.sort(nodeLoads);
-			
-			double maxNodeLoad = nodeLoads.get(nodeLoads.size() -1);
-			double secondNodeLoad = nodeLoads.get(nodeLoads.size() - 2);
-			double averageNodeLoad = 0.0;
-			for(double load : nodeLoads) {
-				averageNodeLoad += load;
+		}
+		
+		appendToFile("adaptive.csv", head, os + "\n");
+	}
+	
+	/**
+	 * Writes the outcome of a sampled routing experiment into the file "sampled.csv".
+	 * For each of the LOAD_METRICS, the estimate and its error (column suffix "Err", see SampledResult.error) are written.
+	 * 
+	 * @param sr	Result of the sampled experiment
+	 */
+	public static synchronized void writeSampledStatistics(SampledResult sr) {
+		ArrayList<String> head = new ArrayList<String>(Arrays.asList("k", "Type", "NumInt", "ExpType", "FailModel", "FailPara", "FailedEdges",
+				"SampleMode", "SampleParam", "SampledFlows", "TotalFlows", "PinCycle"));
+		for(String s : LOAD_METRICS) {
+			head.add(s);
+			head.add(s + "Err");
+		}
+		
+		Result r = sr.result;
+		String os = "";
+		os = appendString(os, "" + r.k);
+		os = appendString(os, r.type.toString());
+		os = appendString(os, "" + r.numInt);
+		os = appendString(os, r.experimentType);
+		os = appendString(os, r.failType.toString());
+		os = appendString(os, "" + r.failP);
+		os = appendString(os, "" + r.numFailedEdges);
+		os = appendString(os, sr.mode);
+		os = appendString(os, "" + sr.modeParam);
+		os = appendString(os, "" + sr.sampledFlows);
+		os = appendString(os, "" + sr.totalFlows);
+		os = appendString(os, "" + r.packsInCycle);
+		for(int i = 0; i < sr.metrics.length; i++) {
+			os = appendString(os, "" + sr.metrics[i]);
+			os = appendString(os, "" + sr.error[i]);
+		}
+		
+		appendToFile("sampled.csv", head, os + "\n");
+	}
+	
+	/**
+	 * Writes the KEY_METRICS of a strategy evaluated on a given failure scenario into the file "paired.csv".
+	 * Rows with the same scenario id were evaluated on exactly the same failures and hashIDs, and 
+	 * therefore allow for paired comparisons between strategies.
+	 * 
+	 * @param scenario	Id of the failure scenario
+	 * @param s	Evaluated strategy
+	 * @param r	Result of the evaluation. If the strategy could not be employed, a Result without any loads
+	 */
+	public static synchronized void writePairedStatistics(int scenario, Strategy s, Result r) {
+		ArrayList<String> head = new ArrayList<String>(Arrays.asList("Scenario", "k", "ExpType", "FailModel", "FailPara", "FailedEdges", "Type", "NumInt", "NumPerm", "Feasible"));
+		for(String h : KEY_METRICS) {
+			head.add(h);
+		}
+		
+		String os = "";
+		os = appendString(os, "" + scenario);
+		os = appendString(os, "" + r.k);
+		os = appendString(os, r.experimentType);
+		os = appendString(os, r.failType.toString());
+		os = appendString(os, "" + r.failP);
+		os = appendString(os, "" + r.numFailedEdges);
+		os = appendString(os, s.type.toString());
+		os = appendString(os, "" + s.numIntervals);
+		os = appendString(os, "" + s.numPerm);
+		boolean feasible = r.nodeLoad != null || r.routerLoad != null;
+		os = appendString(os, "" + feasible);
+		if(feasible) {
+			for(double value : keyMetrics(r)) {
+				os = appendString(os, "" + value);
 			}
-			averageNodeLoad= averageNodeLoad / nodeLoads.size();
-			
-			String nodeStatistics = maxNodeLoad + ";" + secondNodeLoad + ";" + percentile(nodeLoads,0.9999)  +
-													";" + percentile(nodeLoads,0.9995) +
-													";" + percentile(nodeLoads,0.999) +
-													";" + percentile(nodeLoads,0.99) + 
-													";" + percentile(nodeLoads,0.95) + 
-													";" + percentile(nodeLoads,0.9) + 
-													";" + percentile(nodeLoads,0.5) +
-													";" + percentile(nodeLoads,0.1) + 
-													";" + averageNodeLoad;
-			
-			
-			
-			//Edge Load Statistics
-			
-			ArrayList<Double> edgeLoads = new ArrayList<Double>(totalEdges);
-			for(double load : r.edgeLoad.values()) {
-				edgeLoads.add(load);
+		}
+		
+		appendToFile("paired.csv", head, os + "\n");
+	}
+	
+	/**
+	 * Writes the outcome of an adversarial failure search into the file "adversarial.csv": the best value found,
+	 * the LOAD_METRICS of the best failure set (evaluated from scratch) and the ids of its failed links.
+	 * 
+	 * @param r	Result of routing on the best failure set
+	 * @param s	Strategy the failures were searched for
+	 * @param objective	Name of the objective of the search
+	 * @param budget	Maximum number of failed links
+	 * @param evaluatedMoves	Number of failure sets evaluated by the search
+	 * @param value	Best value of the objective found
+	 * @param failedLinks	Ids of the links of the best failure set
+	 */
+	public static synchronized void writeAdversarialStatistics(Result r, Strategy s, String objective, int budget, long evaluatedMoves, double value, int[] failedLinks) {
+		ArrayList<String> head = new ArrayList<String>(Arrays.asList("k", "Type", "NumInt", "NumPerm", "ExpType", "Objective", "Budget", "EvaluatedMoves", "Value", "PinCycle"));
+		for(String h : LOAD_METRICS) {
+			head.add(h);
+		}
+		head.add("FailedLinks");
+		
+		String os = "";
+		os = appendString(os, "" + r.k);
+		os = appendString(os, s.type.toString());
+		os = appendString(os, "" + s.numIntervals);
+		os = appendString(os, "" + s.numPerm);
+		os = appendString(os, r.experimentType);
+		os = appendString(os, objective);
+		os = appendString(os, "" + budget);
+		os = appendString(os, "" + evaluatedMoves);
+		os = appendString(os, "" + value);
+		os = appendString(os, "" + r.packsInCycle);
+		for(double metric : loadMetrics(r)) {
+			os = appendString(os, "" + metric);
+		}
+		String links = "";
+		for(int link : failedLinks) {
+			links += (links.isEmpty() ? "" : " ") + link;
+		}
+		os = appendString(os, links);
+		
+		appendToFile("adversarial.csv", head, os + "\n");
+	}
+	
+	/**
+	 * Writes the ranked criticality table of a failure scenario into the file "criticality.csv".
+	 * For each link, the values after additionally failing it and their difference to the scenario are written.
+	 * Links whose failure makes the strategy inapplicable are ranked first (Feasible = false).
+	 * 
+	 * @param r	Result object of the scenario (used for the parameters only)
+	 * @param s	Evaluated strategy
+	 * @param rows	Values of the CRITICALITY_HEAD of the links in the order of their rank (see Routing.LinkCriticality.table())
+	 */
+	public static synchronized void writeCriticalityTable(Result r, Strategy s, String[][] rows) {
+		ArrayList<String> head = new ArrayList<String>(Arrays.asList("k", "Type", "NumInt", "NumPerm", "ExpType", "FailModel", "FailPara", "FailedEdges", "Rank"));
+		head.addAll(Arrays.asList(CRITICALITY_HEAD));
+		
+		String params = "";
+		params = appendString(params, "" + r.k);
+		params = appendString(params, s.type.toString());
+		params = appendString(params, "" + s.numIntervals);
+		params = appendString(params, "" + s.numPerm);
+		params = appendString(params, r.experimentType);
+		params = appendString(params, r.failType.toString());
+		params = appendString(params, "" + r.failP);
+		params = appendString(params, "" + r.numFailedEdges);
+		
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < rows.length; i++) {
+			String os = appendString(params, "" + (i + 1));
+			for(String value : rows[i]) {
+				os = appendString(os, value);
 			}
-			for(int i = edgeLoads.size(); i < totalEdges; i++) {
-				edgeLoads.add(0.0);
+			sb.append(os + "\n");
+		}
+		
+		appendToFile("criticality.csv", head, sb);
+	}
+	
+	/**
+	 * Writes one row per dynamic simulation into dynamic.csv: the time-averaged link loads (maximum, 99th percentile
+	 * and mean over all links), the largest load any link had at any time, and the time-averaged number of failed
+	 * links, active flows, flows in a loop and dropped flows.
+	 * 
+	 * @param row	Values of the DYNAMIC_HEAD (see Routing.DynamicSimulation.statisticsRow())
+	 */
+	public static synchronized void writeDynamicStatistics(Strategy s, int k, String experimentType, String[] row) {
+		ArrayList<String> head = new ArrayList<String>(Arrays.asList("k", "Type", "NumInt", "NumPerm", "ExpType"));
+		head.addAll(Arrays.asList(DYNAMIC_HEAD));
+		
+		String os = "";
+		os = appendString(os, "" + k);
+		os = appendString(os, s.type.toString());
+		os = appendString(os, "" + s.numIntervals);
+		os = appendString(os, "" + s.numPerm);
+		os = appendString(os, experimentType);
+		for(String value : row) {
+			os = appendString(os, value);
+		}
+		
+		appendToFile("dynamic.csv", head, os + "\n");
+	}
+	
+	/**
+	 * Writes the outcome of a packet-level simulation into queueing.csv: one row per layer of output ports
+	 * (packets, buffer drops, queueing delay percentiles) and one row "EndToEnd" for all packets
+	 * (injected, dropped for any reason, latency percentiles of the delivered ones).
+	 * 
+	 * @param rows	Values of the QUEUEING_HEAD (see Routing.QueueingSimulation.statisticsRows())
+	 */
+	public static synchronized void writeQueueingStatistics(Result r, Strategy s, String[][] rows) {
+		ArrayList<String> head = new ArrayList<String>(Arrays.asList("k", "Type", "NumInt", "NumPerm", "ExpType", "FailModel", "FailPara", "FailedEdges"));
+		head.addAll(Arrays.asList(QUEUEING_HEAD));
+		
+		String params = "";
+		params = appendString(params, "" + r.k);
+		params = appendString(params, s.type.toString());
+		params = appendString(params, "" + s.numIntervals);
+		params = appendString(params, "" + s.numPerm);
+		params = appendString(params, r.experimentType);
+		params = appendString(params, r.failType.toString());
+		params = appendString(params, "" + r.failP);
+		params = appendString(params, "" + r.numFailedEdges);
+		
+		StringBuilder sb = new StringBuilder();
+		for(String[] row : rows) {
+			String os = params;
+			for(String value : row) {
+				os = appendString(os, value);
 			}
-			Collections.sort(edgeLoads);
-			
-			double maxEdgeLoad = edgeLoads.get(edgeLoads.size() -1);
-			double averageEdgeLoad = 0.0;
-			for(double load : edgeLoads) {
-				averageEdgeLoad += load;
+			sb.append(os + "\n");
+		}
+		
+		appendToFile("queueing.csv", head, sb);
+	}
+	
+	/**
+	 * Writes the weighted percentiles of the number of hops and of the stretch into the file "hops.csv".
+	 * Packets are weighted by the size of their flow, packets that ended up in a loop are not considered.
+	 * 
+	 * @param r	Result object of some run (used for the parameters only)
+	 * @param hist	Histogram of the run, or the merged histogram of several runs
+	 * @param runs	Number of runs that were merged into hist
+	 */
+	public static synchronized void writeHopStatistics(Result r, HopHistogram hist, int runs) {
+		ArrayList<String> head = new ArrayList<String>(Arrays.asList("k", "Type", "NumInt", "ExpType", "FailModel", "FailPara", "Runs", "Packets"));
+		for(String s : HOP_PERCENTILE_NAMES) {
+			head.add(s + "Hops");
+		}
+		for(String s : HOP_PERCENTILE_NAMES) {
+			head.add(s + "Stretch");
+		}
+		head.add("MeanStretch");
+		
+		String os = "";
+		os = appendString(os, "" + r.k);
+		os = appendString(os, r.type.toString());
+		os = appendString(os, "" + r.numInt);
+		os = appendString(os, r.experimentType);
+		os = appendString(os, r.failType.toString());
+		os = appendString(os, "" + r.failP);
+		os = appendString(os, "" + runs);
+		os = appendString(os, "" + hist.numPackets());
+		for(double percent : HOP_PERCENTILES) {
+			os = appendString(os, "" + hist.hopPercentile(percent, true));
+		}
+		for(double percent : HOP_PERCENTILES) {
+			os = appendString(os, "" + hist.stretchPercentile(percent, true));
+		}
+		os = appendString(os, "" + hist.meanStretch(true));
+		
+		appendToFile("hops.csv", head, os + "\n");
+	}
+	
+	/**
+	 * Writes the number of failure draws of one p and how many of them left a router without forwarding candidates
+	 * (see CLOSNetwork.isFeasible()) into "feasibility.csv".
+	 * 
+	 * @param r	Result holding the parameters of the experiment
+	 * @param mode	Whether infeasible draws dropped the run or were redrawn
+	 * @param draws	Number of failure sets drawn
+	 * @param rejected	Number of infeasible draws among them
+	 */
+	public static synchronized void writeFeasibility(Result r, CLOSNetwork.Infeasible mode, int draws, int rejected) {
+		List<String> head = Arrays.asList("k", "Type", "NumInt", "ExpType", "FailModel", "FailPara", "Mode", "Draws", "Rejected", "RejectionRate");
+		
+		String os = "";
+		os = appendString(os, "" + r.k);
+		os = appendString(os, r.type.toString());
+		os = appendString(os, "" + r.numInt);
+		os = appendString(os, r.experimentType);
+		os = appendString(os, r.failType.toString());
+		os = appendString(os, "" + r.failP);
+		os = appendString(os, mode.toString());
+		os = appendString(os, "" + draws);
+		os = appendString(os, "" + rejected);
+		os = appendString(os, "" + (draws > 0 ? (double) rejected / draws : 0.0));
+		
+		appendToFile("feasibility.csv", head, os + "\n");
+	}
+	
+	/**
+	 * Collects the loads of all totalNodes routers into a sorted array. Routers that did not
+	 * receive any load are accounted for with a load of 0.
+	 * Uses the dense r.routerLoad if present and r.nodeLoad otherwise.
+	 */
+	public static double[] sortedNodeLoads(Result r, int totalNodes) {
+		double[] loads = new double[totalNodes];
+		if(r.routerLoad != null) {
+			System.arraycopy(r.routerLoad, 0, loads, 0, r.routerLoad.length);
+		}
+		else {
+			int i = 0;
+			for(double load : r.nodeLoad.values()) {
+				loads[i++] = load;
 			}
-			averageEdgeLoad = averageEdgeLoad / edgeLoads.size();
-			
-			String edgeStatistics = maxEdgeLoad + ";" + percentile(edgeLoads,0.9999)  +
-													";" + percentile(edgeLoads,0.999) +
-													";" + percentile(edgeLoads,0.99) + 
-													";" + percentile(edgeLoads,0.95) + 
-													";" + percentile(edgeLoads,0.9) + 
-													";" + percentile(edgeLoads,0.5) +
-													";" + percentile(edgeLoads,0.1) + 
-													";" + averageEdgeLoad;
-
-
-			os = appendString(os, "" + nodeStatistics);
-			os = appendString(os, "" + edgeStatistics);
-
-			
-			os = appendString(os, "" + r.avgHops);
-			os = appendString(os, "" + r.maxHops);
-			
-			fw.append(os + "\n");
-
-			fw.close();
 		}
-		catch(Exception ex) {
-			System.err.println("Error when writing results to file!");
-			ex.printStackTrace();
+		Arrays.sort(loads);
+		return loads;
+	}
+	
+	/**
+	 * Same as sortedNodeLoads but for the loads of all totalEdges links.
+	 */
+	public static double[] sortedEdgeLoads(Result r, int totalEdges) {
+		double[] loads = new double[totalEdges];
+		if(r.linkLoad != null) {
+			System.arraycopy(r.linkLoad, 0, loads, 0, r.linkLoad.length);
+		}
+		else {
+			int i = 0;
+			for(double load : r.edgeLoad.values()) {
+				loads[i++] = load;
+			}
 		}
+		Arrays.sort(loads);
+		return loads;
 	}
 	
-	public static void writeFailedRun(Result r) {
+	/**
+	 * Appends rows (each terminated by a line break) to the file. If the file does not exist yet,
+	 * it is created and the header line is written first. An existing file with a different header
+	 * (e.g. written before columns were added) is renamed to fileName.1 (.2, ...) and a new file is started.
+	 */
+	private static void appendToFile(String fileName, List<String> head, CharSequence rows) {
 		try {
-			File out = new File("log.csv");
+			File out = new File(fileName);
+			String headLine = headerLine(head);
+			if(out.exists() && !checkedFiles.contains(fileName)) {
+				String firstLine = "";
+				try(BufferedReader br = new BufferedReader(new FileReader(out))) {
+					firstLine = br.readLine();
+				}
+				if(!headLine.equals(firstLine)) {
+					int i = 1;
+					while(new File(fileName + "." + i).exists()) {i++;}
+					Files.move(out.toPath(), new File(fileName + "." + i).toPath());
+					System.err.println("WARNING: Header of " + fileName + " differs, moved it to " + fileName + "." + i);
+				}
+			}
+			checkedFiles.add(fileName);
 			FileWriter fw;
 			if (!out.exists()) {
-				fw = new FileWriter("log.csv");
-				String headLine = "";
-				for(String s : HEAD) {
-					headLine = appendString(headLine, s);
-				}
+				fw = new FileWriter(fileName);
 				fw.write(headLine + "\n");
 			} else {
-				fw = new FileWriter("log.csv",true);
+				fw = new FileWriter(fileName,true);
 			}
-			
-			String os = "";
-			int k = r.k;
-			int n = (k*k) + (k/2)* (k/2);
-			
-			//Basic statistics
-			os = appendString(os, "" + k);
-			os = appendString(os, "" + n);
-			os = appendString(os, r.type.toString());
-			os = appendString(os, r.experimentType + "_FAILED");
-			os = appendString(os, "" + r.numInt);
-			os = appendString(os, r.failType.toString());
-			os = appendString(os, "" + r.failP);
-			os = appendString(os, "" + r.numFailedEdges);
-			
-			fw.append(os + "\n");
-
+			fw.append(rows);
 			fw.close();
-			
-		}	
-			catch(Exception ex) {
-				System.err.println("Error when writing results to file!");
-				ex.printStackTrace();
-			}
+		}
+		catch(Exception ex) {
+			System.err.println("Error when writing results to file!");
+			ex.printStackTrace();
+		}
 	}
 	
+	private static String headerLine(List<String> head) {
+		String headLine = "";
+		for(String s : head) {
+			headLine = appendString(headLine, s);
+		}
+		return headLine;
+	}
 	
 	/**
 	 * Small helper function
@@ -244,4 +721,21 @@ public class LoadStatistics {
 		}
 	}
 	
+	/**
+	 * Same as above for a sorted array of values
+	 */
+	public static double percentile(double[] N, double percent) {
+		double k = (N.length  - 1) * percent;
+		int f = (int) Math.floor(k);
+		int c = (int) Math.ceil(k);
+		if(f == c) {
+			return N[(int) k];
+		}
+		else {
+			double d0 = N[(int) k] * (c-k);
+			double d1 = N[c] * (k-f);
+			return d0+d1;
+		}
+	}
+	
 }
@@ -22,13 +22,32 @@ public class Result {
 	public int totalPacks;
 	public int numFailedEdges;
 	public String experimentType;
+	public String trialId; //Id of the run when recorded in a Util.TrialJournal (may be null)
 	
 	//Experiment Results
 	
 	public HashMap<Node,Double> nodeLoad; //Map containing nodes and the load they received
 	public HashMap<Edge, Double> edgeLoad; //Map containing the edges and the load they received
+	
+	//Dense alternative to nodeLoad/edgeLoad used by topologies without Node objects (see ImplicitCLOSNetwork).
+	//Indexed by router id and link id, respectively. If set, these take precedence over the maps.
+	public double[] routerLoad;
+	public double[] linkLoad;
+	
 	public int packsInCycle; //Number of packets that ended up in a permanent forwarding loop
-	public double avgHops;	//Avg. number of hops to reach destination (packets on cycle excluded)
-	public int maxHops; //Maximum number of hops (by packets not in cycle) to reach destination
+	public int droppedPacks; //Number of packets dropped at a router without live forwarding candidate (see ImplicitCLOSNetwork.routePacket())
+	public double loopMass; //Fluid routing only: expected weight that never reaches its destination (see Routing.FluidRouting)
+	public double avgHops;	//Avg. number of hops to reach destination (packets on cycle or dropped excluded)
+	public int maxHops; //Maximum number of hops (by packets neither in cycle nor dropped) to reach destination
+	public HopHistogram hopHistogram; //Distribution of hops and stretch (packets on cycle or dropped excluded)
+	
+	//Physical connectivity under the failures (see Topology.Connectivity), NaN or -1 if not computed
+	public double connectedPairs = Double.NaN; //Fraction of ordered pairs of BOT routers that are connected by intact links
+	public double connectedWeight = Double.NaN; //Fraction of the routed traffic between connected BOT routers
+	public int disconnectedLoops = -1; //Packets in a cycle whose destination is not connected to the source at all
+	
+	//Bounds on the smallest possible maximum link load of the same traffic (see Routing.MinCongestion), NaN if not computed
+	public double optEdge = Double.NaN; //Maximum link load of the approximate min-congestion flow
+	public double optEdgeLowerBound = Double.NaN; //Lower bound on the optimum
 }
 
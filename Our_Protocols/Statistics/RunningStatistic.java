@@ -0,0 +1,84 @@
+package Statistics;
+
+/**
+ * Running mean and variance of a sequence of observations (Welford's algorithm) together with
+ * a two-sided 95% Student-t confidence interval for the mean.
+ *
+ * Used to decide when enough runs have been performed for a single experiment configuration.
+ */
+public class RunningStatistic {
+
+	//Two-sided 95% quantiles of the Student-t distribution for 1 to 30 degrees of freedom
+	private static final double[] T_95 = {
+			12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+			2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+			2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042};
+	
+	//Two-sided 95% quantile of the standard normal distribution
+	private static final double Z_95 = 1.959964;
+
+	int n;
+	double mean;
+	double m2; //Sum of squared deviations from the mean
+
+	/**
+	 * Adds a single observation
+	 */
+	public void add(double x) {
+		n++;
+		double delta = x - mean;
+		mean += delta / n;
+		m2 += delta * (x - mean);
+	}
+
+	public int count() {
+		return n;
+	}
+
+	public double mean() {
+		return mean;
+	}
+
+	/**
+	 * Unbiased sample variance (0 if less than two observations are present)
+	 */
+	public double variance() {
+		return n < 2 ? 0.0 : m2 / (n - 1);
+	}
+
+	/**
+	 * Half width of the 95% confidence interval of the mean. Infinite if less than two
+	 * observations are present.
+	 */
+	public double halfWidth() {
+		if(n < 2) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return tQuantile95(n - 1) * Math.sqrt(variance() / n);
+	}
+	
+	/**
+	 * Two-sided 95% quantile of the Student-t distribution with df degrees of freedom. Above 30 degrees of freedom
+	 * the Cornish-Fisher expansion around the normal quantile is used (Abramowitz and Stegun 26.7.5), whose error is below 0.0001.
+	 */
+	public static double tQuantile95(int df) {
+		if(df <= T_95.length) {
+			return T_95[df - 1];
+		}
+		double z = Z_95, z2 = z*z;
+		return z + z*(z2 + 1) / (4.0*df)
+				+ z*((5*z2 + 16)*z2 + 3) / (96.0*df*df)
+				+ z*(((3*z2 + 19)*z2 + 17)*z2 - 15) / (384.0*df*df*df);
+	}
+
+	/**
+	 * Checks whether the confidence interval is narrower than relWidth times the absolute mean.
+	 * An interval of width 0 (e.g. all observations being 0) is always considered narrow enough.
+	 *
+	 * @param relWidth	target half width relative to the mean (e.g. 0.05 for +-5%)
+	 */
+	public boolean isNarrow(double relWidth) {
+		double hw = halfWidth();
+		return hw == 0.0 || hw <= relWidth * Math.abs(mean);
+	}
+}
@@ -0,0 +1,23 @@
+package Statistics;
+
+/**
+ * Container for the outcome of a routing experiment in which only a sample of the flows
+ * of the traffic matrix was routed (see Routing.FlowSampler).
+ */
+public class SampledResult {
+	//Estimated loads, i.e. the (reweighted) loads of the sampled flows
+	public Result result;
+
+	//Name of the sampling mode and its parameter (number of draws or kept share of the mass)
+	public String mode;
+	public double modeParam;
+
+	public int sampledFlows;	//Number of distinct flows that were routed
+	public int totalFlows;		//Number of flows in the traffic matrix
+
+	//Estimates of LoadStatistics.LOAD_METRICS and an error for each of them.
+	//For unbiased sampling the error is the half width of a 95% confidence interval,
+	//when only the heaviest flows are routed it is the dropped mass, an approximate error (see Routing.FlowSampler).
+	public double[] metrics;
+	public double[] error;
+}
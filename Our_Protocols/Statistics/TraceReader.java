@@ -0,0 +1,129 @@
+package Statistics;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Reads the paths written by a TraceRecorder. The segments are memory-mapped, records are looked up
+ * by (source, destination) via the index or read in the order they were recorded.
+ */
+public class TraceReader {
+
+	/**
+	 * A recorded packet
+	 */
+	public static class Trace {
+		public int source;
+		public int destination;
+		public double weight;
+		public boolean looping;
+		public boolean dropped;
+		public int[] routers;	//Routers of the path, starting with the source
+
+		/**
+		 * Number of links of the path
+		 */
+		public int length() {
+			return routers.length - 1;
+		}
+	}
+
+	MappedByteBuffer[] segments;
+	long[] sortedKeys;
+	long[] positions;
+
+	/**
+	 * @param prefix	Path prefix that was given to the TraceRecorder
+	 */
+	public TraceReader(String prefix) {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(prefix + ".idx")));
+			int numSegments = in.readInt();
+			int numRecords = in.readInt();
+			sortedKeys = new long[numRecords];
+			positions = new long[numRecords];
+			for(int i = 0; i < numRecords; i++) {
+				sortedKeys[i] = in.readLong();
+			}
+			for(int i = 0; i < numRecords; i++) {
+				positions[i] = in.readLong();
+			}
+			in.close();
+
+			segments = new MappedByteBuffer[numSegments];
+			for(int s = 0; s < numSegments; s++) {
+				RandomAccessFile file = new RandomAccessFile(prefix + "." + s + ".seg", "r");
+				segments[s] = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+				file.close();
+			}
+		}
+		catch(IOException ex) {
+			System.err.println("Cannot read trace " + prefix);
+			ex.printStackTrace();
+			System.exit(-1);
+		}
+	}
+
+	public int numRecords() {
+		return positions.length;
+	}
+
+	/**
+	 * The packet recorded as number record (starting at 0)
+	 */
+	public Trace get(int record) {
+		long pos = positions[record];
+		MappedByteBuffer segment = segments[(int) (pos >>> 32)];
+		int[] offset = {(int) pos};
+
+		Trace t = new Trace();
+		t.source = getVarint(segment, offset);
+		t.destination = getVarint(segment, offset);
+		t.weight = segment.getDouble(offset[0]);
+		offset[0] += 8;
+		int flags = segment.get(offset[0]++);
+		t.looping = (flags & TraceRecorder.FLAG_LOOP) != 0;
+		t.dropped = (flags & TraceRecorder.FLAG_DROPPED) != 0;
+		int length = getVarint(segment, offset);
+		t.routers = new int[length + 1];
+		t.routers[0] = t.source;
+		for(int i = 1; i <= length; i++) {
+			int z = getVarint(segment, offset);
+			t.routers[i] = t.routers[i-1] + ((z >>> 1) ^ -(z & 1));
+		}
+		return t;
+	}
+
+	/**
+	 * All recorded packets from source to destination, in the order they were recorded
+	 */
+	public ArrayList<Trace> find(int source, int destination) {
+		long key = ((long) source << 48) | ((long) destination << 32);
+		int i = Arrays.binarySearch(sortedKeys, key);
+		if(i < 0) {i = -i - 1;}
+		ArrayList<Trace> traces = new ArrayList<Trace>();
+		for(; i < sortedKeys.length && (sortedKeys[i] & ~0xFFFFFFFFL) == key; i++) {
+			traces.add(get((int) sortedKeys[i]));
+		}
+		return traces;
+	}
+
+	static int getVarint(MappedByteBuffer segment, int[] offset) {
+		int v = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = segment.get(offset[0]++);
+			v |= (b & 0x7F) << shift;
+			shift += 7;
+		} while(b < 0);
+		return v;
+	}
+}
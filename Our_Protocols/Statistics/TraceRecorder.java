@@ -0,0 +1,214 @@
+package Statistics;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Records the paths of routed packets into memory-mapped segment files, see ImplicitCLOSNetwork.setTraceRecorder().
+ * The recorded paths can be read with TraceReader.
+ *
+ * Segment i is the file prefix + "." + i + ".seg". It starts with the number of used bytes (a long) followed by
+ * the records. A record consists of
+ * 	source and destination (varints), weight (double), flags (byte, 1 = loop, 2 = dropped), number of links (varint),
+ * 	and the routers after the source, each as zigzag varint of the difference to the previous router.
+ * A record never spans two segments.
+ *
+ * On close() the index prefix + ".idx" is written, which allows to look up all records of a (source, destination) pair
+ * by binary search. It contains the number of segments (int) and records (int), the keys
+ * source << 48 | destination << 32 | record (sorted), and the position segment << 32 | offset of every record.
+ *
+ * Packets can be filtered by a sampling rate, by whether they are trapped in a loop, and by a link they must traverse.
+ * An instance must only be used by one thread.
+ */
+public class TraceRecorder {
+
+	//Size of a newly created segment file in bytes
+	public static final int DEFAULT_SEGMENT_BYTES = 1 << 28;
+
+	public static final int FLAG_LOOP = 1;
+	public static final int FLAG_DROPPED = 2;
+
+	String prefix;
+	int segmentBytes;
+	int numSegments;
+	RandomAccessFile file;
+	MappedByteBuffer segment;
+
+	//Filters
+	double sampleRate = 1.0;
+	Random rng;
+	boolean onlyLooping;
+	int throughLink = -1;
+
+	//Key (without the record number) and position of every record
+	long[] keys = new long[1024];
+	long[] positions = new long[1024];
+	int numRecords;
+
+	public TraceRecorder(String prefix) {
+		this(prefix, DEFAULT_SEGMENT_BYTES);
+	}
+
+	/**
+	 * @param prefix	Path prefix of the segment and index files
+	 * @param segmentBytes	Size of each segment file (the files are sparse until written)
+	 */
+	public TraceRecorder(String prefix, int segmentBytes) {
+		this.prefix = prefix;
+		this.segmentBytes = segmentBytes;
+	}
+
+	/**
+	 * Records each packet that passes the other filters with the given probability only
+	 */
+	public void setSampling(double rate, long seed) {
+		this.sampleRate = rate;
+		this.rng = new Random(seed);
+	}
+
+	/**
+	 * Records only packets that are trapped in a forwarding loop
+	 */
+	public void setOnlyLooping(boolean onlyLooping) {
+		this.onlyLooping = onlyLooping;
+	}
+
+	/**
+	 * Records only packets traversing the link (-1 to record packets on all links)
+	 */
+	public void setLink(int link) {
+		this.throughLink = link;
+	}
+
+	/**
+	 * Records the path if it passes all filters
+	 *
+	 * @param routers	Routers of the path, starting with the source
+	 * @param links	Links of the path
+	 * @param numLinks	Length of the path
+	 */
+	public void record(int source, int destination, double weight, boolean looping, boolean dropped, int[] routers, int[] links, int numLinks) {
+		if(onlyLooping && !looping) {return;}
+		if(throughLink >= 0) {
+			boolean found = false;
+			for(int i = 0; i < numLinks && !found; i++) {
+				found = links[i] == throughLink;
+			}
+			if(!found) {return;}
+		}
+		if(sampleRate < 1.0 && rng.nextDouble() >= sampleRate) {return;}
+		if(((source | destination) >>> 16) != 0) {
+			System.err.println("Traces support at most 65536 bottom layer routers!");
+			System.exit(-1);
+		}
+
+		//Worst case size: 2 varints, weight, flags, length varint, 5 bytes per router
+		int maxBytes = 5 + 5 + 8 + 1 + 5 + 5*numLinks;
+		if(segment == null || segment.remaining() < maxBytes) {
+			nextSegment(maxBytes);
+		}
+		if(numRecords == keys.length) {
+			keys = Arrays.copyOf(keys, 2*numRecords);
+			positions = Arrays.copyOf(positions, 2*numRecords);
+		}
+		keys[numRecords] = ((long) source << 48) | ((long) destination << 32);
+		positions[numRecords] = ((long) (numSegments - 1) << 32) | segment.position();
+		numRecords++;
+
+		putVarint(source);
+		putVarint(destination);
+		segment.putDouble(weight);
+		segment.put((byte) ((looping ? FLAG_LOOP : 0) | (dropped ? FLAG_DROPPED : 0)));
+		putVarint(numLinks);
+		int prev = source;
+		for(int i = 1; i <= numLinks; i++) {
+			int delta = routers[i] - prev;
+			putVarint((delta << 1) ^ (delta >> 31));
+			prev = routers[i];
+		}
+	}
+
+	void putVarint(int v) {
+		while((v & ~0x7F) != 0) {
+			segment.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		segment.put((byte) v);
+	}
+
+	void nextSegment(int minBytes) {
+		try {
+			finishSegment();
+			int size = Math.max(segmentBytes, minBytes + 8);
+			file = new RandomAccessFile(prefix + "." + numSegments + ".seg", "rw");
+			file.setLength(size);
+			segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			segment.putLong(0L);
+			numSegments++;
+		}
+		catch(IOException ex) {
+			System.err.println("Cannot create trace segment " + prefix + "." + numSegments + ".seg");
+			ex.printStackTrace();
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Stores the number of used bytes in the current segment and shrinks the file to it
+	 */
+	void finishSegment() throws IOException {
+		if(segment == null) {return;}
+		int used = segment.position();
+		segment.putLong(0, used);
+		segment.force();
+		segment = null;
+		//Shrinking may fail while the mapping is alive on some platforms, the used size is stored anyway
+		try {
+			file.setLength(used);
+		}
+		catch(IOException ex) {}
+		file.close();
+	}
+
+	/**
+	 * Number of recorded packets
+	 */
+	public int numRecords() {
+		return numRecords;
+	}
+
+	/**
+	 * Finishes the last segment and writes the index
+	 */
+	public void close() {
+		try {
+			finishSegment();
+			long[] sorted = new long[numRecords];
+			for(int i = 0; i < numRecords; i++) {
+				sorted[i] = keys[i] | i;
+			}
+			Arrays.sort(sorted);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(prefix + ".idx")));
+			out.writeInt(numSegments);
+			out.writeInt(numRecords);
+			for(long key : sorted) {
+				out.writeLong(key);
+			}
+			for(int i = 0; i < numRecords; i++) {
+				out.writeLong(positions[i]);
+			}
+			out.close();
+		}
+		catch(IOException ex) {
+			System.err.println("Error when writing trace index " + prefix + ".idx");
+			ex.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,527 @@
+package Topology;
+
+import java.util.Arrays;
+
+import Statistics.HopHistogram;
+import Statistics.Result;
+import Topology.CLOSNetwork.FailType;
+import Util.DisconnectException;
+import Util.PhaseEvent;
+
+/**
+ * Routes up to 64 independent failure scenarios (lanes) on the topology and strategy of an ImplicitCLOSNetwork in a single pass.
+ *
+ * The failures are stored as one long per link, bit i is set iff the link is failed in lane i. A flow is walked for a set of
+ * lanes at once: all lanes of the set share the path so far (and therefore the hash value of the next decision), and the
+ * live checks of ImplicitCLOSNetwork.forwardFrom() are evaluated for all lanes with a few word operations. The set only
+ * splits where its lanes see different failures among the candidates of a router, so for few failures a flow costs about
+ * as much as a single scalar routing while yielding one Monte Carlo sample per lane.
+ *
+ * Loads that are the same for all routed lanes are collected in one shared array, the differing ones in per-lane rows that
+ * are only allocated for routers and links where lanes diverged. The Result of a lane is assembled by result().
+ */
+public class BitSlicedRouting {
+
+	public static final int LANES = 64;
+
+	ImplicitCLOSNetwork net;
+	CLOSTopology topo;
+	int h;
+
+	//Failures: lanes in which a link is failed, lanes in which a router is incident to a failed link
+	long[] failed;
+	long[] dirty;
+	int[] touchedLinks = new int[64];
+	int numTouched;
+
+	//Lanes holding a placed and verified scenario, number of failed links per lane
+	long lanes;
+	int numLanes;
+	int[] numFailed = new int[LANES];
+
+	//Physical connectivity per lane, lanes in which some BOT routers are disconnected from each other
+	Connectivity[] connectivity = new Connectivity[LANES];
+	long partitioned;
+
+	//Groups (link, lanes) of the decisions on the current path, used as a stack
+	int[] groupLink = new int[256];
+	long[] groupMask = new long[256];
+	int numGroups;
+
+	//Bit-sliced counters of failed candidates: count[t] holds the lanes with exactly t failures
+	long[] total;
+	long[] prefix;
+
+	//Loads and statistics of the last routing (statistics of packets delivered in all lanes are shared as well)
+	double[] sharedRouterLoad;
+	double[] sharedLinkLoad;
+	double[][] laneRouterLoad;
+	double[][] laneLinkLoad;
+	long[] hopSum = new long[LANES];
+	int[] maxHops = new int[LANES];
+	int[] loops = new int[LANES];
+	int[] drops = new int[LANES];
+	HopHistogram[] histograms = new HopHistogram[LANES];
+	long sharedHopSum;
+	int sharedMaxHops;
+	HopHistogram sharedHistogram;
+	int totalPacks;
+
+	//Connectivity statistics of the last routing, the weight of disconnected flows is only collected for partitioned lanes
+	double totalWeight;
+	double[] disconnectedWeight = new double[LANES];
+	int[] disconnectedLoops = new int[LANES];
+	String expName;
+
+	/**
+	 * @param net	Network whose topology, hashIDs and strategy are used. Its own failures are only used temporarily
+	 * 				while placing scenarios (see placeScenarios()) and must be empty.
+	 */
+	public BitSlicedRouting(ImplicitCLOSNetwork net) {
+		this.net = net;
+		this.topo = net.topology();
+		this.h = topo.h;
+		failed = new long[topo.numLinks];
+		dirty = new long[topo.numRouters];
+		total = new long[topo.k + 2];
+		prefix = new long[topo.k + 2];
+	}
+
+	/**
+	 * Places an independent failure scenario in each of the first numLanes lanes (see ImplicitCLOSNetwork.failEdges()) and
+	 * verifies it by ImplicitCLOSNetwork.initRoutingState(). Lanes whose scenario disconnects the strategy are not routed.
+	 *
+	 * @return	Number of valid lanes
+	 */
+	public int placeScenarios(FailType fType, double fParam, int destination, int numLanes) {
+		if(numLanes < 1 || numLanes > LANES) {
+			System.err.println("Number of lanes must be between 1 and " + LANES + "! Entered:" + numLanes);
+			System.exit(-1);
+		}
+		clear();
+		this.numLanes = numLanes;
+		int valid = 0;
+		for(int lane = 0; lane < numLanes; lane++) {
+			net.failEdges(fType, fParam, destination);
+			FailureOverlay overlay = net.overlay();
+			numFailed[lane] = overlay.numFailed();
+			try {
+				net.initRoutingState();
+				for(int i = 0; i < overlay.numFailed(); i++) {
+					fail(overlay.failedLink(i), lane);
+				}
+				connectivity[lane] = new Connectivity(topo, overlay);
+				if(connectivity[lane].connectedPairs() < 1.0) {partitioned |= 1L << lane;}
+				lanes |= 1L << lane;
+				valid++;
+			} catch (DisconnectException ex) {
+				System.err.println("ERROR: Lane " + lane + ": " + ex.getMessage());
+			}
+			net.healAllEdges();
+		}
+		return valid;
+	}
+
+	void fail(int link, int lane) {
+		if(failed[link] == 0L) {
+			if(numTouched == touchedLinks.length) {touchedLinks = Arrays.copyOf(touchedLinks, 2*numTouched);}
+			touchedLinks[numTouched++] = link;
+		}
+		failed[link] |= 1L << lane;
+		dirty[topo.lowerEnd(link)] |= 1L << lane;
+		dirty[topo.upperEnd(link)] |= 1L << lane;
+	}
+
+	/**
+	 * Removes all scenarios. Takes time proportional to the number of failed links.
+	 */
+	public void clear() {
+		for(int i = 0; i < numTouched; i++) {
+			int link = touchedLinks[i];
+			failed[link] = 0L;
+			dirty[topo.lowerEnd(link)] = 0L;
+			dirty[topo.upperEnd(link)] = 0L;
+		}
+		numTouched = 0;
+		Arrays.fill(connectivity, null);
+		partitioned = 0L;
+		lanes = 0L;
+		numLanes = 0;
+	}
+
+	/**
+	 * Whether the lane holds a scenario that was routed (i.e. did not disconnect the strategy)
+	 */
+	public boolean isValid(int lane) {
+		return (lanes & (1L << lane)) != 0;
+	}
+
+	public int numLanes() {
+		return numLanes;
+	}
+
+	//+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+ Routing +-+-+-+-+-+-+-+-+-+-+-
+
+	/**
+	 * All-to-one routing towards the BOT router dest in every valid lane, see ImplicitCLOSNetwork.allToOneRouting()
+	 */
+	public void allToOneRouting(int dest) {
+		double[] column = new double[topo.numBot];
+		Arrays.fill(column, 1.0);
+		route(null, column, dest, "A2O");
+	}
+
+	/**
+	 * Routes every flow of the traffic matrix in every valid lane, see ImplicitCLOSNetwork.trafficMatrixRouting()
+	 */
+	public void trafficMatrixRouting(double[][] matrix, String expName) {
+		route(matrix, null, -1, expName);
+	}
+
+	void route(double[][] matrix, double[] column, int columnDest, String expName) {
+		PhaseEvent event = PhaseEvent.start("bitSlicedRouting", net.type, topo.k);
+		this.expName = expName;
+		sharedRouterLoad = new double[topo.numRouters];
+		sharedLinkLoad = new double[topo.numLinks];
+		laneRouterLoad = new double[topo.numRouters][];
+		laneLinkLoad = new double[topo.numLinks][];
+		Arrays.fill(hopSum, 0);
+		Arrays.fill(maxHops, 0);
+		Arrays.fill(loops, 0);
+		Arrays.fill(drops, 0);
+		Arrays.fill(disconnectedWeight, 0.0);
+		Arrays.fill(disconnectedLoops, 0);
+		totalWeight = 0.0;
+		for(int lane = 0; lane < LANES; lane++) {
+			histograms[lane] = new HopHistogram();
+		}
+		sharedHopSum = 0;
+		sharedMaxHops = 0;
+		sharedHistogram = new HopHistogram();
+		totalPacks = 0;
+		if(lanes != 0L) {
+			int dFrom = column == null ? 0 : columnDest;
+			int dTo = column == null ? topo.numBot : columnDest + 1;
+			for(int s = 0; s < topo.numBot; s++) {
+				for(int d = dFrom; d < dTo; d++) {
+					double weight = column != null ? column[s] : matrix[s][d];
+					if(s == d || weight < 0.0000001) { continue; }
+					totalWeight += weight;
+					long disconnected = disconnected(s, d, weight);
+
+					long delivered = walk(s, topo.hashIDs[s], s, d, s, 0, lanes, weight);
+					if(delivered != 0L) {addRouterLoad(s, delivered, weight);}
+					totalPacks++;
+					if(disconnected != 0L) {countDisconnectedLoops(disconnected);}
+				}
+			}
+		}
+		event.flowsRouted = totalPacks;
+		event.finish();
+	}
+
+	/**
+	 * Walks a packet of the flow (source, dest) that is at router cur in the given lanes.
+	 * Adds the loads of the links and routers behind cur for all lanes in which the packet is delivered.
+	 *
+	 * Lanes that loop or reach a router without live candidate are counted in loops and drops.
+	 *
+	 * @return	Lanes in which the packet reaches dest (i.e. neither loops nor is dropped)
+	 */
+	long walk(int cur, int sourceID, int source, int dest, int lastHop, int hops, long mask, double weight) {
+		if(cur == dest) {
+			if(hops >= 2*CLOSNetwork.LOOP_MAX - 10) {
+				countLoops(mask);
+				return 0L;
+			}
+			int shortest = HopHistogram.shortestPathLength(topo.k, source, dest);
+			if(mask == lanes) {
+				sharedHopSum += hops;
+				if(hops > sharedMaxHops) {sharedMaxHops = hops;}
+				sharedHistogram.add(hops, shortest, weight);
+				return mask;
+			}
+			for(long m = mask; m != 0L; m &= m - 1) {
+				int lane = Long.numberOfTrailingZeros(m);
+				hopSum[lane] += hops;
+				if(hops > maxHops[lane]) {maxHops[lane] = hops;}
+				histograms[lane].add(hops, shortest, weight);
+			}
+			return mask;
+		}
+		if(hops > 2*CLOSNetwork.LOOP_MAX) {
+			countLoops(mask);
+			return 0L;
+		}
+		int base = numGroups;
+		forward(cur, sourceID, dest, lastHop, hops, mask);
+		int end = numGroups;
+		long forwarded = 0L;
+		for(int g = base; g < end; g++) {
+			forwarded |= groupMask[g];
+		}
+		if(forwarded != mask) {countDrops(mask & ~forwarded);}
+		long delivered = 0L;
+		for(int g = base; g < end; g++) {
+			int link = groupLink[g];
+			int next = topo.otherEnd(link, cur);
+			long m = walk(next, sourceID, source, dest, cur, hops + 1, groupMask[g], weight);
+			if(m != 0L) {
+				addLinkLoad(link, m, weight);
+				addRouterLoad(next, m, weight);
+				delivered |= m;
+			}
+		}
+		numGroups = base;
+		return delivered;
+	}
+
+	/**
+	 * Adds the weight of the flow (s, d) to the disconnected weight of every lane in which d is not connected to s.
+	 * Marks the current loop count of these lanes in disconnectedLoops, see countDisconnectedLoops().
+	 *
+	 * @return	Lanes in which d is not connected to s
+	 */
+	long disconnected(int s, int d, double weight) {
+		long cut = 0L;
+		for(long m = partitioned & lanes; m != 0L; m &= m - 1) {
+			int lane = Long.numberOfTrailingZeros(m);
+			if(!connectivity[lane].connected(s, d)) {
+				disconnectedWeight[lane] += weight;
+				disconnectedLoops[lane] -= loops[lane];
+				cut |= 1L << lane;
+			}
+		}
+		return cut;
+	}
+
+	/**
+	 * Counts the packets of the lanes in mask that looped since disconnected() as disconnected loops
+	 */
+	void countDisconnectedLoops(long mask) {
+		for(long m = mask; m != 0L; m &= m - 1) {
+			int lane = Long.numberOfTrailingZeros(m);
+			disconnectedLoops[lane] += loops[lane];
+		}
+	}
+
+	void countLoops(long mask) {
+		for(long m = mask; m != 0L; m &= m - 1) {
+			loops[Long.numberOfTrailingZeros(m)]++;
+		}
+	}
+
+	void countDrops(long mask) {
+		for(long m = mask; m != 0L; m &= m - 1) {
+			drops[Long.numberOfTrailingZeros(m)]++;
+		}
+	}
+
+	void addLinkLoad(int link, long mask, double weight) {
+		if(mask == lanes) {
+			sharedLinkLoad[link] += weight;
+			return;
+		}
+		if(laneLinkLoad[link] == null) {laneLinkLoad[link] = new double[LANES];}
+		double[] row = laneLinkLoad[link];
+		for(long m = mask; m != 0L; m &= m - 1) {
+			row[Long.numberOfTrailingZeros(m)] += weight;
+		}
+	}
+
+	void addRouterLoad(int router, long mask, double weight) {
+		if(mask == lanes) {
+			sharedRouterLoad[router] += weight;
+			return;
+		}
+		if(laneRouterLoad[router] == null) {laneRouterLoad[router] = new double[LANES];}
+		double[] row = laneRouterLoad[router];
+		for(long m = mask; m != 0L; m &= m - 1) {
+			row[Long.numberOfTrailingZeros(m)] += weight;
+		}
+	}
+
+	/**
+	 * Forwarding decision of router cur for all lanes in mask, see ImplicitCLOSNetwork.forwardFrom().
+	 * Pushes a group (link, lanes) for every link that is taken in some lane. Lanes without live candidate are dropped.
+	 */
+	void forward(int cur, int sourceID, int dest, int lastHop, int hops, long mask) {
+		int[] hashIDs = topo.hashIDs;
+		int pHash = net.hashFunction.hash(hashIDs[cur], sourceID, hashIDs[dest], hashIDs[lastHop], hops);
+		int destPod = dest / h;
+		if(cur < topo.topOffset) {
+			select(cur, true, net.botUpStart[cur % h], net.botUpSize[cur % h], pHash, mask);
+		}
+		else if(cur < topo.blockOffset) {
+			int pod = (cur - topo.topOffset) / h;
+			int id = (cur - topo.topOffset) % h;
+			if(destPod == pod) {
+				mask = direct(topo.podLink(pod, dest % h, id), mask);
+				if(mask != 0L) {select(cur, false, net.topDownStart[id], net.topDownSize[id], pHash, mask);}
+			}
+			else {
+				select(cur, true, net.topUpStart[pod], net.topUpSize[pod], pHash, mask);
+			}
+		}
+		else {
+			int id = (cur - topo.blockOffset) % h;
+			mask = direct(topo.blockLink(destPod, (cur - topo.blockOffset) / h, id), mask);
+			if(mask != 0L) {select(cur, false, net.blockDownStart[id], net.blockDownSize[id], pHash, mask);}
+		}
+	}
+
+	/**
+	 * Takes the link in all lanes in which it is live
+	 *
+	 * @return	Lanes in which the link is failed
+	 */
+	long direct(int link, long mask) {
+		long live = mask & ~failed[link];
+		if(live != 0L) {push(link, live);}
+		return mask & failed[link];
+	}
+
+	/**
+	 * Bit-sliced counterpart of ImplicitCLOSNetwork.selectUp()/selectDown(): in each lane, the (pHash % live)-th live link among
+	 * the ports [start, start+size) is taken. A lane with f failed candidates takes the port j at which exactly j - (pHash % (size-f))
+	 * failed candidates precede j. The number of failures per lane is kept in bit-sliced counters (one word per count), so each
+	 * port costs a few word operations per distinct number of failures.
+	 */
+	void select(int router, boolean up, int start, int size, int pHash, long mask) {
+		if((dirty[router] & mask) == 0L) {
+			push(port(router, up, start + pHash % size), mask);
+			return;
+		}
+		if((mask & (mask - 1)) == 0L) {
+			selectSingle(router, up, start, size, pHash, mask);
+			return;
+		}
+		//Lanes by their total number of failed candidates
+		int maxTotal = count(router, up, start, size, mask, total, size);
+		//Lanes by the number of failed candidates before the current port
+		Arrays.fill(prefix, 0, maxTotal + 1, 0L);
+		prefix[0] = mask;
+		int maxPrefix = 0;
+		long open = mask & ~(maxTotal == size ? total[size] : 0L);
+		for(int j = 0; j < size && open != 0L; j++) {
+			int link = port(router, up, start + j);
+			long live = mask & ~failed[link];
+			long take = 0L;
+			for(int f = 0; f <= maxTotal && f < size; f++) {
+				if(total[f] == 0L) {continue;}
+				int t = j - pHash % (size - f);
+				if(t >= 0 && t <= maxPrefix && t <= f) {
+					take |= prefix[t] & total[f] & live;
+				}
+			}
+			take &= open;
+			if(take != 0L) {
+				push(link, take);
+				open &= ~take;
+			}
+			maxPrefix = increment(prefix, maxPrefix, mask & failed[link]);
+		}
+	}
+
+	/**
+	 * Same as select() for a single lane (e.g. a packet whose lane left all others behind), as in ImplicitCLOSNetwork.selectUp()
+	 */
+	void selectSingle(int router, boolean up, int start, int size, int pHash, long lane) {
+		int live = 0;
+		for(int j = 0; j < size; j++) {
+			if((failed[port(router, up, start + j)] & lane) == 0L) {live++;}
+		}
+		if(live == 0) {return;}
+		int index = pHash % live;
+		for(int j = 0; j < size; j++) {
+			int link = port(router, up, start + j);
+			if((failed[link] & lane) == 0L && index-- == 0) {
+				push(link, lane);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Counts the failed candidates among the ports [start, start+size) of every lane into counter
+	 *
+	 * @return	Largest count of any lane
+	 */
+	int count(int router, boolean up, int start, int size, long mask, long[] counter, int limit) {
+		Arrays.fill(counter, 0, limit + 1, 0L);
+		counter[0] = mask;
+		int max = 0;
+		for(int j = 0; j < size; j++) {
+			long f = mask & failed[port(router, up, start + j)];
+			if(f != 0L) {max = increment(counter, max, f);}
+		}
+		return max;
+	}
+
+	/**
+	 * Increments the bit-sliced counter of all lanes in inc
+	 *
+	 * @return	New largest count
+	 */
+	int increment(long[] counter, int max, long inc) {
+		if(inc == 0L) {return max;}
+		counter[max + 1] = 0L;
+		for(int t = max; t >= 0; t--) {
+			long moving = counter[t] & inc;
+			counter[t] &= ~moving;
+			counter[t + 1] |= moving;
+		}
+		return counter[max + 1] != 0L ? max + 1 : max;
+	}
+
+	int port(int router, boolean up, int port) {
+		return up ? topo.upLink(router, port) : topo.downLink(router, port);
+	}
+
+	void push(int link, long mask) {
+		if(numGroups == groupLink.length) {
+			groupLink = Arrays.copyOf(groupLink, 2*numGroups);
+			groupMask = Arrays.copyOf(groupMask, 2*numGroups);
+		}
+		groupLink[numGroups] = link;
+		groupMask[numGroups] = mask;
+		numGroups++;
+	}
+
+	//+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+ Results +-+-+-+-+-+-+-+-+-+-+-
+
+	/**
+	 * Result of a lane after the last routing, equal to the Result of ImplicitCLOSNetwork for the failures of the lane.
+	 * For an invalid lane, only the failure information is set (see LoadStatistics.writeFailedRun()).
+	 */
+	public Result result(int lane) {
+		Result r = net.createResultObj();
+		r.numFailedEdges = numFailed[lane];
+		r.experimentType = expName;
+		if(!isValid(lane)) {return r;}
+
+		double[] routerLoad = Arrays.copyOf(sharedRouterLoad, topo.numRouters);
+		for(int i = 0; i < topo.numRouters; i++) {
+			if(laneRouterLoad[i] != null) {routerLoad[i] += laneRouterLoad[i][lane];}
+		}
+		double[] linkLoad = Arrays.copyOf(sharedLinkLoad, topo.numLinks);
+		for(int i = 0; i < topo.numLinks; i++) {
+			if(laneLinkLoad[i] != null) {linkLoad[i] += laneLinkLoad[i][lane];}
+		}
+		r.packsInCycle = loops[lane];
+		r.droppedPacks = drops[lane];
+		r.sentFromServers = false;
+		r.totalPacks = totalPacks;
+		r.avgHops = (double) (sharedHopSum + hopSum[lane]) / (totalPacks - loops[lane] - drops[lane]);
+		r.maxHops = Math.max(sharedMaxHops, maxHops[lane]);
+		r.routerLoad = routerLoad;
+		r.linkLoad = linkLoad;
+		r.hopHistogram = new HopHistogram();
+		r.hopHistogram.merge(sharedHistogram);
+		r.hopHistogram.merge(histograms[lane]);
+		r.connectedPairs = connectivity[lane].connectedPairs();
+		r.connectedWeight = totalWeight > 0 ? (totalWeight - disconnectedWeight[lane]) / totalWeight : 1.0;
+		r.disconnectedLoops = disconnectedLoops[lane];
+		return r;
+	}
+}
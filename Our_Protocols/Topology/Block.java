@@ -79,7 +79,13 @@ public class Block {
 	
 	public void initialize() throws DisconnectException{
 		for(Node n: nodes) {
-			n.updateRoutingState();
+			n.initRoutingState();
+		}
+	}
+	
+	public void invalidate() {
+		for(Node n: nodes) {
+			n.invalidateRoutingState();
 		}
 	}
 }
@@ -2,8 +2,11 @@ package Topology;
 
 import Util.DisconnectException;
 import Util.Edge;
+import Util.Log;
+import Util.PhaseEvent;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 
 import Hashing.Hash;
@@ -67,6 +70,13 @@ public class CLOSNetwork {
 		DESTINATION
 	}
 	
+	//Handling of failure sets that leave some router without forwarding candidates (see isFeasible())
+	public enum Infeasible{
+		BUILD,		//Build the routing state anyway, initRoutingState() then throws a DisconnectException
+		DROP,		//Drop the run right after placing the failures
+		RESAMPLE	//Redraw the failures until they are feasible, i.e. sample from the feasible failure sets only
+	}
+	
 	//Storage for forwarding and failure strategy
 	Type type;
 	FailType cFailType;
@@ -76,6 +86,16 @@ public class CLOSNetwork {
 	//Number of intervals when employing the interval failover strategyy
 	int numIntervals;
 	
+	//Number of routers all of whose forwarding candidates in one direction are failed.
+	//Maintained by Node.failTopLink() and Node.failBottomLink() while failures are placed
+	int starvedNodes;
+	
+	//If set, initRoutingState() only invalidates the routing state and each node builds it on first use
+	boolean lazyRoutingState = false;
+	
+	//Source of randomness for hashIDs, failures and destinations. ThreadLocalRandom is used if no seed was set.
+	Random rng;
+	
 	/**
 	 * Creates a CLOS-Topology.
 	 * Note that the parameter k directly controls the size of the network
@@ -109,6 +129,20 @@ public class CLOSNetwork {
 		}
 	}
 	
+	/**
+	 * Makes all following random choices (hashIDs drawn by initEdges(), failures and random destinations) 
+	 * reproducible. Can be called again at any time, e.g. before each run.
+	 * 
+	 * @param seed	Seed of the random number generator
+	 */
+	public void setSeed(long seed) {
+		rng = new Random(seed);
+	}
+	
+	Random rng() {
+		return rng != null ? rng : ThreadLocalRandom.current();
+	}
+	
 	/**
 	 * Initializes all Pods and Blocks as well as the links (or edges) between them.
 	 * This is done by inserting bi-directional edges in the following way:
@@ -118,13 +152,15 @@ public class CLOSNetwork {
 	 * 		node in the bottom layer and vice-versa.
 	 */
 	public void initEdges() {
-		System.out.println("-----------------------------------------------------------");
-		System.out.println("**** Initializing CLOS Network with k=" + k +" and of type " + type.toString());
-		System.out.println("** Consisting of:");
-		System.out.println("**\t" + k + " Pods each with " + k + " nodes");
-		System.out.println("**\t" + (k/2) + " Blocks each with " + k/2 + " nodes");
-		System.out.println("** TOTAL ROUTERS: " + (k*k + (k/2) *(k/2)) + " (BOTTOM-LAYER "+ k*(k/2) + ")" + " ENDPOINTS: " + (k*(k/2)*(k/2)) +  " -- COMBINED: "+ (k*k + (k/2) *(k/2) + k*(k/2)*(k/2)));
+		PhaseEvent event = PhaseEvent.start("initEdges", type, k);
+		Log.println("-----------------------------------------------------------");
+		Log.println("**** Initializing CLOS Network with k=" + k +" and of type " + type.toString());
+		Log.println("** Consisting of:");
+		Log.println("**\t" + k + " Pods each with " + k + " nodes");
+		Log.println("**\t" + (k/2) + " Blocks each with " + k/2 + " nodes");
+		Log.println("** TOTAL ROUTERS: " + (k*k + (k/2) *(k/2)) + " (BOTTOM-LAYER "+ k*(k/2) + ")" + " ENDPOINTS: " + (k*(k/2)*(k/2)) +  " -- COMBINED: "+ (k*k + (k/2) *(k/2) + k*(k/2)*(k/2)));
 		
+		starvedNodes = 0;
 		//Create Pods
 		pods = new Pod[k];
 		for(int i = 0; i < k; i++) {
@@ -135,8 +171,18 @@ public class CLOSNetwork {
 		for(int i = 0; i < k/2; i++) {
 			blocks[i] = new Block(k,i,this);
 		}
+		//Nodes draw their hashIDs on creation, redraw them if the network is seeded
+		if(rng != null) {
+			for(Pod p : pods) {
+				for(Node n : p.bot) {n.hashID = rng.nextInt();}
+				for(Node n : p.top) {n.hashID = rng.nextInt();}
+			}
+			for(Block b : blocks) {
+				for(Node n : b.nodes) {n.hashID = rng.nextInt();}
+			}
+		}
 		
-		System.out.println("** Adding Edges...");
+		Log.println("** Adding Edges...");
 		//Draw edges between all nodes
 		for(int p = 0; p < pods.length; p++) {
 			pods[p].connectInternalEdges();
@@ -145,8 +191,9 @@ public class CLOSNetwork {
 		for(int b = 0; b < blocks.length; b++) {
 			blocks[b].connectTo(pods);
 		}
-		System.out.println("**** Topology creation completed!");
-		System.out.println("-----------------------------------------------------------\n");
+		Log.println("**** Topology creation completed!");
+		Log.println("-----------------------------------------------------------\n");
+		event.finish();
 	}
 	
 	/**
@@ -160,6 +207,7 @@ public class CLOSNetwork {
 	 * 						This parameter is not used when fType = RANDOM
 	 */
 	public void failEdges(FailType fType, double fParam, Node destination) {
+		PhaseEvent event = PhaseEvent.start("failEdges", type, k);
 		switch(fType) {
 		case RANDOM:
 			failEdgesRandomly(fParam); break;
@@ -171,10 +219,51 @@ public class CLOSNetwork {
 			System.err.println("Invalid Failure Model specified: " + fType + " exiting ...");
 			System.exit(-1);
 		}
+		event.finish();
 	}
 	
 	
 	
+	/**
+	 * Checks whether the current failures allow to employ the strategy, i.e. whether initRoutingState() 
+	 * succeeds in eager mode. This takes O(1) as the routers without candidates are counted while placing the failures.
+	 */
+	public boolean isFeasible() {
+		return starvedNodes == 0;
+	}
+	
+	/**
+	 * Places failures as failEdges() and redraws them until they are feasible (see isFeasible()).
+	 * The accepted failures are thus drawn from the failure model conditioned on feasibility.
+	 * 
+	 * @param maxDraws	Maximum number of draws. The failures of the last draw are kept even if they are not feasible
+	 * @return	Number of rejected draws (equal to maxDraws if no feasible failures were found)
+	 */
+	public int failEdgesFeasible(FailType fType, double fParam, Node destination, int maxDraws) {
+		int rejected = 0;
+		failEdges(fType, fParam, destination);
+		while(!isFeasible()) {
+			rejected++;
+			if(rejected == maxDraws) {break;}
+			healAllEdges();
+			failEdges(fType, fParam, destination);
+		}
+		return rejected;
+	}
+	
+	/**
+	 * Enables or disables lazy routing state. In lazy mode, initRoutingState() only marks the routing state of all
+	 * nodes as outdated and a node builds its forwarding sets when the first packet reaches it. Only nodes that are
+	 * actually used are checked for disconnects, so a run is dropped only if some packet reaches a node
+	 * without forwarding candidates. Such a disconnect is thrown by the routing functions as LazyDisconnectException.
+	 * 
+	 * The routing of all packets is the same in both modes. This saves most of the setup for traffic
+	 * that only crosses a part of the network, e.g. all-to-one.
+	 */
+	public void setLazyRoutingState(boolean lazy) {
+		this.lazyRoutingState = lazy;
+	}
+	
 	/**
 	 * Initialize the routing tables by calling
 	 * .initialize() at each pod and block
@@ -186,20 +275,38 @@ public class CLOSNetwork {
 	 * being used.
 	 */
 	public void initRoutingState() throws DisconnectException{
-		System.out.println("-----------------------------------------------------------");
-		System.out.println("** Initializing Routing Entries of Nodes...");
+		PhaseEvent event = PhaseEvent.start("initRoutingState", type, k);
+		Log.println("-----------------------------------------------------------");
+		if(lazyRoutingState) {
+			for(Pod p : pods) {
+				p.invalidate();
+			}
+			for(Block b : blocks) {
+				b.invalidate();
+			}
+			event.finish();
+			Log.println("** Routing Entries are initialized on first use");
+			Log.println("-----------------------------------------------------------\n");
+			return;
+		}
+		Log.println("** Initializing Routing Entries of Nodes...");
 		if(this.type == Type.INT_D || this.type == Type.INT_ID || this.type == Type.INT_SID) {
-			System.out.println("** Number of Intervals " + numIntervals);
-			System.out.println("** Size of smallest Interval " +  (k/2) / numIntervals);
+			Log.println("** Number of Intervals " + numIntervals);
+			Log.println("** Size of smallest Interval " +  (k/2) / numIntervals);
 		}
-		for(int p = 0; p < pods.length; p++) {
-			pods[p].initialize();
+		try {
+			for(int p = 0; p < pods.length; p++) {
+				pods[p].initialize();
+			}
+			for(int b = 0; b < blocks.length; b++) {
+				blocks[b].initialize();
+			}
 		}
-		for(int b = 0; b < blocks.length; b++) {
-			blocks[b].initialize();
+		finally {
+			event.finish();
 		}
-		System.out.println("** Entries Initialized");
-		System.out.println("-----------------------------------------------------------\n");
+		Log.println("** Entries Initialized");
+		Log.println("-----------------------------------------------------------\n");
 	}
 	
 	
@@ -209,6 +316,7 @@ public class CLOSNetwork {
 	 * with the same CLOSNetwork object.
 	 */
 	public void healAllEdges() {
+		starvedNodes = 0;
 		for(Pod p : pods) {
 			for(Node n: p.bot) {
 				n.healFailures();
@@ -235,9 +343,9 @@ public class CLOSNetwork {
 	 * @param	p	 Probability for a fixed link to fail.
 	 */
 	public void failEdgesRandomly(double p) {
-		System.out.println("-----------------------------------------------------------");
-		System.out.println("** Failing Edges Randomly with p=" +  p + " ...");
-		ThreadLocalRandom rng = ThreadLocalRandom.current();
+		Log.println("-----------------------------------------------------------");
+		Log.println("** Failing Edges Randomly with p=" +  p + " ...");
+		Random rng = rng();
 		int count = 0;
 		int total = 0;
 		
@@ -251,30 +359,30 @@ public class CLOSNetwork {
 				Node cNode = pods[i].top[j];
 				for(int a = 0; a < cNode.tLink.length; a++) {
 					if(rng.nextDouble() <= p) {
-						cNode.tFail[a] = true;
+						cNode.failTopLink(a);
 						count++;
 						//Mirror failures as we consider undirected edges
 						Node otherNode = cNode.tLink[a];
-						otherNode.bFail[cNode.pPod.id] = true;
+						otherNode.failBottomLink(cNode.pPod.id);
 					}
 					total++;
 				}
 				
 				for(int a = 0; a < cNode.bLink.length; a++) {
 					if(rng.nextDouble() <= p) {
-						cNode.bFail[a] = true;
+						cNode.failBottomLink(a);
 						count++;
 						Node otherNode = cNode.bLink[a];
-						otherNode.tFail[j] = true;
+						otherNode.failTopLink(j);
 					}
 					total++;
 				}
 			}
 		}
 		cFailedEdges = count;
-		System.out.println("** Edge Failures Placed");
-		System.out.println("** Failed " + count + " edges out of "  + total );
-		System.out.println("-----------------------------------------------------------\n");
+		Log.println("** Edge Failures Placed");
+		Log.println("** Failed " + count + " edges out of "  + total );
+		Log.println("-----------------------------------------------------------\n");
 	}
 
 
@@ -292,10 +400,10 @@ public class CLOSNetwork {
 	 * 						layer of some pod.
 	 */
 	public void worstCaseIntervalFailures(double p, Node destination) {
-		System.out.println("-----------------------------------------------------------");
-		System.out.println("** Failing a " +  p + " fraction of edges that ");
-		System.out.println("** (1a) start in an interval in a block and (1b) reach into the destination pod");
-		System.out.println("** (2a) start in the top layer of the destination pod and (2b) connect to the destination");
+		Log.println("-----------------------------------------------------------");
+		Log.println("** Failing a " +  p + " fraction of edges that ");
+		Log.println("** (1a) start in an interval in a block and (1b) reach into the destination pod");
+		Log.println("** (2a) start in the top layer of the destination pod and (2b) connect to the destination");
 		Pod destPod = destination.pPod;
 		int destPodID = destPod.id;
 		int destID = destination.idLocal;
@@ -306,10 +414,10 @@ public class CLOSNetwork {
 		//Fail p*intervalsize (rounded down) many edges
 		for (int interval = 0; interval < numIntervals; interval++) {
 			int[] nodesInInterval = IntervalUtility.getIndicesInInterval(k / 2, numIntervals, interval);
-			Utility.shuffle(nodesInInterval);
+			Utility.shuffle(nodesInInterval, rng());
 			for (int i = 0; i < (int) (p * nodesInInterval.length); i++) {
-				destPod.top[nodesInInterval[i]].bFail[destID] = true;
-				destination.tFail[destPod.top[i].idLocal] = true;
+				destPod.top[nodesInInterval[i]].failBottomLink(destID);
+				destination.failTopLink(destPod.top[i].idLocal);
 				count++;
 			}
 		}
@@ -319,18 +427,18 @@ public class CLOSNetwork {
 		for(Block b: blocks){
 			for(int interval = 0; interval < numIntervals; interval++) {
 				int[] nodesInInterval = IntervalUtility.getIndicesInInterval(k/2, numIntervals, interval);
-				Utility.shuffle(nodesInInterval);
+				Utility.shuffle(nodesInInterval, rng());
 				for (int i = 0; i < (int) (p * nodesInInterval.length); i++) {
-					b.nodes[nodesInInterval[i]].bFail[destPodID] = true;
-					destPod.top[b.id].tFail[i] = true;
+					b.nodes[nodesInInterval[i]].failBottomLink(destPodID);
+					destPod.top[b.id].failTopLink(i);
 					count++;
 				}
 			}
 		}
 		cFailedEdges = count;
-		System.out.println("** Failing Edges completed!");
-		System.out.println("** Failed " + count + " out of " + ((k/2) * (k/2) + k*(k/2)*(k/2)) + " total edges");
-		System.out.println("-----------------------------------------------------------\n");
+		Log.println("** Failing Edges completed!");
+		Log.println("** Failed " + count + " out of " + ((k/2) * (k/2) + k*(k/2)*(k/2)) + " total edges");
+		Log.println("-----------------------------------------------------------\n");
 	}
 	
 	/**
@@ -345,8 +453,8 @@ public class CLOSNetwork {
 	 * @param destination	Node whose links are failed
 	 */
 	public void failDestEdges(double p, Node destination) {
-		System.out.println("-----------------------------------------------------------");
-		System.out.println("** Failing a " +  p + " fraction of edges incident to the destination node ");
+		Log.println("-----------------------------------------------------------");
+		Log.println("** Failing a " +  p + " fraction of edges incident to the destination node ");
 		
 		if(destination.type != Node.Type.BOT) {
 			System.err.println("Destination node must lie on bottom layer of pod!");
@@ -361,17 +469,17 @@ public class CLOSNetwork {
 			neighborIDs[i] = i;
 		}
 		int failCount = 0;
-		Utility.shuffle(neighborIDs);
+		Utility.shuffle(neighborIDs, rng());
 		for(int i = 0; i < (int) (neighborIDs.length * p); i++) {
 			failCount++;
 			Node failedPartner = destination.tLink[neighborIDs[i]];
-			destination.tFail[neighborIDs[i]] = true;
-			failedPartner.bFail[destination.idLocal] = true;
+			destination.failTopLink(neighborIDs[i]);
+			failedPartner.failBottomLink(destination.idLocal);
 		}
 		cFailedEdges = failCount;
-		System.out.println("** Failing Edges completed!");
-		System.out.println("** Failed " + failCount + " out of the " + destination.tLink.length + " edges of the destination");
-		System.out.println("-----------------------------------------------------------\n");
+		Log.println("** Failing Edges completed!");
+		Log.println("** Failed " + failCount + " out of the " + destination.tLink.length + " edges of the destination");
+		Log.println("-----------------------------------------------------------\n");
 	}
 	
 	
@@ -424,9 +532,30 @@ public class CLOSNetwork {
 	
 	
 	public Result trafficMatrixRouting(double[][] matrix, String expName) {
-		System.out.println("-----------------------------------------------------------");
-		System.out.println("** Traffix Matrix Routing (flows between bottom layer nodes only)." );
-		System.out.println("** Entry M[i][j] contains weight of flow sent from i'th to j'th bottom layer node");
+		return route(matrix, null, null, 0, expName);
+	}
+	
+	/**
+	 * Routes the first count flows of a list, e.g. a sample of a traffic matrix (see Routing.FlowSampler).
+	 * Unlike trafficMatrixRouting() the cost does not depend on the number of pairs of bottom layer nodes.
+	 * 
+	 * @param pairs	Flat indices s*(k*k/2) + d of the flows (source s and destination d are bottom layer nodes)
+	 * @param weights	Weights of the flows
+	 */
+	public Result flowListRouting(int[] pairs, double[] weights, int count, String expName) {
+		return route(null, pairs, weights, count, expName);
+	}
+	
+	/**
+	 * Shared implementation of trafficMatrixRouting() and flowListRouting()
+	 */
+	private Result route(double[][] matrix, int[] pairs, double[] pairWeights, int numPairs, String expName) {
+		PhaseEvent event = PhaseEvent.start("routing", type, k);
+		boolean profile = event.isEnabled();
+		long hopSum = 0, botForwards = 0, topForwards = 0, blockForwards = 0;
+		Log.println("-----------------------------------------------------------");
+		Log.println("** Traffix Matrix Routing (flows between bottom layer nodes only)." );
+		Log.println("** Entry M[i][j] contains weight of flow sent from i'th to j'th bottom layer node");
 		
 		int loopCount = 0;
 		int totalPacks = 0;
@@ -436,62 +565,81 @@ public class CLOSNetwork {
 		
 		HashMap<Node,Double> nodeLoad = new HashMap<Node,Double>();
 		HashMap<Edge, Double> edgeLoad = new HashMap<Edge, Double>();
+		HopHistogram histogram = new HopHistogram();
 		
-		for(int p = 0; p < pods.length; p++) {
-			for(int i = 0; i < pods[p].bot.length; i++) { // From every destination i
+		Connectivity connectivity = new Connectivity(this);
+		double totalWeight = 0.0, connectedWeight = 0.0;
+		int disconnectedLoops = 0;
+		
+		int numBot = k*k/2;
+		int numSources = pairs == null ? numBot : numPairs; //For a list of flows, src is the index of the flow
+		for(int src = 0; src < numSources; src++) {
+			int s = pairs == null ? src : pairs[src] / numBot;
+			int p = s / (k/2);
+			Node source = pods[p].bot[s % (k/2)];
+			int dFrom = pairs == null ? 0 : pairs[src] % numBot;
+			int dTo = pairs == null ? numBot : dFrom + 1;
+			
+			for(int d = dFrom; d < dTo; d++) {
+				int q = d / (k/2);
+				Node destination = pods[q].bot[d % (k/2)];
+				double packet_weight = pairs == null ? matrix[s][d] : pairWeights[src];
+				
+				if(source == destination || packet_weight <0.0000001) { continue; }
 				
-				Node source = pods[p].bot[i];
+				Packet pack = new Packet(source,destination);
+				pack.weight = packet_weight;
+				boolean connected = connectivity.connected(s, d);
+				totalWeight += packet_weight;
+				if(connected) {connectedWeight += packet_weight;}
 				
-				for(int q = 0; q < pods.length; q++) {
-					for(int j = 0; j < pods[q].bot.length; j++) {
-						
-						Node destination = pods[q].bot[j];
-						double packet_weight = matrix[p*(k/2) + i][q*(k/2) + j];
-						
-						if(source == destination || packet_weight <0.0000001) { continue; }
-						
-						Packet pack = new Packet(source,destination);
-						pack.weight = packet_weight;
-						
-						ArrayList<Node> hops = routePacket(pack,source);
-						
-						//Compute statistics
-						if(hops.size()-1 >= 2*LOOP_MAX - 10) {
-							loopCount++;
+				ArrayList<Node> hops = routePacket(pack,source);
+				if(profile) {
+					hopSum += hops.size() - 1;
+					for(int u = 0; u < hops.size() - 1; u++) {
+						Node.Type t = hops.get(u).type;
+						if(t == Node.Type.BOT) {botForwards++;}
+						else if(t == Node.Type.TOP) {topForwards++;}
+						else {blockForwards++;}
+					}
+				}
+				
+				//Compute statistics
+				if(hops.size()-1 >= 2*LOOP_MAX - 10) {
+					loopCount++;
+					if(!connected) {disconnectedLoops++;}
+				}
+				else{ // Do not include packets that traveled in loop in statistic calculation
+					  // Such packets cause all values to be infinite anyways
+					if(hops.size()-1 > max_hops) {
+						max_hops = hops.size()-1;
+					}
+					avg_hops += hops.size()-1;
+					histogram.add(hops.size()-1, p == q ? 2 : 4, pack.weight);
+					
+					for(Node n: hops) { //Add load to nodes
+						if(nodeLoad.get(n) != null) {
+							nodeLoad.put(n, nodeLoad.get(n) + pack.weight);
 						}
-						else{ // Do not include packets that traveled in loop in statistic calculation
-							  // Such packets cause all values to be infinite anyways
-							if(hops.size()-1 > max_hops) {
-								max_hops = hops.size()-1;
-							}
-							avg_hops += hops.size()-1;
+						else {nodeLoad.put(n, pack.weight);}
+					}
+					
+					
+					if(hops.size() > 1) {
+						for(int u = 0; u < hops.size() - 1; u++) {
+							Node n1 = hops.get(u); Node n2 = hops.get(u+1);
+							Edge edge = new Edge(n1,n2);
 							
-							for(Node n: hops) { //Add load to nodes
-								if(nodeLoad.get(n) != null) {
-									nodeLoad.put(n, nodeLoad.get(n) + pack.weight);
-								}
-								else {nodeLoad.put(n, pack.weight);}
+							if(edgeLoad.get(edge) != null) {
+								edgeLoad.put(edge,  edgeLoad.get(edge) + pack.weight);
 							}
-							
-							
-							if(hops.size() > 1) {
-								for(int u = 0; u < hops.size() - 1; u++) {
-									Node n1 = hops.get(u); Node n2 = hops.get(u+1);
-									Edge edge = new Edge(n1,n2);
-									
-									if(edgeLoad.get(edge) != null) {
-										edgeLoad.put(edge,  edgeLoad.get(edge) + pack.weight);
-									}
-									else {
-										edgeLoad.put(edge, pack.weight);
-									}
-								}
+							else {
+								edgeLoad.put(edge, pack.weight);
 							}
 						}
-						totalPacks++;
 					}
 				}
-		
+				totalPacks++;
 			}
 		}
 		
@@ -501,6 +649,9 @@ public class CLOSNetwork {
 		//Also clean-up load values by setting them back to 0
 		Result r= createResultObj();
 		r.packsInCycle = loopCount;
+		r.connectedPairs = connectivity.connectedPairs();
+		r.connectedWeight = totalWeight > 0 ? connectedWeight / totalWeight : 1.0;
+		r.disconnectedLoops = disconnectedLoops;
 		r.sentFromServers = false;
 		r.totalPacks = totalPacks;
 		r.experimentType = expName;
@@ -508,9 +659,18 @@ public class CLOSNetwork {
 		r.maxHops = max_hops;
 		r.nodeLoad = nodeLoad;
 		r.edgeLoad = edgeLoad; 
+		r.hopHistogram = histogram;
 				
-		System.out.println("** Experiment completed. Sent " +  totalPacks + " many Packets");
-		System.out.println("-----------------------------------------------------------\n");
+		Log.println("** Experiment completed. Sent " +  totalPacks + " many Packets");
+		Log.println("-----------------------------------------------------------\n");
+		
+		event.flowsRouted = totalPacks;
+		event.loopPackets = loopCount;
+		event.hops = hopSum;
+		event.botForwards = botForwards;
+		event.topForwards = topForwards;
+		event.blockForwards = blockForwards;
+		event.finish();
 		
 		return r;
 	}
@@ -543,7 +703,7 @@ public class CLOSNetwork {
 	 * @return	Randomly selected node.
 	 */
 	public Node randomBottomLayerNode() {
-		ThreadLocalRandom rng = ThreadLocalRandom.current();
+		Random rng = rng();
 		int startingPod = rng.nextInt(pods.length);
 		int startingNode = rng.nextInt(pods[startingPod].bot.length);
 		return pods[startingPod].bot[startingNode];
@@ -0,0 +1,216 @@
+package Topology;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Immutable description of the wiring of a CLOS-Topology with routers of degree k.
+ *
+ * Neighbours and link indices are not stored but computed from (layer, pod/block, idLocal).
+ * The only per-router information are the random hashIDs used by the hash functions.
+ * As nothing is modified after construction, a single instance can be shared by any number of threads,
+ * each evaluating its own failure scenario (see FailureOverlay and ImplicitCLOSNetwork).
+ *
+ * With h = k/2, routers are numbered densely as follows:
+ * 		BOT		(pod p, idLocal i)		->	p*h + i
+ * 		TOP		(pod p, idLocal i)		->	k*h + p*h + i
+ * 		BLOCK	(block b, idLocal i)	->	2*k*h + b*h + i
+ * Note that the id of a bottom router equals its row/column in the traffic matrix.
+ * Each bottom router (ToR) hosts h servers, server j of BOT router b has id b*h + j.
+ *
+ * Links are numbered as follows:
+ * 		BOT (p,b)	-	TOP (p,t)		->	(p*h + b)*h + t
+ * 		TOP (p,i)	-	BLOCK (i,j)		->	k*h*h + (p*h + i)*h + j
+ */
+public class CLOSTopology {
+	//Degree (number of ports) of employed routers and h = k/2
+	public final int k;
+	public final int h;
+
+	//Offsets of the router and link ranges
+	public final int numBot;
+	public final int topOffset;
+	public final int blockOffset;
+	public final int numRouters;
+	public final int upperLinkOffset;
+	public final int numLinks;
+	public final int numServers;
+
+	//Random hashIDs of the routers (plays the role of Node.hashCode())
+	final int[] hashIDs;
+	final int[] serverHashIDs;
+
+	/**
+	 * Creates the topology and draws the hashIDs of all routers.
+	 *
+	 * @param	k	Degree of the employed switches
+	 */
+	public CLOSTopology(int k) {
+		this(k, ThreadLocalRandom.current());
+	}
+	
+	/**
+	 * Creates the topology and draws the hashIDs of all routers from the given source of randomness.
+	 * 
+	 * @param	k	Degree of the employed switches
+	 * @param	rng	Source of randomness, e.g. a seeded Random for reproducible hashIDs
+	 */
+	public CLOSTopology(int k, Random rng) {
+		if(k % 2 != 0 || k <= 0) {
+			System.err.println("Degree k of CLOS must be even! Entered:" + k);
+			System.exit(-1);
+		}
+		this.k = k;
+		this.h = k/2;
+		numBot = k*h;
+		topOffset = numBot;
+		blockOffset = 2*k*h;
+		numRouters = blockOffset + h*h;
+		upperLinkOffset = k*h*h;
+		numLinks = 2*k*h*h;
+		numServers = numBot*h;
+
+		hashIDs = new int[numRouters];
+		for(int i = 0; i < numRouters; i++) {
+			hashIDs[i] = rng.nextInt();
+		}
+		//Drawn after the routers, so that seeded router hashIDs are the same as before servers were added
+		serverHashIDs = new int[numServers];
+		for(int i = 0; i < numServers; i++) {
+			serverHashIDs[i] = rng.nextInt();
+		}
+	}
+
+	public int hashID(int router) {
+		return hashIDs[router];
+	}
+
+	/**
+	 * HashID of a server, used as source (and inport of the first hop) by source dependent hash functions
+	 */
+	public int serverHashID(int server) {
+		return serverHashIDs[server];
+	}
+
+	/**
+	 * BOT router (ToR) the server is attached to
+	 */
+	public int torOf(int server) {
+		return server / h;
+	}
+
+	public int botRouter(int pod, int idLocal) {
+		return pod*h + idLocal;
+	}
+
+	public int topRouter(int pod, int idLocal) {
+		return topOffset + pod*h + idLocal;
+	}
+
+	public int blockRouter(int block, int idLocal) {
+		return blockOffset + block*h + idLocal;
+	}
+
+	public Node.Type layerOf(int router) {
+		if(router < topOffset) {return Node.Type.BOT;}
+		if(router < blockOffset) {return Node.Type.TOP;}
+		return Node.Type.BLOCK;
+	}
+
+	/**
+	 * Pod of a BOT/TOP router or block of a BLOCK router
+	 */
+	public int groupOf(int router) {
+		if(router < topOffset) {return router / h;}
+		if(router < blockOffset) {return (router - topOffset) / h;}
+		return (router - blockOffset) / h;
+	}
+
+	public int localIdOf(int router) {
+		return router % h;
+	}
+
+	/**
+	 * Link between the BOT router (pod, bot) and the TOP router (pod, top)
+	 */
+	public int podLink(int pod, int bot, int top) {
+		return (pod*h + bot)*h + top;
+	}
+
+	/**
+	 * Link between the TOP router (pod, block) and the BLOCK router (block, idLocal)
+	 */
+	public int blockLink(int pod, int block, int idLocal) {
+		return upperLinkOffset + (pod*h + block)*h + idLocal;
+	}
+
+	/**
+	 * Link via the local upward port of a BOT or TOP router (port ranges from 0 to h-1)
+	 */
+	public int upLink(int router, int port) {
+		if(router < topOffset) {
+			return router*h + port;
+		}
+		return upperLinkOffset + (router - topOffset)*h + port;
+	}
+
+	/**
+	 * Link via the local downward port of a TOP router (port = idLocal of the BOT router)
+	 * or of a BLOCK router (port = id of the pod)
+	 */
+	public int downLink(int router, int port) {
+		if(router < blockOffset) {
+			int r = router - topOffset;
+			return podLink(r / h, port, r % h);
+		}
+		int r = router - blockOffset;
+		return blockLink(port, r / h, r % h);
+	}
+
+	/**
+	 * Lower endpoint (BOT or TOP router) of a link
+	 */
+	public int lowerEnd(int link) {
+		if(link < upperLinkOffset) {
+			return link / h;
+		}
+		return topOffset + (link - upperLinkOffset) / h;
+	}
+
+	/**
+	 * Upper endpoint (TOP or BLOCK router) of a link
+	 */
+	public int upperEnd(int link) {
+		if(link < upperLinkOffset) {
+			return topOffset + (link / (h*h)) * h + link % h;
+		}
+		int l = link - upperLinkOffset;
+		return blockOffset + ((l / h) % h) * h + l % h;
+	}
+
+	public int otherEnd(int link, int router) {
+		int lower = lowerEnd(link);
+		return lower == router ? upperEnd(link) : lower;
+	}
+
+	/**
+	 * Number of links incident to the router (h for BOT, k for TOP and BLOCK routers)
+	 */
+	public int degree(int router) {
+		return router < topOffset ? h : k;
+	}
+
+	/**
+	 * The i-th link incident to the router, where 0 <= i < degree(router).
+	 * For TOP routers, the upward links come first.
+	 */
+	public int incidentLink(int router, int i) {
+		if(router < topOffset) {return upLink(router, i);}
+		if(router < blockOffset) {return i < h ? upLink(router, i) : downLink(router, i - h);}
+		return downLink(router, i);
+	}
+
+	public String routerToString(int router) {
+		return "Node[" + layerOf(router) + "," + groupOf(router) + "," + localIdOf(router) +  "]";
+	}
+}
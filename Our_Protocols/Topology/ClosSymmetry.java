@@ -0,0 +1,298 @@
+package Topology;
+
+import java.util.Arrays;
+
+import Routing.IntervalUtility;
+
+/**
+ * Symmetries of the CLOS wiring that are left intact by the failures and the forwarding strategy of an ImplicitCLOSNetwork.
+ *
+ * The wiring (see CLOSTopology) is invariant under the following transpositions:
+ * 	1)	Swapping two pods, i.e. their BOT and TOP routers with the same idLocal (BLOCK routers stay)
+ * 	2)	Swapping two BOT routers of the same pod
+ * 	3)	Swapping the TOP routers with idLocal i and i' in every pod together with the blocks i and i'
+ * 	4)	Swapping the BLOCK routers (i,j) and (i,j') of the same block
+ * A transposition maps the forwarding candidates onto each other iff both swapped indices lie in the same interval of
+ * the strategy (see IntervalUtility), and it maps the failures onto each other iff the failed links of both swapped parts
+ * look the same (compared by their local coordinates). The group generated by all transpositions passing both checks
+ * partitions the routers and the links into orbits, which are found by a union-find over the swapped pairs.
+ * If a destination is fixed, only transpositions that keep it in place are used.
+ *
+ * Routers (links) in the same orbit behave the same for every model that is invariant under relabelling the routers.
+ * The hashIDs of the routers are not, so this applies to expected loads over all hashIDs (see Routing.FluidRouting) but
+ * not to a single draw of the hashIDs.
+ */
+public class ClosSymmetry {
+
+	CLOSTopology topo;
+	int k;
+	int h;
+
+	//Union-find over the routers [0, numRouters) followed by the links
+	int[] parent;
+
+	//Dense orbit index of every router and link, size and smallest member of every orbit
+	int[] routerOrbit;
+	int[] linkOrbit;
+	int[] routerOrbitSize;
+	int[] linkOrbitSize;
+	int[] routerRep;
+	int[] linkRep;
+	int numGenerators;
+
+	/**
+	 * @param net	Network whose failures and strategy must be preserved
+	 * @param fixedDest	BOT router that must be kept in place, or -1
+	 */
+	public ClosSymmetry(ImplicitCLOSNetwork net, int fixedDest) {
+		this.topo = net.topology();
+		this.k = topo.k;
+		this.h = topo.h;
+		parent = new int[topo.numRouters + topo.numLinks];
+		for(int i = 0; i < parent.length; i++) {
+			parent[i] = i;
+		}
+
+		int m = net.numCandidateIntervals();
+		int[] podClass = new int[k];
+		for(int p = 0; p < k; p++) {
+			podClass[p] = IntervalUtility.getIntervalAssignment(k, m, p);
+		}
+		int[] idClass = new int[h];
+		for(int i = 0; i < h; i++) {
+			idClass[i] = IntervalUtility.getIntervalAssignment(h, m, i);
+		}
+
+		//Local coordinates of the failed links as seen by each swappable part
+		FailureOverlay overlay = net.overlay();
+		int numFailed = overlay.numFailed();
+		int[] podOf = new int[numFailed], podCode = new int[numFailed];
+		int[] botOf = new int[numFailed], botCode = new int[numFailed];
+		int[] topOf = new int[numFailed], topCode = new int[numFailed];
+		int[] blockOf = new int[numFailed], blockCode = new int[numFailed];
+		for(int f = 0; f < numFailed; f++) {
+			int link = overlay.failedLink(f);
+			if(link < topo.upperLinkOffset) {
+				int pod = link / (h*h), bot = (link / h) % h, top = link % h;
+				podOf[f] = pod; podCode[f] = bot*h + top;
+				botOf[f] = pod*h + bot; botCode[f] = top;
+				topOf[f] = top; topCode[f] = pod*h + bot;
+				blockOf[f] = -1;
+			}
+			else {
+				int l = link - topo.upperLinkOffset;
+				int pod = l / (h*h), block = (l / h) % h, id = l % h;
+				podOf[f] = pod; podCode[f] = h*h + block*h + id;
+				botOf[f] = -1;
+				topOf[f] = block; topCode[f] = k*h + pod*h + id;
+				blockOf[f] = block*h + id; blockCode[f] = pod;
+			}
+		}
+		int[][] podSig = signatures(k, podOf, podCode);
+		int[][] botSig = signatures(topo.numBot, botOf, botCode);
+		int[][] topSig = signatures(h, topOf, topCode);
+		int[][] blockSig = signatures(h*h, blockOf, blockCode);
+		if(fixedDest >= 0) {
+			podSig[fixedDest / h] = mark(podSig[fixedDest / h]);
+			botSig[fixedDest] = mark(botSig[fixedDest]);
+		}
+
+		swapEqual(0, 0, k, podClass, podSig, 0);
+		for(int p = 0; p < k; p++) {
+			swapEqual(1, p, h, idClass, botSig, p*h);
+		}
+		swapEqual(2, 0, h, idClass, topSig, 0);
+		for(int b = 0; b < h; b++) {
+			swapEqual(3, b, h, idClass, blockSig, b*h);
+		}
+		buildOrbits();
+	}
+
+	/**
+	 * Sorted codes of the failed links of every part (parts of -1 are ignored)
+	 */
+	static int[][] signatures(int numParts, int[] partOf, int[] code) {
+		int[] count = new int[numParts];
+		for(int f = 0; f < partOf.length; f++) {
+			if(partOf[f] >= 0) {count[partOf[f]]++;}
+		}
+		int[][] sig = new int[numParts][];
+		for(int i = 0; i < numParts; i++) {
+			sig[i] = new int[count[i]];
+			count[i] = 0;
+		}
+		for(int f = 0; f < partOf.length; f++) {
+			if(partOf[f] >= 0) {sig[partOf[f]][count[partOf[f]]++] = code[f];}
+		}
+		for(int[] s : sig) {
+			Arrays.sort(s);
+		}
+		return sig;
+	}
+
+	/**
+	 * Signature that differs from every signature of failed links (codes are non-negative)
+	 */
+	static int[] mark(int[] sig) {
+		int[] s = Arrays.copyOf(sig, sig.length + 1);
+		s[sig.length] = -1;
+		return s;
+	}
+
+	/**
+	 * Swaps every part of the domain with the first part that has the same interval and the same failures
+	 *
+	 * @param family	Kind of the transposition, as numbered in the class comment minus one
+	 * @param domain	Pod (2) or block (4) the parts belong to
+	 * @param n	Number of parts in the domain
+	 * @param offset	Index of the first part of the domain in sig
+	 */
+	void swapEqual(int family, int domain, int n, int[] cls, int[][] sig, int offset) {
+		int[] leaders = new int[n];
+		int numLeaders = 0;
+		for(int a = 0; a < n; a++) {
+			boolean swapped = false;
+			for(int i = 0; i < numLeaders && !swapped; i++) {
+				int b = leaders[i];
+				if(cls[a] == cls[b] && Arrays.equals(sig[offset + a], sig[offset + b])) {
+					swap(family, domain, b, a);
+					swapped = true;
+				}
+			}
+			if(!swapped) {leaders[numLeaders++] = a;}
+		}
+	}
+
+	void swap(int family, int domain, int a, int b) {
+		numGenerators++;
+		switch(family) {
+		case 0:	//Pods a and b
+			for(int x = 0; x < h; x++) {
+				union(topo.botRouter(a, x), topo.botRouter(b, x));
+				union(topo.topRouter(a, x), topo.topRouter(b, x));
+				for(int y = 0; y < h; y++) {
+					unionLinks(topo.podLink(a, x, y), topo.podLink(b, x, y));
+					unionLinks(topo.blockLink(a, x, y), topo.blockLink(b, x, y));
+				}
+			}
+			break;
+		case 1:	//BOT routers a and b of pod domain
+			union(topo.botRouter(domain, a), topo.botRouter(domain, b));
+			for(int t = 0; t < h; t++) {
+				unionLinks(topo.podLink(domain, a, t), topo.podLink(domain, b, t));
+			}
+			break;
+		case 2:	//TOP routers a and b of every pod and the blocks a and b
+			for(int j = 0; j < h; j++) {
+				union(topo.blockRouter(a, j), topo.blockRouter(b, j));
+			}
+			for(int p = 0; p < k; p++) {
+				union(topo.topRouter(p, a), topo.topRouter(p, b));
+				for(int x = 0; x < h; x++) {
+					unionLinks(topo.podLink(p, x, a), topo.podLink(p, x, b));
+					unionLinks(topo.blockLink(p, a, x), topo.blockLink(p, b, x));
+				}
+			}
+			break;
+		default:	//BLOCK routers a and b of block domain
+			union(topo.blockRouter(domain, a), topo.blockRouter(domain, b));
+			for(int p = 0; p < k; p++) {
+				unionLinks(topo.blockLink(p, domain, a), topo.blockLink(p, domain, b));
+			}
+		}
+	}
+
+	void unionLinks(int a, int b) {
+		union(topo.numRouters + a, topo.numRouters + b);
+	}
+
+	void union(int a, int b) {
+		a = find(a);
+		b = find(b);
+		//The smaller index becomes the root, so that the root is the smallest member of its orbit
+		if(a < b) {parent[b] = a;}
+		else if(b < a) {parent[a] = b;}
+	}
+
+	int find(int x) {
+		while(parent[x] != x) {
+			parent[x] = parent[parent[x]];
+			x = parent[x];
+		}
+		return x;
+	}
+
+	void buildOrbits() {
+		int n = topo.numRouters;
+		routerOrbit = new int[n];
+		linkOrbit = new int[topo.numLinks];
+		int[] index = new int[parent.length];
+		int routers = 0, links = 0;
+		for(int x = 0; x < parent.length; x++) {
+			int root = find(x);
+			if(root == x) {index[x] = x < n ? routers++ : links++;}
+			if(x < n) {routerOrbit[x] = index[root];}
+			else {linkOrbit[x - n] = index[root];}
+		}
+		routerOrbitSize = new int[routers];
+		routerRep = new int[routers];
+		linkOrbitSize = new int[links];
+		linkRep = new int[links];
+		for(int r = n - 1; r >= 0; r--) {
+			routerOrbitSize[routerOrbit[r]]++;
+			routerRep[routerOrbit[r]] = r;
+		}
+		for(int l = topo.numLinks - 1; l >= 0; l--) {
+			linkOrbitSize[linkOrbit[l]]++;
+			linkRep[linkOrbit[l]] = l;
+		}
+	}
+
+	public int numRouterOrbits() {
+		return routerOrbitSize.length;
+	}
+
+	public int numLinkOrbits() {
+		return linkOrbitSize.length;
+	}
+
+	/**
+	 * Index of the orbit of the router (between 0 and numRouterOrbits()-1)
+	 */
+	public int routerOrbit(int router) {
+		return routerOrbit[router];
+	}
+
+	public int linkOrbit(int link) {
+		return linkOrbit[link];
+	}
+
+	public int routerOrbitSize(int orbit) {
+		return routerOrbitSize[orbit];
+	}
+
+	public int linkOrbitSize(int orbit) {
+		return linkOrbitSize[orbit];
+	}
+
+	/**
+	 * Smallest router of the orbit
+	 */
+	public int routerRep(int orbit) {
+		return routerRep[orbit];
+	}
+
+	/**
+	 * Smallest link of the orbit
+	 */
+	public int linkRep(int orbit) {
+		return linkRep[orbit];
+	}
+
+	/**
+	 * Number of transpositions that generate the group
+	 */
+	public int numGenerators() {
+		return numGenerators;
+	}
+}
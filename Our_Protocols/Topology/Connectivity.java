@@ -0,0 +1,118 @@
+package Topology;
+
+/**
+ * Physical connectivity of the CLOS topology under the current failures, independent of any forwarding strategy.
+ * The connected components of the routers are found by a union-find over all intact links.
+ *
+ * This is the baseline for the routing results: a packet whose destination is not connected to its source
+ * cannot arrive under any strategy, whereas every other packet in a forwarding loop is due to the strategy.
+ * Routers are numbered as in CLOSTopology, also for a CLOSNetwork.
+ */
+public class Connectivity {
+
+	int numBot;
+	int[] parent;
+
+	//Component (smallest router) of every BOT router
+	int[] botComponent;
+
+	/**
+	 * Components under the failures of an ImplicitCLOSNetwork
+	 */
+	public Connectivity(CLOSTopology topo, FailureOverlay overlay) {
+		init(topo.numRouters, topo.numBot);
+		for(int link = 0; link < topo.numLinks; link++) {
+			if(!overlay.isFailed(link)) {
+				union(topo.lowerEnd(link), topo.upperEnd(link));
+			}
+		}
+		finish();
+	}
+
+	/**
+	 * Components under the failures of a CLOSNetwork. A link counts as failed if it is marked as failed
+	 * at either of its end points. The router numbers are computed as in CLOSTopology.botRouter() etc.
+	 */
+	public Connectivity(CLOSNetwork net) {
+		int k = net.k, h = k/2;
+		int topOffset = k*h, blockOffset = 2*k*h;
+		init(blockOffset + h*h, k*h);
+		for(int p = 0; p < k; p++) {
+			for(int t = 0; t < h; t++) {
+				Node top = net.pods[p].top[t];
+				int topRouter = topOffset + p*h + t;
+				for(int b = 0; b < h; b++) {
+					if(!top.bFail[b] && !top.bLink[b].tFail[t]) {
+						union(topRouter, p*h + b);
+					}
+				}
+				for(int j = 0; j < h; j++) {
+					if(!top.tFail[j] && !top.tLink[j].bFail[p]) {
+						union(topRouter, blockOffset + t*h + j);
+					}
+				}
+			}
+		}
+		finish();
+	}
+
+	void init(int n, int numBot) {
+		this.numBot = numBot;
+		parent = new int[n];
+		for(int i = 0; i < n; i++) {
+			parent[i] = i;
+		}
+	}
+
+	void union(int a, int b) {
+		a = find(a);
+		b = find(b);
+		if(a < b) {parent[b] = a;}
+		else if(b < a) {parent[a] = b;}
+	}
+
+	int find(int x) {
+		while(parent[x] != x) {
+			parent[x] = parent[parent[x]];
+			x = parent[x];
+		}
+		return x;
+	}
+
+	void finish() {
+		botComponent = new int[numBot];
+		for(int i = 0; i < numBot; i++) {
+			botComponent[i] = find(i);
+		}
+	}
+
+	/**
+	 * Whether the BOT routers s and d are connected by intact links
+	 */
+	public boolean connected(int s, int d) {
+		return botComponent[s] == botComponent[d];
+	}
+
+	/**
+	 * Component of the router, given by the smallest router it contains
+	 */
+	public int component(int router) {
+		return find(router);
+	}
+
+	/**
+	 * Fraction of ordered pairs of distinct BOT routers that are connected
+	 */
+	public double connectedPairs() {
+		int n = numBot;
+		int[] size = new int[n];
+		for(int i = 0; i < n; i++) {
+			size[botComponent[i]]++;
+		}
+		double pairs = 0;
+		for(int c : size) {
+			pairs += (double) c * (c - 1);
+		}
+		return n > 1 ? pairs / ((double) n * (n - 1)) : 1.0;
+	}
+}
@@ -0,0 +1,119 @@
+package Topology;
+
+import java.util.Arrays;
+
+/**
+ * Link failures of a single trial on top of a shared CLOSTopology.
+ *
+ * Failures are kept in a packed bitmap with one bit per (undirected) link together with the list of failed links.
+ * As derived table, a second bitmap marks all routers incident to at least one failed link. Routers that are not
+ * marked have all their forwarding candidates alive and can forward without inspecting any failure bits.
+ *
+ * An overlay is not thread-safe, but any number of overlays can be used concurrently on the same topology.
+ */
+public class FailureOverlay {
+	final CLOSTopology topo;
+
+	//Bit l is set iff link l is failed
+	final long[] failed;
+
+	//Bit r is set iff router r is incident to a failed link
+	final long[] dirty;
+
+	//Failed links in the order they were failed
+	int[] failedLinks;
+	int numFailed;
+
+	public FailureOverlay(CLOSTopology topo) {
+		this.topo = topo;
+		failed = new long[(topo.numLinks + 63) >>> 6];
+		dirty = new long[(topo.numRouters + 63) >>> 6];
+		failedLinks = new int[16];
+	}
+
+	public boolean isFailed(int link) {
+		return (failed[link >>> 6] & (1L << link)) != 0;
+	}
+
+	public boolean isDirty(int router) {
+		return (dirty[router >>> 6] & (1L << router)) != 0;
+	}
+
+	/**
+	 * Fails a link (has no effect if the link is already failed)
+	 */
+	public void fail(int link) {
+		if(isFailed(link)) {return;}
+		failed[link >>> 6] |= 1L << link;
+		int lower = topo.lowerEnd(link);
+		int upper = topo.upperEnd(link);
+		dirty[lower >>> 6] |= 1L << lower;
+		dirty[upper >>> 6] |= 1L << upper;
+		if(numFailed == failedLinks.length) {
+			failedLinks = Arrays.copyOf(failedLinks, 2*numFailed);
+		}
+		failedLinks[numFailed++] = link;
+	}
+
+	/**
+	 * Repairs a single link (has no effect if the link is not failed).
+	 * Takes time proportional to the number of failures plus the degree of its endpoints.
+	 */
+	public void repair(int link) {
+		if(!isFailed(link)) {return;}
+		failed[link >>> 6] &= ~(1L << link);
+		for(int i = 0; i < numFailed; i++) {
+			if(failedLinks[i] == link) {
+				failedLinks[i] = failedLinks[--numFailed];
+				break;
+			}
+		}
+		updateDirty(topo.lowerEnd(link));
+		updateDirty(topo.upperEnd(link));
+	}
+
+	void updateDirty(int router) {
+		for(int i = 0; i < topo.degree(router); i++) {
+			if(isFailed(topo.incidentLink(router, i))) {return;}
+		}
+		dirty[router >>> 6] &= ~(1L << router);
+	}
+
+	public int numFailed() {
+		return numFailed;
+	}
+
+	/**
+	 * The i-th failed link
+	 */
+	public int failedLink(int i) {
+		return failedLinks[i];
+	}
+
+	/**
+	 * Repairs all failed links. Takes time proportional to the number of failures.
+	 */
+	public void clear() {
+		//Every set bit belongs to a failed link or one of its endpoints, so whole words can be cleared
+		for(int i = 0; i < numFailed; i++) {
+			int link = failedLinks[i];
+			failed[link >>> 6] = 0L;
+			int lower = topo.lowerEnd(link);
+			int upper = topo.upperEnd(link);
+			dirty[lower >>> 6] = 0L;
+			dirty[upper >>> 6] = 0L;
+		}
+		numFailed = 0;
+	}
+
+	/**
+	 * Creates an independent copy of the overlay on the same topology
+	 */
+	public FailureOverlay copy() {
+		FailureOverlay o = new FailureOverlay(topo);
+		for(int i = 0; i < numFailed; i++) {
+			o.fail(failedLinks[i]);
+		}
+		return o;
+	}
+}
@@ -0,0 +1,934 @@
+package Topology;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import Hashing.Hash;
+import Hashing.ThreePermutationDestinationHash;
+import Hashing.ThreePermutationInportDestinationHash;
+import Hashing.ThreePermutationInportSourceDestinationHash;
+import Routing.IntervalUtility;
+import Routing.ServerTraffic;
+import Statistics.HopHistogram;
+import Statistics.Result;
+import Statistics.TraceRecorder;
+import Topology.CLOSNetwork.FailType;
+import Topology.CLOSNetwork.Type;
+import Util.DisconnectException;
+import Util.Log;
+import Util.PhaseEvent;
+import Util.Utility;
+
+/**
+ * Arithmetic variant of CLOSNetwork that does not create any Node, Pod or Block objects.
+ *
+ * Since the wiring of the CLOS topology follows a fixed formula (see Pod.connectTo, Block.connectTo and
+ * Pod.connectInternalEdges) neighbours, link indices and forwarding candidates are computed directly
+ * from (layer, pod/block, idLocal), see CLOSTopology for the numbering of routers and links.
+ * Link failures are stored in a FailureOverlay with one bit per (undirected) link.
+ * This allows experiments for k=256 and beyond within a few hundred MB of memory.
+ *
+ * The topology is immutable and may be shared: several ImplicitCLOSNetwork objects (e.g. one per thread)
+ * can be created on the same CLOSTopology, each with its own overlay and strategy.
+ *
+ * The forwarding decisions are the same as the ones made by ShortPathNode, IntervalNode and
+ * ThreePermutationNode in combination with Node.forward(), and a disconnected router of any strategy
+ * throws a DisconnectException.
+ */
+public class ImplicitCLOSNetwork {
+	//Degree (number of ports) of employed routers and h = k/2
+	int k;
+	int h;
+
+	//Shared wiring and failures of the current trial
+	CLOSTopology topo;
+	FailureOverlay overlay;
+
+	//Forwarding strategy which is employed by the routers
+	Type type;
+	int numIntervals;
+	int numPerm;
+	Hash hashFunction;
+
+	//Storage for failure strategy
+	FailType cFailType;
+	double cFailP;
+	int cFailedEdges;
+
+	//Ranges of the forwarding candidates as local port indices (start and size), derived from the intervals.
+	//botUp and topDown/blockDown are indexed by idLocal, topUp is indexed by the pod of the router.
+	int[] botUpStart, botUpSize;
+	int[] topDownStart, topDownSize;
+	int[] topUpStart, topUpSize;
+	int[] blockDownStart, blockDownSize;
+
+	//Source of randomness for hashIDs, failures and destinations. ThreadLocalRandom is used if no seed was set.
+	Random rng;
+
+	//Cache of path suffixes (created on first use, null if disabled or not applicable to the strategy)
+	boolean useSuffixCache = false;
+	SuffixCache suffixCache;
+
+	//Recorder of the routed paths (null if tracing is disabled)
+	TraceRecorder trace;
+
+	//Reusable buffers for the path of the currently routed packet
+	int[] pathRouters;
+	int[] pathLinks;
+	int pathLength;
+
+	/**
+	 * Creates an implicit CLOS-Topology. initEdges() needs to be called before use.
+	 *
+	 * @param	t	Specifies the desired failover Strategy
+	 * @param	k	Degree of the employed switches
+	 * @param	numIntervals	Number of Intervals when using the Interval failover strategy
+	 */
+	public ImplicitCLOSNetwork(Type t, int k, int numIntervals) {
+		this(t, k, numIntervals, 6);
+	}
+
+	/**
+	 * Creates an implicit CLOS-Topology. initEdges() needs to be called before use.
+	 *
+	 * @param	t	Specifies the desired failover Strategy
+	 * @param	k	Degree of the employed switches
+	 * @param	numIntervals	Number of Intervals when using the Interval failover strategy
+	 * @param	numPerm	Number of permutations when using the 3-Permutations strategy
+	 */
+	public ImplicitCLOSNetwork(Type t, int k, int numIntervals, int numPerm) {
+		if(k % 2 != 0 || k <= 0) {
+			System.err.println("Degree k of CLOS must be even! Entered:" + k);
+			System.exit(-1);
+		}
+		this.k = k;
+		this.h = k/2;
+		this.type = t;
+		this.numIntervals = numIntervals;
+		this.numPerm = numPerm;
+		this.hashFunction = createHash(t, k, numPerm);
+	}
+
+	/**
+	 * Creates a network on an existing (possibly shared) topology with an empty failure overlay.
+	 * No call to initEdges() is required.
+	 *
+	 * @param	topo	Wiring of the network
+	 * @param	s	Forwarding strategy and its parameters
+	 */
+	public ImplicitCLOSNetwork(CLOSTopology topo, Strategy s) {
+		this(s.type, topo.k, s.numIntervals, s.numPerm);
+		this.topo = topo;
+		init();
+	}
+
+	/**
+	 * Creates the hash function that is used by the nodes of the given forwarding strategy.
+	 * The 3-Permutations hash functions are instantiated for the given k, all others are shared.
+	 */
+	public static Hash createHash(Type t, int k, int numPerm) {
+		switch(t) {
+		case INT_D: case SP_D:
+			return Hash.dHash;
+		case INT_ID: case SP_ID:
+			return Hash.diHash;
+		case INT_SID: case SP_SID:
+			return Hash.disHash;
+		case INT_SIDH:
+			return Hash.dishHash;
+		case TP_D:
+			return new ThreePermutationDestinationHash(k, numPerm);
+		case TP_ID:
+			return new ThreePermutationInportDestinationHash(k, numPerm);
+		case TP_SID:
+			return new ThreePermutationInportSourceDestinationHash(k, numPerm);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Counterpart of CLOSNetwork.initEdges(). As links are implicit, this only creates a new topology
+	 * (i.e. draws the hashIDs of the routers), an empty failure overlay and derives the interval tables.
+	 */
+	public void initEdges() {
+		PhaseEvent event = PhaseEvent.start("initEdges", type, k);
+		Log.println("-----------------------------------------------------------");
+		Log.println("**** Initializing implicit CLOS Network with k=" + k +" and of type " + type.toString());
+		topo = new CLOSTopology(k, rng());
+		init();
+		Log.println("** TOTAL ROUTERS: " + topo.numRouters + " (BOTTOM-LAYER "+ topo.numBot + ")" + " LINKS: " + topo.numLinks);
+		Log.println("**** Topology creation completed!");
+		Log.println("-----------------------------------------------------------\n");
+		event.finish();
+	}
+
+	void init() {
+		overlay = new FailureOverlay(topo);
+		initStrategyTables();
+		pathRouters = new int[2*CLOSNetwork.LOOP_MAX + 2];
+		pathLinks = new int[2*CLOSNetwork.LOOP_MAX + 2];
+	}
+
+	/**
+	 * Makes all following random choices reproducible, see CLOSNetwork.setSeed()
+	 */
+	public void setSeed(long seed) {
+		rng = new Random(seed);
+	}
+
+	Random rng() {
+		return rng != null ? rng : ThreadLocalRandom.current();
+	}
+
+	/**
+	 * Switches the forwarding strategy while keeping the hashIDs of the routers and all placed failures.
+	 * This allows to compare several strategies on exactly the same failure scenario.
+	 * initRoutingState() needs to be called again afterwards.
+	 *
+	 * @param s	Forwarding strategy and its parameters
+	 */
+	public void setStrategy(Strategy s) {
+		this.type = s.type;
+		this.numIntervals = s.numIntervals;
+		this.numPerm = s.numPerm;
+		this.hashFunction = createHash(s.type, k, s.numPerm);
+		initStrategyTables();
+	}
+
+	/**
+	 * Derives the ranges of the forwarding candidates from the intervals of the current strategy
+	 */
+	void initStrategyTables() {
+		int m = numCandidateIntervals();
+		botUpStart = new int[h]; botUpSize = new int[h];
+		topDownStart = new int[h]; topDownSize = new int[h];
+		blockDownStart = new int[h]; blockDownSize = new int[h];
+		for(int i = 0; i < h; i++) {
+			int myInterval = IntervalUtility.getIntervalAssignment(h, m, i);
+			botUpStart[i] = IntervalUtility.getIntervalStart(h, m, myInterval);
+			botUpSize[i] = IntervalUtility.getIntervalSize(h, m, myInterval);
+			topDownStart[i] = IntervalUtility.getIntervalStart(h, m, (myInterval + 1) % m);
+			topDownSize[i] = IntervalUtility.getIntervalSize(h, m, (myInterval + 1) % m);
+			blockDownStart[i] = IntervalUtility.getIntervalStart(k, m, (myInterval + 1) % m);
+			blockDownSize[i] = IntervalUtility.getIntervalSize(k, m, (myInterval + 1) % m);
+		}
+		topUpStart = new int[k]; topUpSize = new int[k];
+		for(int p = 0; p < k; p++) {
+			int verticalID = IntervalUtility.getIntervalAssignment(k, m, p);
+			topUpStart[p] = IntervalUtility.getIntervalStart(h, m, verticalID);
+			topUpSize[p] = IntervalUtility.getIntervalSize(h, m, verticalID);
+		}
+	}
+
+	/**
+	 * Number of intervals the ports of a router are split into for its candidate sets
+	 */
+	int numCandidateIntervals() {
+		//3-Permutations nodes are interval nodes with a single interval, Shortest-Path nodes use all links
+		return (type == Type.INT_D || type == Type.INT_ID || type == Type.INT_SID || type == Type.INT_SIDH) ? numIntervals : 1;
+	}
+
+	/**
+	 * Forwarding strategy currently employed by the routers
+	 */
+	public Strategy strategy() {
+		return new Strategy(type, numIntervals, numPerm);
+	}
+
+	public CLOSTopology topology() {
+		return topo;
+	}
+
+	public FailureOverlay overlay() {
+		return overlay;
+	}
+
+	/**
+	 * Replaces the failures of the network by the given overlay (which must belong to the same topology).
+	 * initRoutingState() needs to be called again afterwards.
+	 */
+	public void setOverlay(FailureOverlay o) {
+		this.overlay = o;
+		this.cFailedEdges = o.numFailed();
+	}
+
+	public boolean isFailed(int link) {
+		return overlay.isFailed(link);
+	}
+
+	public void failLink(int link) {
+		overlay.fail(link);
+	}
+
+	public void repairLink(int link) {
+		overlay.repair(link);
+	}
+
+	public int numRouters() {
+		return topo.numRouters;
+	}
+
+	public int numLinks() {
+		return topo.numLinks;
+	}
+
+	//+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+ Failure Model Implementations +-+-+-+-+-+-+-+-+-+-+-
+
+	/**
+	 * Sets the desired edge failing strategy. See CLOSNetwork.failEdges()
+	 *
+	 * @param fType	Selection of the desired failure model via CLOSNetwork.FailType
+	 * @param fParam	Parameter for the selected failure model
+	 * @param destination	Id of a BOT router. Not used when fType = RANDOM
+	 */
+	public void failEdges(FailType fType, double fParam, int destination) {
+		PhaseEvent event = PhaseEvent.start("failEdges", type, k);
+		switch(fType) {
+		case RANDOM:
+			failEdgesRandomly(fParam); break;
+		case WCINTERVAL:
+			worstCaseIntervalFailures(fParam, destination); break;
+		case DESTINATION:
+			failDestEdges(fParam, destination); break;
+		default:
+			System.err.println("Invalid Failure Model specified: " + fType + " exiting ...");
+			System.exit(-1);
+		}
+		event.finish();
+	}
+
+	/**
+	 * Each link in the network is failed with probability p independently from other links
+	 *
+	 * @param	p	 Probability for a fixed link to fail.
+	 */
+	public void failEdgesRandomly(double p) {
+		Log.println("-----------------------------------------------------------");
+		Log.println("** Failing Edges Randomly with p=" +  p + " ...");
+		Random rng = rng();
+		cFailType = FailType.RANDOM;
+		cFailP = p;
+		int count = 0;
+		for(int l = 0; l < topo.numLinks; l++) {
+			if(rng.nextDouble() <= p) {
+				overlay.fail(l);
+				count++;
+			}
+		}
+		cFailedEdges = count;
+		Log.println("** Failed " + count + " edges out of "  + topo.numLinks);
+		Log.println("-----------------------------------------------------------\n");
+	}
+
+	/**
+	 * Interval failure scenario, see CLOSNetwork.worstCaseIntervalFailures().
+	 * As there is a single failure bit per link, failures are always placed symmetrically on both endpoints.
+	 *
+	 * @param 	p	Fraction of edges to fail in each interval
+	 * @param 	destination	Id of the BOT router that is later used as destination
+	 */
+	public void worstCaseIntervalFailures(double p, int destination) {
+		Log.println("-----------------------------------------------------------");
+		Log.println("** Failing a " +  p + " fraction of edges in each interval towards the destination");
+		int destPod = topo.groupOf(destination);
+		int destID = topo.localIdOf(destination);
+		int count = 0;
+		cFailType = FailType.WCINTERVAL;
+		cFailP = p;
+		for (int interval = 0; interval < numIntervals; interval++) {
+			int[] nodesInInterval = IntervalUtility.getIndicesInInterval(h, numIntervals, interval);
+			Utility.shuffle(nodesInInterval, rng());
+			for (int i = 0; i < (int) (p * nodesInInterval.length); i++) {
+				overlay.fail(topo.podLink(destPod, destID, nodesInInterval[i]));
+				count++;
+			}
+		}
+		for(int b = 0; b < h; b++) {
+			for(int interval = 0; interval < numIntervals; interval++) {
+				int[] nodesInInterval = IntervalUtility.getIndicesInInterval(h, numIntervals, interval);
+				Utility.shuffle(nodesInInterval, rng());
+				for (int i = 0; i < (int) (p * nodesInInterval.length); i++) {
+					overlay.fail(topo.blockLink(destPod, b, nodesInInterval[i]));
+					count++;
+				}
+			}
+		}
+		cFailedEdges = count;
+		Log.println("** Failed " + count + " out of " + topo.numLinks + " total edges");
+		Log.println("-----------------------------------------------------------\n");
+	}
+
+	/**
+	 * Fails a p-fraction (rounded down) of the links incident to the destination, see CLOSNetwork.failDestEdges().
+	 *
+	 * @param p	Fraction of links to destination to be failed
+	 * @param destination	Id of the BOT router whose links are failed
+	 */
+	public void failDestEdges(double p, int destination) {
+		Log.println("-----------------------------------------------------------");
+		Log.println("** Failing a " +  p + " fraction of edges incident to the destination node ");
+		if(topo.layerOf(destination) != Node.Type.BOT) {
+			System.err.println("Destination node must lie on bottom layer of pod!");
+			System.exit(-1);
+		}
+		cFailType = FailType.DESTINATION;
+		cFailP = p;
+
+		int[] neighborIDs = new int[h];
+		for(int i = 0; i < h; i++) {
+			neighborIDs[i] = i;
+		}
+		Utility.shuffle(neighborIDs, rng());
+		int failCount = 0;
+		for(int i = 0; i < (int) (h * p); i++) {
+			overlay.fail(topo.upLink(destination, neighborIDs[i]));
+			failCount++;
+		}
+		cFailedEdges = failCount;
+		Log.println("** Failed " + failCount + " out of the " + h + " edges of the destination");
+		Log.println("-----------------------------------------------------------\n");
+	}
+
+	/**
+	 * Repairs all failed links. Takes time proportional to the number of failures.
+	 */
+	public void healAllEdges() {
+		overlay.clear();
+	}
+
+	//+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+ Routing State +-+-+-+-+-+-+-+-+-+-+-
+
+	/**
+	 * Counterpart of CLOSNetwork.initRoutingState(). There are no forwarding tables to build,
+	 * but it is verified that every router has at least one live forwarding candidate in each of
+	 * its candidate sets. Only routers incident to a failed link need to be checked.
+	 *
+	 * Throws exception if a too large amount of edge failures prevent the strategy from
+	 * being used.
+	 */
+	public void initRoutingState() throws DisconnectException {
+		PhaseEvent event = PhaseEvent.start("initRoutingState", type, k);
+		try {
+			for(int i = 0; i < overlay.numFailed(); i++) {
+				int link = overlay.failedLink(i);
+				checkConnected(topo.lowerEnd(link));
+				checkConnected(topo.upperEnd(link));
+			}
+		}
+		finally {
+			event.finish();
+		}
+	}
+
+	/**
+	 * Throws exception if one of the candidate sets of the router is empty
+	 */
+	void checkConnected(int router) throws DisconnectException {
+		if(!isConnected(router)) {
+			throw new DisconnectException("Routing strategy cannot be emplyed! Too many failures incident to " + topo.routerToString(router));
+		}
+	}
+
+	/**
+	 * Whether each candidate set of the router contains at least one live link
+	 */
+	public boolean isConnected(int router) {
+		boolean connected;
+		int id = topo.localIdOf(router);
+		if(router < topo.topOffset) {
+			connected = countLive(router, botUpStart[id], botUpSize[id]) > 0;
+		}
+		else if(router < topo.blockOffset) {
+			int pod = topo.groupOf(router);
+			connected = countLiveDown(router, topDownStart[id], topDownSize[id]) > 0 &&
+					countLive(router, topUpStart[pod], topUpSize[pod]) > 0;
+		}
+		else {
+			connected = countLiveDown(router, blockDownStart[id], blockDownSize[id]) > 0;
+		}
+		return connected;
+	}
+
+	int countLive(int router, int start, int size) {
+		if(!overlay.isDirty(router)) {return size;}
+		int count = 0;
+		for(int i = start; i < start + size; i++) {
+			if(!overlay.isFailed(topo.upLink(router, i))) {count++;}
+		}
+		return count;
+	}
+
+	int countLiveDown(int router, int start, int size) {
+		if(!overlay.isDirty(router)) {return size;}
+		int count = 0;
+		for(int i = start; i < start + size; i++) {
+			if(!overlay.isFailed(topo.downLink(router, i))) {count++;}
+		}
+		return count;
+	}
+
+	/**
+	 * Selects the index-th live link among the upward ports [start, start+size) of the router.
+	 * This corresponds to tFSet[index] of a Node object. Returns -1 if all links are failed.
+	 */
+	int selectUp(int router, int start, int size, int pHash) {
+		int live = countLive(router, start, size);
+		if(live == 0) {return -1;}
+		if(live == size) {
+			return topo.upLink(router, start + pHash % size);
+		}
+		int index = pHash % live;
+		for(int i = start; i < start + size; i++) {
+			int l = topo.upLink(router, i);
+			if(!overlay.isFailed(l) && index-- == 0) {return l;}
+		}
+		return -1;
+	}
+
+	/**
+	 * Same as selectUp for downward ports. Corresponds to bFSet[index] of a Node object.
+	 */
+	int selectDown(int router, int start, int size, int pHash) {
+		int live = countLiveDown(router, start, size);
+		if(live == 0) {return -1;}
+		if(live == size) {
+			return topo.downLink(router, start + pHash % size);
+		}
+		int index = pHash % live;
+		for(int i = start; i < start + size; i++) {
+			int l = topo.downLink(router, i);
+			if(!overlay.isFailed(l) && index-- == 0) {return l;}
+		}
+		return -1;
+	}
+
+	/**
+	 * Live forwarding candidates of router cur for a packet towards destination, i.e. the links among which
+	 * forward() chooses by the hash value. This is a single link if the direct link towards the destination is live.
+	 *
+	 * @param out	Array of length at least k that receives the links
+	 * @return	Number of candidates
+	 */
+	public int candidates(int cur, int destination, int[] out) {
+		int destPod = destination / h;
+		if(cur < topo.topOffset) {
+			return liveUp(cur, botUpStart[cur % h], botUpSize[cur % h], out);
+		}
+		else if(cur < topo.blockOffset) {
+			int pod = (cur - topo.topOffset) / h;
+			int id = (cur - topo.topOffset) % h;
+			if(destPod == pod) {
+				int l = topo.podLink(pod, destination % h, id);
+				if(!overlay.isFailed(l)) {
+					out[0] = l;
+					return 1;
+				}
+				return liveDown(cur, topDownStart[id], topDownSize[id], out);
+			}
+			return liveUp(cur, topUpStart[pod], topUpSize[pod], out);
+		}
+		else {
+			int id = (cur - topo.blockOffset) % h;
+			int l = topo.blockLink(destPod, (cur - topo.blockOffset) / h, id);
+			if(!overlay.isFailed(l)) {
+				out[0] = l;
+				return 1;
+			}
+			return liveDown(cur, blockDownStart[id], blockDownSize[id], out);
+		}
+	}
+
+	/**
+	 * Live links of the upward candidate set of a BOT or TOP router (the TOP set is used for destinations in other pods)
+	 *
+	 * @return	Number of links written into out
+	 */
+	public int upCandidates(int router, int[] out) {
+		int id = topo.localIdOf(router);
+		if(router < topo.topOffset) {
+			return liveUp(router, botUpStart[id], botUpSize[id], out);
+		}
+		int pod = topo.groupOf(router);
+		return liveUp(router, topUpStart[pod], topUpSize[pod], out);
+	}
+
+	/**
+	 * Live links of the downward candidate set of a TOP or BLOCK router, which is used if the direct link
+	 * towards the destination has failed
+	 *
+	 * @return	Number of links written into out
+	 */
+	public int downCandidates(int router, int[] out) {
+		int id = topo.localIdOf(router);
+		if(router < topo.blockOffset) {
+			return liveDown(router, topDownStart[id], topDownSize[id], out);
+		}
+		return liveDown(router, blockDownStart[id], blockDownSize[id], out);
+	}
+
+	int liveUp(int router, int start, int size, int[] out) {
+		int count = 0;
+		for(int i = start; i < start + size; i++) {
+			int l = topo.upLink(router, i);
+			if(!overlay.isFailed(l)) {out[count++] = l;}
+		}
+		return count;
+	}
+
+	int liveDown(int router, int start, int size, int[] out) {
+		int count = 0;
+		for(int i = start; i < start + size; i++) {
+			int l = topo.downLink(router, i);
+			if(!overlay.isFailed(l)) {out[count++] = l;}
+		}
+		return count;
+	}
+
+	//+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+ Packet Routing Implementations +-+-+-+-+-+-+-+-+-+-+-
+
+	/**
+	 * Forwarding decision of router cur, see Node.forward(Packet p, Hash h).
+	 *
+	 * @return	link over which the packet is forwarded
+	 */
+	public int forward(int cur, int source, int destination, int lastHop, int hopCount) {
+		return forwardFrom(cur, topo.hashIDs[source], destination, lastHop, hopCount);
+	}
+
+	/**
+	 * Same as forward() but the source is given by its hashID, e.g. the one of a server (see CLOSTopology.serverHashID())
+	 */
+	int forwardFrom(int cur, int sourceID, int destination, int lastHop, int hopCount) {
+		int[] hashIDs = topo.hashIDs;
+		int pHash = hashFunction.hash(hashIDs[cur], sourceID, hashIDs[destination], hashIDs[lastHop], hopCount);
+		int destPod = destination / h;
+		if(cur < topo.topOffset) {
+			return selectUp(cur, botUpStart[cur % h], botUpSize[cur % h], pHash);
+		}
+		else if(cur < topo.blockOffset) {
+			int pod = (cur - topo.topOffset) / h;
+			int id = (cur - topo.topOffset) % h;
+			if(destPod == pod) {
+				int l = topo.podLink(pod, destination % h, id);
+				if(!overlay.isFailed(l)) {return l;}
+				return selectDown(cur, topDownStart[id], topDownSize[id], pHash);
+			}
+			return selectUp(cur, topUpStart[pod], topUpSize[pod], pHash);
+		}
+		else {
+			int id = (cur - topo.blockOffset) % h;
+			int l = topo.blockLink(destPod, (cur - topo.blockOffset) / h, id);
+			if(!overlay.isFailed(l)) {return l;}
+			return selectDown(cur, blockDownStart[id], blockDownSize[id], pHash);
+		}
+	}
+
+	/**
+	 * Routes a packet from source to destination (both BOT routers) and stores the traversed routers
+	 * and links in pathRouters and pathLinks.
+	 *
+	 * @return	number of hops. If larger than 2*LOOP_MAX the packet is assumed to be trapped in a loop.
+	 * 			-1 if the packet reached a router without live forwarding candidate and was dropped
+	 * 			(only possible if the failures were not verified by initRoutingState()).
+	 */
+	public int routePacket(int source, int destination) {
+		return routeFrom(source, topo.hashIDs[source], destination);
+	}
+
+	/**
+	 * Same as routePacket() for a packet sent by a server to (a server attached to) the BOT router destination.
+	 * The source of the packet is the server, the inport of the first hop is its BOT router as for routePacket().
+	 */
+	public int routeServerPacket(int server, int destination) {
+		return routeFrom(topo.torOf(server), topo.serverHashIDs[server], destination);
+	}
+
+	private int routeFrom(int source, int sourceID, int destination) {
+		int cur = source;
+		int lastHop = source;
+		int hops = 0;
+		pathRouters[0] = source;
+		pathLength = 0;
+		while(cur != destination) {
+			int link = forwardFrom(cur, sourceID, destination, lastHop, hops);
+			if(link < 0) {return -1;}
+			int next = topo.otherEnd(link, cur);
+			pathLinks[hops] = link;
+			hops++;
+			pathRouters[hops] = next;
+			pathLength = hops;
+			lastHop = cur;
+			cur = next;
+			if(hops > 2*CLOSNetwork.LOOP_MAX) {return hops;}
+		}
+		return hops;
+	}
+
+	/**
+	 * Number of links traveled by the packet last routed by routePacket() (also if it was dropped)
+	 */
+	public int pathLength() {
+		return pathLength;
+	}
+
+	/**
+	 * The i-th link of the packet last routed by routePacket()
+	 */
+	public int pathLink(int i) {
+		return pathLinks[i];
+	}
+
+	/**
+	 * The i-th router of the packet last routed by routePacket() (the source is at index 0)
+	 */
+	public int pathRouter(int i) {
+		return pathRouters[i];
+	}
+
+	/**
+	 * All-to-one routing towards the BOT router dest. Unlike CLOSNetwork.allToOneRouting() this
+	 * does not build a traffic matrix.
+	 */
+	public Result allToOneRouting(int dest) {
+		if(topo.layerOf(dest) != Node.Type.BOT) {
+			System.err.println("Destination must lie on bottom layer!");
+			System.exit(-1);
+		}
+		double[] column = new double[topo.numBot];
+		for(int i = 0; i < topo.numBot; i++) {
+			column[i] = 1.0;
+		}
+		return route(null, column, dest, null, null, null, 0, "A2O");
+	}
+
+	/**
+	 * Routes every flow of the traffic matrix, see CLOSNetwork.trafficMatrixRouting().
+	 * Loads are collected in the dense arrays Result.routerLoad and Result.linkLoad.
+	 */
+	public Result trafficMatrixRouting(double[][] matrix, String expName) {
+		return route(matrix, null, -1, null, null, null, 0, expName);
+	}
+
+	/**
+	 * Routes the first count flows of a list, e.g. a sample of a traffic matrix (see Routing.FlowSampler).
+	 * Unlike trafficMatrixRouting() the cost does not depend on the number of pairs of BOT routers.
+	 *
+	 * @param pairs	Flat indices s*numBot + d of the flows (source s and destination d are BOT routers)
+	 * @param weights	Weights of the flows
+	 */
+	public Result flowListRouting(int[] pairs, double[] weights, int count, String expName) {
+		return route(null, null, -1, null, pairs, weights, count, expName);
+	}
+
+	/**
+	 * Routes server-to-server traffic. If the hash function of the strategy does not depend on the source,
+	 * all servers of a BOT router take the same paths, so the traffic is folded into a matrix between BOT routers first.
+	 * Otherwise every (source server, destination BOT router) pair is routed separately.
+	 */
+	public Result serverTrafficRouting(ServerTraffic traffic) {
+		Result r;
+		if(Strategy.dependsOnSource(type)) {
+			r = route(null, null, -1, traffic, null, null, 0, traffic.name());
+		}
+		else {
+			r = route(traffic.torMatrix(), null, -1, null, null, null, 0, traffic.name());
+		}
+		r.sentFromServers = true;
+		return r;
+	}
+
+	/**
+	 * Shared implementation of the routing experiments. Either a full matrix, a single
+	 * column (all flows towards columnDest), the rows of all servers or a list of numPairs flows is routed.
+	 */
+	private Result route(double[][] matrix, double[] column, int columnDest, ServerTraffic servers, int[] pairs, double[] pairWeights, int numPairs, String expName) {
+		PhaseEvent event = PhaseEvent.start("routing", type, k);
+		boolean profile = event.isEnabled();
+		long hopSum = 0, botForwards = 0, topForwards = 0, blockForwards = 0;
+		Log.println("-----------------------------------------------------------");
+		Log.println("** Implicit Traffic Matrix Routing (flows between bottom layer nodes only)." );
+
+		int numBot = topo.numBot;
+		double[] routerLoad = new double[topo.numRouters];
+		double[] linkLoad = new double[topo.numLinks];
+		HopHistogram histogram = new HopHistogram();
+		int loopCount = 0;
+		int dropCount = 0;
+		int totalPacks = 0;
+		double avgHops = 0.0;
+		int maxHops = 0;
+		Connectivity connectivity = new Connectivity(topo, overlay);
+		double totalWeight = 0.0, connectedWeight = 0.0;
+		int disconnectedLoops = 0;
+
+		SuffixCache cache = servers == null && pairs == null && trace == null ? suffixCache() : null;
+		if(cache != null) {
+			//Destination-major order, so that all flows towards a destination share the cached suffixes
+			int dFrom = column == null ? 0 : columnDest;
+			int dTo = column == null ? numBot : columnDest + 1;
+			for(int d = dFrom; d < dTo; d++) {
+				cache.begin(d);
+				for(int s = 0; s < numBot; s++) {
+					double weight = column != null ? column[s] : matrix[s][d];
+					if(s == d || weight < 0.0000001) { continue; }
+					boolean connected = connectivity.connected(s, d);
+					totalWeight += weight;
+					if(connected) {connectedWeight += weight;}
+
+					int hops = cache.route(s, weight, routerLoad, linkLoad);
+					if(profile && hops > 0) {hopSum += hops;}
+					if(hops < 0) {
+						dropCount++;
+					}
+					else if(hops >= 2*CLOSNetwork.LOOP_MAX - 10) {
+						loopCount++;
+						if(!connected) {disconnectedLoops++;}
+					}
+					else {
+						if(hops > maxHops) {maxHops = hops;}
+						avgHops += hops;
+						histogram.add(hops, HopHistogram.shortestPathLength(k, s, d), weight);
+					}
+					totalPacks++;
+				}
+				cache.finish(routerLoad, linkLoad);
+			}
+		}
+		else {
+			//For a list of flows, src is the index of the flow
+			int numSources = pairs != null ? numPairs : servers == null ? numBot : topo.numServers;
+			double[] row = servers == null ? null : new double[numBot];
+			for(int src = 0; src < numSources; src++) {
+				int s = pairs != null ? pairs[src] / numBot : servers == null ? src : topo.torOf(src);
+				if(servers != null) {servers.torRow(src, row);}
+				int dFrom = pairs != null ? pairs[src] % numBot : column == null ? 0 : columnDest;
+				int dTo = pairs != null || column != null ? dFrom + 1 : numBot;
+				for(int d = dFrom; d < dTo; d++) {
+					double weight = pairs != null ? pairWeights[src] : column != null ? column[s] : (servers != null ? row[d] : matrix[s][d]);
+					if(s == d || weight < 0.0000001) { continue; }
+					boolean connected = connectivity.connected(s, d);
+					totalWeight += weight;
+					if(connected) {connectedWeight += weight;}
+
+					int hops = servers == null ? routePacket(s, d) : routeServerPacket(src, d);
+					if(trace != null) {
+						trace.record(s, d, weight, hops >= 2*CLOSNetwork.LOOP_MAX - 10, hops < 0, pathRouters, pathLinks, pathLength);
+					}
+					if(profile) {
+						int walked = hops < 0 ? pathLength : hops; //A dropped packet traveled pathLength links
+						hopSum += walked;
+						for(int i = 0; i < walked; i++) {
+							if(pathRouters[i] < topo.topOffset) {botForwards++;}
+							else if(pathRouters[i] < topo.blockOffset) {topForwards++;}
+							else {blockForwards++;}
+						}
+					}
+					if(hops < 0) {
+						dropCount++;
+					}
+					else if(hops >= 2*CLOSNetwork.LOOP_MAX - 10) {
+						loopCount++;
+						if(!connected) {disconnectedLoops++;}
+					}
+					else {
+						if(hops > maxHops) {maxHops = hops;}
+						avgHops += hops;
+						histogram.add(hops, HopHistogram.shortestPathLength(k, s, d), weight);
+						for(int i = 0; i <= hops; i++) {
+							routerLoad[pathRouters[i]] += weight;
+						}
+						for(int i = 0; i < hops; i++) {
+							linkLoad[pathLinks[i]] += weight;
+						}
+					}
+					totalPacks++;
+				}
+			}
+		}
+		avgHops = avgHops / (totalPacks - loopCount - dropCount);
+
+		Result r = createResultObj();
+		r.packsInCycle = loopCount;
+		r.droppedPacks = dropCount;
+		r.sentFromServers = false;
+		r.totalPacks = totalPacks;
+		r.experimentType = expName;
+		r.avgHops = avgHops;
+		r.maxHops = maxHops;
+		r.routerLoad = routerLoad;
+		r.linkLoad = linkLoad;
+		r.hopHistogram = histogram;
+		r.connectedPairs = connectivity.connectedPairs();
+		r.connectedWeight = totalWeight > 0 ? connectedWeight / totalWeight : 1.0;
+		r.disconnectedLoops = disconnectedLoops;
+
+		Log.println("** Experiment completed. Sent " +  totalPacks + " many Packets");
+		Log.println("-----------------------------------------------------------\n");
+		
+		event.flowsRouted = totalPacks;
+		event.loopPackets = loopCount;
+		event.hops = hopSum;
+		event.botForwards = botForwards;
+		event.topForwards = topForwards;
+		event.blockForwards = blockForwards;
+		event.finish();
+		return r;
+	}
+
+	/**
+	 * Enables or disables the caching of path suffixes when routing a traffic matrix (disabled by default).
+	 * The cache is only used for strategies whose hash does not depend on the source and (beyond some hop count)
+	 * not on the hop count, i.e. all D and ID strategies. The loads are the same up to the order of floating point additions.
+	 * It pays off for scenarios with long detours and many forwarding loops (a loop is detected at its first repeated
+	 * state instead of after 2*LOOP_MAX hops). On shortest paths of 4 hops hardly any suffix is shared
+	 * and the bookkeeping costs more than the saved forwarding decisions.
+	 */
+	public void setSuffixCache(boolean enabled) {
+		useSuffixCache = enabled;
+	}
+
+	/**
+	 * Records the path of every routed flow (that passes the filters of the recorder) from now on, or stops recording if null.
+	 * As the suffix cache does not build complete paths, it is not used while tracing.
+	 * The recorder is not closed by the network.
+	 */
+	public void setTraceRecorder(TraceRecorder recorder) {
+		trace = recorder;
+	}
+
+	SuffixCache suffixCache() {
+		if(!useSuffixCache || Strategy.dependsOnSource(type) || hashFunction.hopCountHorizon() == Integer.MAX_VALUE) {
+			return null;
+		}
+		if(suffixCache == null || suffixCache.horizon != Math.max(hashFunction.hopCountHorizon(), 2)) {
+			suffixCache = new SuffixCache(this, hashFunction.hopCountHorizon());
+		}
+		return suffixCache;
+	}
+
+	//+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+ MISC +-+-+-+-+-+-+-+-+-+-+-
+
+	/**
+	 * Create a Result object to store basic information about the experiment.
+	 */
+	public Result createResultObj() {
+		Result r = new Result();
+		r.k = k;
+		r.failType = cFailType;
+		r.type = type;
+		r.numInt = numIntervals;
+		r.failP = cFailP;
+		r.numFailedEdges = cFailedEdges;
+		return r;
+	}
+
+	/**
+	 * Select a router in the bottom layer of some pod uniformly at random.
+	 *
+	 * @return	Id of the randomly selected router.
+	 */
+	public int randomBottomLayerNode() {
+		return rng().nextInt(topo.numBot);
+	}
+}
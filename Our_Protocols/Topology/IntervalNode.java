@@ -25,6 +25,10 @@ public class IntervalNode extends Node{
 	int numIntervals;
 	int k;
 	
+	//Links inside the intervals used for forwarding upwards (tMask) and downwards (bMask), see initIntervalMasks()
+	long[] tMask;
+	long[] bMask;
+	
 	/**
 	 * Basic constructor for the node object. Nodes are assumed to be created by the block and pod objects.
 	 * 
@@ -51,65 +55,62 @@ public class IntervalNode extends Node{
 	 * As defined by the Intervals protocol, these candidates only consider of 
 	 * nodes in a certain interval. Note that the sets tFSet and bFSet may not
 	 * include nodes that are failed.
+	 * 
+	 * The interval masks only depend on the position of the node and are built by the first call,
+	 * later calls only intersect them with the intact links and do not allocate.
 	 */
 	@Override
 	public void updateRoutingState() throws DisconnectException{
+		if(tMask == null && bMask == null) {
+			initIntervalMasks();
+		}
+		if(bMask != null) {
+			bFCount = intersect(bLive, bMask, bFSet);
+		}
+		if(tMask != null) {
+			tFCount = intersect(tLive, tMask, tFSet);
+		}
+		
+		if((tFSet != null && tFCount == 0) || (bFSet != null && bFCount == 0)) {
+			throw new DisconnectException("Routing strategy cannot be emplyed! Too many failures incident to " + this.toString());
+		}
+	}
+	
+	/**
+	 * Builds the masks of the links in the intervals the node forwards to
+	 */
+	void initIntervalMasks() {
 		myInterval = IntervalUtility.getIntervalAssignment(k/2, numIntervals, this.idLocal);
 		
 		if(this.type == Type.BLOCK) {
-			int[] adjInterval = IntervalUtility.getIndicesInInterval(k, numIntervals, (myInterval + 1) % numIntervals);
-			int count = 0; //Count how many nodes in vertical interval are reachable
-			for(int i = 0; i < adjInterval.length; i++) {
-				if(!bFail[adjInterval[i]]) {count++;}
-			}
-			bFSet = new Node[count]; count = 0;
-			for(int i = 0; i < adjInterval.length; i++) {
-				if(!bFail[adjInterval[i]]) {bFSet[count] = bLink[adjInterval[i]]; count++;};
-			}
+			bMask = intervalMask(k, (myInterval + 1) % numIntervals);
 		}
 		else if(this.type == Type.TOP) {
-			//Do same as above for edges going downward
-			int[] adjInterval = IntervalUtility.getIndicesInInterval(k/2, numIntervals, (myInterval + 1) % numIntervals);
-			
-			int count = 0; //Count how many nodes in vertical interval are reachable
-			for(int i = 0; i < adjInterval.length; i++) {
-				if(!bFail[adjInterval[i]]) {count++;}
-			}
-			bFSet = new Node[count]; count = 0;
-			for(int i = 0; i < adjInterval.length; i++) {
-				if(!bFail[adjInterval[i]]) {bFSet[count] = bLink[adjInterval[i]]; count++;};
-			}
+			//Edges going downward
+			bMask = intervalMask(k/2, (myInterval + 1) % numIntervals);
 			
 			//Node is also in some vertical interval
 			int verticalID = IntervalUtility.getIntervalAssignment(k, numIntervals, this.pPod.id);
-			adjInterval = IntervalUtility.getIndicesInInterval(k/2, numIntervals, verticalID);
-			
-			count = 0; //Count how many nodes in horizontal interval (above) are reachable
-			for(int i = 0; i < adjInterval.length; i++) {
-				if(!tFail[adjInterval[i]]) {count++;}
-			}
-			tFSet = new Node[count]; count = 0;
-			for(int i = 0; i < adjInterval.length; i++) {
-				if(!tFail[adjInterval[i]]) {tFSet[count] = tLink[adjInterval[i]]; count++;};
-			}
-			
+			tMask = intervalMask(k/2, verticalID);
 		}
 		else { // BOT Node
-			int[] adjInterval = IntervalUtility.getIndicesInInterval(k/2, numIntervals, myInterval);
-			
-			int count = 0; //Count how many nodes in horizontal interval (above) are reachable
-			for(int i = 0; i < adjInterval.length; i++) {
-				if(!tFail[adjInterval[i]]) {count++;}
-			}
-			tFSet = new Node[count]; count = 0;
-			for(int i = 0; i < adjInterval.length; i++) {
-				if(!tFail[adjInterval[i]]) {tFSet[count] = tLink[adjInterval[i]]; count++;};
-			}
+			tMask = intervalMask(k/2, myInterval);
 		}
-		
-		if((tFSet != null && tFSet.length == 0) || (bFSet != null && bFSet.length == 0)) {
-			throw new DisconnectException("Routing strategy cannot be emplyed! Too many failures incident to " + this.toString());
+		if(bMask != null) {bFSet = new long[bMask.length];}
+		if(tMask != null) {tFSet = new long[tMask.length];}
+	}
+	
+	@Override
+	long[] candidateMask(boolean top) {
+		if(tMask == null && bMask == null) {
+			initIntervalMasks();
 		}
+		return top ? tMask : bMask;
+	}
+	
+	long[] intervalMask(int numNodes, int interval) {
+		return rangeMask(numNodes, IntervalUtility.getIntervalStart(numNodes, numIntervals, interval),
+				IntervalUtility.getIntervalSize(numNodes, numIntervals, interval));
 	}
 
 	/**
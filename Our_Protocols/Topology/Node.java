@@ -4,6 +4,7 @@ import java.util.concurrent.ThreadLocalRandom;
 import Hashing.Hash;
 import Routing.*;
 import Util.DisconnectException;
+import Util.LazyDisconnectException;
 
 /**
  * Class used for the routers inside the CLOS-Topology.
@@ -37,11 +38,27 @@ public abstract class Node {
 	boolean[] tFail;
 	boolean[] bFail;
 	
+	//Same as tFail and bFail as bitmasks of the intact links, bit i%64 of word i/64 is set iff link i is NOT failed.
+	//Kept in sync by failTopLink(), failBottomLink() and healFailures()
+	long[] tLive;
+	long[] bLive;
 	
-	//Sets of neighbors which can be used for forwarding packets. tFSet forwards via tLinks and
-	//bFSet via bLinks. All these nodes should be intact, that is NOT failed.
-	Node[] tFSet;
-	Node[] bFSet;
+	//Sets of neighbors which can be used for forwarding packets, as bitmasks over the indices of tLink and bLink
+	//(see tLive). tFSet forwards via tLinks and bFSet via bLinks. All these nodes should be intact, that is NOT failed.
+	//tFCount and bFCount are the number of set bits
+	long[] tFSet;
+	long[] bFSet;
+	int tFCount;
+	int bFCount;
+	
+	//Number of failed links among the possible forwarding candidates (see candidateMask()). A node whose candidates
+	//of one direction are all failed is counted in CLOSNetwork.starvedNodes, see CLOSNetwork.isFeasible()
+	int tFailedCandidates;
+	int bFailedCandidates;
+	
+	//Whether tFSet and bFSet match the current failures. Cleared by CLOSNetwork.initRoutingState() in lazy mode,
+	//the sets are then built when the node forwards its first packet (see ensureRoutingState())
+	boolean routingStateReady;
 	
 	//Basic information about the node.
 	public Type type;
@@ -82,17 +99,21 @@ public abstract class Node {
 			tLink = null;
 			bLink = new Node[k];
 			bFail = new boolean[k];
+			bLive = fullMask(k);
 		}
 		else if(t == Type.BOT) {
 			bLink = null;
 			tLink = new Node[k/2];
 			tFail = new boolean[k/2];
+			tLive = fullMask(k/2);
 		}
 		else {
 			bLink = new Node[k/2];
 			bFail = new boolean[k/2];
+			bLive = fullMask(k/2);
 			tLink = new Node[k/2];
 			tFail = new boolean[k/2];
+			tLive = fullMask(k/2);
 		}
 		
 		this.hashFunction = hashFunction;
@@ -115,6 +136,35 @@ public abstract class Node {
 	 */
 	public abstract void updateRoutingState() throws DisconnectException;
 	
+	/**
+	 * Calls updateRoutingState() and marks the forwarding sets as up to date
+	 */
+	void initRoutingState() throws DisconnectException {
+		updateRoutingState();
+		routingStateReady = true;
+	}
+	
+	/**
+	 * Marks the forwarding sets as outdated, they are rebuilt by the next call of forward()
+	 */
+	void invalidateRoutingState() {
+		routingStateReady = false;
+	}
+	
+	/**
+	 * Builds the forwarding sets if they are outdated. As forward() cannot throw a DisconnectException,
+	 * a disconnect found here is passed on as LazyDisconnectException.
+	 */
+	void ensureRoutingState() {
+		if(!routingStateReady) {
+			try {
+				initRoutingState();
+			} catch (DisconnectException ex) {
+				throw new LazyDisconnectException(ex);
+			}
+		}
+	}
+	
 	/**
 	 * Hook function, which should call forward(Packet p, Hash h)  after specifying a 
 	 * hash function.
@@ -129,7 +179,8 @@ public abstract class Node {
 	 * Possible forwarding partners are assumed to be stored inside tSet and bSet.
 	 * 
 	 * Depending on the location of the destination of p, a node in tSet/bSet is selected at random
-	 * for forwarding. These sets are initialized by calling updateRoutingState() after edge failures have been placed.
+	 * for forwarding. These sets are initialized by calling updateRoutingState() after edge failures have been placed,
+	 * or on the first call of this function if CLOSNetwork.setLazyRoutingState() is used.
 	 * This selection is done via hashing the packet header to ensure that packets with the same hash-value 
 	 * (e.g. same destination and source) always follow the same  path.
 	 * 
@@ -144,25 +195,26 @@ public abstract class Node {
 			//Do nothing packet arrived
 			return null;
 		}
-		else if(this.type == Type.BOT) {
-			nextHop = tFSet[pHash % tFSet.length];
+		ensureRoutingState();
+		if(this.type == Type.BOT) {
+			nextHop = tLink[select(tFSet, pHash % tFCount)];
 		}
 		else if(this.type == Type.TOP) {
 			if(p.destinationPod == this.pPod) { //Node lies in same pod as destination
 				if(this.bFail[p.destination.idLocal]) { //Check if link to destination is failed
-					nextHop = bFSet[pHash % bFSet.length]; //Forward to random node in bottom layer of same pod 
+					nextHop = bLink[select(bFSet, pHash % bFCount)]; //Forward to random node in bottom layer of same pod 
 				}
 				else {
 					nextHop = p.destination;
 				}
 			}
 			else {
-				nextHop = tFSet[pHash % tFSet.length];
+				nextHop = tLink[select(tFSet, pHash % tFCount)];
 			}
 		}
 		else { // Block node
 			if(this.bFail[p.destinationPod.id]) { // Pod containing the destination is not reachable
-				nextHop = bFSet[pHash % bFSet.length];
+				nextHop = bLink[select(bFSet, pHash % bFCount)];
 			}
 			else {
 				nextHop = bLink[p.destinationPod.id];
@@ -181,16 +233,143 @@ public abstract class Node {
 	 * to be called as well.
 	 */
 	public void healFailures() {
+		tFailedCandidates = 0;
+		bFailedCandidates = 0;
 		if(this.bFail != null) {
 			for(int i = 0; i < bFail.length; i++) {
 				bFail[i] = false;
 			}
+			setMask(bLive, bFail.length);
 		}
 		if(this.tFail != null) {
 			for(int i = 0; i < tFail.length; i++) {
 				tFail[i] = false;
 			}
+			setMask(tLive, tFail.length);
+		}
+	}
+	
+	/**
+	 * Marks the link tLink[i] as failed at this node (the other end point is not changed)
+	 */
+	public void failTopLink(int i) {
+		tFail[i] = true;
+		long bit = 1L << i;
+		if((tLive[i >>> 6] & bit) == 0) {return;}
+		tLive[i >>> 6] &= ~bit;
+		long[] mask = candidateMask(true);
+		if(mask == null || (mask[i >>> 6] & bit) != 0) {
+			tFailedCandidates++;
+			if(tFailedCandidates == (mask == null ? tLink.length : count(mask))) {network().starvedNodes++;}
+		}
+	}
+	
+	/**
+	 * Marks the link bLink[i] as failed at this node (the other end point is not changed)
+	 */
+	public void failBottomLink(int i) {
+		bFail[i] = true;
+		long bit = 1L << i;
+		if((bLive[i >>> 6] & bit) == 0) {return;}
+		bLive[i >>> 6] &= ~bit;
+		long[] mask = candidateMask(false);
+		if(mask == null || (mask[i >>> 6] & bit) != 0) {
+			bFailedCandidates++;
+			if(bFailedCandidates == (mask == null ? bLink.length : count(mask))) {network().starvedNodes++;}
+		}
+	}
+	
+	/**
+	 * Links via tLink (top = true) or bLink which are forwarding candidates as long as they are intact,
+	 * as bitmask over their indices. null if every link may be used.
+	 * 
+	 * Subclasses that only forward over a part of their links need to override this function,
+	 * otherwise CLOSNetwork.isFeasible() misses some disconnects.
+	 */
+	long[] candidateMask(boolean top) {
+		return null;
+	}
+	
+	CLOSNetwork network() {
+		return pPod != null ? pPod.net : pBlock.net;
+	}
+	
+	//+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+ Bitmask Utilities +-+-+-+-+-+-+-+-+-+-+- 
+	
+	/**
+	 * Bitmask with the bits 0 to n-1 set
+	 */
+	static long[] fullMask(int n) {
+		long[] mask = new long[(n + 63) >>> 6];
+		setMask(mask, n);
+		return mask;
+	}
+	
+	static void setMask(long[] mask, int n) {
+		for(int w = 0; w < mask.length; w++) {
+			int bits = Math.min(64, n - 64*w);
+			mask[w] = bits == 64 ? -1L : (1L << bits) - 1;
+		}
+	}
+	
+	/**
+	 * Bitmask with the bits start to start+size-1 set, e.g. the indices of an interval (see IntervalUtility)
+	 */
+	static long[] rangeMask(int n, int start, int size) {
+		long[] mask = new long[(n + 63) >>> 6];
+		for(int i = start; i < start + size; i++) {
+			mask[i >>> 6] |= 1L << i;
+		}
+		return mask;
+	}
+	
+	/**
+	 * Number of set bits
+	 */
+	static int count(long[] set) {
+		int count = 0;
+		for(long w : set) {
+			count += Long.bitCount(w);
+		}
+		return count;
+	}
+	
+	/**
+	 * Stores live & mask in set (all of the same length) and returns the number of set bits.
+	 */
+	static int intersect(long[] live, long[] mask, long[] set) {
+		int count = 0;
+		for(int w = 0; w < set.length; w++) {
+			set[w] = live[w] & mask[w];
+			count += Long.bitCount(set[w]);
+		}
+		return count;
+	}
+	
+	/**
+	 * Index of the set bit of the given rank (starting at 0), i.e. the rank-th forwarding candidate in ascending order
+	 */
+	static int select(long[] set, int rank) {
+		int w = 0;
+		int c = Long.bitCount(set[0]);
+		while(rank >= c) {
+			rank -= c;
+			c = Long.bitCount(set[++w]);
+		}
+		long word = set[w];
+		int offset = 0;
+		//Skip whole bytes before clearing the lowest bits one at a time
+		int b = Long.bitCount(word & 0xFF);
+		while(rank >= b) {
+			rank -= b;
+			word >>>= 8;
+			offset += 8;
+			b = Long.bitCount(word & 0xFF);
+		}
+		for(; rank > 0; rank--) {
+			word &= word - 1;
 		}
+		return 64*w + offset + Long.numberOfTrailingZeros(word);
 	}
 	
 	/**
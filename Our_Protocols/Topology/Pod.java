@@ -142,10 +142,22 @@ public class Pod {
 	 */
 	public void initialize() throws DisconnectException {
 		for(Node n: top) {
-			n.updateRoutingState();
+			n.initRoutingState();
 		}
 		for(Node n: bot) {
-			n.updateRoutingState();
+			n.initRoutingState();
+		}
+	}
+	
+	/**
+	 * Marks the routing state of each node in the pod as outdated (see Node.ensureRoutingState())
+	 */
+	public void invalidate() {
+		for(Node n: top) {
+			n.invalidateRoutingState();
+		}
+		for(Node n: bot) {
+			n.invalidateRoutingState();
 		}
 	}
 }
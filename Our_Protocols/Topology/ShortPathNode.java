@@ -2,6 +2,7 @@ package Topology;
 
 import Hashing.Hash;
 import Routing.*;
+import Util.DisconnectException;
 
 /***
  * Node class implementing Shortest-Path routing. 
@@ -37,39 +38,28 @@ public class ShortPathNode extends Node{
 	 * This functions assumes that the edge failures have already been placed.
 	 * 
 	 * It sets up the tFSet and bFSet fields such that the forward() function in
-	 * Node.class implements (local) Shortest-Path routing.
+	 * Node.class implements (local) Shortest-Path routing, i.e. every intact link is a candidate.
 	 * 
+	 * Throws exception if all links in one direction have failed.
 	 */
 	@Override
-	public void updateRoutingState() {
+	public void updateRoutingState() throws DisconnectException {
 		if(tLink != null) {
-			int count = 0;
-			for(int i = 0; i < tLink.length; i++) {
-				if(!tFail[i]) {count++;}
-			}
-			tFSet = new Node[count]; count = 0;
-			for(int i = 0; i < tLink.length; i++) {
-				if(!tFail[i]) {tFSet[count] = tLink[i]; count++;}
-			}
+			if(tFSet == null) {tFSet = new long[tLive.length];}
+			System.arraycopy(tLive, 0, tFSet, 0, tLive.length);
+			tFCount = count(tFSet);
 			
-			if(tFSet.length == 0) {
-				System.err.println("Too many edge failures -- Network got disconnected!");
-				System.exit(-1);
+			if(tFCount == 0) {
+				throw new DisconnectException("Too many edge failures -- Network got disconnected at " + this.toString());
 			}
 		}
 		if(bLink != null) {
-			int count = 0;
-			for(int i = 0; i < bLink.length; i++) {
-				if(!bFail[i]) {count++;}
-			}
-			bFSet = new Node[count]; count = 0;
-			for(int i = 0; i < bLink.length; i++) {
-				if(!bFail[i]) {bFSet[count] = bLink[i]; count++;}
-			}
+			if(bFSet == null) {bFSet = new long[bLive.length];}
+			System.arraycopy(bLive, 0, bFSet, 0, bLive.length);
+			bFCount = count(bFSet);
 			
-			if(bFSet.length == 0) {
-				System.err.println("Too many edge failures -- Network got disconnected!");
-				System.exit(-1);
+			if(bFCount == 0) {
+				throw new DisconnectException("Too many edge failures -- Network got disconnected at " + this.toString());
 			}
 		}
 	}
@@ -0,0 +1,35 @@
+package Topology;
+
+/**
+ * Forwarding strategy together with its parameters. Used to evaluate several strategies
+ * on the same failure scenario (see ImplicitCLOSNetwork.setStrategy()).
+ */
+public class Strategy {
+	public final CLOSNetwork.Type type;
+	public final int numIntervals;	//Number of intervals (Interval strategies only)
+	public final int numPerm;		//Number of permutations (3-Permutations strategies only)
+	
+	public Strategy(CLOSNetwork.Type type, int numIntervals, int numPerm) {
+		this.type = type;
+		this.numIntervals = numIntervals;
+		this.numPerm = numPerm;
+	}
+	
+	/**
+	 * Whether the hash function of the strategy depends on the source of a packet, i.e. whether packets of
+	 * different servers attached to the same BOT router may take different paths to the same destination.
+	 */
+	public boolean dependsOnSource() {
+		return dependsOnSource(type);
+	}
+	
+	public static boolean dependsOnSource(CLOSNetwork.Type type) {
+		return type == CLOSNetwork.Type.INT_SID || type == CLOSNetwork.Type.INT_SIDH
+				|| type == CLOSNetwork.Type.SP_SID || type == CLOSNetwork.Type.TP_SID;
+	}
+	
+	@Override
+	public String toString() {
+		return type + "(" + numIntervals + "," + numPerm + ")";
+	}
+}
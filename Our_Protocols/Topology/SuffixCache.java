@@ -0,0 +1,190 @@
+package Topology;
+
+import java.util.Arrays;
+
+/**
+ * Per-destination cache of path suffixes for strategies whose forwarding decision only depends on
+ * (router, last hop, destination) once the permutation of the 3-Permutations hash no longer changes
+ * (all D and ID strategies, see Hash.hopCountHorizon()).
+ *
+ * Beyond the horizon, the state of a packet is the directed link over which it arrived at its current router.
+ * For each state the next link, the next state and the number of remaining hops are stored (i.e. the suffixes
+ * form a tree towards the destination). A flow only walks its new prefix until it reaches a state that is
+ * already resolved and adds its weight to this state. The weights are pushed along the tree once all flows
+ * towards the destination have been added (see finish()). Forwarding loops are detected as a revisited
+ * state and all states leading into them are marked as looping.
+ *
+ * An instance belongs to one ImplicitCLOSNetwork and must only be used by one thread.
+ */
+class SuffixCache {
+
+	static final int UNKNOWN = 0;
+	static final int IN_PROGRESS = 1;
+	static final int RESOLVED = 2;
+	static final int LOOP = 3;
+
+	//Hops returned for a flow that ends in a forwarding loop (as routePacket())
+	static final int LOOP_HOPS = 2*CLOSNetwork.LOOP_MAX + 1;
+
+	ImplicitCLOSNetwork net;
+	CLOSTopology topo;
+	int horizon;
+
+	//States are indexed by 2*link (arrived upwards) or 2*link + 1 (arrived downwards). The fields of state x are
+	//interleaved in table[4x..4x+3]: (epoch << 2 | status), next link, next state and remaining hops,
+	//so that a lookup touches a single cache line. A state is only valid if its epoch is the current one.
+	int[] table;
+	int epoch;
+	double[] pending;
+
+	//Resolved states of the current destination in the order of their creation (successors first)
+	int[] order;
+	int numStates;
+
+	//States and links of the flow that is currently walked
+	int[] walkStates;
+	int[] walkHops;
+	int[] walkLinks;
+	int[] walkRouters;
+
+	int dest;
+	int sourceID;
+
+	SuffixCache(ImplicitCLOSNetwork net, int horizon) {
+		this.net = net;
+		this.topo = net.topology();
+		//The state after the first hop is the link leaving the source, which no other flow towards the destination reaches
+		this.horizon = Math.max(horizon, 2);
+		int states = 2*topo.numLinks;
+		table = new int[4*states];
+		pending = new double[states];
+		order = new int[64];
+		walkStates = new int[2*CLOSNetwork.LOOP_MAX + 2];
+		walkHops = new int[2*CLOSNetwork.LOOP_MAX + 2];
+		walkLinks = new int[2*CLOSNetwork.LOOP_MAX + 2];
+		walkRouters = new int[2*CLOSNetwork.LOOP_MAX + 2];
+	}
+
+	/**
+	 * Discards all states and starts caching the suffixes towards the given destination
+	 */
+	void begin(int destination) {
+		dest = destination;
+		epoch++;
+		if(epoch == 1 << 29) {
+			Arrays.fill(table, 0);
+			epoch = 1;
+		}
+		numStates = 0;
+	}
+
+	/**
+	 * Routes a flow towards the current destination. The loads of the newly walked links and routers are added
+	 * immediately, the load of the reused suffix is added by finish(). Nothing is added for a flow in a loop.
+	 *
+	 * @return	Number of hops of the flow, LOOP_HOPS if it ends in a forwarding loop or -1 if it was dropped
+	 */
+	int route(int source, double weight, double[] routerLoad, double[] linkLoad) {
+		sourceID = topo.hashIDs[source];
+		int cur = source;
+		int lastHop = source;
+		int hops = 0;
+		int walked = 0;
+		walkRouters[0] = source;
+		int joined = -1;
+		while(cur != dest) {
+			if(hops >= horizon) {
+				int link = walkLinks[hops - 1];
+				//Routers are numbered layer by layer, so the packet moved upwards iff it came from a smaller id
+				int x = lastHop < cur ? 2*link : 2*link + 1;
+				int head = table[4*x];
+				if(head >>> 2 == epoch) {
+					if((head & 3) == RESOLVED) {
+						joined = x;
+						break;
+					}
+					//Either a state of this walk (cycle) or one known to end in a loop
+					markLoop(walked);
+					return LOOP_HOPS;
+				}
+				table[4*x] = epoch << 2 | IN_PROGRESS;
+				walkStates[walked] = x;
+				walkHops[walked] = hops;
+				walked++;
+			}
+			int link = net.forwardFrom(cur, sourceID, dest, lastHop, hops);
+			if(link < 0) {
+				release(walked);
+				return -1;
+			}
+			walkLinks[hops] = link;
+			lastHop = cur;
+			cur = topo.otherEnd(link, cur);
+			hops++;
+			walkRouters[hops] = cur;
+			if(hops > 2*CLOSNetwork.LOOP_MAX) {
+				markLoop(walked);
+				return hops;
+			}
+		}
+
+		int total = joined >= 0 ? hops + table[4*joined + 3] : hops;
+		//Resolve the new states from the last one backwards, so that successors are created first
+		int next = joined;
+		for(int i = walked - 1; i >= 0; i--) {
+			int x = walkStates[i];
+			table[4*x] = epoch << 2 | RESOLVED;
+			table[4*x + 1] = walkLinks[walkHops[i]];
+			table[4*x + 2] = next;
+			table[4*x + 3] = total - walkHops[i];
+			pending[x] = 0.0;
+			if(numStates == order.length) {order = Arrays.copyOf(order, 2*numStates);}
+			order[numStates++] = x;
+			next = x;
+		}
+		for(int i = 0; i <= hops; i++) {
+			routerLoad[walkRouters[i]] += weight;
+		}
+		for(int i = 0; i < hops; i++) {
+			linkLoad[walkLinks[i]] += weight;
+		}
+		if(joined >= 0) {pending[joined] += weight;}
+		return total;
+	}
+
+	void markLoop(int walked) {
+		for(int i = 0; i < walked; i++) {
+			table[4*walkStates[i]] = epoch << 2 | LOOP;
+		}
+	}
+
+	void release(int walked) {
+		for(int i = 0; i < walked; i++) {
+			table[4*walkStates[i]] = 0;
+		}
+	}
+
+	/**
+	 * Adds the weight that joined a cached suffix to the links and routers of the suffix
+	 */
+	void finish(double[] routerLoad, double[] linkLoad) {
+		for(int i = numStates - 1; i >= 0; i--) {
+			int x = order[i];
+			double w = pending[x];
+			if(w == 0.0) {continue;}
+			int link = table[4*x + 1];
+			int router = (x & 1) == 0 ? topo.upperEnd(x >> 1) : topo.lowerEnd(x >> 1);
+			linkLoad[link] += w;
+			routerLoad[topo.otherEnd(link, router)] += w;
+			int next = table[4*x + 2];
+			if(next >= 0) {pending[next] += w;}
+		}
+	}
+
+	/**
+	 * Number of states resolved for the current destination
+	 */
+	int numStates() {
+		return numStates;
+	}
+}
@@ -0,0 +1,106 @@
+package Util;
+
+import java.util.Arrays;
+
+/**
+ * 4-ary min-heap of events ordered by time, stored in two primitive arrays (no object per event).
+ * The four children of an entry are adjacent in memory, which halves the depth of the heap compared
+ * to a binary heap and keeps the comparisons of a sift-down within one or two cache lines.
+ *
+ * An event consists of its time and a long payload, e.g. (type << 32) | id. Events with equal time
+ * are returned in an unspecified order.
+ */
+public class EventQueue {
+
+	double[] times;
+	long[] payloads;
+	int size;
+
+	public EventQueue() {
+		this(64);
+	}
+
+	public EventQueue(int capacity) {
+		times = new double[Math.max(capacity, 1)];
+		payloads = new long[Math.max(capacity, 1)];
+	}
+
+	public static long payload(int type, int id) {
+		return ((long) type << 32) | (id & 0xFFFFFFFFL);
+	}
+
+	public static int type(long payload) {
+		return (int) (payload >>> 32);
+	}
+
+	public static int id(long payload) {
+		return (int) payload;
+	}
+
+	public void add(double time, long payload) {
+		if(size == times.length) {
+			times = Arrays.copyOf(times, 2*size);
+			payloads = Arrays.copyOf(payloads, 2*size);
+		}
+		//Sift up
+		int i = size++;
+		while(i > 0) {
+			int parent = (i - 1) >>> 2;
+			if(times[parent] <= time) {break;}
+			times[i] = times[parent];
+			payloads[i] = payloads[parent];
+			i = parent;
+		}
+		times[i] = time;
+		payloads[i] = payload;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Time of the earliest event
+	 */
+	public double peekTime() {
+		return times[0];
+	}
+
+	/**
+	 * Payload of the earliest event
+	 */
+	public long peekPayload() {
+		return payloads[0];
+	}
+
+	/**
+	 * Removes the earliest event and returns its payload
+	 */
+	public long poll() {
+		long result = payloads[0];
+		size--;
+		double time = times[size];
+		long payload = payloads[size];
+		//Sift down the last element from the root
+		int i = 0;
+		while(4*i + 1 < size) {
+			int first = 4*i + 1;
+			int last = Math.min(first + 4, size);
+			int child = first;
+			for(int c = first + 1; c < last; c++) {
+				if(times[c] < times[child]) {child = c;}
+			}
+			if(time <= times[child]) {break;}
+			times[i] = times[child];
+			payloads[i] = payloads[child];
+			i = child;
+		}
+		times[i] = time;
+		payloads[i] = payload;
+		return result;
+	}
+}
@@ -0,0 +1,13 @@
+package Util;
+
+/**
+ * Unchecked form of a DisconnectException, thrown while routing if a router builds its routing state
+ * on first use and the failures leave it without forwarding candidates (see CLOSNetwork.setLazyRoutingState())
+ */
+public class LazyDisconnectException extends RuntimeException{
+    private static final long serialVersionUID = 1L;
+
+    public LazyDisconnectException(DisconnectException cause) {
+        super(cause.getMessage(), cause);
+    }
+}
@@ -0,0 +1,21 @@
+package Util;
+
+/**
+ * Opt-in console logger for the verbose progress output of the simulations.
+ * 
+ * Verbose output is disabled by default. It can be enabled by starting the JVM with
+ * -Dclos.verbose=true or by setting Log.verbose = true.
+ */
+public class Log {
+	
+	public static boolean verbose = Boolean.getBoolean("clos.verbose");
+	
+	/**
+	 * Prints the line to System.out if verbose output is enabled
+	 */
+	public static void println(String s) {
+		if(verbose) {
+			System.out.println(s);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package Util;
+
+import java.lang.management.ManagementFactory;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event covering a single phase of an experiment (initEdges, failEdges, initRoutingState,
+ * routing, statistics and writing). Besides the duration, the event carries counters about the routed packets
+ * and the number of bytes allocated by the thread during the phase.
+ * 
+ * Events are only recorded when a recording with the event "clos.Phase" enabled is running, e.g.
+ * 		java -XX:StartFlightRecording=filename=sweep.jfr,settings=profile Main
+ * Otherwise start() and finish() only create a small object which does not escape.
+ */
+@Name("clos.Phase")
+@Label("Simulation Phase")
+@Category("CLOS Simulation")
+@StackTrace(false)
+public class PhaseEvent extends Event {
+	
+	@Label("Phase")
+	public String phase;
+	
+	@Label("Strategy")
+	public String strategy;
+	
+	@Label("k")
+	public int k;
+	
+	@Label("Flows Routed")
+	public long flowsRouted;
+	
+	@Label("Hops")
+	public long hops;
+	
+	@Label("Loop-Terminated Packets")
+	public long loopPackets;
+	
+	@Label("Allocated Bytes")
+	@DataAmount
+	public long allocatedBytes;
+	
+	//Number of forwarding decisions made by routers of the respective layer
+	@Label("Bottom Layer Forwards")
+	public long botForwards;
+	
+	@Label("Top Layer Forwards")
+	public long topForwards;
+	
+	@Label("Block Layer Forwards")
+	public long blockForwards;
+	
+	//Allocated bytes of the thread when the phase started (not recorded)
+	transient long allocStart;
+	
+	/**
+	 * Starts the event of a phase
+	 * 
+	 * @param phase	Name of the phase
+	 * @param strategy	Employed forwarding strategy
+	 * @param k	Degree of the routers
+	 */
+	public static PhaseEvent start(String phase, Object strategy, int k) {
+		PhaseEvent e = new PhaseEvent();
+		if(e.isEnabled()) {
+			e.phase = phase;
+			e.strategy = String.valueOf(strategy);
+			e.k = k;
+			e.allocStart = threadAllocatedBytes();
+			e.begin();
+		}
+		return e;
+	}
+	
+	/**
+	 * Ends the event and commits it to the recording
+	 */
+	public void finish() {
+		if(isEnabled()) {
+			allocatedBytes = threadAllocatedBytes() - allocStart;
+			commit();
+		}
+	}
+	
+	static long threadAllocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getCurrentThreadAllocatedBytes();
+		}
+		return 0L;
+	}
+}
@@ -0,0 +1,120 @@
+package Util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+/**
+ * Append-only journal of the finished trials of a (long) sweep, which allows to resume the sweep after the JVM was killed.
+ *
+ * Each trial is identified by a string containing all its parameters (see Main.increasingPExperiment()).
+ * Its seed is derived from the base seed of the journal and the trial id only, so a trial that is re-run after
+ * a restart uses the same hashIDs, failures and destination as it would have in an uninterrupted sweep.
+ *
+ * Every record is a line "trialId;seed;status" that is forced to disk before record() returns.
+ * The first line stores the base seed. A partially written last line (e.g. after a crash) is ignored.
+ */
+public class TrialJournal {
+
+	String fileName;
+	long baseSeed;
+
+	//Ids of the recorded trials and their status
+	HashMap<String,String> finished = new HashMap<String,String>();
+
+	/**
+	 * Opens the journal. If the file already exists, the recorded trials are loaded and its base seed is used.
+	 *
+	 * @param fileName	Name of the journal file
+	 * @param baseSeed	Seed from which the seeds of all trials are derived (if the file does not exist yet)
+	 */
+	public TrialJournal(String fileName, long baseSeed) {
+		this.fileName = fileName;
+		this.baseSeed = baseSeed;
+
+		File file = new File(fileName);
+		try {
+			if(!file.exists()) {
+				append("#baseSeed;" + baseSeed + "\n");
+				return;
+			}
+			String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+			String[] lines = content.split("\n", -1);
+			//The last element is either empty or a line that was not completely written
+			for(int i = 0; i < lines.length - 1; i++) {
+				String[] fields = lines[i].split(";");
+				if(fields.length == 2 && fields[0].equals("#baseSeed")) {
+					this.baseSeed = Long.parseLong(fields[1]);
+				}
+				else if(fields.length == 3) {
+					finished.put(fields[0], fields[2]);
+				}
+			}
+			if(!lines[lines.length - 1].isEmpty()) {
+				//Terminate the partial line, so that the next record starts on a new line
+				append("\n");
+			}
+			if(this.baseSeed != baseSeed) {
+				System.err.println("WARNING: Journal " + fileName + " uses base seed " + this.baseSeed + " instead of " + baseSeed);
+			}
+			System.out.println("** Resuming from journal " + fileName + " with " + finished.size() + " finished trials");
+		}
+		catch(IOException | NumberFormatException ex) {
+			System.err.println("Error when reading journal " + fileName + "!");
+			ex.printStackTrace();
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Seed of the trial with the given id
+	 */
+	public long seed(String trialId) {
+		//FNV-1a over the id followed by the SplitMix64 finalizer
+		long h = 0xcbf29ce484222325L;
+		for(int i = 0; i < trialId.length(); i++) {
+			h ^= trialId.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		long z = baseSeed + h * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	public synchronized boolean isFinished(String trialId) {
+		return finished.containsKey(trialId);
+	}
+
+	public synchronized int numFinished() {
+		return finished.size();
+	}
+
+	/**
+	 * Records that a trial finished. Returns after the record reached the disk.
+	 *
+	 * @param trialId	Id of the trial
+	 * @param status	Outcome of the trial, e.g. "OK" or "FAILED" (must not contain ';')
+	 */
+	public synchronized void record(String trialId, String status) {
+		try {
+			append(trialId + ";" + seed(trialId) + ";" + status + "\n");
+			finished.put(trialId, status);
+		}
+		catch(IOException ex) {
+			System.err.println("Error when writing journal " + fileName + "!");
+			ex.printStackTrace();
+			System.exit(-1);
+		}
+	}
+
+	private void append(String line) throws IOException {
+		try(FileOutputStream out = new FileOutputStream(fileName, true)) {
+			out.write(line.getBytes(StandardCharsets.UTF_8));
+			out.getFD().sync();
+		}
+	}
+}
@@ -3,6 +3,8 @@ package Util;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 
 /**
@@ -19,7 +21,13 @@ public class Utility {
 	 * @param arr	input array to be shuffled
 	 */
 	public static void shuffle(Object[] arr) {
-		ThreadLocalRandom rng = ThreadLocalRandom.current();
+		shuffle(arr, ThreadLocalRandom.current());
+	}
+	
+	/**
+	 * Same as above using the given source of randomness
+	 */
+	public static void shuffle(Object[] arr, Random rng) {
 		for(int i = arr.length-1; i > 0; i--) {
 			int j = rng.nextInt(i+1);
 			Object temp = arr[j];
@@ -34,7 +42,13 @@ public class Utility {
 	 * @param arr	input array to be shuffled
 	 */
 	public static void shuffle(int[] arr) {
-		ThreadLocalRandom rng = ThreadLocalRandom.current();
+		shuffle(arr, ThreadLocalRandom.current());
+	}
+	
+	/**
+	 * Same as above using the given source of randomness
+	 */
+	public static void shuffle(int[] arr, Random rng) {
 		for(int i = arr.length-1; i > 0; i--) {
 			int j = rng.nextInt(i+1);
 			int temp = arr[j];
@@ -44,11 +58,24 @@ public class Utility {
 	}
 	
 	public static double[][] parseMatrix(String fName, int n){
+		try {
+			return readMatrix(fName, n);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(-1);
+			return null;
+		}
+	}
+	
+	/**
+	 * Same as parseMatrix, but throws an exception instead of terminating the program if the file
+	 * cannot be read, contains an invalid number or does not contain an n x n matrix.
+	 */
+	public static double[][] readMatrix(String fName, int n) throws IOException {
 		File fMatrix = new File(fName);
 		double[][] m = new double[n][n];
+		FileReader reader = new FileReader(fMatrix);
 		try {
-			FileReader reader = new FileReader(fMatrix);
-			
 			int i;
 			String cNumber = "";
 			int index = 0;
@@ -56,8 +83,14 @@ public class Utility {
 			while((i = reader.read()) != -1) {
 				char c = (char)i;
 				if(c == ' ' || c == '\n') {
-					//System.out.println(cNumber);
-					m[index][index2] = Double.parseDouble(cNumber);
+					if(index >= n || index2 >= n) {
+						throw new IOException("Matrix in " + fName + " is larger than " + n + "x" + n);
+					}
+					try {
+						m[index][index2] = Double.parseDouble(cNumber);
+					} catch (NumberFormatException e) {
+						throw new IOException("Invalid entry '" + cNumber + "' in row " + index + " of " + fName);
+					}
 					index2++;
 					cNumber = "";
 				}
@@ -65,15 +98,28 @@ public class Utility {
 					cNumber = cNumber  + c;
 				}
 				if(c == '\n') {
+					if(index2 != n) {
+						throw new IOException("Row " + index + " of " + fName + " has " + index2 + " instead of " + n + " entries");
+					}
 					index ++;
 					index2 = 0;
 				}
 			}
+			//The last row may lack its line break
+			if(!cNumber.isEmpty() && index < n && index2 == n - 1) {
+				try {
+					m[index][index2] = Double.parseDouble(cNumber);
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid entry '" + cNumber + "' in row " + index + " of " + fName);
+				}
+				index++;
+			}
+			if(index != n) {
+				throw new IOException(fName + " has " + index + " instead of " + n + " rows");
+			}
+		}
+		finally {
 			reader.close();
-			
-		} catch (Exception e) {
-			e.printStackTrace();
-			System.exit(-1);
 		}
 		return m;
 	}